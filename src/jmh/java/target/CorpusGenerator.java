@@ -0,0 +1,160 @@
+package target;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+
+/**
+ * Scales the text files found in src/main/java/res/sample_text up to a synthetic corpus of any size for the
+ * benchmarks. Every generated file is made of lines picked at random from the sample files, so words and phrases
+ * found in the samples are found in the corpus too. The same arguments always generate the same corpus.
+ * ex. java target.CorpusGenerator build/jmh-corpus/1024MB 1073741824 64
+ */
+public final class CorpusGenerator {
+    /**
+     * relative path containing the sample text files
+     */
+    public static final String SAMPLE_PATH = System.getProperty("user.dir") + File.separator +
+            "src" + File.separator +
+            "main" + File.separator +
+            "java" + File.separator +
+            "res" + File.separator +
+            "sample_text";
+
+    /**
+     * written last, a corpus directory without it is generated again
+     */
+    private static final String COMPLETE_MARKER = ".complete";
+
+    private CorpusGenerator() {
+    }
+
+    public static void main(String[] args) throws IOException {
+        if (args.length < 2) {
+            System.err.println("Usage: CorpusGenerator <corpus directory> <total bytes> [file count]");
+            return;
+        }
+        int fileCount = args.length > 2 ? Integer.parseInt(args[2]) : 64;
+        generate(new File(SAMPLE_PATH), new File(args[0]), Long.parseLong(args[1]), fileCount);
+    }
+
+    /**
+     * Generates {@code fileCount} text files of about {@code totalBytes} bytes altogether in {@code corpusDir},
+     * unless that corpus was already generated there.
+     * @param sampleDir directory containing the sample text files
+     * @param corpusDir directory the corpus is generated in
+     * @param totalBytes total size of the corpus
+     * @param fileCount number of text files generated
+     * @throws IOException when the samples cannot be read or the corpus cannot be written
+     */
+    public static void generate(File sampleDir, File corpusDir, long totalBytes, int fileCount) throws IOException {
+        File marker = new File(corpusDir, COMPLETE_MARKER);
+        String expected = totalBytes + " " + fileCount;
+        if (marker.isFile() && expected.equals(new String(Files.readAllBytes(marker.toPath()), StandardCharsets.UTF_8))) {
+            return;
+        }
+        if (!corpusDir.isDirectory() && !corpusDir.mkdirs()) {
+            throw new IOException("Cannot create corpus directory: " + corpusDir);
+        }
+        marker.delete();
+
+        List<String> lines = sampleLines(sampleDir);
+        Random random = new Random(totalBytes ^ fileCount);
+        long fileBytes = Math.max(1, totalBytes / fileCount);
+        for (int fileId = 0; fileId < fileCount; fileId++) {
+            File file = new File(corpusDir, String.format("corpus_%05d.txt", fileId));
+            try (BufferedWriter writer = new BufferedWriter(new FileWriter(file))) {
+                long written = 0;
+                while (written < fileBytes) {
+                    String line = lines.get(random.nextInt(lines.size()));
+                    writer.write(line);
+                    writer.newLine();
+                    written += line.length() + 1;
+                }
+            }
+        }//end for
+
+        Files.write(marker.toPath(), expected.getBytes(StandardCharsets.UTF_8));
+        System.out.println("Generated " + fileCount + " file(s) of " + fileBytes + " bytes in: " + corpusDir);
+    }
+
+    /**
+     * Returns the distinct filtered words of the sample text files, in the order they are first found.
+     * @param sampleDir directory containing the sample text files
+     * @return the words of the samples
+     */
+    public static List<String> vocabulary(File sampleDir) {
+        Set<String> words = new LinkedHashSet<>();
+        for (File file : textFiles(sampleDir)) {
+            for (String word : SearchUtils.readFile(file).split(" ")) {
+                if (!word.isEmpty()) {
+                    words.add(word);
+                }
+            }
+        }
+        return new ArrayList<>(words);
+    }
+
+    /**
+     * Returns the filtered word following the first occurrence of {@code word} in the sample text files,
+     * so that {@code word} and the returned word form a phrase found in the corpus.
+     * @param sampleDir directory containing the sample text files
+     * @param word filtered word found in the samples
+     * @return the next word, or null if {@code word} is always the last word of a file
+     */
+    public static String nextWord(File sampleDir, String word) {
+        for (File file : textFiles(sampleDir)) {
+            String[] words = SearchUtils.readFile(file).trim().split(" ");
+            for (int idx = 0; idx + 1 < words.length; idx++) {
+                if (words[idx].equals(word)) {
+                    return words[idx + 1];
+                }
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Helper method
+     * @param sampleDir directory containing the sample text files
+     * @return the non blank lines of the sample text files
+     * @throws IOException when a sample cannot be read
+     */
+    private static List<String> sampleLines(File sampleDir) throws IOException {
+        List<String> lines = new ArrayList<>();
+        for (File file : textFiles(sampleDir)) {
+            for (String line : Files.readAllLines(file.toPath(), StandardCharsets.UTF_8)) {
+                if (!line.trim().isEmpty()) {
+                    lines.add(line);
+                }
+            }
+        }
+        if (lines.isEmpty()) {
+            throw new IOException("No sample text found in: " + sampleDir);
+        }
+        return lines;
+    }
+
+    private static List<File> textFiles(File dir) {
+        List<File> textFiles = new ArrayList<>();
+        File[] files = dir.listFiles();
+        if (files != null) {
+            Arrays.sort(files);
+            for (File file : files) {
+                if (file.isFile() && file.getName().toLowerCase().endsWith(".txt")) {
+                    textFiles.add(file);
+                }
+            }
+        }
+        return textFiles;
+    }
+}
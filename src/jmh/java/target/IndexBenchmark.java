@@ -0,0 +1,92 @@
+package target;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmarks {@link SearchUtils#indexFilesInDir(String, String)} over a synthetic corpus generated by
+ * {@link CorpusGenerator}: indexing every file into an empty index, and updating an index that is up to date.
+ * ex. gradlew jmh -PjmhArgs="IndexBenchmark -p corpusMegabytes=1024"
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2)
+@Measurement(iterations = 5)
+@Fork(1)
+public class IndexBenchmark {
+    /**
+     * total size of the corpus in megabytes
+     */
+    @Param({"1", "64"})
+    public int corpusMegabytes;
+
+    private String resPath;
+    private File indexDir;
+
+    @Setup(Level.Trial)
+    public void setup() throws IOException {
+        File corpusDir = SearchBenchmark.corpusDir(corpusMegabytes);
+        CorpusGenerator.generate(new File(CorpusGenerator.SAMPLE_PATH), corpusDir, corpusMegabytes * 1024L * 1024L,
+                SearchBenchmark.fileCount(corpusMegabytes));
+        resPath = corpusDir.getPath();
+        indexDir = new File(corpusDir.getPath() + "-index-benchmark");
+    }
+
+    /**
+     * every iteration indexes into an empty index
+     */
+    @Setup(Level.Iteration)
+    public void deleteIndex() {
+        File[] files = indexDir.listFiles();
+        if (files != null) {
+            for (File file : files) {
+                file.delete();
+            }
+        }
+    }
+
+    @Benchmark
+    public List<String> indexFilesInDir() throws IOException {
+        return SearchUtils.indexFilesInDir(indexDir.getPath(), resPath);
+    }
+
+    /**
+     * State holding an index that is already up to date with the corpus
+     */
+    @State(Scope.Benchmark)
+    public static class UpToDateIndex {
+        private String resPath;
+        private String indexDirPath;
+
+        @Setup(Level.Trial)
+        public void setup(IndexBenchmark benchmark) throws IOException {
+            resPath = benchmark.resPath;
+            indexDirPath = SearchBenchmark.corpusDir(benchmark.corpusMegabytes).getPath() + "-index";
+            SearchUtils.indexFilesInDir(indexDirPath, resPath);
+        }
+    }
+
+    /**
+     * nothing changed since the index was updated, only the file states are compared
+     */
+    @Benchmark
+    public List<String> indexFilesInDirUpToDate(UpToDateIndex upToDateIndex) throws IOException {
+        return SearchUtils.indexFilesInDir(upToDateIndex.indexDirPath, upToDateIndex.resPath);
+    }
+}
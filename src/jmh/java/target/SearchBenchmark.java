@@ -0,0 +1,213 @@
+package target;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmarks the search methods over a synthetic corpus generated by {@link CorpusGenerator}.
+ * Throughput and latency percentiles (sample time) are reported for every combination of corpus size,
+ * search term length, single word or phrase and whether the term is found in the corpus.
+ * The {@link ResultCache} is disabled, so every search is computed.
+ * ex. gradlew jmh -PjmhArgs="SearchBenchmark -p corpusMegabytes=1024"
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class SearchBenchmark {
+    /**
+     * total size of the corpus in megabytes
+     */
+    @Param({"1", "64"})
+    public int corpusMegabytes;
+
+    /**
+     * length of the (first word of the) search term
+     */
+    @Param({"3", "8"})
+    public int termLength;
+
+    /**
+     * "word" or "phrase", a phrase is the word followed by the next word of the corpus
+     */
+    @Param({"word", "phrase"})
+    public String termKind;
+
+    /**
+     * "hit" for a term found in the corpus, "miss" for a term that is not
+     */
+    @Param({"hit", "miss"})
+    public String termMatch;
+
+    /**
+     * number of shards of the index searched by {@link #shardedIndexSearch()}
+     */
+    private static final int SHARD_COUNT = 4;
+
+    private String resPath;
+    private String indexDirPath;
+    private String searchTerm;
+    private List<String> indexedFiles;
+    private IndexSession indexSession;
+    private ShardedIndex shardedIndex;
+    private List<String> shardedIndexedFiles;
+    private PositionalIndex positionalIndex;
+    private SuffixArrayIndex suffixArrayIndex;
+
+    @Setup(Level.Trial)
+    public void setup() throws IOException {
+        File corpusDir = corpusDir(corpusMegabytes);
+        CorpusGenerator.generate(new File(CorpusGenerator.SAMPLE_PATH), corpusDir, corpusMegabytes * 1024L * 1024L,
+                fileCount(corpusMegabytes));
+        resPath = corpusDir.getPath();
+        indexDirPath = corpusDir.getPath() + "-index";
+        searchTerm = searchTerm(termLength, "phrase".equals(termKind), "hit".equals(termMatch));
+
+        //every search is computed instead of being answered by the result cache
+        SearchUtils.getResultCache().setMaxEntries(0);
+        indexedFiles = SearchUtils.indexFilesInDir(indexDirPath, resPath);
+        indexSession = new IndexSession(indexDirPath);
+        shardedIndex = new ShardedIndex(corpusDir.getPath() + "-shards", SHARD_COUNT);
+        shardedIndexedFiles = shardedIndex.index(resPath);
+        positionalIndex = PositionalIndex.build(resPath);
+        suffixArrayIndex = SuffixArrayIndex.build(resPath);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        indexSession.close();
+        shardedIndex.close();
+        SearchUtils.getResultCache().setMaxEntries(ResultCache.DEFAULT_MAX_ENTRIES);
+    }
+
+    @Benchmark
+    public Map<String, Integer> simpleStringSearch() {
+        return SearchUtils.simpleStringSearch(searchTerm, resPath);
+    }
+
+    @Benchmark
+    public Map<String, Integer> regexSearch() {
+        return SearchUtils.regexSearch(searchTerm, resPath);
+    }
+
+    /**
+     * index opened on every search
+     */
+    @Benchmark
+    public Map<String, Integer> indexSearch() {
+        return SearchUtils.indexSearch(searchTerm, indexedFiles, indexDirPath);
+    }
+
+    /**
+     * index kept open by the session, as the application searches it
+     */
+    @Benchmark
+    public Map<String, Integer> indexSessionSearch() throws IOException {
+        return indexSession.search(searchTerm, indexedFiles);
+    }
+
+    /**
+     * index kept open by the session, only the 10 files ranked first are kept
+     */
+    @Benchmark
+    public SearchResult indexSessionTopSearch() throws IOException {
+        return indexSession.search(searchTerm, indexedFiles, PageRequest.top(10));
+    }
+
+    /**
+     * index split in {@link #SHARD_COUNT} shards searched concurrently
+     */
+    @Benchmark
+    public Map<String, Integer> shardedIndexSearch() throws IOException {
+        return shardedIndex.search(searchTerm, shardedIndexedFiles);
+    }
+
+    @Benchmark
+    public Map<String, Integer> positionalIndexSearch() {
+        return SearchUtils.positionalIndexSearch(searchTerm, positionalIndex);
+    }
+
+    @Benchmark
+    public Map<String, Integer> suffixArraySearch() {
+        return SearchUtils.suffixArraySearch(searchTerm, suffixArrayIndex);
+    }
+
+    /**
+     * @param corpusMegabytes total size of the corpus in megabytes
+     * @return the directory the corpus of that size is generated in
+     */
+    static File corpusDir(int corpusMegabytes) {
+        return new File(System.getProperty("user.dir") + File.separator + "build" + File.separator +
+                "jmh-corpus" + File.separator + corpusMegabytes + "MB");
+    }
+
+    /**
+     * @param corpusMegabytes total size of the corpus in megabytes
+     * @return number of files the corpus is split in, about 16MB per file for large corpora
+     */
+    static int fileCount(int corpusMegabytes) {
+        return Math.max(5, corpusMegabytes / 16);
+    }
+
+    /**
+     * Helper method
+     * Picks a search term from the sample text files, or makes one up that no sample contains.
+     * @param termLength length of the (first word of the) search term
+     * @param phrase whether the term is a phrase of two words
+     * @param hit whether the term is found in the corpus
+     * @return the search term
+     */
+    private static String searchTerm(int termLength, boolean phrase, boolean hit) {
+        File sampleDir = new File(CorpusGenerator.SAMPLE_PATH);
+        List<String> vocabulary = CorpusGenerator.vocabulary(sampleDir);
+        String word = null;
+        //the longest word no longer than termLength that starts a phrase
+        for (String candidate : vocabulary) {
+            if (candidate.length() <= termLength && CorpusGenerator.nextWord(sampleDir, candidate) != null
+                    && (word == null || candidate.length() > word.length())) {
+                word = candidate;
+            }
+        }
+        if (word == null) {
+            throw new IllegalStateException("No sample word of length " + termLength);
+        }
+
+        if (!hit) {
+            //random letters that are not a word of the samples
+            Set<String> words = new HashSet<>(vocabulary);
+            Random random = new Random(termLength);
+            do {
+                StringBuilder missWord = new StringBuilder();
+                for (int idx = 0; idx < termLength; idx++) {
+                    missWord.append((char) ('a' + random.nextInt(26)));
+                }
+                word = missWord.toString();
+            } while (words.contains(word));
+            //the phrase starts with a missing word followed by a word of the samples
+            return phrase ? word + " " + vocabulary.get(0) : word;
+        }
+        return phrase ? word + " " + CorpusGenerator.nextWord(sampleDir, word) : word;
+    }
+}
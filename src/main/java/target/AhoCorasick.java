@@ -0,0 +1,335 @@
+package target;
+
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Aho-Corasick automaton over search terms filtered by {@link SearchUtils#stringFilter(String)},
+ * counting the occurrences of every term in a single scan of a filtered text.
+ * Each term is counted the same way {@link SearchUtils#simpleStringSearch(String, String)} counts it:
+ * its matches do not overlap each other and are counted from left to right. Matches of different
+ * terms may overlap.
+ * Filtered text only holds lowercase letters, digits and spaces, so the automaton works on that
+ * 37 character alphabet and keeps its transitions in a primitive hash table to stay compact for
+ * millions of terms.
+ */
+final class AhoCorasick {
+    private static final int ALPHABET_SIZE = 37;
+    private static final int ROOT = 0;
+    private static final int NONE = -1;
+
+    /**
+     * alphabet index of each ASCII character, NONE for characters filtered text cannot hold
+     */
+    private static final byte[] SYMBOLS = new byte[128];
+
+    static {
+        Arrays.fill(SYMBOLS, (byte) NONE);
+        for (int c = 'a'; c <= 'z'; c++) {
+            SYMBOLS[c] = (byte) (c - 'a');
+        }
+        for (int c = '0'; c <= '9'; c++) {
+            SYMBOLS[c] = (byte) (c - '0' + 26);
+        }
+        SYMBOLS[' '] = 36;
+    }
+
+    /**
+     * transition table: open addressing hash from (state * ALPHABET_SIZE + symbol) to the next state
+     */
+    private long[] transitionKeys;
+    private int[] transitionStates;
+    private int transitionCount;
+
+    /**
+     * dense transitions of the root, which is visited most often
+     */
+    private final int[] rootTransitions = new int[ALPHABET_SIZE];
+
+    /**
+     * per state: failure link, term ending at the state and nearest state on the failure chain a term ends at
+     */
+    private int[] failures;
+    private int[] terms;
+    private int[] outputLinks;
+    private int stateCount;
+
+    /**
+     * length of each term
+     */
+    private final int[] termLengths;
+
+    /**
+     * @param filteredTerms distinct non-empty terms filtered by {@link SearchUtils#stringFilter(String)},
+     *                      the index of a term in the list is its id
+     */
+    AhoCorasick(List<String> filteredTerms) {
+        int capacity = 1;
+        for (String term : filteredTerms) {
+            capacity += term.length();
+        }
+        terms = new int[Math.min(capacity, 1024)];
+        Arrays.fill(terms, NONE);
+        transitionKeys = new long[Integer.highestOneBit(Math.max(terms.length, 8)) * 4];
+        Arrays.fill(transitionKeys, NONE);
+        transitionStates = new int[transitionKeys.length];
+        stateCount = 1;
+
+        termLengths = new int[filteredTerms.size()];
+        for (int termId = 0; termId < filteredTerms.size(); termId++) {
+            String term = filteredTerms.get(termId);
+            termLengths[termId] = term.length();
+            int state = ROOT;
+            for (int idx = 0; idx < term.length(); idx++) {
+                int symbol = symbol(term.charAt(idx));
+                if (symbol == NONE) {
+                    throw new IllegalArgumentException("Search term is not filtered: " + term);
+                }
+                int next = transition(state, symbol);
+                if (next == NONE) {
+                    next = newState();
+                    putTransition(state, symbol, next);
+                }
+                state = next;
+            }
+            terms[state] = termId;
+        }
+
+        buildFailures();
+    }
+
+    /**
+     * @return number of terms
+     */
+    int size() {
+        return termLengths.length;
+    }
+
+    /**
+     * @return a new scanner counting terms in a text, not thread safe
+     */
+    Scanner newScanner() {
+        return new Scanner();
+    }
+
+    /**
+     * Helper method
+     * Computes the failure and output links of every state breadth first.
+     */
+    private void buildFailures() {
+        failures = new int[stateCount];
+        outputLinks = new int[stateCount];
+        outputLinks[ROOT] = NONE;
+        int[] queue = new int[stateCount];
+        int head = 0;
+        int tail = 0;
+
+        for (int symbol = 0; symbol < ALPHABET_SIZE; symbol++) {
+            int child = transition(ROOT, symbol);
+            if (child != NONE) {
+                failures[child] = ROOT;
+                outputLinks[child] = NONE;
+                queue[tail++] = child;
+            }
+            rootTransitions[symbol] = child == NONE ? ROOT : child;
+        }
+
+        while (head < tail) {
+            int state = queue[head++];
+            for (int symbol = 0; symbol < ALPHABET_SIZE; symbol++) {
+                int child = transition(state, symbol);
+                if (child == NONE) {
+                    continue;
+                }
+                int failure = next(failures[state], symbol);
+                failures[child] = failure;
+                outputLinks[child] = terms[failure] != NONE ? failure : outputLinks[failure];
+                queue[tail++] = child;
+            }
+        }
+    }
+
+    /**
+     * Helper method
+     * @return the state reached from {@code state} on {@code symbol}, following failure links
+     */
+    private int next(int state, int symbol) {
+        while (state != ROOT) {
+            int child = transition(state, symbol);
+            if (child != NONE) {
+                return child;
+            }
+            state = failures[state];
+        }
+        return rootTransitions[symbol];
+    }
+
+    /**
+     * Helper method
+     * @return the child of {@code state} on {@code symbol}, NONE if there is none
+     */
+    private int transition(int state, int symbol) {
+        long key = (long) state * ALPHABET_SIZE + symbol;
+        int mask = transitionKeys.length - 1;
+        for (int slot = hash(key) & mask; ; slot = (slot + 1) & mask) {
+            long slotKey = transitionKeys[slot];
+            if (slotKey == key) {
+                return transitionStates[slot];
+            } else if (slotKey == NONE) {
+                return NONE;
+            }
+        }
+    }
+
+    /**
+     * Helper method
+     * Adds the transition from {@code state} on {@code symbol} to {@code next}, growing the table as needed.
+     */
+    private void putTransition(int state, int symbol, int next) {
+        if ((transitionCount + 1) * 2 > transitionKeys.length) {
+            long[] oldKeys = transitionKeys;
+            int[] oldStates = transitionStates;
+            transitionKeys = new long[oldKeys.length * 2];
+            Arrays.fill(transitionKeys, NONE);
+            transitionStates = new int[transitionKeys.length];
+            for (int slot = 0; slot < oldKeys.length; slot++) {
+                if (oldKeys[slot] != NONE) {
+                    insert(oldKeys[slot], oldStates[slot]);
+                }
+            }
+        }
+        insert((long) state * ALPHABET_SIZE + symbol, next);
+        transitionCount++;
+    }
+
+    private void insert(long key, int next) {
+        int mask = transitionKeys.length - 1;
+        int slot = hash(key) & mask;
+        while (transitionKeys[slot] != NONE) {
+            slot = (slot + 1) & mask;
+        }
+        transitionKeys[slot] = key;
+        transitionStates[slot] = next;
+    }
+
+    private int newState() {
+        if (stateCount == terms.length) {
+            int oldLength = terms.length;
+            terms = Arrays.copyOf(terms, oldLength * 2);
+            Arrays.fill(terms, oldLength, terms.length, NONE);
+        }
+        return stateCount++;
+    }
+
+    private static int hash(long key) {
+        long h = key * 0x9E3779B97F4A7C15L;
+        return (int) (h ^ (h >>> 32));
+    }
+
+    private static int symbol(char c) {
+        return c < SYMBOLS.length ? SYMBOLS[c] : NONE;
+    }
+
+    /**
+     * Counts the terms of the automaton in a filtered text fed to it in one or more pieces.
+     */
+    final class Scanner {
+        private final int[] counts = new int[termLengths.length];
+        /**
+         * per term: text position its next match may start at, so matches do not overlap
+         */
+        private final long[] nextStarts = new long[termLengths.length];
+        /**
+         * ids of the terms matched since the last reset
+         */
+        private int[] matched = new int[16];
+        private int matchedCount;
+        private int state = ROOT;
+        private long position;
+
+        /**
+         * Feeds filtered characters, one byte each, to the scanner.
+         * @param buf filtered characters
+         * @param off offset of the first character
+         * @param len number of characters
+         */
+        void scan(byte[] buf, int off, int len) {
+            for (int idx = off; idx < off + len; idx++) {
+                step(buf[idx]);
+            }
+        }
+
+        /**
+         * Feeds filtered characters to the scanner.
+         * @param text filtered text
+         */
+        void scan(CharSequence text) {
+            for (int idx = 0; idx < text.length(); idx++) {
+                step(text.charAt(idx));
+            }
+        }
+
+        /**
+         * @param termId id of a term
+         * @return number of occurrences of the term since the last reset
+         */
+        int count(int termId) {
+            return counts[termId];
+        }
+
+        /**
+         * @return number of terms that occurred since the last reset
+         */
+        int matchedCount() {
+            return matchedCount;
+        }
+
+        /**
+         * @param idx index between 0 and {@link #matchedCount()}
+         * @return id of a term that occurred since the last reset
+         */
+        int matchedTerm(int idx) {
+            return matched[idx];
+        }
+
+        /**
+         * Clears the counts to scan a new text.
+         */
+        void reset() {
+            for (int idx = 0; idx < matchedCount; idx++) {
+                counts[matched[idx]] = 0;
+                nextStarts[matched[idx]] = 0;
+            }
+            matchedCount = 0;
+            state = ROOT;
+            position = 0;
+        }
+
+        private void step(int c) {
+            int symbol = c < SYMBOLS.length ? SYMBOLS[c] : NONE;
+            if (symbol == NONE) {
+                //cannot be part of any term
+                state = ROOT;
+            } else {
+                state = next(state, symbol);
+            }
+
+            int output = terms[state] != NONE ? state : outputLinks[state];
+            while (output != NONE) {
+                int termId = terms[output];
+                long start = position - termLengths[termId] + 1;
+                if (start >= nextStarts[termId]) {
+                    if (counts[termId]++ == 0) {
+                        if (matchedCount == matched.length) {
+                            matched = Arrays.copyOf(matched, matchedCount * 2);
+                        }
+                        matched[matchedCount++] = termId;
+                    }
+                    nextStarts[termId] = position + 1;
+                }
+                output = outputLinks[output];
+            }
+            position++;
+        }
+    }
+}
@@ -0,0 +1,438 @@
+package target;
+
+import org.apache.lucene.document.Document;
+import org.apache.lucene.document.Field;
+import org.apache.lucene.document.FieldType;
+import org.apache.lucene.document.NumericDocValuesField;
+import org.apache.lucene.document.SortedDocValuesField;
+import org.apache.lucene.document.StringField;
+import org.apache.lucene.index.IndexOptions;
+import org.apache.lucene.index.IndexWriter;
+import org.apache.lucene.index.IndexWriterConfig;
+import org.apache.lucene.index.Term;
+import org.apache.lucene.index.TieredMergePolicy;
+import org.apache.lucene.util.BytesRef;
+
+import java.io.BufferedReader;
+import java.io.CharArrayReader;
+import java.io.File;
+import java.io.FileReader;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.Reader;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Bulk ingestion pipeline used by {@link SearchUtils#indexFilesInDir(String, String)}: reader threads read
+ * text files into a bounded queue, which feeds indexing threads sharing one {@link IndexWriter}.
+ * File contents are tokenized by {@link FilteredTextAnalyzer} while streaming from a {@link Reader}, files larger
+ * than {@link #getMaxBufferedFileSize()} are streamed from disk by the indexing thread instead of being queued.
+ * The file contents are neither stored nor kept as term vectors by default, as index searches only read postings.
+ */
+public final class BulkIndexer {
+    /**
+     * default size in megabytes of the buffer holding documents before they are flushed to a segment
+     */
+    public static final double DEFAULT_RAM_BUFFER_SIZE_MB = 64;
+    /**
+     * default number of files read ahead of the indexing threads
+     */
+    public static final int DEFAULT_QUEUE_CAPACITY = 32;
+    /**
+     * default size in bytes of the largest file read ahead, larger files are streamed
+     */
+    public static final long DEFAULT_MAX_BUFFERED_FILE_SIZE = 4 * 1024 * 1024;
+
+    /**
+     * marks the end of the queue for an indexing thread
+     */
+    private static final Job END = new Job(null, null, null, 0);
+
+    private int readerThreads = 1;
+    /**
+     * 0 to use the parallelism level of the {@link SearchExecutor}
+     */
+    private int indexingThreads = 0;
+    private int queueCapacity = DEFAULT_QUEUE_CAPACITY;
+    private long maxBufferedFileSize = DEFAULT_MAX_BUFFERED_FILE_SIZE;
+    private double ramBufferSizeMB = DEFAULT_RAM_BUFFER_SIZE_MB;
+    private double maxMergedSegmentMB = 5 * 1024;
+    private double segmentsPerTier = 10;
+    private boolean storeContents = false;
+    private boolean storeTermVectors = false;
+
+    /**
+     * @param readerThreads number of threads reading files, at least 1
+     */
+    public synchronized void setReaderThreads(int readerThreads) {
+        if (readerThreads < 1) {
+            throw new IllegalArgumentException("Reader threads must be at least 1: " + readerThreads);
+        }
+        this.readerThreads = readerThreads;
+    }
+
+    public synchronized int getReaderThreads() {
+        return readerThreads;
+    }
+
+    /**
+     * @param indexingThreads number of threads adding documents to the index, 0 to use the parallelism
+     *                        level of the {@link SearchExecutor}
+     */
+    public synchronized void setIndexingThreads(int indexingThreads) {
+        if (indexingThreads < 0) {
+            throw new IllegalArgumentException("Indexing threads cannot be negative: " + indexingThreads);
+        }
+        this.indexingThreads = indexingThreads;
+    }
+
+    public synchronized int getIndexingThreads() {
+        return indexingThreads > 0 ? indexingThreads : SearchExecutor.getParallelism();
+    }
+
+    /**
+     * @param queueCapacity number of files read ahead of the indexing threads, at least 1
+     */
+    public synchronized void setQueueCapacity(int queueCapacity) {
+        if (queueCapacity < 1) {
+            throw new IllegalArgumentException("Queue capacity must be at least 1: " + queueCapacity);
+        }
+        this.queueCapacity = queueCapacity;
+    }
+
+    public synchronized int getQueueCapacity() {
+        return queueCapacity;
+    }
+
+    /**
+     * @param maxBufferedFileSize size in bytes of the largest file read ahead, larger files are streamed
+     */
+    public synchronized void setMaxBufferedFileSize(long maxBufferedFileSize) {
+        this.maxBufferedFileSize = maxBufferedFileSize;
+    }
+
+    public synchronized long getMaxBufferedFileSize() {
+        return maxBufferedFileSize;
+    }
+
+    /**
+     * @param ramBufferSizeMB size in megabytes of the buffer holding documents before they are flushed
+     */
+    public synchronized void setRamBufferSizeMB(double ramBufferSizeMB) {
+        this.ramBufferSizeMB = ramBufferSizeMB;
+    }
+
+    public synchronized double getRamBufferSizeMB() {
+        return ramBufferSizeMB;
+    }
+
+    /**
+     * @param maxMergedSegmentMB size in megabytes of the largest segment produced by merges
+     * @param segmentsPerTier number of segments of about the same size allowed before they are merged
+     */
+    public synchronized void setMergePolicy(double maxMergedSegmentMB, double segmentsPerTier) {
+        this.maxMergedSegmentMB = maxMergedSegmentMB;
+        this.segmentsPerTier = segmentsPerTier;
+    }
+
+    /**
+     * @param storeContents true to store the filtered contents of each file in the index
+     */
+    public synchronized void setStoreContents(boolean storeContents) {
+        this.storeContents = storeContents;
+    }
+
+    public synchronized boolean isStoreContents() {
+        return storeContents;
+    }
+
+    /**
+     * @param storeTermVectors true to store term vectors with positions for each file
+     */
+    public synchronized void setStoreTermVectors(boolean storeTermVectors) {
+        this.storeTermVectors = storeTermVectors;
+    }
+
+    public synchronized boolean isStoreTermVectors() {
+        return storeTermVectors;
+    }
+
+    /**
+     * @return a new configuration for a writer adding documents with this indexer
+     */
+    public synchronized IndexWriterConfig newIndexWriterConfig() {
+        IndexWriterConfig indexWriterConfig = new IndexWriterConfig(new FilteredTextAnalyzer());
+        indexWriterConfig.setRAMBufferSizeMB(ramBufferSizeMB);
+        TieredMergePolicy mergePolicy = new TieredMergePolicy();
+        mergePolicy.setMaxMergedSegmentMB(maxMergedSegmentMB);
+        mergePolicy.setSegmentsPerTier(segmentsPerTier);
+        indexWriterConfig.setMergePolicy(mergePolicy);
+        return indexWriterConfig;
+    }
+
+    /**
+     * Adds every file of {@code files} to the index, replacing the document previously indexed for the same
+     * file name. Documents of files that cannot be read are deleted from the index.
+     * @param indexWriter writer created with {@link #newIndexWriterConfig()}
+     * @param files files to be indexed, along with their last modified time and size
+     * @return the files that could not be indexed
+     * @throws IOException when interrupted or indexing fails unexpectedly
+     */
+    Set<File> index(final IndexWriter indexWriter, final Map<File, long[]> files) throws IOException {
+        final Set<File> failedFiles = Collections.newSetFromMap(new ConcurrentHashMap<File, Boolean>());
+        if (files.isEmpty()) {
+            return failedFiles;
+        }
+
+        final int readers;
+        final int indexers;
+        final BlockingQueue<Job> queue;
+        final FieldType contentsType;
+        final boolean stored;
+        final long maxBuffered;
+        synchronized (this) {
+            readers = Math.min(readerThreads, files.size());
+            indexers = Math.min(getIndexingThreads(), files.size());
+            queue = new ArrayBlockingQueue<>(queueCapacity);
+            contentsType = contentsFieldType(storeContents, storeTermVectors);
+            stored = storeContents;
+            maxBuffered = maxBufferedFileSize;
+        }
+
+        final Queue<File> pending = new ConcurrentLinkedQueue<>(files.keySet());
+        final CountDownLatch readersDone = new CountDownLatch(readers);
+        ExecutorService pool = Executors.newFixedThreadPool(readers + indexers, new ThreadFactory() {
+            private final AtomicInteger count = new AtomicInteger();
+
+            @Override
+            public Thread newThread(Runnable runnable) {
+                Thread thread = new Thread(runnable, "bulk-indexer-" + count.incrementAndGet());
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+
+        List<Future<?>> futures = new ArrayList<>();
+        try {
+            for (int idx = 0; idx < readers; idx++) {
+                futures.add(pool.submit(new Runnable() {
+                    @Override
+                    public void run() {
+                        try {
+                            File file;
+                            while ((file = pending.poll()) != null) {
+                                Job job = read(file, files.get(file), stored ? 0 : maxBuffered);
+                                if (job == null) {
+                                    fail(indexWriter, file, failedFiles);
+                                } else {
+                                    queue.put(job);
+                                }
+                            }
+                        } catch (InterruptedException ie) {
+                            Thread.currentThread().interrupt();
+                        } finally {
+                            readersDone.countDown();
+                        }
+                    }
+                }));
+            }
+            for (int idx = 0; idx < indexers; idx++) {
+                futures.add(pool.submit(new Runnable() {
+                    @Override
+                    public void run() {
+                        try {
+                            Job job;
+                            while ((job = queue.take()) != END) {
+                                if (!add(indexWriter, job, contentsType, stored)) {
+                                    fail(indexWriter, job.file, failedFiles);
+                                }
+                            }
+                        } catch (InterruptedException ie) {
+                            Thread.currentThread().interrupt();
+                        }
+                    }
+                }));
+            }
+
+            //every indexing thread stops once all files are read
+            readersDone.await();
+            for (int idx = 0; idx < indexers; idx++) {
+                queue.put(END);
+            }
+            for (Future<?> future : futures) {
+                future.get();
+            }
+        } catch (InterruptedException ie) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while indexing.");
+        } catch (ExecutionException ee) {
+            throw new IOException("Error indexing files.", ee.getCause());
+        } finally {
+            pool.shutdownNow();
+        }
+        return failedFiles;
+    }
+
+    /**
+     * Helper method
+     * Reads {@code file} ahead of the indexing threads, unless it is larger than {@code maxBuffered}.
+     * @param file text file
+     * @param state last modified time and size of the file
+     * @param maxBuffered size in bytes of the largest file read ahead
+     * @return the file to be indexed, or null if it cannot be read
+     */
+    private static Job read(File file, long[] state, long maxBuffered) {
+        if (file.length() > maxBuffered) {
+            //streamed from disk by the indexing thread
+            return new Job(file, state, null, 0);
+        }
+
+        SearchMetrics searchMetrics = SearchUtils.getSearchMetrics();
+        long startTime = searchMetrics.start();
+        try (Reader reader = new FileReader(file)) {
+            char[] content = new char[(int) Math.max(16, file.length())];
+            int length = 0;
+            int read;
+            while ((read = reader.read(content, length, content.length - length)) != -1) {
+                length += read;
+                if (length == content.length) {
+                    content = Arrays.copyOf(content, content.length * 2);
+                }
+            }
+            searchMetrics.record(SearchMetrics.INDEXING_METHOD, SearchMetrics.READ_PHASE, startTime);
+            searchMetrics.addBytesRead(file.length());
+            return new Job(file, state, content, length);
+        } catch (IOException ioe) {
+            ioe.printStackTrace();
+            System.err.println("Cannot read file \"" + file.getName() + "\" to be indexed.");
+            return null;
+        }
+    }
+
+    /**
+     * Helper method
+     * Adds the document of {@code job} to the index, replacing the previous version of the file, if any.
+     * @param indexWriter writer shared by the indexing threads
+     * @param job file to be indexed
+     * @param contentsType type of the contents field
+     * @param stored true to store the filtered contents
+     * @return false if the file could not be indexed
+     */
+    private static boolean add(IndexWriter indexWriter, Job job, FieldType contentsType, boolean stored) {
+        SearchMetrics searchMetrics = SearchUtils.getSearchMetrics();
+        long startTime = searchMetrics.start();
+        String filename = job.file.getName();
+        Reader contents = null;
+        try {
+            //index file name
+            Document doc = new Document();
+            doc.add(new StringField(SearchUtils.FILENAME_FIELD, filename, Field.Store.YES));
+            //file name read by searches without loading stored fields
+            doc.add(new SortedDocValuesField(SearchUtils.FILENAME_FIELD, new BytesRef(filename)));
+            //file attributes compared by the next update
+            doc.add(new NumericDocValuesField(SearchUtils.MODIFIED_FIELD, job.state[0]));
+            doc.add(new NumericDocValuesField(SearchUtils.SIZE_FIELD, job.state[1]));
+
+            //index file contents, tokenized while streaming unless stored
+            if (stored) {
+                doc.add(new Field(SearchUtils.CONTENTS_FIELD, SearchUtils.readFile(job.file), contentsType));
+            } else {
+                if (job.content != null) {
+                    contents = new CharArrayReader(job.content, 0, job.length);
+                } else {
+                    contents = new BufferedReader(new FileReader(job.file));
+                    searchMetrics.addBytesRead(job.file.length());
+                }
+                doc.add(new Field(SearchUtils.CONTENTS_FIELD, contents, contentsType));
+            }
+
+            indexWriter.updateDocument(new Term(SearchUtils.FILENAME_FIELD, filename), doc);
+            searchMetrics.record(SearchMetrics.INDEXING_METHOD, SearchMetrics.ADD_DOCUMENT_PHASE, startTime);
+            searchMetrics.addFilesScanned(1);
+            System.out.println("Added file to be indexed: " + filename);
+            return true;
+        } catch (Exception e) {
+            e.printStackTrace();
+            System.err.println("Cannot add file \"" + filename + "\" due to unknown error.");
+            return false;
+        } finally {
+            if (contents != null) {
+                try {
+                    contents.close();
+                } catch (IOException ioe) {
+                    ioe.printStackTrace();
+                }
+            }
+        }
+    }
+
+    /**
+     * Helper method
+     * Deletes the document of {@code file}, keeping the index consistent with the file names returned.
+     * @param indexWriter writer shared by the indexing threads
+     * @param file file that could not be indexed
+     * @param failedFiles files that could not be indexed
+     */
+    private static void fail(IndexWriter indexWriter, File file, Set<File> failedFiles) {
+        failedFiles.add(file);
+        try {
+            indexWriter.deleteDocuments(new Term(SearchUtils.FILENAME_FIELD, file.getName()));
+        } catch (IOException ioe) {
+            ioe.printStackTrace();
+        }
+    }
+
+    /**
+     * Helper method
+     * @param stored true to store the filtered contents
+     * @param termVectors true to store term vectors with positions
+     * @return the type of the contents field, indexed with positions for phrase searches
+     */
+    private static FieldType contentsFieldType(boolean stored, boolean termVectors) {
+        FieldType fieldType = new FieldType();
+        fieldType.setIndexOptions(IndexOptions.DOCS_AND_FREQS_AND_POSITIONS);
+        fieldType.setTokenized(true);
+        fieldType.setStored(stored);
+        fieldType.setStoreTermVectors(termVectors);
+        fieldType.setStoreTermVectorPositions(termVectors);
+        fieldType.freeze();
+        return fieldType;
+    }
+
+    /**
+     * File to be indexed, along with its content when read ahead
+     */
+    private static final class Job {
+        private final File file;
+        private final long[] state;
+        /**
+         * content of the file, null to stream it from disk
+         */
+        private final char[] content;
+        private final int length;
+
+        private Job(File file, long[] state, char[] content, int length) {
+            this.file = file;
+            this.state = state;
+            this.content = content;
+            this.length = length;
+        }
+    }
+}
@@ -0,0 +1,59 @@
+package target;
+
+/**
+ * Cancels an asynchronous search, see {@link SearchUtils#simpleStringSearchAsync}. A search checks its token
+ * before every file (or every document of the index) and stops once it is cancelled, returning the files
+ * searched so far as an incomplete {@link SearchResult}. A token may be shared by several searches.
+ */
+public final class CancellationToken {
+    /**
+     * token cancelling this one too, null for none
+     */
+    private final CancellationToken parent;
+    /**
+     * {@link System#nanoTime()} after which the token is cancelled
+     */
+    private final long deadline;
+    private final boolean hasDeadline;
+    private volatile boolean cancelled;
+
+    public CancellationToken() {
+        this(null, 0, false);
+    }
+
+    /**
+     * @param parent token cancelling this one too, null for none
+     * @param deadline {@link System#nanoTime()} after which the token is cancelled
+     */
+    CancellationToken(CancellationToken parent, long deadline) {
+        this(parent, deadline, true);
+    }
+
+    private CancellationToken(CancellationToken parent, long deadline, boolean hasDeadline) {
+        this.parent = parent;
+        this.deadline = deadline;
+        this.hasDeadline = hasDeadline;
+    }
+
+    /**
+     * Cancels the searches checking this token.
+     */
+    public void cancel() {
+        cancelled = true;
+    }
+
+    /**
+     * @return true once cancelled, or once the deadline of the token passed
+     */
+    public boolean isCancelled() {
+        return cancelled || (hasDeadline && System.nanoTime() - deadline >= 0)
+                || (parent != null && parent.isCancelled());
+    }
+
+    /**
+     * @return nanoseconds left before the deadline of the token, {@link Long#MAX_VALUE} if it has none
+     */
+    long remainingNanos() {
+        return hasDeadline ? Math.max(0, deadline - System.nanoTime()) : Long.MAX_VALUE;
+    }
+}
@@ -0,0 +1,417 @@
+package target;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.nio.file.attribute.FileTime;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Long-lived cache of the filtered contents (see {@link SearchUtils#stringFilter(String)}) of the
+ * text files found in a resource directory.
+ * Every lookup validates the cached entry against the file's last modified time and size, so only
+ * files that changed since they were cached are read again. The directory listing itself is cached
+ * against the directory's last modified time.
+ * The total size of the cached contents is bounded by a memory budget, least recently used entries
+ * are evicted when the budget is exceeded.
+ * Each directory also has a version, used to key cached search results: it changes with the directory's last
+ * modified time, and when an {@link IndexWatcher} reports changes to the files of a watched directory.
+ */
+public final class CorpusCache {
+    /**
+     * default memory budget in bytes: a quarter of the maximum heap size
+     */
+    public static final long DEFAULT_BUDGET = Runtime.getRuntime().maxMemory() / 4;
+
+    /**
+     * maximum number of bytes the cached contents may occupy
+     */
+    private long budget;
+    /**
+     * number of bytes currently occupied by the cached contents
+     */
+    private long usedBytes;
+    /**
+     * cached file contents by absolute file path, in access order (least recently used first)
+     */
+    private final LinkedHashMap<String, Entry> entries = new LinkedHashMap<>(16, 0.75f, true);
+    /**
+     * cached directory listings by absolute directory path
+     */
+    private final Map<String, Listing> listings = new HashMap<>();
+    /**
+     * versions of the searched directories by absolute directory path
+     */
+    private final Map<String, Version> versions = new HashMap<>();
+    /**
+     * number of watchers reporting the changes of each watched directory, by absolute directory path
+     */
+    private final Map<String, Integer> watchers = new HashMap<>();
+    /**
+     * next version handed out, never reset so a version is not reused after {@link #clear()}
+     */
+    private long nextVersion;
+
+    public CorpusCache() {
+        this(DEFAULT_BUDGET);
+    }
+
+    /**
+     * @param budget maximum number of bytes the cached contents may occupy
+     */
+    public CorpusCache(long budget) {
+        this.budget = budget;
+    }
+
+    /**
+     * Returns the text files found in {@code resPath}, sorted by file name.
+     * The directory is only listed again when its last modified time changed.
+     * @param resPath directory containing the text files
+     * @return the text files, or an empty list when the directory is empty or cannot be read
+     */
+    public List<File> listTextFiles(String resPath) {
+        File dir = new File(resPath);
+        String key = dir.getAbsolutePath();
+        FileTime modified = lastModified(dir);
+
+        synchronized (this) {
+            Listing listing = listings.get(key);
+            if (listing != null && modified != null && modified.equals(listing.modified)) {
+                return listing.files;
+            }
+        }
+
+        List<File> textFiles = new ArrayList<>();
+        File[] files = dir.listFiles();
+        if (files != null) {
+            Arrays.sort(files);
+            for (File file : files) {
+                if (file.isFile() && file.getName().toLowerCase().endsWith(".txt")) {
+                    textFiles.add(file);
+                }
+            }
+        }
+        textFiles = Collections.unmodifiableList(textFiles);
+
+        synchronized (this) {
+            if (modified != null) {
+                listings.put(key, new Listing(modified, textFiles));
+            }
+        }
+        return textFiles;
+    }
+
+    /**
+     * Returns the version of the text files found in {@code resPath}. The version changes whenever a text
+     * file is added, removed or its last modified time or size changed since the previous call, so
+     * results computed from an older version are known to be stale.
+     * Files changed in place leave the directory's last modified time unchanged: the version of a watched
+     * directory (see {@link #watch(String)}) is changed by {@link #invalidate(String)} instead, so only the
+     * directory is checked, while the files of other directories are checked on every call.
+     * @param resPath directory containing the text files
+     * @return the current version of the directory
+     */
+    public long version(String resPath) {
+        File dir = new File(resPath);
+        String key = dir.getAbsolutePath();
+        FileTime modified = lastModified(dir);
+        boolean watched;
+        synchronized (this) {
+            watched = watchers.containsKey(key);
+        }
+        long fingerprint = watched ? 0 : fingerprint(resPath);
+
+        synchronized (this) {
+            Version version = versions.get(key);
+            if (version == null || modified == null || !modified.equals(version.modified)
+                    || version.watched != watched || version.fingerprint != fingerprint) {
+                version = new Version(modified, watched, fingerprint, nextVersion++);
+                versions.put(key, version);
+            }
+            return version.version;
+        }
+    }
+
+    /**
+     * Changes the version of {@code resPath}, called when its files changed.
+     * @param resPath directory containing the text files
+     */
+    public synchronized void invalidate(String resPath) {
+        versions.remove(new File(resPath).getAbsolutePath());
+    }
+
+    /**
+     * Registers a watcher calling {@link #invalidate(String)} whenever the files of {@code resPath} change,
+     * so their changes no longer need to be checked on every {@link #version(String)}.
+     * @param resPath directory containing the text files
+     */
+    public synchronized void watch(String resPath) {
+        String key = new File(resPath).getAbsolutePath();
+        Integer count = watchers.get(key);
+        watchers.put(key, count == null ? 1 : count + 1);
+        versions.remove(key);
+    }
+
+    /**
+     * Unregisters a watcher registered by {@link #watch(String)}.
+     * @param resPath directory containing the text files
+     */
+    public synchronized void unwatch(String resPath) {
+        String key = new File(resPath).getAbsolutePath();
+        Integer count = watchers.get(key);
+        if (count == null) {
+            return;
+        }
+        if (count == 1) {
+            watchers.remove(key);
+        } else {
+            watchers.put(key, count - 1);
+        }
+        versions.remove(key);
+    }
+
+    /**
+     * Helper method
+     * @param resPath directory containing the text files
+     * @return fingerprint of the names, last modified times and sizes of the text files
+     */
+    private long fingerprint(String resPath) {
+        List<File> files = listTextFiles(resPath);
+        long fingerprint = files.size();
+        for (File file : files) {
+            fingerprint = 31 * fingerprint + file.getName().hashCode();
+            try {
+                BasicFileAttributes attrs = Files.readAttributes(file.toPath(), BasicFileAttributes.class);
+                fingerprint = 31 * fingerprint + attrs.lastModifiedTime().to(TimeUnit.NANOSECONDS);
+                fingerprint = 31 * fingerprint + attrs.size();
+            } catch (IOException ioe) {
+                //unreadable files are fingerprinted by name only
+                fingerprint = 31 * fingerprint - 1;
+            }
+        }
+        return fingerprint;
+    }
+
+    /**
+     * Returns the filtered content of {@code file}, reading it only when it is not cached
+     * or changed since it was cached.
+     * @param file text file
+     * @return the filtered content of the file, or null when the file does not fit in the budget,
+     * or an empty string when the file cannot be read
+     */
+    public String get(File file) {
+        try {
+            return read(file);
+        } catch (IOException ioe) {
+            //reported when read, the file is read again by the next search
+            return "";
+        }
+    }
+
+    /**
+     * Returns the filtered content of {@code file} like {@link #get(File)}, but tells a file that could not be read
+     * apart from an empty file, ex. so the failure is not summarized as an empty file. Failures are never cached.
+     * @param file text file
+     * @return the filtered content of the file, or null when the file does not fit in the budget
+     * @throws IOException when the file cannot be read
+     */
+    String read(File file) throws IOException {
+        String key = file.getAbsolutePath();
+        BasicFileAttributes attrs;
+        try {
+            attrs = Files.readAttributes(file.toPath(), BasicFileAttributes.class);
+        } catch (IOException ioe) {
+            synchronized (this) {
+                remove(key);
+            }
+            //let the reader report the error
+            return readUncached(file);
+        }
+
+        synchronized (this) {
+            Entry entry = entries.get(key);
+            if (entry != null && entry.matches(attrs)) {
+                return entry.text;
+            }
+            //text is held as UTF-16, at least 2 bytes per byte of file
+            if (attrs.size() * 2 > budget) {
+                remove(key);
+                return null;
+            }
+        }
+
+        String text;
+        try {
+            text = readUncached(file);
+        } catch (IOException ioe) {
+            //read again by the next search instead of caching the failure as an empty file
+            synchronized (this) {
+                remove(key);
+            }
+            throw ioe;
+        }
+        Entry entry = new Entry(attrs.lastModifiedTime(), attrs.size(), text);
+
+        synchronized (this) {
+            remove(key);
+            if (entry.bytes <= budget) {
+                entries.put(key, entry);
+                usedBytes += entry.bytes;
+                evict();
+            }
+        }
+        return text;
+    }
+
+    /**
+     * Helper method
+     * @param file text file
+     * @return the filtered content of the file
+     * @throws IOException when the file cannot be read, reported by {@link SearchUtils#tryReadFile(File)}
+     */
+    private static String readUncached(File file) throws IOException {
+        String text = SearchUtils.tryReadFile(file);
+        if (text == null) {
+            throw new IOException("Could not read: " + file.getPath());
+        }
+        return text;
+    }
+
+    /**
+     * Changes the memory budget, evicting least recently used entries if it is exceeded.
+     * @param budget maximum number of bytes the cached contents may occupy
+     */
+    public synchronized void setBudget(long budget) {
+        this.budget = budget;
+        evict();
+    }
+
+    public synchronized long getBudget() {
+        return budget;
+    }
+
+    /**
+     * @return number of bytes currently occupied by the cached contents
+     */
+    public synchronized long getUsedBytes() {
+        return usedBytes;
+    }
+
+    /**
+     * @return number of files currently cached
+     */
+    public synchronized int size() {
+        return entries.size();
+    }
+
+    /**
+     * Removes every cached file content, directory listing and directory version, watchers stay registered.
+     */
+    public synchronized void clear() {
+        entries.clear();
+        listings.clear();
+        versions.clear();
+        usedBytes = 0;
+    }
+
+    /**
+     * Helper method
+     * Removes the entry cached for {@code key}, if any. Caller must hold the lock.
+     * @param key absolute file path
+     */
+    private void remove(String key) {
+        Entry removed = entries.remove(key);
+        if (removed != null) {
+            usedBytes -= removed.bytes;
+        }
+    }
+
+    /**
+     * Helper method
+     * Evicts least recently used entries until the budget is met. Caller must hold the lock.
+     */
+    private void evict() {
+        Iterator<Entry> itr = entries.values().iterator();
+        while (usedBytes > budget && itr.hasNext()) {
+            usedBytes -= itr.next().bytes;
+            itr.remove();
+        }
+    }
+
+    /**
+     * Helper method
+     * @param file file or directory
+     * @return last modified time of {@code file}, or null if it cannot be read
+     */
+    private static FileTime lastModified(File file) {
+        try {
+            return Files.getLastModifiedTime(file.toPath());
+        } catch (IOException ioe) {
+            return null;
+        }
+    }
+
+    /**
+     * Filtered content of a file along with the attributes it was read with
+     */
+    private static final class Entry {
+        private final FileTime modified;
+        private final long fileSize;
+        private final String text;
+        private final long bytes;
+
+        private Entry(FileTime modified, long fileSize, String text) {
+            this.modified = modified;
+            this.fileSize = fileSize;
+            this.text = text;
+            this.bytes = text.length() * 2L;
+        }
+
+        private boolean matches(BasicFileAttributes attrs) {
+            return modified.equals(attrs.lastModifiedTime()) && fileSize == attrs.size();
+        }
+    }
+
+    /**
+     * Text files of a directory along with the directory's last modified time
+     */
+    private static final class Listing {
+        private final FileTime modified;
+        private final List<File> files;
+
+        private Listing(FileTime modified, List<File> files) {
+            this.modified = modified;
+            this.files = files;
+        }
+    }
+
+    /**
+     * Version of a directory along with the directory's last modified time and the fingerprint of its text files
+     * it was handed out for
+     */
+    private static final class Version {
+        private final FileTime modified;
+        private final boolean watched;
+        /**
+         * fingerprint of the text files, 0 for watched directories
+         */
+        private final long fingerprint;
+        private final long version;
+
+        private Version(FileTime modified, boolean watched, long fingerprint, long version) {
+            this.modified = modified;
+            this.watched = watched;
+            this.fingerprint = fingerprint;
+            this.version = version;
+        }
+    }
+}
@@ -3,8 +3,10 @@ package target;
 import java.io.File;
 import java.io.IOException;
 import java.util.List;
-import java.util.Map;
 import java.util.Scanner;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
 
 /**
  * This application will take user inputs for search term and search method and output
@@ -30,15 +32,97 @@ public class DocumentSearch {
             "java" + File.separator +
             "res" + File.separator +
             "index";
+    /**
+     * relative path of the file containing the positional index created for each text file found in {@code resPath}
+     */
+    private static final String positionalIndexPath = System.getProperty("user.dir") + File.separator +
+            "src" + File.separator +
+            "main" + File.separator +
+            "java" + File.separator +
+            "res" + File.separator +
+            "positional.idx";
+    /**
+     * relative path of the file containing the suffix array created over the text files found in {@code resPath}
+     */
+    private static final String suffixArrayIndexPath = System.getProperty("user.dir") + File.separator +
+            "src" + File.separator +
+            "main" + File.separator +
+            "java" + File.separator +
+            "res" + File.separator +
+            "suffix.idx";
+    /**
+     * command line argument setting the number of files searched concurrently (ex. --parallelism=8)
+     */
+    private static final String PARALLELISM_ARG = "--parallelism=";
+    private static final String REGEX_ENGINE_ARG = "--regex-engine=";
+    /**
+     * command line argument setting the number of shards the index is split in (ex. --shards=4)
+     */
+    private static final String SHARDS_ARG = "--shards=";
+    private static int shardCount = ShardedIndex.DEFAULT_SHARD_COUNT;
+    /**
+     * command line argument limiting results to the files ranked first with at least one match (ex. --top=10)
+     */
+    private static final String TOP_ARG = "--top=";
+    private static PageRequest page = PageRequest.ALL;
+    /**
+     * command line argument serving searches over HTTP instead of the console, on the default port or the port
+     * given (ex. --server or --server=9000)
+     */
+    private static final String SERVER_ARG = "--server";
+    private static int serverPort = -1;
+    /**
+     * command line arguments setting the number of searches the server answers concurrently (ex. --workers=8)
+     * and the number of searches waiting before requests are rejected (ex. --queue=64)
+     */
+    private static final String WORKERS_ARG = "--workers=";
+    private static final String QUEUE_ARG = "--queue=";
+    private static int serverWorkers = SearchServer.DEFAULT_WORKERS;
+    private static int serverQueueCapacity = SearchServer.DEFAULT_QUEUE_CAPACITY;
+    /**
+     * command line arguments printing each file as soon as it is searched by String Match, Regular Expression and
+     * Indexed searches (ex. --stream), and stopping these searches after a number of milliseconds (ex. --deadline=500)
+     */
+    private static final String STREAM_ARG = "--stream";
+    private static final String DEADLINE_ARG = "--deadline=";
+    private static boolean stream = false;
+    private static long deadlineMillis = Long.MAX_VALUE;
 
     public static void main(String[] args) {
         String searchTerm;
         int searchMethod = 0;
         boolean quit = false;
+        if (!applyArgs(args)) {
+            return;
+        }
         Scanner inputScanner = new Scanner(System.in);
 
-        while(true) {
-        /*  Search term cannot be null. Search method input needs to be 1, 2, or 3.
+        //index is updated incrementally at startup, then kept current by the watcher while the application runs
+        IndexWatcher indexWatcher = null;
+        ShardedIndex shardedIndex = new ShardedIndex(indexDirPath, shardCount);
+        //loaded or built on the first Positional Index search
+        PositionalIndex positionalIndex = null;
+        //loaded or built on the first Suffix Array search
+        SuffixArrayIndex suffixArrayIndex = null;
+        //latencies of each search phase are available through JMX while the application runs
+        SearchUtils.getSearchMetrics().registerMBean();
+        try {
+            long startTime = System.currentTimeMillis();
+            indexWatcher = new IndexWatcher(shardedIndex, resPath);
+            System.out.println("Indexing Elapsed Time: " + (System.currentTimeMillis() - startTime) + " ms ("
+                    + shardCount + " shard(s))");
+        } catch (IOException ioe) {
+            ioe.printStackTrace();
+            System.err.println("Error indexing files in: " + resPath);
+        }
+
+        if (serverPort != -1) {
+            serve(inputScanner, shardedIndex, indexWatcher);
+            quit = true;
+        }
+
+        while (!quit) {
+        /*  Search term cannot be null. Search method input needs to be 1, 2, 3, 4 or 5.
             Loops until user provides satisfying inputs.
          */
             while (true) {
@@ -51,18 +135,19 @@ public class DocumentSearch {
                 }
 
                 try {
-                    System.out.println("Please choose search method (input corresponding number): 1. String Match, 2. Regular Expression, 3. Indexed");
+                    System.out.println("Please choose search method (input corresponding number): 1. String Match, 2. Regular Expression, 3. Indexed, 4. Positional Index, 5. Suffix Array");
                     searchMethod = Integer.valueOf(inputScanner.nextLine());
                 } catch (NumberFormatException nfe) {
                     searchMethod = -1;
                 }
 
-                if (!searchTerm.isEmpty() && (searchMethod > 0 && searchMethod <= 3)) {
+                if (!searchTerm.isEmpty() && (searchMethod > 0 && searchMethod <= 5)) {
                     break;
                 } else {
                     System.out.println("Invalid input(s). Please type \"q\" to quit application or press enter to continue.");
                     if (inputScanner.nextLine().equalsIgnoreCase("q")) {
-                        return;
+                        quit = true;
+                        break;
                     }
                 }
             }// end while
@@ -70,34 +155,49 @@ public class DocumentSearch {
             if (quit)
                 break;
 
-            //Stores number of matches per file
-            Map<String, Integer> sortedResultMap = null;
+            //Stores the files ranked first and their number of matches
+            SearchResult searchResult = null;
 
-            //preprocess file content into indexable if search method is Indexed (3)
-            boolean indexed = true;
-            List<String> indexedFiles = null;
-            if (searchMethod == 3) {
-                try {
-                    indexedFiles = SearchUtils.indexFilesInDir(indexDirPath, resPath);
-                } catch (IOException ioe){
-                    indexed = false;
-                    ioe.printStackTrace();
-                    System.err.println("Error indexing files in: " + resPath);
-                }
+            //file content is preprocessed into indexable by the index watcher
+            boolean indexed = indexWatcher != null;
+            List<String> indexedFiles = indexed ? indexWatcher.getIndexedFiles() : null;
+            if (searchMethod == 4) {
+                positionalIndex = currentPositionalIndex(positionalIndex);
+            } else if (searchMethod == 5) {
+                suffixArrayIndex = currentSuffixArrayIndex(suffixArrayIndex);
             }
 
             //search starts here
             long startTime = System.currentTimeMillis();
             switch (searchMethod) {
                 case 1: //String Match
-                    sortedResultMap = SearchUtils.simpleStringSearch(searchTerm, resPath);
+                    searchResult = stream ? streamSearch(searchTerm, searchMethod, shardedIndex, indexedFiles)
+                            : SearchUtils.simpleStringSearch(searchTerm, resPath, page);
                     break;
                 case 2: //Regular Expression
-                    sortedResultMap = SearchUtils.regexSearch(searchTerm, resPath);
+                    searchResult = stream ? streamSearch(searchTerm, searchMethod, shardedIndex, indexedFiles)
+                            : SearchUtils.regexSearch(searchTerm, resPath, page);
                     break;
                 case 3: //Indexed
-                    if (indexed && indexedFiles != null && indexedFiles.size() > 0) {
-                        sortedResultMap = SearchUtils.indexSearch(searchTerm, indexedFiles, indexDirPath);
+                    if (indexed && indexedFiles != null && indexedFiles.size() > 0 && stream) {
+                        searchResult = streamSearch(searchTerm, searchMethod, shardedIndex, indexedFiles);
+                    } else if (indexed && indexedFiles != null && indexedFiles.size() > 0) {
+                        try {
+                            searchResult = shardedIndex.search(searchTerm, indexedFiles, page);
+                        } catch (IOException ioe) {
+                            ioe.printStackTrace();
+                            System.err.println("Error during Index search.");
+                        }
+                    }
+                    break;
+                case 4: //Positional Index
+                    if (positionalIndex != null) {
+                        searchResult = SearchUtils.positionalIndexSearch(searchTerm, positionalIndex, page);
+                    }
+                    break;
+                case 5: //Suffix Array
+                    if (suffixArrayIndex != null) {
+                        searchResult = SearchUtils.suffixArraySearch(searchTerm, suffixArrayIndex, page);
                     }
                     break;
                 default:
@@ -108,18 +208,251 @@ public class DocumentSearch {
             System.out.println("Search results: \n");
 
             //prints out text file name and corresponding search count ordered relevancy
-            if (sortedResultMap != null && sortedResultMap.size() == 0) {
+            if (searchResult != null && searchResult.getTotalFiles() == 0) {
                 System.err.println("Found no text files. Please add appropriate text files to: " + resPath);
-            } else if (sortedResultMap != null) {
-                for (Map.Entry<String, Integer> entry : sortedResultMap.entrySet()) {
-                    System.out.println("\t" + entry.getKey() + " - " + entry.getValue() + " matches\n");
+            } else if (searchResult != null) {
+                for (int idx = 0; idx < searchResult.size(); idx++) {
+                    System.out.println("\t" + searchResult.getFilename(idx) + " - " + searchResult.getCount(idx) + " matches\n");
+                }
+                if (searchResult.hasMore() || searchResult.getMatchingFiles() > searchResult.size()) {
+                    System.out.println(searchResult.getMatchingFiles() + " of " + searchResult.getTotalFiles()
+                            + " file(s) matching, " + searchResult.size() + " shown.");
+                }
+                if (!searchResult.isComplete()) {
+                    System.out.println("Search stopped before every file was searched, results are incomplete.");
                 }
             }
 
             System.out.println("Elapsed Time: " + (endTime - startTime) + " ms");
         }
 
+        System.out.println("Search metrics: \n" + SearchUtils.getSearchMetrics().snapshot());
+
         //clean up
         inputScanner.close();
+        try {
+            if (indexWatcher != null) {
+                indexWatcher.close();
+            }
+            shardedIndex.close();
+        } catch (IOException ioe) {
+            ioe.printStackTrace();
+        }
+    }
+
+    /**
+     * Searches for {@code searchTerm} asynchronously, printing each file as soon as it is searched, until the search
+     * ends or {@code deadlineMillis} elapsed.
+     * @param searchTerm used to search in file
+     * @param searchMethod 1 for String Match, 2 for Regular Expression, 3 for Indexed
+     * @param shardedIndex index of the text files
+     * @param indexedFiles indexed file names, used by Indexed searches
+     * @return the files ranked first among the files searched, or null if the search failed
+     */
+    private static SearchResult streamSearch(String searchTerm, int searchMethod, ShardedIndex shardedIndex,
+                                             List<String> indexedFiles) {
+        SearchListener printer = new SearchListener() {
+            @Override
+            public void onFile(String filename, int count) {
+                System.out.println("\tsearched " + filename + " - " + count + " matches");
+            }
+        };
+        System.out.println("Searching files: \n");
+        Future<SearchResult> futureResult;
+        if (searchMethod == 1) {
+            futureResult = SearchUtils.simpleStringSearchAsync(searchTerm, resPath, page, deadlineMillis,
+                    TimeUnit.MILLISECONDS, null, printer);
+        } else if (searchMethod == 2) {
+            futureResult = SearchUtils.regexSearchAsync(searchTerm, resPath, page, deadlineMillis,
+                    TimeUnit.MILLISECONDS, null, printer);
+        } else {
+            futureResult = shardedIndex.searchAsync(searchTerm, indexedFiles, page, deadlineMillis,
+                    TimeUnit.MILLISECONDS, null, printer);
+        }
+        try {
+            return futureResult.get();
+        } catch (InterruptedException ie) {
+            Thread.currentThread().interrupt();
+        } catch (ExecutionException ee) {
+            ee.printStackTrace();
+            System.err.println("Error during streamed search.");
+        }
+        return null;
+    }
+
+    /**
+     * Serves searches over HTTP until "q" is typed, or until the process is stopped when there is no console.
+     * @param inputScanner console input
+     * @param shardedIndex index of the text files
+     * @param indexWatcher watcher keeping {@code shardedIndex} current, null if the index is unavailable
+     */
+    private static void serve(Scanner inputScanner, ShardedIndex shardedIndex, IndexWatcher indexWatcher) {
+        final SearchServer server;
+        try {
+            server = new SearchServer(serverPort, resPath, shardedIndex, indexWatcher, serverWorkers, serverQueueCapacity);
+        } catch (IOException ioe) {
+            ioe.printStackTrace();
+            System.err.println("Error starting search server on port: " + serverPort);
+            return;
+        }
+        Runtime.getRuntime().addShutdownHook(new Thread(new Runnable() {
+            @Override
+            public void run() {
+                server.close();
+            }
+        }));
+        System.out.println("Serving searches on http://localhost:" + server.getPort() + SearchServer.SEARCH_PATH
+                + "?q=<search term>&method=<string|regex|index|positional|suffix> with " + serverWorkers
+                + " worker(s). Type \"q\" to stop.");
+
+        while (inputScanner.hasNextLine()) {
+            if (inputScanner.nextLine().equalsIgnoreCase("q")) {
+                server.close();
+                return;
+            }
+        }
+        try {
+            server.awaitClose();
+        } catch (InterruptedException ie) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Returns a positional index of the text files currently found in {@code resPath}: {@code positionalIndex}
+     * if still current, else the index persisted in {@code positionalIndexPath} if current, else a new index
+     * which is persisted for the next run.
+     * @param positionalIndex index used by the previous search, null for none
+     * @return the current index, or null if it cannot be loaded nor built
+     */
+    private static PositionalIndex currentPositionalIndex(PositionalIndex positionalIndex) {
+        if (positionalIndex != null && positionalIndex.isCurrent(resPath)) {
+            return positionalIndex;
+        }
+
+        File indexFile = new File(positionalIndexPath);
+        if (indexFile.isFile()) {
+            try {
+                positionalIndex = PositionalIndex.load(indexFile);
+                if (positionalIndex.isCurrent(resPath)) {
+                    return positionalIndex;
+                }
+            } catch (IOException ioe) {
+                ioe.printStackTrace();
+                System.err.println("Error loading positional index: " + positionalIndexPath);
+            }
+        }
+
+        positionalIndex = PositionalIndex.build(resPath);
+        System.out.println("Built positional index of " + positionalIndex.getFilenames().size() + " file(s).");
+        try {
+            positionalIndex.write(indexFile);
+        } catch (IOException ioe) {
+            ioe.printStackTrace();
+            System.err.println("Error writing positional index: " + positionalIndexPath);
+        }
+        return positionalIndex;
+    }
+
+    /**
+     * Returns a suffix array index of the text files currently found in {@code resPath}: {@code suffixArrayIndex}
+     * if still current, else the index persisted in {@code suffixArrayIndexPath} if current, else a new index
+     * which is persisted for the next run.
+     * @param suffixArrayIndex index used by the previous search, null for none
+     * @return the current index, or null if it cannot be loaded nor built
+     */
+    private static SuffixArrayIndex currentSuffixArrayIndex(SuffixArrayIndex suffixArrayIndex) {
+        if (suffixArrayIndex != null && suffixArrayIndex.isCurrent(resPath)) {
+            return suffixArrayIndex;
+        }
+
+        File indexFile = new File(suffixArrayIndexPath);
+        if (indexFile.isFile()) {
+            try {
+                suffixArrayIndex = SuffixArrayIndex.load(indexFile);
+                if (suffixArrayIndex.isCurrent(resPath)) {
+                    return suffixArrayIndex;
+                }
+            } catch (IOException ioe) {
+                ioe.printStackTrace();
+                System.err.println("Error loading suffix array index: " + suffixArrayIndexPath);
+            }
+        }
+
+        try {
+            suffixArrayIndex = SuffixArrayIndex.build(resPath);
+        } catch (IllegalArgumentException iae) {
+            iae.printStackTrace();
+            System.err.println("Error building suffix array index of: " + resPath);
+            return null;
+        }
+        System.out.println("Built suffix array index of " + suffixArrayIndex.getFilenames().size() + " file(s).");
+        try {
+            suffixArrayIndex.write(indexFile);
+        } catch (IOException ioe) {
+            ioe.printStackTrace();
+            System.err.println("Error writing suffix array index: " + suffixArrayIndexPath);
+        }
+        return suffixArrayIndex;
+    }
+
+    /**
+     * Applies the command line arguments to the search configuration.
+     * @param args command line arguments
+     * @return false if an argument is invalid
+     */
+    private static boolean applyArgs(String[] args) {
+        for (String arg : args) {
+            try {
+                if (arg.startsWith(PARALLELISM_ARG)) {
+                    SearchExecutor.setParallelism(Integer.parseInt(arg.substring(PARALLELISM_ARG.length())));
+                } else if (arg.startsWith(REGEX_ENGINE_ARG)) {
+                    RegexPattern.setEngine(RegexPattern.Engine.valueOf(
+                            arg.substring(REGEX_ENGINE_ARG.length()).toUpperCase()));
+                } else if (arg.startsWith(TOP_ARG)) {
+                    page = PageRequest.top(Integer.parseInt(arg.substring(TOP_ARG.length())));
+                } else if (arg.startsWith(SHARDS_ARG)) {
+                    shardCount = Integer.parseInt(arg.substring(SHARDS_ARG.length()));
+                    if (shardCount < 1) {
+                        throw new IllegalArgumentException("Shard count must be at least 1: " + shardCount);
+                    }
+                } else if (arg.equals(SERVER_ARG)) {
+                    serverPort = SearchServer.DEFAULT_PORT;
+                } else if (arg.startsWith(SERVER_ARG + "=")) {
+                    serverPort = Integer.parseInt(arg.substring(SERVER_ARG.length() + 1));
+                    if (serverPort < 0 || serverPort > 65535) {
+                        throw new IllegalArgumentException("Invalid port: " + serverPort);
+                    }
+                } else if (arg.startsWith(WORKERS_ARG)) {
+                    serverWorkers = Integer.parseInt(arg.substring(WORKERS_ARG.length()));
+                    if (serverWorkers < 1) {
+                        throw new IllegalArgumentException("Worker count must be at least 1: " + serverWorkers);
+                    }
+                } else if (arg.equals(STREAM_ARG)) {
+                    stream = true;
+                } else if (arg.startsWith(DEADLINE_ARG)) {
+                    deadlineMillis = Long.parseLong(arg.substring(DEADLINE_ARG.length()));
+                    if (deadlineMillis < 0) {
+                        throw new IllegalArgumentException("Deadline must not be negative: " + deadlineMillis);
+                    }
+                    //results can only be cut short by a deadline when streamed
+                    stream = true;
+                } else if (arg.startsWith(QUEUE_ARG)) {
+                    serverQueueCapacity = Integer.parseInt(arg.substring(QUEUE_ARG.length()));
+                    if (serverQueueCapacity < 0) {
+                        throw new IllegalArgumentException("Queue capacity must not be negative: " + serverQueueCapacity);
+                    }
+                } else {
+                    System.err.println("Unknown argument: " + arg);
+                    return false;
+                }
+            } catch (IllegalArgumentException iae) {
+                System.err.println("Invalid argument: " + arg);
+                return false;
+            }
+        }
+
+        System.out.println("Searching " + SearchExecutor.getParallelism() + " file(s) concurrently.");
+        return true;
     }
 }
@@ -0,0 +1,98 @@
+package target;
+
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Search counts of every file searched, in no particular order, held in two parallel arrays: the compact form in
+ * which the {@link ResultCache} keeps the results of paged searches. Each page is selected from it by a
+ * {@link TopKSelector} instead of sorting every file.
+ */
+final class FileCounts {
+    private final String[] filenames;
+    private final int[] counts;
+
+    /**
+     * @param filenames names of the files searched
+     * @param counts search count of each file of {@code filenames}
+     */
+    FileCounts(String[] filenames, int[] counts) {
+        if (filenames.length != counts.length) {
+            throw new IllegalArgumentException("Expected a count per file: " + filenames.length + " != " + counts.length);
+        }
+        this.filenames = filenames;
+        this.counts = counts;
+    }
+
+    /**
+     * @param resultMap file names and their corresponding search count, ex. a result of a search method
+     *                  returning a map
+     * @return the counts of {@code resultMap}
+     */
+    static FileCounts of(Map<String, Integer> resultMap) {
+        String[] filenames = new String[resultMap.size()];
+        int[] counts = new int[resultMap.size()];
+        int idx = 0;
+        for (Map.Entry<String, Integer> entry : resultMap.entrySet()) {
+            filenames[idx] = entry.getKey();
+            counts[idx++] = entry.getValue();
+        }
+        return new FileCounts(filenames, counts);
+    }
+
+    /**
+     * @param matchedFiles number of matches of the files matched in an index
+     * @param indexedFiles indexed file names, counted as zero matches unless matched
+     * @return the counts of every file matched or indexed
+     */
+    static FileCounts of(Map<String, Integer> matchedFiles, List<String> indexedFiles) {
+        int size = matchedFiles.size();
+        for (String indexedFile : indexedFiles) {
+            if (!matchedFiles.containsKey(indexedFile)) {
+                size++;
+            }
+        }
+
+        String[] filenames = new String[size];
+        int[] counts = new int[size];
+        int idx = 0;
+        for (Map.Entry<String, Integer> entry : matchedFiles.entrySet()) {
+            filenames[idx] = entry.getKey();
+            counts[idx++] = entry.getValue();
+        }
+        for (String indexedFile : indexedFiles) {
+            if (!matchedFiles.containsKey(indexedFile)) {
+                filenames[idx++] = indexedFile;
+            }
+        }
+        return new FileCounts(filenames, counts);
+    }
+
+    /**
+     * @return number of files searched
+     */
+    int size() {
+        return filenames.length;
+    }
+
+    String getFilename(int idx) {
+        return filenames[idx];
+    }
+
+    int getCount(int idx) {
+        return counts[idx];
+    }
+
+    /**
+     * @param page files ranked in the result
+     * @param complete false if some files were not searched, see {@link SearchResult#isComplete()}
+     * @return the files of the page, in ranking order
+     */
+    SearchResult select(PageRequest page, boolean complete) {
+        TopKSelector selector = new TopKSelector(page);
+        for (int idx = 0; idx < filenames.length; idx++) {
+            selector.offer(filenames[idx], counts[idx]);
+        }
+        return selector.toResult(complete);
+    }
+}
@@ -0,0 +1,32 @@
+package target;
+
+import org.apache.lucene.analysis.Analyzer;
+import org.apache.lucene.analysis.util.CharTokenizer;
+
+/**
+ * Analyzer tokenizing text the same way {@link SearchUtils#stringFilter(String)} filters it, while streaming
+ * from a {@link java.io.Reader}: every run of ASCII letters and digits is a token, lowercased, and every other
+ * character separates tokens. The tokens of a text are therefore the words of its filtered content, which
+ * lets the index search the filtered search term without the text being filtered into a String first.
+ */
+public final class FilteredTextAnalyzer extends Analyzer {
+    @Override
+    protected TokenStreamComponents createComponents(String fieldName) {
+        return new TokenStreamComponents(new FilteredTextTokenizer());
+    }
+
+    /**
+     * Tokenizer splitting the text on every character {@link SearchUtils#stringFilter(String)} replaces with a space
+     */
+    static final class FilteredTextTokenizer extends CharTokenizer {
+        @Override
+        protected boolean isTokenChar(int c) {
+            return (c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z') || (c >= '0' && c <= '9');
+        }
+
+        @Override
+        protected int normalize(int c) {
+            return c >= 'A' && c <= 'Z' ? c + ('a' - 'A') : c;
+        }
+    }
+}
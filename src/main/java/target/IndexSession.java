@@ -0,0 +1,215 @@
+package target;
+
+import org.apache.lucene.search.IndexSearcher;
+import org.apache.lucene.search.SearcherManager;
+import org.apache.lucene.store.Directory;
+import org.apache.lucene.store.FSDirectory;
+import org.apache.lucene.store.MMapDirectory;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Long-lived index search session keeping a warm {@link IndexSearcher} over the index created from
+ * {@link SearchUtils#indexFilesInDir(String, String)}, instead of opening the index on every search.
+ * The searcher is shared by concurrent searches through a {@link SearcherManager} and refreshed in the
+ * background when the index changes, or on demand with {@link #refresh()}.
+ */
+public final class IndexSession implements Closeable {
+    /**
+     * default interval in milliseconds between checks for index changes
+     */
+    public static final long DEFAULT_REFRESH_INTERVAL = 1000;
+
+    private final Directory directory;
+    private final SearcherManager searcherManager;
+    /**
+     * background refresh of the searcher, null if disabled
+     */
+    private final ScheduledExecutorService refresher;
+
+    /**
+     * Opens the index with the directory implementation best suited to the platform and checks for
+     * index changes every {@link #DEFAULT_REFRESH_INTERVAL} milliseconds.
+     * @param indexDirPath directory containing the index
+     * @throws IOException when the index cannot be opened
+     */
+    public IndexSession(String indexDirPath) throws IOException {
+        this(indexDirPath, false, DEFAULT_REFRESH_INTERVAL);
+    }
+
+    /**
+     * @param indexDirPath directory containing the index
+     * @param memoryMapped true to read the index through a {@link MMapDirectory}
+     * @param refreshInterval interval in milliseconds between checks for index changes, 0 to only refresh on demand
+     * @throws IOException when the index cannot be opened
+     */
+    public IndexSession(String indexDirPath, boolean memoryMapped, long refreshInterval) throws IOException {
+        Path path = new File(indexDirPath).toPath();
+        this.directory = memoryMapped ? new MMapDirectory(path) : FSDirectory.open(path);
+        try {
+            this.searcherManager = new SearcherManager(directory, null);
+        } catch (IOException ioe) {
+            directory.close();
+            throw ioe;
+        }
+
+        if (refreshInterval > 0) {
+            refresher = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+                @Override
+                public Thread newThread(Runnable runnable) {
+                    Thread thread = new Thread(runnable, "index-session-refresh");
+                    thread.setDaemon(true);
+                    return thread;
+                }
+            });
+            refresher.scheduleWithFixedDelay(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        searcherManager.maybeRefresh();
+                    } catch (IOException ioe) {
+                        ioe.printStackTrace();
+                        System.err.println("Error refreshing index searcher.");
+                    }
+                }
+            }, refreshInterval, refreshInterval, TimeUnit.MILLISECONDS);
+        } else {
+            refresher = null;
+        }
+    }
+
+    /**
+     * Searches for {@code searchTerm} in all text files indexed, see
+     * {@link SearchUtils#indexSearch(String, List, String)}. Safe to call from concurrent threads.
+     * @param searchTerm used to search in file
+     * @param indexedFiles indexed file names
+     * @return the map containing the file name (key) and its corresponding search count (value)
+     * of {@code searchTerm}
+     * @throws IOException when the searcher cannot be acquired
+     */
+    public Map<String, Integer> search(String searchTerm, List<String> indexedFiles) throws IOException {
+        IndexSearcher searcher = searcherManager.acquire();
+        try {
+            return SearchUtils.indexSearch(searchTerm, indexedFiles, searcher);
+        } finally {
+            searcherManager.release(searcher);
+        }
+    }
+
+    /**
+     * Searches for {@code searchTerm} in all text files indexed, only keeping the files of {@code page}, see
+     * {@link SearchUtils#indexSearch(String, List, String, PageRequest)}. Safe to call from concurrent threads.
+     * @param searchTerm used to search in file
+     * @param indexedFiles indexed file names
+     * @param page files ranked in the result
+     * @return the files of the page and their corresponding search count of {@code searchTerm}
+     * @throws IOException when the searcher cannot be acquired
+     */
+    public SearchResult search(String searchTerm, List<String> indexedFiles, PageRequest page) throws IOException {
+        if (searchTerm == null || searchTerm.isEmpty()) {
+            return new TopKSelector(page).toResult();
+        }
+        SearchMetrics searchMetrics = SearchUtils.getSearchMetrics();
+        long startTime = searchMetrics.start();
+        searchMetrics.incrementQueries(SearchMetrics.INDEX_METHOD);
+        long phaseStartTime = searchMetrics.start();
+        String filteredTerm = SearchUtils.stringFilter(searchTerm);
+        searchMetrics.record(SearchMetrics.INDEX_METHOD, SearchMetrics.NORMALIZE_PHASE, phaseStartTime);
+
+        SearchResult result = searchFiltered(filteredTerm, indexedFiles, page);
+        searchMetrics.record(SearchMetrics.INDEX_METHOD, SearchMetrics.TOTAL_PHASE, startTime);
+        return result;
+    }
+
+    /**
+     * Searches for the filtered {@code searchTerm} without recording a query, for searches spanning
+     * several indexes such as {@link ShardedIndex#search(String, List)}.
+     * @param searchTerm search term filtered by {@link SearchUtils#stringFilter(String)}
+     * @param indexedFiles indexed file names
+     * @return the map containing the file name (key) and its corresponding search count (value)
+     * of {@code searchTerm}
+     * @throws IOException when the searcher cannot be acquired
+     */
+    Map<String, Integer> searchFiltered(String searchTerm, List<String> indexedFiles) throws IOException {
+        IndexSearcher searcher = searcherManager.acquire();
+        try {
+            return SearchUtils.searchIndex(searchTerm, indexedFiles, searcher.getIndexReader());
+        } finally {
+            searcherManager.release(searcher);
+        }
+    }
+
+    /**
+     * Searches for the filtered {@code searchTerm} without recording a query, only keeping the files of {@code page}.
+     * @param searchTerm search term filtered by {@link SearchUtils#stringFilter(String)}
+     * @param indexedFiles indexed file names
+     * @param page files ranked in the result
+     * @return the files of the page and their corresponding search count of {@code searchTerm}
+     * @throws IOException when the searcher cannot be acquired
+     */
+    SearchResult searchFiltered(String searchTerm, List<String> indexedFiles, PageRequest page) throws IOException {
+        IndexSearcher searcher = searcherManager.acquire();
+        try {
+            return SearchUtils.searchIndex(searchTerm, indexedFiles, searcher.getIndexReader(), page);
+        } finally {
+            searcherManager.release(searcher);
+        }
+    }
+
+    /**
+     * Searches for the filtered {@code searchTerm} without recording a query, reporting the count of each file to
+     * {@code listener} as soon as it is counted, see {@link ShardedIndex#searchAsync(String, List, PageRequest, long,
+     * java.util.concurrent.TimeUnit, CancellationToken, SearchListener)}.
+     * @param searchTerm search term filtered by {@link SearchUtils#stringFilter(String)}
+     * @param indexedFiles indexed file names
+     * @param token cancels the search
+     * @param listener receives the count of each file searched
+     * @return false if the index could not be read entirely or the search was cancelled
+     * @throws IOException when the searcher cannot be acquired
+     */
+    boolean streamFiltered(String searchTerm, List<String> indexedFiles, CancellationToken token,
+                           SearchListener listener) throws IOException {
+        IndexSearcher searcher = searcherManager.acquire();
+        try {
+            return SearchUtils.streamIndex(searchTerm, indexedFiles, searcher.getIndexReader(), token, listener);
+        } finally {
+            searcherManager.release(searcher);
+        }
+    }
+
+    /**
+     * Refreshes the searcher if the index changed, waiting for a refresh already in progress.
+     * Searches started after this returns see the changes.
+     * @throws IOException when the index cannot be reopened
+     */
+    public void refresh() throws IOException {
+        searcherManager.maybeRefreshBlocking();
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (refresher != null) {
+            //not interrupted, interrupting index I/O closes the underlying file channels
+            refresher.shutdown();
+            try {
+                refresher.awaitTermination(1, TimeUnit.MINUTES);
+            } catch (InterruptedException ie) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        try {
+            searcherManager.close();
+        } finally {
+            directory.close();
+        }
+    }
+}
@@ -0,0 +1,170 @@
+package target;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.FileSystems;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Keeps the index created from {@link SearchUtils#indexFilesInDir(String, String)} current while the
+ * application runs: watches the resource directory and incrementally updates the index, then refreshes
+ * the {@link IndexSession} searching it, once the directory has been quiet for a short delay.
+ * A {@link ShardedIndex} is kept current the same way, shard by shard.
+ * Every change is also reported to the {@link CorpusCache} as soon as it is seen, so results cached for the
+ * directory are invalidated without checking its files on every search.
+ */
+public final class IndexWatcher implements Closeable {
+    /**
+     * milliseconds without file changes before the index is updated
+     */
+    private static final long QUIET_PERIOD = 200;
+
+    private final String indexDirPath;
+    private final String resPath;
+    /**
+     * index updated instead of the single index in {@code indexDirPath}, null for none
+     */
+    private final ShardedIndex shardedIndex;
+    private final WatchService watchService;
+    private final Thread thread;
+    private final CorpusCache corpusCache = SearchUtils.getCorpusCache();
+    private boolean closed;
+    private volatile IndexSession indexSession;
+    private volatile List<String> indexedFiles = Collections.emptyList();
+
+    /**
+     * Updates the index once, then starts watching {@code resPath}.
+     * @param indexDirPath directory containing the index
+     * @param resPath directory containing the text files
+     * @throws IOException when the index cannot be updated or the directory cannot be watched
+     */
+    public IndexWatcher(String indexDirPath, String resPath) throws IOException {
+        this(indexDirPath, null, resPath);
+    }
+
+    /**
+     * Updates every shard of {@code shardedIndex} once, then starts watching {@code resPath}.
+     * The sharded index refreshes its own searchers after every update.
+     * @param shardedIndex index of the text files
+     * @param resPath directory containing the text files
+     * @throws IOException when the index cannot be updated or the directory cannot be watched
+     */
+    public IndexWatcher(ShardedIndex shardedIndex, String resPath) throws IOException {
+        this(shardedIndex.getIndexDirPath(), shardedIndex, resPath);
+    }
+
+    private IndexWatcher(String indexDirPath, ShardedIndex shardedIndex, String resPath) throws IOException {
+        this.indexDirPath = indexDirPath;
+        this.resPath = resPath;
+        this.shardedIndex = shardedIndex;
+        this.indexedFiles = Collections.unmodifiableList(index());
+
+        this.watchService = FileSystems.getDefault().newWatchService();
+        new File(resPath).toPath().register(watchService, StandardWatchEventKinds.ENTRY_CREATE,
+                StandardWatchEventKinds.ENTRY_DELETE, StandardWatchEventKinds.ENTRY_MODIFY);
+        //changes are reported from now on
+        corpusCache.watch(resPath);
+
+        this.thread = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                watch();
+            }
+        }, "index-watcher");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    /**
+     * @param indexSession session refreshed after every index update, null for none
+     */
+    public void setIndexSession(IndexSession indexSession) {
+        this.indexSession = indexSession;
+    }
+
+    /**
+     * @return file names indexed by the latest index update
+     */
+    public List<String> getIndexedFiles() {
+        return indexedFiles;
+    }
+
+    @Override
+    public void close() throws IOException {
+        synchronized (this) {
+            if (closed) {
+                return;
+            }
+            closed = true;
+        }
+        corpusCache.unwatch(resPath);
+        watchService.close();
+        try {
+            thread.join(TimeUnit.SECONDS.toMillis(10));
+        } catch (InterruptedException ie) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Helper method
+     * Waits for changes in the resource directory and updates the index until closed.
+     */
+    private void watch() {
+        try {
+            while (true) {
+                WatchKey key = watchService.take();
+                //collects every change made until the directory is quiet
+                while (key != null) {
+                    key.pollEvents();
+                    corpusCache.invalidate(resPath);
+                    key.reset();
+                    key = watchService.poll(QUIET_PERIOD, TimeUnit.MILLISECONDS);
+                }
+                update();
+            }
+        } catch (ClosedWatchServiceException cwse) {
+            //closed, stops watching
+        } catch (InterruptedException ie) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Helper method
+     * @return file names indexed by an incremental update of the index
+     * @throws IOException when the index cannot be updated
+     */
+    private List<String> index() throws IOException {
+        return shardedIndex != null ? shardedIndex.index(resPath) : SearchUtils.indexFilesInDir(indexDirPath, resPath);
+    }
+
+    /**
+     * Helper method
+     * Incrementally updates the index and refreshes the session searching it. Errors are reported and
+     * never stop the watcher.
+     */
+    private void update() {
+        try {
+            indexedFiles = Collections.unmodifiableList(index());
+            IndexSession session = indexSession;
+            if (session != null) {
+                session.refresh();
+            }
+        } catch (IOException ioe) {
+            ioe.printStackTrace();
+            System.err.println("Error updating index in: " + indexDirPath);
+        } catch (RuntimeException re) {
+            //keeps watching, the next change updates the index again
+            re.printStackTrace();
+            System.err.println("Unexpected error updating index in: " + indexDirPath);
+        }
+    }
+}
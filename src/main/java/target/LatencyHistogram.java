@@ -0,0 +1,182 @@
+package target;
+
+import java.beans.ConstructorProperties;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Lock-free histogram of latencies in nanoseconds, in the style of HdrHistogram: values are counted in
+ * log-linear buckets, exact below 128 nanoseconds and within 1/64 (about 1.6%) above, whatever the magnitude.
+ * Recording a value is a few atomic increments and never allocates.
+ */
+public final class LatencyHistogram {
+    /**
+     * number of buckets per power of 2, above {@link #LINEAR_BUCKETS}
+     */
+    private static final int SUB_BUCKETS = 64;
+    /**
+     * values below are counted in a bucket of their own
+     */
+    private static final int LINEAR_BUCKETS = 2 * SUB_BUCKETS;
+    /**
+     * log2 of {@link #SUB_BUCKETS}
+     */
+    private static final int SUB_BUCKET_BITS = 6;
+    private static final int BUCKET_COUNT = LINEAR_BUCKETS + (63 - SUB_BUCKET_BITS - 1) * SUB_BUCKETS;
+
+    private final AtomicLongArray counts = new AtomicLongArray(BUCKET_COUNT);
+    private final AtomicLong count = new AtomicLong();
+    private final AtomicLong sum = new AtomicLong();
+    private final AtomicLong max = new AtomicLong();
+
+    /**
+     * @param nanos latency in nanoseconds, negative values are counted as 0
+     */
+    public void record(long nanos) {
+        long value = Math.max(0, nanos);
+        counts.incrementAndGet(bucket(value));
+        count.incrementAndGet();
+        sum.addAndGet(value);
+        long curMax = max.get();
+        while (value > curMax && !max.compareAndSet(curMax, value)) {
+            curMax = max.get();
+        }
+    }
+
+    /**
+     * Removes every recorded value. Values recorded concurrently may be kept or removed.
+     */
+    public void reset() {
+        for (int idx = 0; idx < BUCKET_COUNT; idx++) {
+            counts.set(idx, 0);
+        }
+        count.set(0);
+        sum.set(0);
+        max.set(0);
+    }
+
+    /**
+     * @return the distribution of the values recorded so far
+     */
+    public Snapshot snapshot() {
+        long[] bucketCounts = new long[BUCKET_COUNT];
+        long total = 0;
+        for (int idx = 0; idx < BUCKET_COUNT; idx++) {
+            bucketCounts[idx] = counts.get(idx);
+            total += bucketCounts[idx];
+        }
+        long maxValue = max.get();
+        double mean = total == 0 ? 0 : (double) sum.get() / total;
+        return new Snapshot(total, mean, maxValue, valueAtPercentile(bucketCounts, total, maxValue, 50),
+                valueAtPercentile(bucketCounts, total, maxValue, 90), valueAtPercentile(bucketCounts, total, maxValue, 99),
+                valueAtPercentile(bucketCounts, total, maxValue, 99.9));
+    }
+
+    /**
+     * Helper method
+     * @param value non negative value
+     * @return the bucket counting {@code value}
+     */
+    static int bucket(long value) {
+        if (value < LINEAR_BUCKETS) {
+            return (int) value;
+        }
+        int shift = 63 - Long.numberOfLeadingZeros(value) - SUB_BUCKET_BITS;
+        return LINEAR_BUCKETS + (shift - 1) * SUB_BUCKETS + (int) (value >>> shift) - SUB_BUCKETS;
+    }
+
+    /**
+     * Helper method
+     * @param bucket bucket index
+     * @return the highest value counted in {@code bucket}
+     */
+    static long highestValue(int bucket) {
+        if (bucket < LINEAR_BUCKETS) {
+            return bucket;
+        }
+        int shift = (bucket - LINEAR_BUCKETS) / SUB_BUCKETS + 1;
+        long subBucket = (bucket - LINEAR_BUCKETS) % SUB_BUCKETS + SUB_BUCKETS;
+        return ((subBucket + 1) << shift) - 1;
+    }
+
+    /**
+     * Helper method
+     * @param bucketCounts count of every bucket
+     * @param total sum of {@code bucketCounts}
+     * @param maxValue highest value recorded
+     * @param percentile between 0 and 100
+     * @return the highest value of the bucket holding the percentile, never above {@code maxValue}
+     */
+    private static long valueAtPercentile(long[] bucketCounts, long total, long maxValue, double percentile) {
+        if (total == 0) {
+            return 0;
+        }
+        long rank = Math.max(1, (long) Math.ceil(percentile / 100 * total));
+        long seen = 0;
+        for (int idx = 0; idx < bucketCounts.length; idx++) {
+            seen += bucketCounts[idx];
+            if (seen >= rank) {
+                return Math.min(highestValue(idx), maxValue);
+            }
+        }
+        return maxValue;
+    }
+
+    /**
+     * Distribution of the latencies recorded by a histogram at some point in time, in nanoseconds
+     */
+    public static final class Snapshot {
+        private final long count;
+        private final double mean;
+        private final long max;
+        private final long p50;
+        private final long p90;
+        private final long p99;
+        private final long p999;
+
+        @ConstructorProperties({"count", "mean", "max", "p50", "p90", "p99", "p999"})
+        public Snapshot(long count, double mean, long max, long p50, long p90, long p99, long p999) {
+            this.count = count;
+            this.mean = mean;
+            this.max = max;
+            this.p50 = p50;
+            this.p90 = p90;
+            this.p99 = p99;
+            this.p999 = p999;
+        }
+
+        public long getCount() {
+            return count;
+        }
+
+        public double getMean() {
+            return mean;
+        }
+
+        public long getMax() {
+            return max;
+        }
+
+        public long getP50() {
+            return p50;
+        }
+
+        public long getP90() {
+            return p90;
+        }
+
+        public long getP99() {
+            return p99;
+        }
+
+        public long getP999() {
+            return p999;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("count=%d mean=%.0fns p50=%dns p90=%dns p99=%dns p99.9=%dns max=%dns",
+                    count, mean, p50, p90, p99, p999, max);
+        }
+    }
+}
@@ -0,0 +1,128 @@
+package target;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * String Match engine that counts the occurrences of a filtered search term in a text file without
+ * reading the file into heap. The file is filtered on the fly by {@link MappedTextNormalizer} into a
+ * fixed size buffer, which is scanned with the Boyer-Moore-Horspool algorithm. A matcher is built once per term
+ * and shared by every file searched for it.
+ * Counts are identical to searching the content returned by {@link SearchUtils#readFile(File)} with
+ * {@link String#indexOf(String, int)}: matches do not overlap and are counted from left to right.
+ */
+final class MappedStringMatcher {
+    /**
+     * default size of the buffer holding the filtered characters being scanned
+     */
+    static final int DEFAULT_BUFFER_SIZE = 64 * 1024;
+
+    /**
+     * scan buffer reused by every search on the same thread
+     */
+    private static final ThreadLocal<byte[]> buffers = new ThreadLocal<byte[]>() {
+        @Override
+        protected byte[] initialValue() {
+            return new byte[DEFAULT_BUFFER_SIZE];
+        }
+    };
+
+    /**
+     * filtered search term
+     */
+    private final String term;
+    private final byte[] pattern;
+    /**
+     * distance to shift by the character aligned with the last pattern character
+     */
+    private final int[] skip = new int[256];
+
+    /**
+     * Builds the pattern and skip table of {@code filteredTerm} once, to be reused for every file searched.
+     * @param filteredTerm search term already filtered by {@link SearchUtils#stringFilter(String)}
+     */
+    MappedStringMatcher(String filteredTerm) {
+        this.term = filteredTerm;
+        this.pattern = filteredTerm.getBytes(StandardCharsets.US_ASCII);
+        int last = pattern.length - 1;
+        for (int idx = 0; idx < skip.length; idx++) {
+            skip[idx] = pattern.length;
+        }
+        for (int idx = 0; idx < last; idx++) {
+            skip[pattern[idx] & 0xFF] = last - idx;
+        }
+    }
+
+    /**
+     * @return the filtered search term counted
+     */
+    String getTerm() {
+        return term;
+    }
+
+    /**
+     * Counts the occurrences of the term in {@code file}.
+     * @param file text file to be searched
+     * @return the number of non-overlapping occurrences
+     * @throws IOException when the file cannot be read
+     */
+    int count(File file) throws IOException {
+        byte[] buf = buffers.get();
+        if (buf.length < pattern.length * 2) {
+            buf = new byte[pattern.length * 2];
+            buffers.set(buf);
+        }
+        try (MappedTextNormalizer normalizer = new MappedTextNormalizer(file)) {
+            return count(normalizer, buf);
+        }
+    }
+
+    /**
+     * Counts the occurrences of the term in the filtered characters read from {@code normalizer}.
+     * @param normalizer source of the filtered characters
+     * @param buf scan buffer, at least twice as long as the term
+     * @return the number of non-overlapping occurrences
+     * @throws IOException when the file cannot be read
+     */
+    int count(MappedTextNormalizer normalizer, byte[] buf) throws IOException {
+        int patternLen = pattern.length;
+        int last = patternLen - 1;
+
+        int searchCount = 0;
+        //number of filtered characters in buf
+        int len = 0;
+        int read;
+        while ((read = normalizer.read(buf, len, buf.length - len)) != -1) {
+            len += read;
+            int pos = 0;
+            while (pos <= len - patternLen) {
+                byte c = buf[pos + last];
+                if (c == pattern[last] && matchesAt(buf, pos, last)) {
+                    searchCount++;
+                    pos += patternLen;
+                } else {
+                    pos += skip[c & 0xFF];
+                }
+            }
+            //keep the characters a match may still start at
+            len -= pos;
+            System.arraycopy(buf, pos, buf, 0, len);
+        }//end while
+
+        return searchCount;
+    }
+
+    /**
+     * Helper method
+     * @return true if {@code buf} holds the first {@code last} characters of {@code pattern} at {@code pos}
+     */
+    private boolean matchesAt(byte[] buf, int pos, int last) {
+        for (int idx = 0; idx < last; idx++) {
+            if (buf[pos + idx] != pattern[idx]) {
+                return false;
+            }
+        }
+        return true;
+    }
+}
@@ -0,0 +1,159 @@
+package target;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Streams the content of a text file through memory-mapped windows and filters it on the fly,
+ * producing the same characters as {@link SearchUtils#readFile(File)} without holding the file in heap:
+ * every line is preceded by a space, characters other than ASCII letters and digits become spaces,
+ * runs of spaces are collapsed to a single space and letters are lowercased.
+ * Assumes an ASCII compatible file encoding, which is what {@link SearchUtils#readFile(File)} assumes too.
+ */
+final class MappedTextNormalizer implements Closeable {
+    /**
+     * number of bytes of the file mapped at a time
+     */
+    static final long DEFAULT_WINDOW_SIZE = 64L * 1024 * 1024;
+
+    /**
+     * filtered value of each byte, space for every byte that is not an ASCII letter or digit
+     */
+    private static final byte[] FILTERED = new byte[256];
+
+    static {
+        for (int idx = 0; idx < FILTERED.length; idx++) {
+            FILTERED[idx] = ' ';
+        }
+        for (int c = '0'; c <= '9'; c++) {
+            FILTERED[c] = (byte) c;
+        }
+        for (int c = 'a'; c <= 'z'; c++) {
+            FILTERED[c] = (byte) c;
+            FILTERED[c - 'a' + 'A'] = (byte) c;
+        }
+    }
+
+    private final FileChannel channel;
+    private final long windowSize;
+    /**
+     * number of bytes of the file to filter, excludes the terminator of the last line
+     */
+    private final long length;
+    /**
+     * file position of the first byte of {@code window}
+     */
+    private long windowStart;
+    private MappedByteBuffer window;
+    private boolean started;
+    private boolean lastWasSpace;
+
+    MappedTextNormalizer(File file) throws IOException {
+        this(file, DEFAULT_WINDOW_SIZE);
+    }
+
+    /**
+     * @param file text file to be read
+     * @param windowSize number of bytes of the file mapped at a time
+     * @throws IOException when the file cannot be opened
+     */
+    MappedTextNormalizer(File file, long windowSize) throws IOException {
+        this.channel = FileChannel.open(file.toPath(), StandardOpenOption.READ);
+        this.windowSize = windowSize;
+        try {
+            this.length = contentLength(channel);
+        } catch (IOException ioe) {
+            channel.close();
+            throw ioe;
+        }
+        //an empty file has no line, so it is not preceded by a space
+        this.started = channel.size() == 0;
+    }
+
+    /**
+     * Reads up to {@code len} filtered characters, one byte each, into {@code buf}.
+     * @param buf destination
+     * @param off offset in {@code buf} to start writing at
+     * @param len maximum number of bytes to write
+     * @return number of bytes written, or -1 at the end of the file
+     * @throws IOException when the file cannot be mapped
+     */
+    int read(byte[] buf, int off, int len) throws IOException {
+        int count = off;
+        int end = off + len;
+        if (!started && count < end) {
+            started = true;
+            lastWasSpace = true;
+            buf[count++] = ' ';
+        }
+
+        while (count < end) {
+            if (window == null || !window.hasRemaining()) {
+                long nextStart = window == null ? 0 : windowStart + window.capacity();
+                if (nextStart >= length) {
+                    break;
+                }
+                windowStart = nextStart;
+                window = channel.map(FileChannel.MapMode.READ_ONLY, windowStart, Math.min(windowSize, length - windowStart));
+            }
+
+            MappedByteBuffer win = window;
+            int pos = win.position();
+            int limit = win.limit();
+            while (pos < limit && count < end) {
+                byte c = FILTERED[win.get(pos++) & 0xFF];
+                if (c != ' ') {
+                    buf[count++] = c;
+                    lastWasSpace = false;
+                } else if (!lastWasSpace) {
+                    buf[count++] = ' ';
+                    lastWasSpace = true;
+                }
+            }
+            win.position(pos);
+        }//end while
+
+        return count == off && len > 0 ? -1 : count - off;
+    }
+
+    @Override
+    public void close() throws IOException {
+        //bytes of the file filtered so far
+        SearchUtils.getSearchMetrics().addBytesRead(window == null ? 0 : windowStart + window.position());
+        window = null;
+        channel.close();
+    }
+
+    /**
+     * Helper method
+     * Returns the size of the file without the terminator of its last line, as
+     * {@link java.io.BufferedReader#readLine()} does not produce an empty line after it.
+     * @param channel channel of the file
+     * @return the number of bytes to filter
+     * @throws IOException when the file cannot be read
+     */
+    private static long contentLength(FileChannel channel) throws IOException {
+        long size = channel.size();
+        if (size == 0) {
+            return 0;
+        }
+        ByteBuffer tail = ByteBuffer.allocate((int) Math.min(2, size));
+        long tailStart = size - tail.capacity();
+        while (tail.hasRemaining() && channel.read(tail, tailStart + tail.position()) >= 0) {
+            //reads the last bytes of the file
+        }
+
+        int last = tail.capacity() - 1;
+        if (tail.get(last) == '\n') {
+            return last > 0 && tail.get(last - 1) == '\r' ? size - 2 : size - 1;
+        } else if (tail.get(last) == '\r') {
+            return size - 1;
+        }
+        return size;
+    }
+}
@@ -0,0 +1,308 @@
+package target;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.nio.file.attribute.FileTime;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+
+/**
+ * Long-lived per-file summaries of the filtered contents (see {@link SearchUtils#stringFilter(String)}) of text
+ * files, consulted by the String Match and Regular Expression search methods to skip the files that cannot
+ * contain a search term without reading them.
+ * A summary is the exact set of every character, pair and triple of consecutive characters of the filtered
+ * content, held as a bit set over the 37 filtered characters (space, letters and digits): about 6.5KB per file.
+ * A file containing the filtered search term contains each of its characters, pairs and triples, so a file is
+ * only skipped when it has zero matches and search counts are unchanged.
+ * Summaries are built the first time a file is searched and validated against the file's last modified time
+ * and size, like the {@link CorpusCache}. Their total size is bounded by a memory budget, least recently used
+ * summaries are evicted when the budget is exceeded.
+ */
+public final class NgramPrefilter {
+    /**
+     * default memory budget in bytes: a sixteenth of the maximum heap size
+     */
+    public static final long DEFAULT_BUDGET = Runtime.getRuntime().maxMemory() / 16;
+
+    /**
+     * number of distinct filtered characters
+     */
+    private static final int ALPHABET_SIZE = 37;
+    private static final int BIGRAM_OFFSET = ALPHABET_SIZE;
+    private static final int TRIGRAM_OFFSET = BIGRAM_OFFSET + ALPHABET_SIZE * ALPHABET_SIZE;
+    private static final int SUMMARY_BITS = TRIGRAM_OFFSET + ALPHABET_SIZE * ALPHABET_SIZE * ALPHABET_SIZE;
+    /**
+     * number of bytes of a summary
+     */
+    private static final long SUMMARY_BYTES = ((SUMMARY_BITS + 63) / 64) * 8L;
+
+    /**
+     * code of each filtered character, 0 for space and every character that is not an ASCII letter or digit
+     */
+    private static final byte[] CODES = new byte[128];
+
+    static {
+        for (int c = 'a'; c <= 'z'; c++) {
+            CODES[c] = (byte) (c - 'a' + 1);
+        }
+        for (int c = '0'; c <= '9'; c++) {
+            CODES[c] = (byte) (c - '0' + 27);
+        }
+    }
+
+    private volatile boolean enabled = true;
+    /**
+     * maximum number of bytes the summaries may occupy
+     */
+    private long budget;
+    /**
+     * summaries by absolute file path, in access order (least recently used first)
+     */
+    private final LinkedHashMap<String, Entry> entries = new LinkedHashMap<>(16, 0.75f, true);
+
+    public NgramPrefilter() {
+        this(DEFAULT_BUDGET);
+    }
+
+    /**
+     * @param budget maximum number of bytes the summaries may occupy
+     */
+    public NgramPrefilter(long budget) {
+        this.budget = budget;
+    }
+
+    /**
+     * Returns false if {@code file} cannot contain {@code filteredTerm}, summarizing the file when it has no
+     * summary or changed since it was summarized.
+     * @param file text file
+     * @param filteredTerm search term filtered by {@link SearchUtils#stringFilter(String)}
+     * @return false if the file has zero matches of {@code filteredTerm}, true if it may have some or the
+     * prefilter is disabled
+     */
+    public boolean mayContain(File file, String filteredTerm) {
+        if (!enabled) {
+            return true;
+        }
+        long[] summary = summary(file);
+        return summary == null || mayContain(summary, filteredTerm);
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * @param enabled false to search every file, summaries are kept
+     */
+    public void setEnabled(boolean enabled) {
+        this.enabled = enabled;
+    }
+
+    /**
+     * Changes the memory budget, evicting least recently used summaries if it is exceeded.
+     * @param budget maximum number of bytes the summaries may occupy
+     */
+    public synchronized void setBudget(long budget) {
+        this.budget = budget;
+        evict();
+    }
+
+    public synchronized long getBudget() {
+        return budget;
+    }
+
+    /**
+     * @return number of bytes currently occupied by the summaries
+     */
+    public synchronized long getUsedBytes() {
+        return entries.size() * SUMMARY_BYTES;
+    }
+
+    /**
+     * @return number of files currently summarized
+     */
+    public synchronized int size() {
+        return entries.size();
+    }
+
+    /**
+     * Removes every summary.
+     */
+    public synchronized void clear() {
+        entries.clear();
+    }
+
+    /**
+     * Summarizes filtered text.
+     * @param text text filtered by {@link SearchUtils#stringFilter(String)}
+     * @return the set of characters, pairs and triples of consecutive characters of {@code text}
+     */
+    static long[] summarize(CharSequence text) {
+        Summarizer summarizer = new Summarizer();
+        for (int idx = 0; idx < text.length(); idx++) {
+            summarizer.add(text.charAt(idx));
+        }
+        return summarizer.bits;
+    }
+
+    /**
+     * @param summary summary of a filtered text
+     * @param filteredTerm search term filtered by {@link SearchUtils#stringFilter(String)}
+     * @return false if the summarized text does not contain {@code filteredTerm}
+     */
+    static boolean mayContain(long[] summary, String filteredTerm) {
+        int prev2 = 0;
+        int prev1 = 0;
+        for (int idx = 0; idx < filteredTerm.length(); idx++) {
+            int code = code(filteredTerm.charAt(idx));
+            int bit = code;
+            if (idx >= 2) {
+                bit = TRIGRAM_OFFSET + (prev2 * ALPHABET_SIZE + prev1) * ALPHABET_SIZE + code;
+            } else if (idx == 1) {
+                bit = BIGRAM_OFFSET + prev1 * ALPHABET_SIZE + code;
+            }
+            if ((summary[bit >>> 6] & (1L << bit)) == 0) {
+                return false;
+            }
+            prev2 = prev1;
+            prev1 = code;
+        }
+        return true;
+    }
+
+    /**
+     * Helper method
+     * Returns the summary of {@code file}, summarizing it when it has no summary or changed since it was summarized.
+     * @param file text file
+     * @return the summary of the file, or null when the file cannot be read
+     */
+    private long[] summary(File file) {
+        String key = file.getAbsolutePath();
+        BasicFileAttributes attrs;
+        try {
+            attrs = Files.readAttributes(file.toPath(), BasicFileAttributes.class);
+        } catch (IOException ioe) {
+            synchronized (this) {
+                entries.remove(key);
+            }
+            //let the search report the error
+            return null;
+        }
+
+        synchronized (this) {
+            Entry entry = entries.get(key);
+            if (entry != null && entry.matches(attrs)) {
+                return entry.summary;
+            }
+        }
+
+        //the search reads the file right after, from the corpus cache when it fits
+        long[] summary;
+        String text;
+        try {
+            text = SearchUtils.getCorpusCache().read(file);
+        } catch (IOException ioe) {
+            //not summarized as an empty file, so the file is still searched until it can be read
+            return null;
+        }
+        if (text != null) {
+            summary = summarize(text);
+        } else {
+            try {
+                summary = summarize(file);
+            } catch (IOException ioe) {
+                return null;
+            }
+        }
+
+        synchronized (this) {
+            entries.put(key, new Entry(attrs.lastModifiedTime(), attrs.size(), summary));
+            evict();
+        }
+        return summary;
+    }
+
+    /**
+     * Helper method
+     * Summarizes a file too large for the {@link CorpusCache}, streaming it through {@link MappedTextNormalizer}.
+     * @param file text file
+     * @return the summary of the filtered content of the file
+     * @throws IOException when the file cannot be read
+     */
+    private static long[] summarize(File file) throws IOException {
+        Summarizer summarizer = new Summarizer();
+        try (MappedTextNormalizer normalizer = new MappedTextNormalizer(file)) {
+            byte[] buf = new byte[MappedStringMatcher.DEFAULT_BUFFER_SIZE];
+            int read;
+            while ((read = normalizer.read(buf, 0, buf.length)) != -1) {
+                for (int idx = 0; idx < read; idx++) {
+                    summarizer.add((char) buf[idx]);
+                }
+            }
+        }
+        return summarizer.bits;
+    }
+
+    /**
+     * Helper method
+     * Evicts least recently used summaries until the budget is met. Caller must hold the lock.
+     */
+    private void evict() {
+        Iterator<Entry> itr = entries.values().iterator();
+        while (entries.size() * SUMMARY_BYTES > budget && itr.hasNext()) {
+            itr.next();
+            itr.remove();
+        }
+    }
+
+    private static int code(char c) {
+        return c < CODES.length ? CODES[c] : 0;
+    }
+
+    /**
+     * Sets the bits of every character, pair and triple of consecutive characters added
+     */
+    private static final class Summarizer {
+        private final long[] bits = new long[(int) (SUMMARY_BYTES / 8)];
+        private int prev2 = -1;
+        private int prev1 = -1;
+
+        private void add(char c) {
+            int code = code(c);
+            set(code);
+            if (prev1 >= 0) {
+                set(BIGRAM_OFFSET + prev1 * ALPHABET_SIZE + code);
+                if (prev2 >= 0) {
+                    set(TRIGRAM_OFFSET + (prev2 * ALPHABET_SIZE + prev1) * ALPHABET_SIZE + code);
+                }
+            }
+            prev2 = prev1;
+            prev1 = code;
+        }
+
+        private void set(int bit) {
+            bits[bit >>> 6] |= 1L << bit;
+        }
+    }
+
+    /**
+     * Summary of a file along with the attributes it was read with
+     */
+    private static final class Entry {
+        private final FileTime modified;
+        private final long fileSize;
+        private final long[] summary;
+
+        private Entry(FileTime modified, long fileSize, long[] summary) {
+            this.modified = modified;
+            this.fileSize = fileSize;
+            this.summary = summary;
+        }
+
+        private boolean matches(BasicFileAttributes attrs) {
+            return modified.equals(attrs.lastModifiedTime()) && fileSize == attrs.size();
+        }
+    }
+}
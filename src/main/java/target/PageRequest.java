@@ -0,0 +1,67 @@
+package target;
+
+/**
+ * Page of search results requested from the search methods: the {@code limit} files ranked first after skipping
+ * {@code offset} files, ranked by descending search count then ascending file name. Files with zero matches are
+ * left out unless {@code includeZeroMatches}. Only the files of the page are kept while searching, see
+ * {@link SearchResult}.
+ */
+public final class PageRequest {
+    /**
+     * every file, including the files with zero matches, as returned by the search methods returning a map
+     */
+    public static final PageRequest ALL = new PageRequest(0, Integer.MAX_VALUE, true);
+
+    private final int offset;
+    private final int limit;
+    private final boolean includeZeroMatches;
+
+    /**
+     * @param offset number of files ranked before the page
+     * @param limit maximum number of files of the page
+     * @param includeZeroMatches whether files with zero matches are ranked (last)
+     */
+    public PageRequest(int offset, int limit, boolean includeZeroMatches) {
+        if (offset < 0) {
+            throw new IllegalArgumentException("Offset must not be negative: " + offset);
+        }
+        if (limit < 1) {
+            throw new IllegalArgumentException("Limit must be at least 1: " + limit);
+        }
+        this.offset = offset;
+        this.limit = limit;
+        this.includeZeroMatches = includeZeroMatches;
+    }
+
+    /**
+     * @param limit maximum number of files
+     * @return the first {@code limit} files with at least one match
+     */
+    public static PageRequest top(int limit) {
+        return new PageRequest(0, limit, false);
+    }
+
+    /**
+     * @return the page following this one
+     */
+    public PageRequest next() {
+        return new PageRequest((int) Math.min((long) offset + limit, Integer.MAX_VALUE), limit, includeZeroMatches);
+    }
+
+    public int getOffset() {
+        return offset;
+    }
+
+    public int getLimit() {
+        return limit;
+    }
+
+    public boolean isIncludeZeroMatches() {
+        return includeZeroMatches;
+    }
+
+    @Override
+    public String toString() {
+        return "offset: " + offset + ", limit: " + limit + ", zero matches: " + includeZeroMatches;
+    }
+}
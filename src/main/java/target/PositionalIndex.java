@@ -0,0 +1,597 @@
+package target;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Positional inverted index over the words of the text files filtered by {@link SearchUtils#stringFilter(String)},
+ * counting whole word and phrase matches without Lucene's analyzer, query and term vector overhead.
+ * Counts follow {@link SearchUtils#regexSearch(String, String)}: matches are whole words, do not overlap and
+ * are counted from left to right.
+ * <p>
+ * The index lives in a single buffer laid out as the file it is persisted to, so an index loaded with
+ * {@link #load(File)} is memory-mapped and read in place. The term dictionary is a sorted array of term
+ * bytes with an open addressing hash table of term ids. The posting list of each term holds, for every
+ * file containing it, the file id delta, the term frequency, the byte length of the positions and the
+ * position deltas, all as variable length integers.
+ */
+public final class PositionalIndex {
+    private static final int MAGIC = 0x50495831;
+    private static final int VERSION = 1;
+    /**
+     * last modified time recorded for a file that could not be read, never current
+     */
+    private static final long UNREADABLE = Long.MIN_VALUE;
+
+    private final ByteBuffer buffer;
+    private final String[] filenames;
+    /**
+     * number of words in each file
+     */
+    private final int[] wordCounts;
+    private final long[] modified;
+    private final long[] sizes;
+    private final int termCount;
+    /**
+     * offsets of the dictionary sections in {@code buffer}
+     */
+    private final int termOffsetsStart;
+    private final int postingsOffsetsStart;
+    private final int slotCount;
+    private final int slotsStart;
+    private final int termBytesStart;
+    private final int postingsStart;
+
+    /**
+     * @param buffer index laid out as written by {@link #write(File)}
+     */
+    private PositionalIndex(ByteBuffer buffer) {
+        this.buffer = buffer;
+        int pos = 0;
+        if (buffer.getInt(pos) != MAGIC || buffer.getInt(pos + 4) != VERSION) {
+            throw new IllegalArgumentException("Not a positional index of version " + VERSION);
+        }
+        pos += 8;
+
+        int fileCount = buffer.getInt(pos);
+        pos += 4;
+        filenames = new String[fileCount];
+        wordCounts = new int[fileCount];
+        modified = new long[fileCount];
+        sizes = new long[fileCount];
+        for (int fileId = 0; fileId < fileCount; fileId++) {
+            byte[] name = new byte[buffer.getInt(pos)];
+            pos += 4;
+            for (int idx = 0; idx < name.length; idx++) {
+                name[idx] = buffer.get(pos++);
+            }
+            filenames[fileId] = new String(name, StandardCharsets.UTF_8);
+            wordCounts[fileId] = buffer.getInt(pos);
+            modified[fileId] = buffer.getLong(pos + 4);
+            sizes[fileId] = buffer.getLong(pos + 12);
+            pos += 20;
+        }
+
+        termCount = buffer.getInt(pos);
+        pos += 4;
+        termOffsetsStart = pos;
+        pos += (termCount + 1) * 4;
+        postingsOffsetsStart = pos;
+        pos += (termCount + 1) * 4;
+        slotCount = buffer.getInt(pos);
+        pos += 4;
+        slotsStart = pos;
+        pos += slotCount * 4;
+        termBytesStart = pos;
+        pos += termOffset(termCount);
+        postingsStart = pos;
+    }
+
+    /**
+     * Builds the index over the text files found in {@code resPath}. A file that cannot be read is indexed as
+     * empty and the index is never current (see {@link #isCurrent(String)}), so it is rebuilt once the file is read.
+     * @param resPath directory containing the text files
+     * @return the index, held in heap
+     */
+    public static PositionalIndex build(String resPath) {
+        List<File> files = SearchUtils.getCorpusCache().listTextFiles(resPath);
+        Map<String, TermPostings> postingsByTerm = new HashMap<>();
+        int[] wordCounts = new int[files.size()];
+        long[] modified = new long[files.size()];
+        long[] sizes = new long[files.size()];
+
+        for (int fileId = 0; fileId < files.size(); fileId++) {
+            File file = files.get(fileId);
+            //read before the content so a change made while building makes the index stale
+            modified[fileId] = file.lastModified();
+            sizes[fileId] = file.length();
+
+            //positions of each word in the file
+            Map<String, IntList> positionsByTerm = new HashMap<>();
+            int position = 0;
+            String content = SearchUtils.tryGetFileContent(file);
+            if (content == null) {
+                //indexed as empty until the file can be read, the index stays stale meanwhile
+                modified[fileId] = UNREADABLE;
+                content = "";
+            }
+            for (String word : content.split(" ")) {
+                if (word.isEmpty()) {
+                    continue;
+                }
+                IntList positions = positionsByTerm.get(word);
+                if (positions == null) {
+                    positions = new IntList();
+                    positionsByTerm.put(word, positions);
+                }
+                positions.add(position++);
+            }
+            wordCounts[fileId] = position;
+
+            for (Map.Entry<String, IntList> entry : positionsByTerm.entrySet()) {
+                TermPostings postings = postingsByTerm.get(entry.getKey());
+                if (postings == null) {
+                    postings = new TermPostings();
+                    postingsByTerm.put(entry.getKey(), postings);
+                }
+                postings.add(fileId, entry.getValue());
+            }
+        }//end for
+
+        List<String> terms = new ArrayList<>(postingsByTerm.keySet());
+        Collections.sort(terms);
+        ByteArrayBuilder out = new ByteArrayBuilder();
+        out.writeInt(MAGIC);
+        out.writeInt(VERSION);
+        out.writeInt(files.size());
+        for (int fileId = 0; fileId < files.size(); fileId++) {
+            byte[] name = files.get(fileId).getName().getBytes(StandardCharsets.UTF_8);
+            out.writeInt(name.length);
+            out.write(name, 0, name.length);
+            out.writeInt(wordCounts[fileId]);
+            out.writeLong(modified[fileId]);
+            out.writeLong(sizes[fileId]);
+        }
+
+        out.writeInt(terms.size());
+        int termOffset = 0;
+        for (String term : terms) {
+            out.writeInt(termOffset);
+            termOffset += term.length();
+        }
+        out.writeInt(termOffset);
+        int postingsOffset = 0;
+        for (String term : terms) {
+            out.writeInt(postingsOffset);
+            postingsOffset += postingsByTerm.get(term).bytes.size;
+        }
+        out.writeInt(postingsOffset);
+
+        int[] slots = new int[Math.max(2, Integer.highestOneBit(Math.max(1, terms.size())) * 4)];
+        for (int termId = 0; termId < terms.size(); termId++) {
+            byte[] term = terms.get(termId).getBytes(StandardCharsets.US_ASCII);
+            int slot = hash(term, 0, term.length) & (slots.length - 1);
+            while (slots[slot] != 0) {
+                slot = (slot + 1) & (slots.length - 1);
+            }
+            slots[slot] = termId + 1;
+        }
+        out.writeInt(slots.length);
+        for (int slot : slots) {
+            out.writeInt(slot);
+        }
+
+        for (String term : terms) {
+            byte[] bytes = term.getBytes(StandardCharsets.US_ASCII);
+            out.write(bytes, 0, bytes.length);
+        }
+        for (String term : terms) {
+            ByteArrayBuilder bytes = postingsByTerm.get(term).bytes;
+            out.write(bytes.bytes, 0, bytes.size);
+        }
+
+        return new PositionalIndex(ByteBuffer.wrap(out.bytes, 0, out.size).slice());
+    }
+
+    /**
+     * Memory-maps an index written by {@link #write(File)}.
+     * @param indexFile file containing the index
+     * @return the index, read in place from the mapped file
+     * @throws IOException when the file cannot be mapped or is not an index
+     */
+    public static PositionalIndex load(File indexFile) throws IOException {
+        try (FileChannel channel = FileChannel.open(indexFile.toPath(), StandardOpenOption.READ)) {
+            try {
+                return new PositionalIndex(channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()));
+            } catch (IllegalArgumentException | IndexOutOfBoundsException e) {
+                throw new IOException("Invalid positional index file: " + indexFile, e);
+            }
+        }
+    }
+
+    /**
+     * Writes the index to {@code indexFile}, replacing it.
+     * @param indexFile file to contain the index
+     * @throws IOException when the file cannot be written
+     */
+    public void write(File indexFile) throws IOException {
+        File parent = indexFile.getAbsoluteFile().getParentFile();
+        if (parent != null && !parent.isDirectory() && !parent.mkdirs()) {
+            throw new IOException("Cannot create directory: " + parent);
+        }
+        ByteBuffer content = buffer.duplicate();
+        content.clear();
+        try (OutputStream out = new FileOutputStream(indexFile)) {
+            byte[] chunk = new byte[64 * 1024];
+            while (content.hasRemaining()) {
+                int len = Math.min(chunk.length, content.remaining());
+                content.get(chunk, 0, len);
+                out.write(chunk, 0, len);
+            }
+        }
+    }
+
+    /**
+     * @param resPath directory containing the text files
+     * @return true if the index was built from the text files currently found in {@code resPath}
+     */
+    public boolean isCurrent(String resPath) {
+        List<File> files = SearchUtils.getCorpusCache().listTextFiles(resPath);
+        if (files.size() != filenames.length) {
+            return false;
+        }
+        for (int fileId = 0; fileId < filenames.length; fileId++) {
+            File file = files.get(fileId);
+            if (!file.getName().equals(filenames[fileId]) || file.lastModified() != modified[fileId]
+                    || file.length() != sizes[fileId]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * @return names of the files indexed, the index of a name is its file id
+     */
+    public List<String> getFilenames() {
+        return Collections.unmodifiableList(Arrays.asList(filenames));
+    }
+
+    /**
+     * Counts the whole word matches of {@code filteredTerm} in every file indexed.
+     * A leading (trailing) space in the term only matches words preceded (followed) by another word,
+     * as {@code \b} does in {@link SearchUtils#regexSearch(String, String)}.
+     * @param filteredTerm search term filtered by {@link SearchUtils#stringFilter(String)}
+     * @return the number of matches in each file, indexed by file id
+     */
+    public int[] count(String filteredTerm) {
+        int[] counts = new int[filenames.length];
+        boolean leadingSpace = filteredTerm.startsWith(" ");
+        boolean trailingSpace = filteredTerm.endsWith(" ");
+        String core = filteredTerm.trim();
+
+        if (core.isEmpty()) {
+            //a single space matches between every two consecutive words
+            if (leadingSpace) {
+                for (int fileId = 0; fileId < counts.length; fileId++) {
+                    counts[fileId] = Math.max(0, wordCounts[fileId] - 1);
+                }
+            }
+            return counts;
+        }
+
+        String[] words = core.split(" ");
+        //each distinct word is decoded once, repeated words share its positions
+        int[] wordTerms = new int[words.length];
+        int[] distinctTerms = new int[words.length];
+        int distinctCount = 0;
+        for (int idx = 0; idx < words.length; idx++) {
+            int termId = termId(words[idx]);
+            if (termId == -1) {
+                return counts;
+            }
+            int distinctIdx = 0;
+            while (distinctIdx < distinctCount && distinctTerms[distinctIdx] != termId) {
+                distinctIdx++;
+            }
+            if (distinctIdx == distinctCount) {
+                distinctTerms[distinctCount++] = termId;
+            }
+            wordTerms[idx] = distinctIdx;
+        }
+
+        PostingsReader[] readers = new PostingsReader[distinctCount];
+        for (int idx = 0; idx < distinctCount; idx++) {
+            readers[idx] = new PostingsReader(distinctTerms[idx]);
+        }
+        int[][] positions = new int[words.length][];
+
+        int fileId = nextCommonFile(readers, readers[0].nextFile());
+        while (fileId != -1) {
+            for (int idx = 0; idx < words.length; idx++) {
+                positions[idx] = readers[wordTerms[idx]].positions();
+            }
+            counts[fileId] = countPhrase(positions, readers, wordTerms, wordCounts[fileId], leadingSpace, trailingSpace);
+            fileId = nextCommonFile(readers, readers[0].nextFile());
+        }
+        return counts;
+    }
+
+    /**
+     * Helper method
+     * Counts the non-overlapping occurrences of consecutive words in a file, from left to right.
+     * Matches are compared by character order: the space before word {@code p} is ordered {@code 2p}
+     * and word {@code p} itself {@code 2p + 1}.
+     * @param positions sorted positions of each word of the phrase
+     * @param readers postings of each distinct word, giving the number of positions
+     * @param wordTerms index in {@code readers} of each word of the phrase
+     * @param wordCount number of words in the file
+     * @param leadingSpace true if the phrase starts with a space
+     * @param trailingSpace true if the phrase ends with a space
+     * @return the number of matches
+     */
+    private static int countPhrase(int[][] positions, PostingsReader[] readers, int[] wordTerms, int wordCount,
+                                   boolean leadingSpace, boolean trailingSpace) {
+        int phraseLength = positions.length;
+        int[] cursors = new int[phraseLength];
+        int count = 0;
+        long lastEnd = -1;
+
+        int[] firstPositions = positions[0];
+        int firstCount = readers[wordTerms[0]].freq;
+        for (int idx = 0; idx < firstCount; idx++) {
+            int start = firstPositions[idx];
+            boolean matches = (!leadingSpace || start > 0) && (!trailingSpace || start + phraseLength < wordCount);
+            //every following word must be at the next position, cursors only move forward as start grows
+            for (int word = 1; word < phraseLength && matches; word++) {
+                int[] wordPositions = positions[word];
+                int wordFreq = readers[wordTerms[word]].freq;
+                int target = start + word;
+                int cursor = cursors[word];
+                while (cursor < wordFreq && wordPositions[cursor] < target) {
+                    cursor++;
+                }
+                cursors[word] = cursor;
+                matches = cursor < wordFreq && wordPositions[cursor] == target;
+            }
+
+            long matchStart = leadingSpace ? 2L * start : 2L * start + 1;
+            if (matches && matchStart > lastEnd) {
+                count++;
+                int last = start + phraseLength - 1;
+                lastEnd = trailingSpace ? 2L * (last + 1) : 2L * last + 1;
+            }
+        }
+        return count;
+    }
+
+    /**
+     * Helper method
+     * @return the file id all readers are positioned at, at or after {@code target}, or -1 when exhausted
+     */
+    private static int nextCommonFile(PostingsReader[] readers, int target) {
+        int idx = 1;
+        while (target != -1 && idx < readers.length) {
+            int fileId = readers[idx].advance(target);
+            if (fileId == -1 || fileId > target) {
+                target = fileId == -1 ? -1 : readers[0].advance(fileId);
+                idx = 1;
+            } else {
+                idx++;
+            }
+        }
+        return target;
+    }
+
+    /**
+     * Helper method
+     * @param word word filtered by {@link SearchUtils#stringFilter(String)}
+     * @return the term id of {@code word}, or -1 if it is not indexed
+     */
+    private int termId(String word) {
+        byte[] bytes = word.getBytes(StandardCharsets.US_ASCII);
+        int mask = slotCount - 1;
+        for (int slot = hash(bytes, 0, bytes.length) & mask; ; slot = (slot + 1) & mask) {
+            int termId = buffer.getInt(slotsStart + slot * 4) - 1;
+            if (termId == -1) {
+                return -1;
+            }
+            int start = termOffset(termId);
+            if (termOffset(termId + 1) - start == bytes.length && termEquals(start, bytes)) {
+                return termId;
+            }
+        }
+    }
+
+    private boolean termEquals(int start, byte[] bytes) {
+        for (int idx = 0; idx < bytes.length; idx++) {
+            if (buffer.get(termBytesStart + start + idx) != bytes[idx]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private int termOffset(int termId) {
+        return buffer.getInt(termOffsetsStart + termId * 4);
+    }
+
+    private int postingsOffset(int termId) {
+        return buffer.getInt(postingsOffsetsStart + termId * 4);
+    }
+
+    private static int hash(byte[] bytes, int off, int len) {
+        int h = 0x811C9DC5;
+        for (int idx = off; idx < off + len; idx++) {
+            h = (h ^ bytes[idx]) * 0x01000193;
+        }
+        return h ^ (h >>> 16);
+    }
+
+    /**
+     * Decodes the posting list of a term, one file at a time.
+     */
+    private final class PostingsReader {
+        private int pos;
+        private final int end;
+        private int fileId = -1;
+        private boolean exhausted;
+        private int freq;
+        private int positionsStart;
+        private int positionsEnd;
+        private int[] positions = new int[16];
+
+        private PostingsReader(int termId) {
+            pos = postingsStart + postingsOffset(termId);
+            end = postingsStart + postingsOffset(termId + 1);
+        }
+
+        /**
+         * @return the next file containing the term, or -1 when exhausted
+         */
+        private int nextFile() {
+            if (pos >= end) {
+                exhausted = true;
+                return -1;
+            }
+            fileId += readVInt();
+            freq = readVInt();
+            int length = readVInt();
+            positionsStart = pos;
+            positionsEnd = pos + length;
+            //positions are only decoded when requested
+            pos = positionsEnd;
+            return fileId;
+        }
+
+        /**
+         * @return the first file at or after {@code target} containing the term, or -1 when exhausted
+         */
+        private int advance(int target) {
+            while (!exhausted && fileId < target) {
+                nextFile();
+            }
+            return exhausted ? -1 : fileId;
+        }
+
+        /**
+         * @return the positions of the term in the current file, the first {@link #freq} are valid
+         */
+        private int[] positions() {
+            if (positions.length < freq) {
+                positions = new int[Math.max(freq, positions.length * 2)];
+            }
+            int savedPos = pos;
+            pos = positionsStart;
+            int position = 0;
+            for (int idx = 0; idx < freq; idx++) {
+                position += readVInt();
+                positions[idx] = position;
+            }
+            pos = savedPos;
+            return positions;
+        }
+
+        private int readVInt() {
+            byte b = buffer.get(pos++);
+            int value = b & 0x7F;
+            for (int shift = 7; b < 0; shift += 7) {
+                b = buffer.get(pos++);
+                value |= (b & 0x7F) << shift;
+            }
+            return value;
+        }
+    }
+
+    /**
+     * Posting list of a term being built.
+     */
+    private static final class TermPostings {
+        private final ByteArrayBuilder bytes = new ByteArrayBuilder();
+        private final ByteArrayBuilder positionBytes = new ByteArrayBuilder();
+        private int lastFileId = -1;
+
+        private void add(int fileId, IntList positions) {
+            positionBytes.size = 0;
+            int lastPosition = 0;
+            for (int idx = 0; idx < positions.size; idx++) {
+                positionBytes.writeVInt(positions.values[idx] - lastPosition);
+                lastPosition = positions.values[idx];
+            }
+            bytes.writeVInt(fileId - lastFileId);
+            bytes.writeVInt(positions.size);
+            bytes.writeVInt(positionBytes.size);
+            bytes.write(positionBytes.bytes, 0, positionBytes.size);
+            lastFileId = fileId;
+        }
+    }
+
+    /**
+     * Growable array of primitive ints.
+     */
+    private static final class IntList {
+        private int[] values = new int[4];
+        private int size;
+
+        private void add(int value) {
+            if (size == values.length) {
+                values = Arrays.copyOf(values, size * 2);
+            }
+            values[size++] = value;
+        }
+    }
+
+    /**
+     * Growable big-endian byte array, laid out as {@link ByteBuffer} reads it.
+     */
+    private static final class ByteArrayBuilder {
+        private byte[] bytes = new byte[64];
+        private int size;
+
+        private void ensure(int extra) {
+            if (size + extra > bytes.length) {
+                bytes = Arrays.copyOf(bytes, Math.max(size + extra, bytes.length * 2));
+            }
+        }
+
+        private void write(byte[] src, int off, int len) {
+            ensure(len);
+            System.arraycopy(src, off, bytes, size, len);
+            size += len;
+        }
+
+        private void writeInt(int value) {
+            ensure(4);
+            bytes[size++] = (byte) (value >>> 24);
+            bytes[size++] = (byte) (value >>> 16);
+            bytes[size++] = (byte) (value >>> 8);
+            bytes[size++] = (byte) value;
+        }
+
+        private void writeLong(long value) {
+            writeInt((int) (value >>> 32));
+            writeInt((int) value);
+        }
+
+        private void writeVInt(int value) {
+            ensure(5);
+            while ((value & ~0x7F) != 0) {
+                bytes[size++] = (byte) ((value & 0x7F) | 0x80);
+                value >>>= 7;
+            }
+            bytes[size++] = (byte) value;
+        }
+    }
+}
@@ -0,0 +1,253 @@
+package target;
+
+import java.io.IOException;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Compiled whole word pattern of a filtered search term (see {@link SearchUtils#stringFilter(String)}) used by
+ * {@link SearchUtils#regexSearch(String, String)}. The term is quoted, so it is always matched literally, and
+ * compiled patterns are shared by every search of the same term through a bounded cache.
+ * Since every match contains the term, the text is first scanned for the term itself: text without it is skipped
+ * and the matcher only starts at candidate positions.
+ */
+public final class RegexPattern {
+    /**
+     * Matching engine used to count matches
+     */
+    public enum Engine {
+        /**
+         * java.util.regex matcher started at each candidate found by the literal scan
+         */
+        BACKTRACKING,
+        /**
+         * Knuth-Morris-Pratt automaton checking word boundaries at each match, linear in the length of the text
+         * whatever the input
+         */
+        LINEAR
+    }
+
+    /**
+     * maximum number of compiled patterns cached
+     */
+    private static final int MAX_CACHED_PATTERNS = 1024;
+
+    /**
+     * compiled patterns by filtered search term, in access order (least recently used first)
+     */
+    private static final LinkedHashMap<String, RegexPattern> patterns = new LinkedHashMap<>(16, 0.75f, true);
+
+    private static volatile Engine engine = Engine.BACKTRACKING;
+
+    private final String literal;
+    private final Pattern pattern;
+    /**
+     * Knuth-Morris-Pratt failure function of {@link #literal}
+     */
+    private final int[] failures;
+
+    private RegexPattern(String filteredTerm) {
+        this.literal = filteredTerm;
+        this.pattern = Pattern.compile("\\b" + Pattern.quote(filteredTerm) + "\\b");
+        this.failures = new int[filteredTerm.length()];
+        for (int idx = 1, state = 0; idx < filteredTerm.length(); idx++) {
+            while (state > 0 && filteredTerm.charAt(idx) != filteredTerm.charAt(state)) {
+                state = failures[state - 1];
+            }
+            if (filteredTerm.charAt(idx) == filteredTerm.charAt(state)) {
+                state++;
+            }
+            failures[idx] = state;
+        }
+    }
+
+    /**
+     * Returns the compiled pattern of {@code filteredTerm}, compiling it only when it is not cached.
+     * @param filteredTerm non empty search term filtered by {@link SearchUtils#stringFilter(String)}
+     * @return the compiled pattern
+     */
+    public static RegexPattern compile(String filteredTerm) {
+        synchronized (patterns) {
+            RegexPattern regexPattern = patterns.get(filteredTerm);
+            if (regexPattern == null) {
+                regexPattern = new RegexPattern(filteredTerm);
+                patterns.put(filteredTerm, regexPattern);
+                //evicts the least recently used pattern
+                Iterator<RegexPattern> itr = patterns.values().iterator();
+                while (patterns.size() > MAX_CACHED_PATTERNS && itr.hasNext()) {
+                    itr.next();
+                    itr.remove();
+                }
+            }
+            return regexPattern;
+        }
+    }
+
+    /**
+     * Changes the engine used by every pattern to count matches.
+     * @param engine matching engine
+     */
+    public static void setEngine(Engine engine) {
+        if (engine == null) {
+            throw new IllegalArgumentException("Engine cannot be null");
+        }
+        RegexPattern.engine = engine;
+    }
+
+    public static Engine getEngine() {
+        return engine;
+    }
+
+    /**
+     * @return the literal every match contains
+     */
+    public String getLiteral() {
+        return literal;
+    }
+
+    /**
+     * Counts the non-overlapping whole word matches in {@code text}.
+     * @param text filtered text
+     * @return the number of matches
+     */
+    public int count(CharSequence text) {
+        String str = text.toString();
+        //text without the literal cannot match
+        int from = str.indexOf(literal);
+        if (from == -1) {
+            return 0;
+        }
+        return engine == Engine.LINEAR ? countLinear(str, from) : countBacktracking(str, from);
+    }
+
+    /**
+     * Counts the non-overlapping whole word matches in the filtered characters read from {@code normalizer},
+     * feeding them through the Knuth-Morris-Pratt automaton of the literal as they are read, so only
+     * {@code buf} and the last {@code literal.length()} characters are held whatever the length of the file.
+     * Both engines count the same matches, so the count is the one of {@link #count(CharSequence)} over the
+     * whole text.
+     * @param normalizer source of the filtered characters
+     * @param buf read buffer
+     * @return the number of matches
+     * @throws IOException when the file cannot be read
+     */
+    int count(MappedTextNormalizer normalizer, byte[] buf) throws IOException {
+        int searchCount = 0;
+        int length = literal.length();
+        boolean wordFirst = isWordChar(literal.charAt(0));
+        boolean wordLast = isWordChar(literal.charAt(length - 1));
+        //whether each of the last length characters is a word character, by position modulo length
+        boolean[] recentWords = new boolean[length];
+        long pos = 0;
+        int state = 0;
+        //an occurrence ended on the previous character, counted once the character after it is known
+        boolean pending = false;
+        int read;
+        while ((read = normalizer.read(buf, 0, buf.length)) != -1) {
+            for (int idx = 0; idx < read; idx++, pos++) {
+                char ch = (char) buf[idx];
+                boolean word = isWordChar(ch);
+                if (pending) {
+                    pending = false;
+                    if (wordLast != word) {
+                        searchCount++;
+                        //matches do not overlap
+                        state = 0;
+                    } else {
+                        state = failures[length - 1];
+                    }
+                }
+                while (state > 0 && ch != literal.charAt(state)) {
+                    state = failures[state - 1];
+                }
+                if (ch == literal.charAt(state)) {
+                    state++;
+                }
+                int slot = (int) (pos % length);
+                //character before the occurrence ending here, if any
+                boolean wordBefore = pos >= length && recentWords[slot];
+                recentWords[slot] = word;
+                if (state == length) {
+                    if (wordBefore != wordFirst) {
+                        pending = true;
+                    } else {
+                        state = failures[state - 1];
+                    }
+                }
+            }
+        }//end while
+        if (pending && wordLast) {
+            searchCount++;
+        }
+        return searchCount;
+    }
+
+    /**
+     * Helper method
+     * Runs the matcher from each candidate position found by the literal scan.
+     * @param text filtered text
+     * @param from first occurrence of the literal
+     * @return the number of matches
+     */
+    private int countBacktracking(String text, int from) {
+        int searchCount = 0;
+        Matcher matcher = pattern.matcher(text);
+        while (from != -1 && matcher.find(from)) {
+            searchCount++;
+            from = text.indexOf(literal, matcher.end());
+        }
+        return searchCount;
+    }
+
+    /**
+     * Helper method
+     * Feeds every character from {@code from} through the Knuth-Morris-Pratt automaton of the literal once,
+     * counting occurrences bounded by word boundaries on both ends.
+     * @param text filtered text
+     * @param from first occurrence of the literal
+     * @return the number of matches
+     */
+    private int countLinear(String text, int from) {
+        int searchCount = 0;
+        int length = literal.length();
+        int state = 0;
+        for (int idx = from; idx < text.length(); idx++) {
+            char ch = text.charAt(idx);
+            while (state > 0 && ch != literal.charAt(state)) {
+                state = failures[state - 1];
+            }
+            if (ch == literal.charAt(state)) {
+                state++;
+            }
+            if (state == length) {
+                int start = idx - length + 1;
+                if (isBoundary(text, start) && isBoundary(text, idx + 1)) {
+                    searchCount++;
+                    //matches do not overlap
+                    state = 0;
+                } else {
+                    state = failures[state - 1];
+                }
+            }
+        }//end for
+        return searchCount;
+    }
+
+    /**
+     * Helper method
+     * @param text filtered text
+     * @param idx position between two characters of {@code text}
+     * @return whether {@code idx} is a word boundary, as matched by \b
+     */
+    private static boolean isBoundary(String text, int idx) {
+        boolean wordBefore = idx > 0 && isWordChar(text.charAt(idx - 1));
+        boolean wordAfter = idx < text.length() && isWordChar(text.charAt(idx));
+        return wordBefore != wordAfter;
+    }
+
+    private static boolean isWordChar(char ch) {
+        return Character.isLetterOrDigit(ch) || ch == '_';
+    }
+}
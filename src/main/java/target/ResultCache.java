@@ -0,0 +1,236 @@
+package target;
+
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Bounded cache of search results, keyed by search method, searched corpus or index and filtered search term.
+ * Every result is stored along with the version of the corpus or index it was computed from and is only
+ * returned while that version is current, so results are invalidated as soon as files change.
+ * Results of the search methods returning a map are cached sorted, results of paged searches as compact unsorted
+ * {@link FileCounts} from which each page is selected; a sorted result is also returned as counts to paged searches.
+ * Least recently used results are evicted once the maximum number of results is reached.
+ */
+public final class ResultCache {
+    /**
+     * default maximum number of results cached
+     */
+    public static final int DEFAULT_MAX_ENTRIES = 4096;
+
+    private int maxEntries;
+    /**
+     * cached results in access order (least recently used first)
+     */
+    private final LinkedHashMap<String, Entry> entries = new LinkedHashMap<>(16, 0.75f, true);
+
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private final AtomicLong evictions = new AtomicLong();
+
+    public ResultCache() {
+        this(DEFAULT_MAX_ENTRIES);
+    }
+
+    /**
+     * @param maxEntries maximum number of results cached
+     */
+    public ResultCache(int maxEntries) {
+        this.maxEntries = maxEntries;
+    }
+
+    /**
+     * Returns the result cached for the search, if computed from the current {@code version}.
+     * @param method search method
+     * @param source directory searched
+     * @param filteredTerm search term filtered by {@link SearchUtils#stringFilter(String)}
+     * @param qualifier other input the result depends on, compared with equals, null for none
+     * @param version current version of the corpus or index searched
+     * @return the cached result, or null on a miss
+     */
+    public Map<String, Integer> get(String method, String source, String filteredTerm, Object qualifier, long version) {
+        Entry entry = current(method, source, filteredTerm, qualifier, version);
+        if (entry != null && entry.result != null) {
+            hits.incrementAndGet();
+            return entry.result;
+        }
+        //counts cached by a paged search are not sorted
+        misses.incrementAndGet();
+        return null;
+    }
+
+    /**
+     * Returns the counts cached for the search, if computed from the current {@code version}, see
+     * {@link #get(String, String, String, Object, long)}. A sorted result is converted to counts once.
+     * @param method search method
+     * @param source directory searched
+     * @param filteredTerm search term filtered by {@link SearchUtils#stringFilter(String)}
+     * @param qualifier other input the result depends on, compared with equals, null for none
+     * @param version current version of the corpus or index searched
+     * @return the cached counts, or null on a miss
+     */
+    FileCounts getCounts(String method, String source, String filteredTerm, Object qualifier, long version) {
+        Entry entry = current(method, source, filteredTerm, qualifier, version);
+        if (entry == null) {
+            misses.incrementAndGet();
+            return null;
+        }
+        hits.incrementAndGet();
+        FileCounts counts;
+        synchronized (this) {
+            counts = entry.counts;
+        }
+        if (counts == null) {
+            counts = FileCounts.of(entry.result);
+            synchronized (this) {
+                entry.counts = counts;
+            }
+        }
+        return counts;
+    }
+
+    /**
+     * Caches the result of the search, replacing the result cached for an older version.
+     * @param method search method
+     * @param source directory searched
+     * @param filteredTerm search term filtered by {@link SearchUtils#stringFilter(String)}
+     * @param qualifier other input the result depends on, compared with equals, null for none
+     * @param version version of the corpus or index the result was computed from
+     * @param result sorted search result
+     * @return the cached, unmodifiable, result
+     */
+    public Map<String, Integer> put(String method, String source, String filteredTerm, Object qualifier, long version,
+                                    Map<String, Integer> result) {
+        Map<String, Integer> cachedResult = Collections.unmodifiableMap(result);
+        synchronized (this) {
+            entries.put(key(method, source, filteredTerm), new Entry(version, qualifier, cachedResult, null));
+            evict();
+        }
+        return cachedResult;
+    }
+
+    /**
+     * Caches the counts of a paged search, replacing the result cached for an older version.
+     * @param method search method
+     * @param source directory searched
+     * @param filteredTerm search term filtered by {@link SearchUtils#stringFilter(String)}
+     * @param qualifier other input the result depends on, compared with equals, null for none
+     * @param version version of the corpus or index the counts were computed from
+     * @param counts unsorted search counts, not modified once cached
+     * @return the cached counts
+     */
+    FileCounts putCounts(String method, String source, String filteredTerm, Object qualifier, long version,
+                         FileCounts counts) {
+        synchronized (this) {
+            entries.put(key(method, source, filteredTerm), new Entry(version, qualifier, null, counts));
+            evict();
+        }
+        return counts;
+    }
+
+    /**
+     * Changes the maximum number of results cached, evicting least recently used results if it is exceeded.
+     * @param maxEntries maximum number of results cached
+     */
+    public synchronized void setMaxEntries(int maxEntries) {
+        this.maxEntries = maxEntries;
+        evict();
+    }
+
+    public synchronized int getMaxEntries() {
+        return maxEntries;
+    }
+
+    /**
+     * @return number of results currently cached
+     */
+    public synchronized int size() {
+        return entries.size();
+    }
+
+    /**
+     * Removes every cached result, counters are kept.
+     */
+    public synchronized void clear() {
+        entries.clear();
+    }
+
+    /**
+     * @return number of searches answered from the cache
+     */
+    public long getHits() {
+        return hits.get();
+    }
+
+    /**
+     * @return number of searches not found in the cache, or found for an older version
+     */
+    public long getMisses() {
+        return misses.get();
+    }
+
+    /**
+     * @return number of results evicted to respect the maximum number of results
+     */
+    public long getEvictions() {
+        return evictions.get();
+    }
+
+    /**
+     * Helper method
+     * Evicts least recently used results until the maximum is met. Caller must hold the lock.
+     */
+    private void evict() {
+        Iterator<Entry> itr = entries.values().iterator();
+        while (entries.size() > maxEntries && itr.hasNext()) {
+            itr.next();
+            itr.remove();
+            evictions.incrementAndGet();
+        }
+    }
+
+    /**
+     * Helper method
+     * @return the entry cached for the search if computed from {@code version}, else null
+     */
+    private Entry current(String method, String source, String filteredTerm, Object qualifier, long version) {
+        Entry entry;
+        synchronized (this) {
+            entry = entries.get(key(method, source, filteredTerm));
+        }
+        if (entry != null && entry.version == version
+                && (entry.qualifier == null ? qualifier == null : entry.qualifier.equals(qualifier))) {
+            return entry;
+        }
+        return null;
+    }
+
+    private static String key(String method, String source, String filteredTerm) {
+        return method + '\u0000' + source + '\u0000' + filteredTerm;
+    }
+
+    /**
+     * Search result along with the version it was computed from
+     */
+    private static final class Entry {
+        private final long version;
+        private final Object qualifier;
+        /**
+         * sorted result, null if cached by a paged search
+         */
+        private final Map<String, Integer> result;
+        /**
+         * unsorted counts, null until a paged search asks for them, guarded by the cache
+         */
+        private FileCounts counts;
+
+        private Entry(long version, Object qualifier, Map<String, Integer> result, FileCounts counts) {
+            this.version = version;
+            this.qualifier = qualifier;
+            this.result = result;
+            this.counts = counts;
+        }
+    }
+}
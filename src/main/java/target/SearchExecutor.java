@@ -0,0 +1,161 @@
+package target;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+
+/**
+ * Fans out the per-file work of the search methods over a shared {@link ForkJoinPool}.
+ * The parallelism level defaults to 1, which processes files one at a time on the calling thread.
+ */
+public final class SearchExecutor {
+    /**
+     * number of files processed concurrently
+     */
+    private static int parallelism = 1;
+    /**
+     * pool shared by every search, null while {@code parallelism} is 1
+     */
+    private static Pool pool;
+
+    private SearchExecutor() {
+    }
+
+    /**
+     * Work done for a single file.
+     * @param <T> result type
+     */
+    public interface FileTask<T> {
+        T apply(File file);
+    }
+
+    /**
+     * Sets the number of files processed concurrently, replacing the shared pool. Searches running on the
+     * previous pool finish on it, the previous pool is shut down once the last of them returns.
+     * @param parallelism parallelism level, 1 to process files on the calling thread
+     */
+    public static synchronized void setParallelism(int parallelism) {
+        if (parallelism < 1) {
+            throw new IllegalArgumentException("Parallelism must be at least 1: " + parallelism);
+        }
+        if (pool != null) {
+            pool.retire();
+        }
+        SearchExecutor.parallelism = parallelism;
+        pool = parallelism > 1 ? new Pool(new ForkJoinPool(parallelism)) : null;
+    }
+
+    public static synchronized int getParallelism() {
+        return parallelism;
+    }
+
+    /**
+     * Applies {@code task} to every file of {@code files}. If a file fails, the files not processed yet
+     * are cancelled.
+     * @param files files to be processed
+     * @param task work done for each file
+     * @param <T> result type
+     * @return the result of each file, in the order of {@code files}
+     */
+    public static <T> List<T> map(List<File> files, final FileTask<T> task) {
+        Pool executor = null;
+        if (files.size() >= 2) {
+            synchronized (SearchExecutor.class) {
+                executor = pool;
+                if (executor != null) {
+                    executor.acquire();
+                }
+            }
+        }
+
+        List<T> results = new ArrayList<>(files.size());
+        if (executor == null) {
+            for (File file : files) {
+                results.add(task.apply(file));
+            }
+            return results;
+        }
+
+        List<Future<T>> futures = new ArrayList<>(files.size());
+        try {
+            for (final File file : files) {
+                futures.add(executor.forkJoinPool.submit(new Callable<T>() {
+                    @Override
+                    public T call() {
+                        return task.apply(file);
+                    }
+                }));
+            }
+            for (Future<T> future : futures) {
+                results.add(future.get());
+            }
+        } catch (InterruptedException ie) {
+            cancel(futures);
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while waiting for file results.", ie);
+        } catch (ExecutionException ee) {
+            cancel(futures);
+            throw new IllegalStateException("Error processing file.", ee.getCause());
+        } finally {
+            executor.release();
+        }
+        return results;
+    }
+
+    /**
+     * Helper method
+     * Cancels the files not processed yet, files being processed run to their end.
+     * @param futures result of each file submitted
+     */
+    private static <T> void cancel(List<Future<T>> futures) {
+        for (Future<T> future : futures) {
+            future.cancel(false);
+        }
+    }
+
+    /**
+     * Pool along with the number of searches running on it, guarded by the {@link SearchExecutor} class lock
+     */
+    private static final class Pool {
+        private final ForkJoinPool forkJoinPool;
+        private int users;
+        private boolean retired;
+
+        private Pool(ForkJoinPool forkJoinPool) {
+            this.forkJoinPool = forkJoinPool;
+        }
+
+        /**
+         * Registers a search running on the pool. Caller must hold the class lock.
+         */
+        private void acquire() {
+            users++;
+        }
+
+        /**
+         * Unregisters a search, shutting the pool down if it was the last one on a retired pool.
+         */
+        private void release() {
+            synchronized (SearchExecutor.class) {
+                users--;
+                if (retired && users == 0) {
+                    forkJoinPool.shutdown();
+                }
+            }
+        }
+
+        /**
+         * Shuts the pool down once no search runs on it anymore. Caller must hold the class lock.
+         */
+        private void retire() {
+            retired = true;
+            if (users == 0) {
+                forkJoinPool.shutdown();
+            }
+        }
+    }
+}
@@ -0,0 +1,15 @@
+package target;
+
+/**
+ * Receives the search count of each file of an asynchronous search as soon as the file is searched,
+ * see {@link SearchUtils#simpleStringSearchAsync}.
+ */
+public interface SearchListener {
+    /**
+     * Called once per file searched, in the order files finish. Calls are never concurrent and never made
+     * after the search returned its result.
+     * @param filename name of the file
+     * @param count search count of the file
+     */
+    void onFile(String filename, int count);
+}
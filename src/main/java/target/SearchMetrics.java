@@ -0,0 +1,324 @@
+package target;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import java.lang.management.ManagementFactory;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Instrumentation of the search methods: a {@link LatencyHistogram} for every phase of every search method
+ * (ex. reading files, filtering, matching, sorting), the number of queries by search method and the number of
+ * files scanned, files skipped and bytes read. Exposed through {@link #snapshot()} and, once registered, the
+ * {@link SearchMetricsMXBean} "target:type=SearchMetrics".
+ * Timers are {@link System#nanoTime()} readings, skipped altogether while disabled.
+ */
+public final class SearchMetrics implements SearchMetricsMXBean {
+    /**
+     * name the MBean is registered under
+     */
+    public static final String OBJECT_NAME = "target:type=SearchMetrics";
+
+    /**
+     * Search methods, as named in the metrics
+     */
+    public static final String STRING_METHOD = "string";
+    public static final String REGEX_METHOD = "regex";
+    public static final String INDEX_METHOD = "index";
+    public static final String POSITIONAL_METHOD = "positional";
+    public static final String SUFFIX_ARRAY_METHOD = "suffix_array";
+    public static final String BATCH_METHOD = "batch";
+    public static final String INDEXING_METHOD = "indexing";
+    /**
+     * requests answered by the {@link SearchServer}, whatever their search method
+     */
+    public static final String SERVER_METHOD = "server";
+
+    /**
+     * Phases of the search methods, read and match phases are timed once per file
+     */
+    public static final String TOTAL_PHASE = "total";
+    public static final String NORMALIZE_PHASE = "normalize";
+    public static final String READ_PHASE = "read";
+    public static final String MATCH_PHASE = "match";
+    public static final String SORT_PHASE = "sort";
+    public static final String BUILD_PHASE = "build";
+    public static final String READER_OPEN_PHASE = "reader_open";
+    public static final String POSTINGS_PHASE = "postings";
+    public static final String GET_FREQ_PHASE = "get_freq";
+    public static final String ADD_DOCUMENT_PHASE = "add_document";
+    public static final String COMMIT_PHASE = "commit";
+    public static final String MERGE_PHASE = "merge";
+    public static final String PREFILTER_PHASE = "prefilter";
+    public static final String QUEUE_PHASE = "queue";
+
+    /**
+     * @param shard shard of a {@link ShardedIndex}
+     * @return the phase searching or indexing that shard, ex. "shard_3"
+     */
+    public static String shardPhase(int shard) {
+        return "shard_" + shard;
+    }
+
+    private volatile boolean enabled = true;
+    /**
+     * histograms by search method, then phase
+     */
+    private final ConcurrentHashMap<String, ConcurrentHashMap<String, LatencyHistogram>> histograms =
+            new ConcurrentHashMap<>();
+    private final ConcurrentHashMap<String, AtomicLong> queryCounts = new ConcurrentHashMap<>();
+    private final AtomicLong bytesRead = new AtomicLong();
+    private final AtomicLong filesScanned = new AtomicLong();
+    private final AtomicLong filesSkipped = new AtomicLong();
+
+    /**
+     * @return the start time of a phase, to be passed to {@link #record(String, String, long)}
+     */
+    public long start() {
+        return enabled ? System.nanoTime() : 0;
+    }
+
+    /**
+     * Records the latency of a phase started at {@code startNanos}.
+     * @param method search method
+     * @param phase phase of the search method
+     * @param startNanos value returned by {@link #start()} when the phase started
+     */
+    public void record(String method, String phase, long startNanos) {
+        if (enabled && startNanos != 0) {
+            histogram(method, phase).record(System.nanoTime() - startNanos);
+        }
+    }
+
+    /**
+     * Records a latency measured by the caller, ex. the sum of many short timings.
+     * @param method search method
+     * @param phase phase of the search method
+     * @param nanos latency in nanoseconds
+     */
+    public void recordNanos(String method, String phase, long nanos) {
+        if (enabled) {
+            histogram(method, phase).record(nanos);
+        }
+    }
+
+    /**
+     * @param method search method queried
+     */
+    public void incrementQueries(String method) {
+        if (enabled) {
+            counter(queryCounts, method).incrementAndGet();
+        }
+    }
+
+    /**
+     * @param bytes number of bytes of text files read
+     */
+    public void addBytesRead(long bytes) {
+        if (enabled) {
+            bytesRead.addAndGet(bytes);
+        }
+    }
+
+    /**
+     * @param files number of files scanned
+     */
+    public void addFilesScanned(long files) {
+        if (enabled) {
+            filesScanned.addAndGet(files);
+        }
+    }
+
+    /**
+     * @param files number of files skipped without being read
+     */
+    public void addFilesSkipped(long files) {
+        if (enabled) {
+            filesSkipped.addAndGet(files);
+        }
+    }
+
+    @Override
+    public long getBytesRead() {
+        return bytesRead.get();
+    }
+
+    @Override
+    public long getFilesScanned() {
+        return filesScanned.get();
+    }
+
+    @Override
+    public long getFilesSkipped() {
+        return filesSkipped.get();
+    }
+
+    @Override
+    public Map<String, Long> getQueryCounts() {
+        Map<String, Long> counts = new TreeMap<>();
+        for (Map.Entry<String, AtomicLong> entry : queryCounts.entrySet()) {
+            counts.put(entry.getKey(), entry.getValue().get());
+        }
+        return counts;
+    }
+
+    @Override
+    public Map<String, LatencyHistogram.Snapshot> getLatencies() {
+        Map<String, LatencyHistogram.Snapshot> latencies = new TreeMap<>();
+        for (Map.Entry<String, ConcurrentHashMap<String, LatencyHistogram>> method : histograms.entrySet()) {
+            for (Map.Entry<String, LatencyHistogram> phase : method.getValue().entrySet()) {
+                latencies.put(method.getKey() + "." + phase.getKey(), phase.getValue().snapshot());
+            }
+        }
+        return latencies;
+    }
+
+    @Override
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    @Override
+    public void setEnabled(boolean enabled) {
+        this.enabled = enabled;
+    }
+
+    @Override
+    public void reset() {
+        for (ConcurrentHashMap<String, LatencyHistogram> phases : histograms.values()) {
+            for (LatencyHistogram histogram : phases.values()) {
+                histogram.reset();
+            }
+        }
+        for (AtomicLong queryCount : queryCounts.values()) {
+            queryCount.set(0);
+        }
+        bytesRead.set(0);
+        filesScanned.set(0);
+        filesSkipped.set(0);
+    }
+
+    /**
+     * @return every metric recorded so far
+     */
+    public Snapshot snapshot() {
+        return new Snapshot(getBytesRead(), getFilesScanned(), getFilesSkipped(), getQueryCounts(), getLatencies());
+    }
+
+    /**
+     * Registers these metrics with the platform MBean server under {@link #OBJECT_NAME}, replacing
+     * metrics registered before.
+     */
+    public void registerMBean() {
+        try {
+            MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+            ObjectName name = new ObjectName(OBJECT_NAME);
+            if (server.isRegistered(name)) {
+                server.unregisterMBean(name);
+            }
+            server.registerMBean(this, name);
+        } catch (JMException jme) {
+            jme.printStackTrace();
+            System.err.println("Error registering search metrics MBean: " + OBJECT_NAME);
+        }
+    }
+
+    /**
+     * Helper method
+     * @param method search method
+     * @param phase phase of the search method
+     * @return the histogram of the phase, created on first use
+     */
+    private LatencyHistogram histogram(String method, String phase) {
+        ConcurrentHashMap<String, LatencyHistogram> phases = histograms.get(method);
+        if (phases == null) {
+            histograms.putIfAbsent(method, new ConcurrentHashMap<String, LatencyHistogram>());
+            phases = histograms.get(method);
+        }
+        LatencyHistogram histogram = phases.get(phase);
+        if (histogram == null) {
+            phases.putIfAbsent(phase, new LatencyHistogram());
+            histogram = phases.get(phase);
+        }
+        return histogram;
+    }
+
+    private static AtomicLong counter(ConcurrentHashMap<String, AtomicLong> counters, String key) {
+        AtomicLong counter = counters.get(key);
+        if (counter == null) {
+            counters.putIfAbsent(key, new AtomicLong());
+            counter = counters.get(key);
+        }
+        return counter;
+    }
+
+    /**
+     * Metrics recorded at some point in time
+     */
+    public static final class Snapshot {
+        private final long bytesRead;
+        private final long filesScanned;
+        private final long filesSkipped;
+        private final Map<String, Long> queryCounts;
+        private final Map<String, LatencyHistogram.Snapshot> latencies;
+
+        private Snapshot(long bytesRead, long filesScanned, long filesSkipped, Map<String, Long> queryCounts,
+                         Map<String, LatencyHistogram.Snapshot> latencies) {
+            this.bytesRead = bytesRead;
+            this.filesScanned = filesScanned;
+            this.filesSkipped = filesSkipped;
+            this.queryCounts = queryCounts;
+            this.latencies = latencies;
+        }
+
+        public long getBytesRead() {
+            return bytesRead;
+        }
+
+        public long getFilesScanned() {
+            return filesScanned;
+        }
+
+        public long getFilesSkipped() {
+            return filesSkipped;
+        }
+
+        /**
+         * @return number of queries by search method
+         */
+        public Map<String, Long> getQueryCounts() {
+            return queryCounts;
+        }
+
+        /**
+         * @return latency distribution by search method and phase, ex. "string.match"
+         */
+        public Map<String, LatencyHistogram.Snapshot> getLatencies() {
+            return latencies;
+        }
+
+        /**
+         * @param method search method
+         * @param phase phase of the search method
+         * @return the latency distribution of the phase, or null if it was never recorded
+         */
+        public LatencyHistogram.Snapshot getLatency(String method, String phase) {
+            return latencies.get(method + "." + phase);
+        }
+
+        @Override
+        public String toString() {
+            StringBuilder str = new StringBuilder();
+            str.append("Bytes read: ").append(bytesRead).append(", files scanned: ").append(filesScanned)
+                    .append(", files skipped: ").append(filesSkipped)
+                    .append(", queries: ").append(queryCounts);
+            for (Map.Entry<String, LatencyHistogram.Snapshot> entry : latencies.entrySet()) {
+                str.append(System.lineSeparator()).append(entry.getKey()).append(": ").append(entry.getValue());
+            }
+            return str.toString();
+        }
+    }
+}
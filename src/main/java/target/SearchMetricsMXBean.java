@@ -0,0 +1,42 @@
+package target;
+
+import java.util.Map;
+
+/**
+ * Management interface of {@link SearchMetrics}, registered by {@link SearchMetrics#registerMBean()}.
+ */
+public interface SearchMetricsMXBean {
+    /**
+     * @return number of bytes of text files read by searches and indexing
+     */
+    long getBytesRead();
+
+    /**
+     * @return number of files scanned by searches and indexing
+     */
+    long getFilesScanned();
+
+    /**
+     * @return number of files skipped by searches without being read, see {@link NgramPrefilter}
+     */
+    long getFilesSkipped();
+
+    /**
+     * @return number of queries by search method
+     */
+    Map<String, Long> getQueryCounts();
+
+    /**
+     * @return latency distribution by search method and phase, ex. "string.match"
+     */
+    Map<String, LatencyHistogram.Snapshot> getLatencies();
+
+    boolean isEnabled();
+
+    void setEnabled(boolean enabled);
+
+    /**
+     * Removes every recorded metric.
+     */
+    void reset();
+}
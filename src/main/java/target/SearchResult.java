@@ -0,0 +1,149 @@
+package target;
+
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Page of the results of a search, see {@link PageRequest}: the file names and search counts of the page,
+ * in ranking order, held in two arrays, along with the number of files searched and matched.
+ * A search stopped before every file was searched, see {@link SearchUtils#simpleStringSearchAsync}, returns an incomplete result
+ * ranking only the files searched.
+ */
+public final class SearchResult {
+    private final int offset;
+    private final String[] filenames;
+    private final int[] counts;
+    private final int totalFiles;
+    private final int matchingFiles;
+    /**
+     * number of files ranked, with or without the files with zero matches
+     */
+    private final int rankedFiles;
+    private final boolean complete;
+
+    SearchResult(int offset, String[] filenames, int[] counts, int totalFiles, int matchingFiles, int rankedFiles) {
+        this(offset, filenames, counts, totalFiles, matchingFiles, rankedFiles, true);
+    }
+
+    SearchResult(int offset, String[] filenames, int[] counts, int totalFiles, int matchingFiles, int rankedFiles,
+                 boolean complete) {
+        this.complete = complete;
+        this.offset = offset;
+        this.filenames = filenames;
+        this.counts = counts;
+        this.totalFiles = totalFiles;
+        this.matchingFiles = matchingFiles;
+        this.rankedFiles = rankedFiles;
+    }
+
+    /**
+     * Pages a result already sorted by {@link SearchUtils}, ex. a result of a search method returning a map.
+     * @param sortedResultMap file names and search counts in descending order of search count
+     * @param page page of the result
+     * @return the page of {@code sortedResultMap}
+     */
+    static SearchResult of(Map<String, Integer> sortedResultMap, PageRequest page) {
+        int matchingFiles = 0;
+        for (int count : sortedResultMap.values()) {
+            if (count > 0) {
+                matchingFiles++;
+            }
+        }
+        int rankedFiles = page.isIncludeZeroMatches() ? sortedResultMap.size() : matchingFiles;
+        int from = Math.min(page.getOffset(), rankedFiles);
+        int size = (int) Math.min((long) from + page.getLimit(), rankedFiles) - from;
+
+        String[] filenames = new String[size];
+        int[] counts = new int[size];
+        int rank = 0;
+        for (Map.Entry<String, Integer> entry : sortedResultMap.entrySet()) {
+            if (rank >= from + size) {
+                break;
+            }
+            if (rank >= from) {
+                filenames[rank - from] = entry.getKey();
+                counts[rank - from] = entry.getValue();
+            }
+            rank++;
+        }
+        return new SearchResult(page.getOffset(), filenames, counts, sortedResultMap.size(), matchingFiles, rankedFiles);
+    }
+
+    /**
+     * @return number of files of the page
+     */
+    public int size() {
+        return filenames.length;
+    }
+
+    /**
+     * @param idx position in the page
+     * @return name of the file ranked {@code getOffset() + idx}
+     */
+    public String getFilename(int idx) {
+        return filenames[idx];
+    }
+
+    /**
+     * @param idx position in the page
+     * @return search count of the file ranked {@code getOffset() + idx}
+     */
+    public int getCount(int idx) {
+        return counts[idx];
+    }
+
+    /**
+     * @return number of files ranked before the page
+     */
+    public int getOffset() {
+        return offset;
+    }
+
+    /**
+     * @return number of files searched
+     */
+    public int getTotalFiles() {
+        return totalFiles;
+    }
+
+    /**
+     * @return number of files with at least one match
+     */
+    public int getMatchingFiles() {
+        return matchingFiles;
+    }
+
+    /**
+     * @return true if files are ranked after the page, see {@link PageRequest#next()}
+     */
+    public boolean hasMore() {
+        return (long) offset + filenames.length < rankedFiles;
+    }
+
+    /**
+     * @return false if the search was cancelled, reached its deadline or could not read the index before every
+     * file was searched
+     */
+    public boolean isComplete() {
+        return complete;
+    }
+
+    /**
+     * @return the map containing the file name (key) and its corresponding search count (value), in ranking order
+     */
+    public Map<String, Integer> toMap() {
+        Map<String, Integer> resultMap = new LinkedHashMap<>();
+        for (int idx = 0; idx < filenames.length; idx++) {
+            resultMap.put(filenames[idx], counts[idx]);
+        }
+        return resultMap;
+    }
+
+    @Override
+    public String toString() {
+        return "Files " + offset + " to " + (offset + filenames.length) + " of " + rankedFiles + " (" + matchingFiles
+                + " of " + totalFiles + " file(s) matching" + (complete ? "" : ", incomplete") + "): "
+                + Arrays.toString(filenames) + " " + Arrays.toString(counts);
+    }
+}
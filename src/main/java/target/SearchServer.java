@@ -0,0 +1,516 @@
+package target;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UnsupportedEncodingException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Long-running local HTTP endpoint answering searches concurrently, with the index, the corpus and the searchers
+ * kept warm across requests. Searches are answered as JSON by a bounded pool of workers:
+ * <pre>
+ * GET /search?q=military+history&amp;method=index&amp;offset=0&amp;limit=10&amp;zero=false
+ * {"term":"military history","method":"index","offset":0,"totalFiles":5,"matchingFiles":1,"hasMore":false,
+ *  "queueMicros":41,"searchMicros":873,"results":[{"file":"french_armed_forces.txt","count":2}]}
+ * </pre>
+ * {@code method} is one of string, regex, index, positional and suffix (index by default) and {@code limit}
+ * pages the result like {@link PageRequest}. Requests are queued while every worker is busy; once the queue is
+ * full they are rejected right away with 503 (Service Unavailable) instead of waiting, so the latency of the
+ * requests accepted stays bounded under load. {@code GET /metrics} returns the {@link SearchMetrics}, which time
+ * the queue wait and the whole request under the "server" method.
+ * The positional and suffix array indexes are built on their first search and rebuilt in the background once a
+ * text file changed, searches being answered from the index built last until the new one is published.
+ */
+public final class SearchServer implements Closeable {
+    public static final int DEFAULT_PORT = 8080;
+    /**
+     * default number of searches answered concurrently: one per processor
+     */
+    public static final int DEFAULT_WORKERS = Runtime.getRuntime().availableProcessors();
+    /**
+     * default number of searches waiting for a worker before requests are rejected
+     */
+    public static final int DEFAULT_QUEUE_CAPACITY = 64;
+    public static final String SEARCH_PATH = "/search";
+    public static final String METRICS_PATH = "/metrics";
+
+    /**
+     * Search methods, as named by the {@code method} parameter
+     */
+    public static final String STRING_METHOD = "string";
+    public static final String REGEX_METHOD = "regex";
+    public static final String INDEX_METHOD = "index";
+    public static final String POSITIONAL_METHOD = "positional";
+    public static final String SUFFIX_ARRAY_METHOD = "suffix";
+
+    private static final SearchMetrics searchMetrics = SearchUtils.getSearchMetrics();
+    private static final CorpusCache corpusCache = SearchUtils.getCorpusCache();
+
+    private final String resPath;
+    private final ShardedIndex shardedIndex;
+    /**
+     * keeps {@code shardedIndex} current, null if the index could not be created
+     */
+    private final IndexWatcher indexWatcher;
+    private final HttpServer httpServer;
+    private final ThreadPoolExecutor workers;
+    private final AtomicLong rejectedRequests = new AtomicLong();
+    private final CountDownLatch closed = new CountDownLatch(1);
+    /**
+     * builds the positional and suffix array indexes, one at a time
+     */
+    private final ExecutorService indexBuilder = Executors.newSingleThreadExecutor(new ThreadFactory() {
+        @Override
+        public Thread newThread(Runnable runnable) {
+            Thread thread = new Thread(runnable, "search-server-index-builder");
+            thread.setDaemon(true);
+            return thread;
+        }
+    });
+    private final BackgroundIndex<PositionalIndex> positionalIndex = new BackgroundIndex<PositionalIndex>() {
+        @Override
+        PositionalIndex build() {
+            return PositionalIndex.build(resPath);
+        }
+    };
+    private final BackgroundIndex<SuffixArrayIndex> suffixArrayIndex = new BackgroundIndex<SuffixArrayIndex>() {
+        @Override
+        SuffixArrayIndex build() {
+            return SuffixArrayIndex.build(resPath);
+        }
+    };
+
+    /**
+     * Starts serving on {@code port} with {@link #DEFAULT_WORKERS} workers and a queue of
+     * {@link #DEFAULT_QUEUE_CAPACITY} searches.
+     * @param port local port, 0 for any free port
+     * @param resPath directory containing the text files
+     * @param shardedIndex index of the text files
+     * @param indexWatcher watcher keeping {@code shardedIndex} current, null if the index is unavailable
+     * @throws IOException when the port cannot be bound
+     */
+    public SearchServer(int port, String resPath, ShardedIndex shardedIndex, IndexWatcher indexWatcher) throws IOException {
+        this(port, resPath, shardedIndex, indexWatcher, DEFAULT_WORKERS, DEFAULT_QUEUE_CAPACITY);
+    }
+
+    /**
+     * Starts serving on {@code port}, on the loopback interface only.
+     * @param port local port, 0 for any free port
+     * @param resPath directory containing the text files
+     * @param shardedIndex index of the text files
+     * @param indexWatcher watcher keeping {@code shardedIndex} current, null if the index is unavailable
+     * @param workerCount number of searches answered concurrently
+     * @param queueCapacity number of searches waiting for a worker before requests are rejected, 0 for none
+     * @throws IOException when the port cannot be bound
+     */
+    public SearchServer(int port, String resPath, ShardedIndex shardedIndex, IndexWatcher indexWatcher,
+                        int workerCount, int queueCapacity) throws IOException {
+        if (workerCount < 1) {
+            throw new IllegalArgumentException("Worker count must be at least 1: " + workerCount);
+        }
+        if (queueCapacity < 0) {
+            throw new IllegalArgumentException("Queue capacity must not be negative: " + queueCapacity);
+        }
+        this.resPath = resPath;
+        this.shardedIndex = shardedIndex;
+        this.indexWatcher = indexWatcher;
+
+        BlockingQueue<Runnable> queue = queueCapacity > 0 ? new ArrayBlockingQueue<Runnable>(queueCapacity)
+                : new SynchronousQueue<Runnable>();
+        final AtomicInteger threadCount = new AtomicInteger();
+        workers = new ThreadPoolExecutor(workerCount, workerCount, 0, TimeUnit.MILLISECONDS, queue, new ThreadFactory() {
+            @Override
+            public Thread newThread(Runnable runnable) {
+                Thread thread = new Thread(runnable, "search-server-" + threadCount.incrementAndGet());
+                thread.setDaemon(true);
+                return thread;
+            }
+        }, new ThreadPoolExecutor.AbortPolicy());
+
+        httpServer = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), port), 0);
+        httpServer.createContext(SEARCH_PATH, new HttpHandler() {
+            @Override
+            public void handle(HttpExchange exchange) throws IOException {
+                handleSearch(exchange);
+            }
+        });
+        httpServer.createContext(METRICS_PATH, new HttpHandler() {
+            @Override
+            public void handle(HttpExchange exchange) throws IOException {
+                send(exchange, 200, "text/plain; charset=utf-8", searchMetrics.snapshot().toString()
+                        + "\nrejected requests=" + rejectedRequests.get() + "\n");
+            }
+        });
+        //requests are parsed on the dispatcher thread, searched by the workers
+        httpServer.setExecutor(null);
+        httpServer.start();
+    }
+
+    /**
+     * @return the local port the server listens on
+     */
+    public int getPort() {
+        return httpServer.getAddress().getPort();
+    }
+
+    /**
+     * @return number of requests rejected because every worker was busy and the queue full
+     */
+    public long getRejectedRequests() {
+        return rejectedRequests.get();
+    }
+
+    /**
+     * Waits until the server is closed.
+     * @throws InterruptedException when interrupted while waiting
+     */
+    public void awaitClose() throws InterruptedException {
+        closed.await();
+    }
+
+    /**
+     * Stops accepting requests, then waits for the searches in progress to be answered.
+     */
+    @Override
+    public void close() {
+        synchronized (closed) {
+            if (closed.getCount() == 0) {
+                return;
+            }
+            httpServer.stop(1);
+            workers.shutdown();
+            indexBuilder.shutdownNow();
+            try {
+                workers.awaitTermination(10, TimeUnit.SECONDS);
+            } catch (InterruptedException ie) {
+                Thread.currentThread().interrupt();
+            }
+            closed.countDown();
+        }
+    }
+
+    /**
+     * @return the pool answering searches
+     */
+    ThreadPoolExecutor getWorkers() {
+        return workers;
+    }
+
+    /**
+     * Helper method
+     * Validates a search request and hands it to a worker, or rejects it if none can take it.
+     * @param exchange search request
+     * @throws IOException when the response cannot be sent
+     */
+    private void handleSearch(final HttpExchange exchange) throws IOException {
+        final long receivedTime = System.nanoTime();
+        if (!"GET".equals(exchange.getRequestMethod())) {
+            sendError(exchange, 405, "Only GET is supported");
+            return;
+        }
+
+        final String searchTerm;
+        final String method;
+        final PageRequest page;
+        try {
+            Map<String, String> params = parseQuery(exchange.getRequestURI().getRawQuery());
+            searchTerm = params.get("q");
+            if (searchTerm == null || searchTerm.isEmpty()) {
+                throw new IllegalArgumentException("Missing search term: q");
+            }
+            method = params.containsKey("method") ? params.get("method") : INDEX_METHOD;
+            if (!method.equals(STRING_METHOD) && !method.equals(REGEX_METHOD) && !method.equals(INDEX_METHOD)
+                    && !method.equals(POSITIONAL_METHOD) && !method.equals(SUFFIX_ARRAY_METHOD)) {
+                throw new IllegalArgumentException("Unknown search method: " + method);
+            }
+            int offset = params.containsKey("offset") ? Integer.parseInt(params.get("offset")) : 0;
+            int limit = params.containsKey("limit") ? Integer.parseInt(params.get("limit")) : Integer.MAX_VALUE;
+            //a limited page leaves out files with zero matches unless asked for, like PageRequest#top
+            boolean includeZeroMatches = params.containsKey("zero") ? Boolean.parseBoolean(params.get("zero"))
+                    : !params.containsKey("limit");
+            page = new PageRequest(offset, limit, includeZeroMatches);
+        } catch (IllegalArgumentException iae) {
+            //also thrown for malformed numbers and escapes
+            sendError(exchange, 400, iae.getMessage());
+            return;
+        }
+
+        try {
+            workers.execute(new Runnable() {
+                @Override
+                public void run() {
+                    answerSearch(exchange, searchTerm, method, page, receivedTime);
+                }
+            });
+        } catch (RejectedExecutionException ree) {
+            rejectedRequests.incrementAndGet();
+            exchange.getResponseHeaders().set("Retry-After", "1");
+            sendError(exchange, 503, "Too many concurrent searches");
+        }
+    }
+
+    /**
+     * Helper method
+     * Searches on a worker thread and sends the result as JSON.
+     * @param exchange search request
+     * @param searchTerm used to search in file
+     * @param method search method
+     * @param page files ranked in the result
+     * @param receivedTime {@link System#nanoTime()} when the request was received
+     */
+    private void answerSearch(HttpExchange exchange, String searchTerm, String method, PageRequest page,
+                              long receivedTime) {
+        long startTime = System.nanoTime();
+        searchMetrics.incrementQueries(SearchMetrics.SERVER_METHOD);
+        searchMetrics.recordNanos(SearchMetrics.SERVER_METHOD, SearchMetrics.QUEUE_PHASE, startTime - receivedTime);
+        try {
+            SearchResult result = search(searchTerm, method, page);
+            long searchNanos = System.nanoTime() - startTime;
+            if (result == null) {
+                sendError(exchange, 503, "Index unavailable");
+            } else {
+                send(exchange, 200, "application/json; charset=utf-8",
+                        toJson(searchTerm, method, result, startTime - receivedTime, searchNanos));
+            }
+        } catch (IOException | RuntimeException e) {
+            e.printStackTrace();
+            System.err.println("Error during " + method + " search: " + searchTerm);
+            try {
+                sendError(exchange, 500, "Search failed: " + e);
+            } catch (IOException ioe) {
+                //client is gone
+                exchange.close();
+            }
+        }
+        searchMetrics.recordNanos(SearchMetrics.SERVER_METHOD, SearchMetrics.TOTAL_PHASE, System.nanoTime() - receivedTime);
+    }
+
+    /**
+     * Helper method
+     * @param searchTerm used to search in file
+     * @param method search method
+     * @param page files ranked in the result
+     * @return the files of the page and their search count, or null if the index is unavailable
+     * @throws IOException when the index cannot be searched
+     */
+    private SearchResult search(String searchTerm, String method, PageRequest page) throws IOException {
+        switch (method) {
+            case STRING_METHOD:
+                return SearchUtils.simpleStringSearch(searchTerm, resPath, page);
+            case REGEX_METHOD:
+                return SearchUtils.regexSearch(searchTerm, resPath, page);
+            case POSITIONAL_METHOD:
+                return SearchUtils.positionalIndexSearch(searchTerm, positionalIndex.current(), page);
+            case SUFFIX_ARRAY_METHOD:
+                return SearchUtils.suffixArraySearch(searchTerm, suffixArrayIndex.current(), page);
+            default:
+                if (indexWatcher == null) {
+                    return null;
+                }
+                List<String> indexedFiles = indexWatcher.getIndexedFiles();
+                return shardedIndex.search(searchTerm, indexedFiles, page);
+        }
+    }
+
+    /**
+     * Helper method
+     * @param rawQuery query of the request URI, still encoded, null for none
+     * @return the value of each parameter, the last one when repeated
+     * @throws IllegalArgumentException when a parameter is not correctly encoded
+     */
+    static Map<String, String> parseQuery(String rawQuery) {
+        Map<String, String> params = new HashMap<>();
+        if (rawQuery == null || rawQuery.isEmpty()) {
+            return params;
+        }
+        try {
+            for (String param : rawQuery.split("&")) {
+                int idx = param.indexOf('=');
+                String name = URLDecoder.decode(idx == -1 ? param : param.substring(0, idx), "UTF-8");
+                String value = idx == -1 ? "" : URLDecoder.decode(param.substring(idx + 1), "UTF-8");
+                params.put(name, value);
+            }
+        } catch (UnsupportedEncodingException uee) {
+            //UTF-8 is always supported
+            throw new IllegalStateException(uee);
+        }
+        return params;
+    }
+
+    /**
+     * Helper method
+     * @return the search result as a JSON object
+     */
+    static String toJson(String searchTerm, String method, SearchResult result, long queueNanos, long searchNanos) {
+        StringBuilder json = new StringBuilder(128 + result.size() * 48);
+        json.append("{\"term\":");
+        appendJsonString(json, searchTerm);
+        json.append(",\"method\":");
+        appendJsonString(json, method);
+        json.append(",\"offset\":").append(result.getOffset())
+                .append(",\"totalFiles\":").append(result.getTotalFiles())
+                .append(",\"matchingFiles\":").append(result.getMatchingFiles())
+                .append(",\"hasMore\":").append(result.hasMore())
+                .append(",\"complete\":").append(result.isComplete())
+                .append(",\"queueMicros\":").append(TimeUnit.NANOSECONDS.toMicros(queueNanos))
+                .append(",\"searchMicros\":").append(TimeUnit.NANOSECONDS.toMicros(searchNanos))
+                .append(",\"results\":[");
+        for (int idx = 0; idx < result.size(); idx++) {
+            if (idx > 0) {
+                json.append(',');
+            }
+            json.append("{\"file\":");
+            appendJsonString(json, result.getFilename(idx));
+            json.append(",\"count\":").append(result.getCount(idx)).append('}');
+        }
+        return json.append("]}").toString();
+    }
+
+    private static void appendJsonString(StringBuilder json, String value) {
+        json.append('"');
+        for (int idx = 0; idx < value.length(); idx++) {
+            char c = value.charAt(idx);
+            if (c == '"' || c == '\\') {
+                json.append('\\').append(c);
+            } else if (c < 0x20) {
+                json.append(String.format("\\u%04x", (int) c));
+            } else {
+                json.append(c);
+            }
+        }
+        json.append('"');
+    }
+
+    private static void sendError(HttpExchange exchange, int status, String message) throws IOException {
+        StringBuilder json = new StringBuilder("{\"error\":");
+        appendJsonString(json, message);
+        send(exchange, status, "application/json; charset=utf-8", json.append('}').toString());
+    }
+
+    private static void send(HttpExchange exchange, int status, String contentType, String body) throws IOException {
+        byte[] bytes = body.getBytes(StandardCharsets.UTF_8);
+        exchange.getResponseHeaders().set("Content-Type", contentType);
+        exchange.sendResponseHeaders(status, bytes.length);
+        try (OutputStream out = exchange.getResponseBody()) {
+            out.write(bytes);
+        }
+    }
+
+    /**
+     * Index of the text files of {@code resPath}, built on the first search and rebuilt in the background by the
+     * {@code indexBuilder} once the {@link CorpusCache} version of the directory changed. The index built last is
+     * published through a volatile field, so searches never wait for a rebuild, only for the first build.
+     * @param <T> index type
+     */
+    private abstract class BackgroundIndex<T> {
+        /**
+         * index built last, null until the first build ends
+         */
+        private volatile Built<T> built;
+        /**
+         * build submitted last, guarded by this
+         */
+        private Future<Built<T>> building;
+
+        /**
+         * @return a new index of the text files currently found in {@code resPath}
+         */
+        abstract T build();
+
+        /**
+         * @return the index built last, after waiting for the first build if none ended yet
+         * @throws IOException when interrupted while waiting for the first build
+         */
+        T current() throws IOException {
+            //read before building, so files changed during a build trigger the next one
+            long version = corpusCache.version(resPath);
+            Built<T> current = built;
+            if (current != null && current.version == version) {
+                return current.index;
+            }
+
+            Future<Built<T>> future = rebuild(version);
+            if (current != null) {
+                //answered from the previous index until the new one is published
+                return current.index;
+            }
+            try {
+                return future.get().index;
+            } catch (InterruptedException ie) {
+                Thread.currentThread().interrupt();
+                throw new IOException("Interrupted while waiting for the index to be built.", ie);
+            } catch (ExecutionException ee) {
+                if (ee.getCause() instanceof RuntimeException) {
+                    throw (RuntimeException) ee.getCause();
+                }
+                throw new IllegalStateException("Error building index.", ee.getCause());
+            }
+        }
+
+        /**
+         * Helper method
+         * Submits a build, unless a build is already in progress.
+         * @param version version of the text files the index is built for
+         * @return the build in progress
+         */
+        private synchronized Future<Built<T>> rebuild(final long version) {
+            if (building == null || building.isDone()) {
+                building = indexBuilder.submit(new Callable<Built<T>>() {
+                    @Override
+                    public Built<T> call() {
+                        try {
+                            Built<T> next = new Built<>(build(), version);
+                            built = next;
+                            return next;
+                        } catch (RuntimeException e) {
+                            e.printStackTrace();
+                            System.err.println("Error building index of: " + resPath);
+                            throw e;
+                        }
+                    }
+                });
+            }
+            return building;
+        }
+    }
+
+    /**
+     * Index along with the {@link CorpusCache} version of the text files it was built from
+     * @param <T> index type
+     */
+    private static final class Built<T> {
+        private final T index;
+        private final long version;
+
+        private Built(T index, long version) {
+            this.index = index;
+            this.version = version;
+        }
+    }
+}
@@ -1,26 +1,22 @@
 package target;
 
-import org.apache.lucene.analysis.core.WhitespaceAnalyzer;
-import org.apache.lucene.document.Document;
-import org.apache.lucene.document.Field;
-import org.apache.lucene.document.FieldType;
-import org.apache.lucene.document.StringField;
 import org.apache.lucene.index.DirectoryReader;
-import org.apache.lucene.index.IndexOptions;
+import org.apache.lucene.index.DocValuesType;
+import org.apache.lucene.index.FieldInfo;
 import org.apache.lucene.index.IndexReader;
 import org.apache.lucene.index.IndexWriter;
 import org.apache.lucene.index.IndexWriterConfig;
+import org.apache.lucene.index.LeafReader;
+import org.apache.lucene.index.LeafReaderContext;
+import org.apache.lucene.index.NumericDocValues;
 import org.apache.lucene.index.PostingsEnum;
-import org.apache.lucene.index.Terms;
-import org.apache.lucene.index.TermsEnum;
-import org.apache.lucene.queryparser.classic.ParseException;
-import org.apache.lucene.queryparser.classic.QueryParser;
+import org.apache.lucene.index.SegmentInfos;
+import org.apache.lucene.index.SortedDocValues;
+import org.apache.lucene.index.Term;
+import org.apache.lucene.search.DocIdSetIterator;
 import org.apache.lucene.search.IndexSearcher;
-import org.apache.lucene.search.Query;
-import org.apache.lucene.search.ScoreDoc;
-import org.apache.lucene.search.TopDocs;
 import org.apache.lucene.store.FSDirectory;
-import org.apache.lucene.util.BytesRef;
+import org.apache.lucene.util.Bits;
 
 import java.io.BufferedReader;
 import java.io.File;
@@ -29,113 +25,529 @@ import java.io.FileReader;
 import java.io.IOException;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collection;
 import java.util.Collections;
 import java.util.Comparator;
 import java.util.HashMap;
 import java.util.LinkedHashMap;
-import java.util.LinkedList;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
-import java.util.regex.Matcher;
-import java.util.regex.Pattern;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
 
 public final class SearchUtils {
     /**
-     * String constants used for index search
+     * String constants used for index search, shared with the {@link BulkIndexer}
      */
-    private final static String FILENAME_FIELD = "filename";
-    private final static String CONTENTS_FIELD = "contents";
+    final static String FILENAME_FIELD = "filename";
+    final static String CONTENTS_FIELD = "contents";
+    final static String MODIFIED_FIELD = "modified";
+    final static String SIZE_FIELD = "size";
+
+    /**
+     * lock held while writing to an index, by index directory, so distinct indexes (ex. the shards of a
+     * {@link ShardedIndex}) are written concurrently
+     */
+    private static final ConcurrentHashMap<String, Object> indexLocks = new ConcurrentHashMap<>();
+
+    /**
+     * filtered file contents shared by the String Match and Regular Expression search methods
+     */
+    private static final CorpusCache corpusCache = new CorpusCache();
+
+    /**
+     * @return the cache holding the filtered file contents searched by
+     * {@link #simpleStringSearch(String, String)} and {@link #regexSearch(String, String)}
+     */
+    public static CorpusCache getCorpusCache() {
+        return corpusCache;
+    }
+
+    /**
+     * results of the String Match, Regular Expression and Indexed search methods
+     */
+    private static final ResultCache resultCache = new ResultCache();
+
+    /**
+     * @return the cache holding the results of {@link #simpleStringSearch(String, String)},
+     * {@link #regexSearch(String, String)} and {@link #indexSearch(String, List, String)}
+     */
+    public static ResultCache getResultCache() {
+        return resultCache;
+    }
+
+    /**
+     * latencies of each phase of the search methods, files scanned and bytes read
+     */
+    private static final SearchMetrics searchMetrics = new SearchMetrics();
+
+    /**
+     * @return the metrics recorded by the search methods and indexing
+     */
+    public static SearchMetrics getSearchMetrics() {
+        return searchMetrics;
+    }
+
+    /**
+     * summaries of the files searched by the String Match and Regular Expression search methods
+     */
+    private static final NgramPrefilter ngramPrefilter = new NgramPrefilter();
+
+    /**
+     * @return the prefilter skipping the files that cannot contain the search term of
+     * {@link #simpleStringSearch(String, String)} and {@link #regexSearch(String, String)}
+     */
+    public static NgramPrefilter getNgramPrefilter() {
+        return ngramPrefilter;
+    }
+
+    /**
+     * pipeline adding files to the index
+     */
+    private static final BulkIndexer bulkIndexer = new BulkIndexer();
+
+    /**
+     * @return the pipeline used by {@link #indexFilesInDir(String, String)}, holding the indexing configuration
+     */
+    public static BulkIndexer getBulkIndexer() {
+        return bulkIndexer;
+    }
 
     /**
      * Searches for {@code searchTerm} in all text files in the {@code resPath} directory path
-     * using simple string matching utilities.
+     * using simple string matching utilities. Files too large for the {@link CorpusCache} are
+     * streamed through {@link MappedStringMatcher} instead of being read into memory.
+     * Results are cached by the {@link ResultCache} until a text file of the directory changes.
      * @param searchTerm used to search in file
      * @param resPath directory containing the text files
      * @return the map containing the file name (key) and its corresponding search count (value)
      * of {@code searchTerm}
      */
     public static Map<String, Integer> simpleStringSearch(String searchTerm, final String resPath) {
-        int searchCount;
         //Stores number of matches per file
         Map<String, Integer> unsortedResultMap = new HashMap<>();
         if (searchTerm == null || searchTerm.isEmpty()) {
             return unsortedResultMap;
         }
 
-        searchTerm = stringFilter(searchTerm);
-        //Create new file instances
-        File[] files = new File(resPath).listFiles();
+        long startTime = searchMetrics.start();
+        searchMetrics.incrementQueries(SearchMetrics.STRING_METHOD);
+        long phaseStartTime = searchMetrics.start();
+        final String filteredTerm = stringFilter(searchTerm);
+        searchMetrics.record(SearchMetrics.STRING_METHOD, SearchMetrics.NORMALIZE_PHASE, phaseStartTime);
+        //repeated searches are answered from the cache while the text files are unchanged
+        String source = new File(resPath).getAbsolutePath();
+        long version = corpusCache.version(resPath);
+        Map<String, Integer> cachedResultMap = resultCache.get(SearchMetrics.STRING_METHOD, source, filteredTerm, null, version);
+        if (cachedResultMap != null) {
+            searchMetrics.record(SearchMetrics.STRING_METHOD, SearchMetrics.TOTAL_PHASE, startTime);
+            return cachedResultMap;
+        }
 
-        if (files == null || files.length == 0) {
+        //text files of the directory, cached until the directory changes
+        List<File> files = corpusCache.listTextFiles(resPath);
+
+        if (files.isEmpty()) {
             System.err.println("Empty resource directory. Please add appropriate text files to: " + resPath);
+            return unsortedResultMap;
+        }
+
+        final MappedStringMatcher matcher = new MappedStringMatcher(filteredTerm);
+        //search starts here, files are searched concurrently by the SearchExecutor
+        List<Integer> searchCounts = SearchExecutor.map(files, new SearchExecutor.FileTask<Integer>() {
+            @Override
+            public Integer apply(File file) {
+                return countStringMatches(file, matcher);
+            }
+        });
+        for (int idx = 0; idx < files.size(); idx++) {
+            unsortedResultMap.put(files.get(idx).getName(), searchCounts.get(idx));
+        }
+
+        Map<String, Integer> sortedResultMap = resultCache.put(SearchMetrics.STRING_METHOD, source, filteredTerm, null,
+                version, sortDescByValue(SearchMetrics.STRING_METHOD, unsortedResultMap));
+        searchMetrics.record(SearchMetrics.STRING_METHOD, SearchMetrics.TOTAL_PHASE, startTime);
+        return sortedResultMap;
+    }
+
+    /**
+     * String match helper method
+     * Counts the occurrences of {@code filteredTerm} in {@code file}, streaming the file through
+     * {@link MappedStringMatcher} when it does not fit in the {@link CorpusCache}. Files the
+     * {@link NgramPrefilter} rules out are not read.
+     * @param file text file to be searched
+     * @param matcher matcher of the search term filtered by {@link #stringFilter(String)}
+     * @return the number of non-overlapping occurrences
+     */
+    private static int countStringMatches(File file, MappedStringMatcher matcher) {
+        String filteredTerm = matcher.getTerm();
+        int searchCount = 0;
+        long startTime = searchMetrics.start();
+        boolean mayContain = ngramPrefilter.mayContain(file, filteredTerm);
+        searchMetrics.record(SearchMetrics.STRING_METHOD, SearchMetrics.PREFILTER_PHASE, startTime);
+        if (!mayContain) {
+            searchMetrics.addFilesSkipped(1);
+            return 0;
+        }
+        searchMetrics.addFilesScanned(1);
+
+        startTime = searchMetrics.start();
+        String fileStr = corpusCache.get(file);
+        searchMetrics.record(SearchMetrics.STRING_METHOD, SearchMetrics.READ_PHASE, startTime);
+        startTime = searchMetrics.start();
+        if (fileStr != null) {
+            int lastIdx = 0;
+            while (lastIdx != -1) {
+                lastIdx = fileStr.indexOf(filteredTerm, lastIdx);
+                if (lastIdx != -1) {
+                    searchCount++;
+                    lastIdx += filteredTerm.length();
+                }
+            }
         } else {
+            //file does not fit in the cache, stream it instead
+            try {
+                searchCount = matcher.count(file);
+            } catch (IOException ioe) {
+                ioe.printStackTrace();
+                System.err.println("Error reading file: " + file.getPath());
+            }
+        }
+        //streamed files are read while matched
+        searchMetrics.record(SearchMetrics.STRING_METHOD, SearchMetrics.MATCH_PHASE, startTime);
+        return searchCount;
+    }
+
+    /**
+     * Searches for {@code searchTerm} like {@link #simpleStringSearch(String, String)}, but only returns the files of
+     * {@code page}. The ranking of every file is cached by the {@link ResultCache}, so the next page or a repeated
+     * search is answered from the cache.
+     * @param searchTerm used to search in file
+     * @param resPath directory containing the text files
+     * @param page files ranked in the result
+     * @return the files of the page and their corresponding search count of {@code searchTerm}
+     */
+    public static SearchResult simpleStringSearch(String searchTerm, String resPath, PageRequest page) {
+        if (searchTerm == null || searchTerm.isEmpty()) {
+            return new TopKSelector(page).toResult();
+        }
+
+        long startTime = searchMetrics.start();
+        searchMetrics.incrementQueries(SearchMetrics.STRING_METHOD);
+        long phaseStartTime = searchMetrics.start();
+        final String filteredTerm = stringFilter(searchTerm);
+        searchMetrics.record(SearchMetrics.STRING_METHOD, SearchMetrics.NORMALIZE_PHASE, phaseStartTime);
+        final MappedStringMatcher matcher = new MappedStringMatcher(filteredTerm);
+
+        SearchResult result = searchFiles(SearchMetrics.STRING_METHOD, filteredTerm, resPath, page,
+                new SearchExecutor.FileTask<Integer>() {
+                    @Override
+                    public Integer apply(File file) {
+                        return countStringMatches(file, matcher);
+                    }
+                });
+        searchMetrics.record(SearchMetrics.STRING_METHOD, SearchMetrics.TOTAL_PHASE, startTime);
+        return result;
+    }
+
+    /**
+     * Paged search helper method
+     * Applies {@code countTask} to every text file in the {@code resPath} directory path, unless the counts of the
+     * search are cached, and selects the files of {@code page} from the counts, which are cached unsorted for the
+     * next searches.
+     * @param method search method, see {@link SearchMetrics}
+     * @param filteredTerm search term filtered by {@link #stringFilter(String)}
+     * @param resPath directory containing the text files
+     * @param page files ranked in the result
+     * @param countTask counts the matches of {@code filteredTerm} in a file
+     * @return the files of the page and their corresponding search count
+     */
+    private static SearchResult searchFiles(String method, String filteredTerm, String resPath, PageRequest page,
+                                            SearchExecutor.FileTask<Integer> countTask) {
+        //results are shared with the search methods returning a map
+        String source = new File(resPath).getAbsolutePath();
+        long version = corpusCache.version(resPath);
+        FileCounts cachedCounts = resultCache.getCounts(method, source, filteredTerm, null, version);
+        if (cachedCounts != null) {
+            return selectPage(method, cachedCounts, page, true);
+        }
+
+        //text files of the directory, cached until the directory changes
+        List<File> files = corpusCache.listTextFiles(resPath);
+        if (files.isEmpty()) {
+            System.err.println("Empty resource directory. Please add appropriate text files to: " + resPath);
+            return new TopKSelector(page).toResult();
+        }
+
+        //search starts here, files are searched concurrently by the SearchExecutor
+        List<Integer> searchCounts = SearchExecutor.map(files, countTask);
+
+        String[] filenames = new String[files.size()];
+        int[] counts = new int[files.size()];
+        for (int idx = 0; idx < files.size(); idx++) {
+            filenames[idx] = files.get(idx).getName();
+            counts[idx] = searchCounts.get(idx);
+        }
+        FileCounts fileCounts = resultCache.putCounts(method, source, filteredTerm, null, version,
+                new FileCounts(filenames, counts));
+        return selectPage(method, fileCounts, page, true);
+    }
+
+    /**
+     * Paged search helper method
+     * Selects the files of {@code page} from {@code fileCounts} with a bounded heap instead of sorting every file.
+     * @param method search method, see {@link SearchMetrics}
+     * @param fileCounts search count of every file searched
+     * @param page files ranked in the result
+     * @param complete false if some files were not searched, see {@link SearchResult#isComplete()}
+     * @return the files of the page and their corresponding search count
+     */
+    private static SearchResult selectPage(String method, FileCounts fileCounts, PageRequest page, boolean complete) {
+        long startTime = searchMetrics.start();
+        SearchResult result = fileCounts.select(page, complete);
+        searchMetrics.record(method, SearchMetrics.SORT_PHASE, startTime);
+        return result;
+    }
+
+    /**
+     * Searches for every term of {@code searchTerms} in all text files in the {@code resPath} directory path
+     * in a single scan per file, using an {@link AhoCorasick} automaton built over the filtered terms.
+     * Each term is counted the same way {@link #simpleStringSearch(String, String)} counts it.
+     * @param searchTerms terms used to search in file
+     * @param resPath directory containing the text files
+     * @return the map containing each search term (key) and the map of file names and their corresponding
+     * search count of that term (value), in the iteration order of {@code searchTerms}
+     */
+    public static Map<String, Map<String, Integer>> batchSearch(Collection<String> searchTerms, final String resPath) {
+        //Stores number of matches per file for each search term
+        Map<String, Map<String, Integer>> resultMap = new LinkedHashMap<>();
+        if (searchTerms == null || searchTerms.isEmpty()) {
+            return resultMap;
+        }
+        long startTime = searchMetrics.start();
+        searchMetrics.incrementQueries(SearchMetrics.BATCH_METHOD);
+
+        //search terms sharing the same filtered term share the same automaton term id
+        Map<String, Integer> termIds = new HashMap<>();
+        Map<String, Integer> filteredTermIds = new HashMap<>();
+        List<String> filteredTerms = new ArrayList<>();
+        for (String searchTerm : searchTerms) {
+            if (searchTerm != null && !searchTerm.isEmpty() && !termIds.containsKey(searchTerm)) {
+                String filteredTerm = stringFilter(searchTerm);
+                Integer termId = filteredTermIds.get(filteredTerm);
+                if (termId == null) {
+                    termId = filteredTerms.size();
+                    filteredTerms.add(filteredTerm);
+                    filteredTermIds.put(filteredTerm, termId);
+                }
+                termIds.put(searchTerm, termId);
+            }
+        }
+        searchMetrics.record(SearchMetrics.BATCH_METHOD, SearchMetrics.NORMALIZE_PHASE, startTime);
+
+        //text files of the directory, cached until the directory changes
+        List<File> files = corpusCache.listTextFiles(resPath);
+        //Stores number of matches per file for each term id
+        List<Map<String, Integer>> unsortedResultMaps = new ArrayList<>();
+        for (int termId = 0; termId < filteredTerms.size(); termId++) {
+            unsortedResultMaps.add(new HashMap<String, Integer>());
+        }
+
+        if (files.isEmpty()) {
+            System.err.println("Empty resource directory. Please add appropriate text files to: " + resPath);
+        } else if (!filteredTerms.isEmpty()) {
+            long phaseStartTime = searchMetrics.start();
+            AhoCorasick.Scanner scanner = new AhoCorasick(filteredTerms).newScanner();
+            searchMetrics.record(SearchMetrics.BATCH_METHOD, SearchMetrics.BUILD_PHASE, phaseStartTime);
             for (File file : files) {
-                searchCount = 0;
-                if (file.isFile() && file.getName().toLowerCase().endsWith(".txt")) {
-                    //search starts here
-                    int lastIdx = 0;
-                    String fileStr = readFile(file);
-                    while (lastIdx != -1) {
-                        lastIdx = fileStr.indexOf(searchTerm, lastIdx);
-                        if (lastIdx != -1) {
-                            searchCount++;
-                            lastIdx += searchTerm.length();
+                scanner.reset();
+                //search starts here
+                phaseStartTime = searchMetrics.start();
+                String fileStr = corpusCache.get(file);
+                searchMetrics.record(SearchMetrics.BATCH_METHOD, SearchMetrics.READ_PHASE, phaseStartTime);
+                phaseStartTime = searchMetrics.start();
+                if (fileStr != null) {
+                    scanner.scan(fileStr);
+                } else {
+                    //file does not fit in the cache, stream it instead
+                    try (MappedTextNormalizer normalizer = new MappedTextNormalizer(file)) {
+                        byte[] buf = new byte[MappedStringMatcher.DEFAULT_BUFFER_SIZE];
+                        int read;
+                        while ((read = normalizer.read(buf, 0, buf.length)) != -1) {
+                            scanner.scan(buf, 0, read);
                         }
+                    } catch (IOException ioe) {
+                        ioe.printStackTrace();
+                        System.err.println("Error reading file: " + file.getPath());
+                        scanner.reset();
                     }
-                    unsortedResultMap.put(file.getName(), searchCount);
-                }//end if
+                }
+                searchMetrics.record(SearchMetrics.BATCH_METHOD, SearchMetrics.MATCH_PHASE, phaseStartTime);
+
+                for (Map<String, Integer> unsortedResultMap : unsortedResultMaps) {
+                    unsortedResultMap.put(file.getName(), 0);
+                }
+                for (int idx = 0; idx < scanner.matchedCount(); idx++) {
+                    int termId = scanner.matchedTerm(idx);
+                    unsortedResultMaps.get(termId).put(file.getName(), scanner.count(termId));
+                }
             }//end for
+            searchMetrics.addFilesScanned(files.size());
         }//end if
 
-        return sortDescByValue(unsortedResultMap);
+        List<Map<String, Integer>> sortedResultMaps = new ArrayList<>();
+        for (Map<String, Integer> unsortedResultMap : unsortedResultMaps) {
+            sortedResultMaps.add(sortDescByValue(SearchMetrics.BATCH_METHOD, unsortedResultMap));
+        }
+        for (String searchTerm : searchTerms) {
+            Integer termId = searchTerm != null ? termIds.get(searchTerm) : null;
+            resultMap.put(searchTerm, termId != null ? sortedResultMaps.get(termId) : new HashMap<String, Integer>());
+        }
+        searchMetrics.record(SearchMetrics.BATCH_METHOD, SearchMetrics.TOTAL_PHASE, startTime);
+        return resultMap;
     }
 
     /**
      * Searches for {@code searchTerm} in all text files in the {@code resPath} directory path
-     * using regular expression.
+     * using regular expression. The filtered search term is matched literally as a whole word, see {@link RegexPattern}.
+     * Results are cached by the {@link ResultCache} until a text file of the directory changes.
      * @param searchTerm used to search in file
      * @param resPath directory containing the text files
      * @return the map containing the file name (key) and its corresponding search count (value)
      * of {@code searchTerm}
      */
     public static Map<String, Integer> regexSearch(String searchTerm, final String resPath) {
-        int searchCount;
         //Stores number of matches per file
         Map<String, Integer> unsortedResultMap = new HashMap<>();
         if (searchTerm == null || searchTerm.isEmpty()) {
             return unsortedResultMap;
         }
 
+        long startTime = searchMetrics.start();
+        searchMetrics.incrementQueries(SearchMetrics.REGEX_METHOD);
+        long phaseStartTime = searchMetrics.start();
         searchTerm = stringFilter(searchTerm);
-        //Create new file instances
-        File[] files = new File(resPath).listFiles();
+        searchMetrics.record(SearchMetrics.REGEX_METHOD, SearchMetrics.NORMALIZE_PHASE, phaseStartTime);
+        //repeated searches are answered from the cache while the text files are unchanged
+        String source = new File(resPath).getAbsolutePath();
+        long version = corpusCache.version(resPath);
+        Map<String, Integer> cachedResultMap = resultCache.get(SearchMetrics.REGEX_METHOD, source, searchTerm, null, version);
+        if (cachedResultMap != null) {
+            searchMetrics.record(SearchMetrics.REGEX_METHOD, SearchMetrics.TOTAL_PHASE, startTime);
+            return cachedResultMap;
+        }
+
+        //text files of the directory, cached until the directory changes
+        List<File> files = corpusCache.listTextFiles(resPath);
 
-        if (files == null || files.length == 0) {
+        if (files.isEmpty()) {
             System.err.println("Empty resource directory. Please add appropriate text files to: " + resPath);
+            return unsortedResultMap;
+        }
+
+        //compiled patterns are immutable and shared by every file and every search of the term
+        final RegexPattern regexPattern = RegexPattern.compile(searchTerm);
+        //search starts here, files are searched concurrently by the SearchExecutor
+        List<Integer> searchCounts = SearchExecutor.map(files, new SearchExecutor.FileTask<Integer>() {
+            @Override
+            public Integer apply(File file) {
+                return countRegexMatches(file, regexPattern);
+            }
+        });
+        for (int idx = 0; idx < files.size(); idx++) {
+            unsortedResultMap.put(files.get(idx).getName(), searchCounts.get(idx));
+        }
+
+        Map<String, Integer> sortedResultMap = resultCache.put(SearchMetrics.REGEX_METHOD, source, searchTerm, null,
+                version, sortDescByValue(SearchMetrics.REGEX_METHOD, unsortedResultMap));
+        searchMetrics.record(SearchMetrics.REGEX_METHOD, SearchMetrics.TOTAL_PHASE, startTime);
+        return sortedResultMap;
+    }
+
+    /**
+     * Regular expression helper method
+     * Counts the matches of {@code regexPattern} in {@code file}. Files that do not fit in the {@link CorpusCache}
+     * are streamed through {@link MappedTextNormalizer} and matched as they are read, so they are never held in
+     * heap. Files the {@link NgramPrefilter} rules out are not read.
+     * @param file text file to be searched
+     * @param regexPattern compiled pattern of the filtered search term
+     * @return the number of non-overlapping matches
+     */
+    private static int countRegexMatches(File file, RegexPattern regexPattern) {
+        long startTime = searchMetrics.start();
+        boolean mayContain = ngramPrefilter.mayContain(file, regexPattern.getLiteral());
+        searchMetrics.record(SearchMetrics.REGEX_METHOD, SearchMetrics.PREFILTER_PHASE, startTime);
+        if (!mayContain) {
+            searchMetrics.addFilesSkipped(1);
+            return 0;
+        }
+        searchMetrics.addFilesScanned(1);
+
+        int searchCount = 0;
+        startTime = searchMetrics.start();
+        String fileStr = corpusCache.get(file);
+        searchMetrics.record(SearchMetrics.REGEX_METHOD, SearchMetrics.READ_PHASE, startTime);
+        startTime = searchMetrics.start();
+        if (fileStr != null) {
+            searchCount = regexPattern.count(fileStr);
         } else {
-            for (File file : files) {
-                searchCount = 0;
-                if (file.isFile() && file.getName().toLowerCase().endsWith(".txt")) {
-                    //search starts here
-                    String fileStr = readFile(file);
-
-                    Pattern pattern = Pattern.compile("\\b" + searchTerm + "\\b");
-                    Matcher matcher = pattern.matcher(fileStr);
-                    while (matcher.find()) {
-                        searchCount++;
-                    }
-                    unsortedResultMap.put(file.getName(), searchCount);
-                }//end if
-            }//end for
-        }//end if
+            //file does not fit in the cache, stream it instead
+            try (MappedTextNormalizer normalizer = new MappedTextNormalizer(file)) {
+                searchCount = regexPattern.count(normalizer, new byte[MappedStringMatcher.DEFAULT_BUFFER_SIZE]);
+            } catch (IOException ioe) {
+                ioe.printStackTrace();
+                System.err.println("Error reading file: " + file.getPath());
+            }
+        }
+        //streamed files are read while matched
+        searchMetrics.record(SearchMetrics.REGEX_METHOD, SearchMetrics.MATCH_PHASE, startTime);
+        return searchCount;
+    }
+
+    /**
+     * Searches for {@code searchTerm} like {@link #regexSearch(String, String)}, but only returns the files of
+     * {@code page}. The ranking of every file is cached by the {@link ResultCache}, so the next page or a repeated
+     * search is answered from the cache.
+     * @param searchTerm used to search in file
+     * @param resPath directory containing the text files
+     * @param page files ranked in the result
+     * @return the files of the page and their corresponding search count of {@code searchTerm}
+     */
+    public static SearchResult regexSearch(String searchTerm, String resPath, PageRequest page) {
+        if (searchTerm == null || searchTerm.isEmpty()) {
+            return new TopKSelector(page).toResult();
+        }
 
-        return sortDescByValue(unsortedResultMap);
+        long startTime = searchMetrics.start();
+        searchMetrics.incrementQueries(SearchMetrics.REGEX_METHOD);
+        long phaseStartTime = searchMetrics.start();
+        String filteredTerm = stringFilter(searchTerm);
+        searchMetrics.record(SearchMetrics.REGEX_METHOD, SearchMetrics.NORMALIZE_PHASE, phaseStartTime);
+
+        //compiled patterns are immutable and shared by every file and every search of the term
+        final RegexPattern regexPattern = RegexPattern.compile(filteredTerm);
+        SearchResult result = searchFiles(SearchMetrics.REGEX_METHOD, filteredTerm, resPath, page,
+                new SearchExecutor.FileTask<Integer>() {
+                    @Override
+                    public Integer apply(File file) {
+                        return countRegexMatches(file, regexPattern);
+                    }
+                });
+        searchMetrics.record(SearchMetrics.REGEX_METHOD, SearchMetrics.TOTAL_PHASE, startTime);
+        return result;
     }
 
     /**
      * Searches for {@code searchTerm} in all text files in the {@code resPath} directory path
      * using index created from {@link #indexFilesInDir(String, String)}.
-     * This uses the Lucene search library.
+     * This uses the Lucene search library and opens the index on every call, use an
+     * {@link IndexSession} to keep the index open across searches.
+     * Results are cached by the {@link ResultCache} until the index changes, in which case the index
+     * is not opened at all.
      * @param searchTerm used to search in file
      * @param indexedFiles indexed file names
      * @param indexDirPath directory containing the index
@@ -143,199 +555,968 @@ public final class SearchUtils {
      * of {@code searchTerm}
      */
     public static Map<String, Integer> indexSearch(String searchTerm, List<String> indexedFiles, final String indexDirPath) {
-        int searchCount;
+        return indexSearch(searchTerm, indexedFiles, indexDirPath, 0);
+    }
+
+    /**
+     * Searches for {@code searchTerm} like {@link #indexSearch(String, List, String)}, but the words of a phrase
+     * only need to be found in order within {@code slop} other words (ex. "military history" with a slop of 2
+     * matches "military and naval history"). A slop of 0 matches the exact phrase.
+     * @param searchTerm used to search in file
+     * @param indexedFiles indexed file names
+     * @param indexDirPath directory containing the index
+     * @param slop number of other words allowed between the first and the last word of a match
+     * @return the map containing the file name (key) and its corresponding search count (value)
+     * of {@code searchTerm}
+     */
+    public static Map<String, Integer> indexSearch(String searchTerm, List<String> indexedFiles, final String indexDirPath,
+                                                   int slop) {
+        if (slop < 0) {
+            throw new IllegalArgumentException("Slop must not be negative: " + slop);
+        }
+        if (searchTerm == null || searchTerm.isEmpty()) {
+            return new HashMap<>();
+        }
+        long startTime = searchMetrics.start();
+        searchMetrics.incrementQueries(SearchMetrics.INDEX_METHOD);
+        long phaseStartTime = searchMetrics.start();
+        String filteredTerm = stringFilter(searchTerm);
+        searchMetrics.record(SearchMetrics.INDEX_METHOD, SearchMetrics.NORMALIZE_PHASE, phaseStartTime);
+
+        Map<String, Integer> resultMap;
+        try (FSDirectory dir = FSDirectory.open((new File(indexDirPath)).toPath())) {
+            //the latest commit identifies the index version a cached result was computed from
+            resultMap = resultCache.get(SearchMetrics.INDEX_METHOD, dir.getDirectory().toString(),
+                    cachedTerm(filteredTerm, slop), indexedFiles, SegmentInfos.readLatestCommit(dir).getVersion());
+            if (resultMap == null) {
+                //reads and prepares index, closed once searched
+                phaseStartTime = searchMetrics.start();
+                try (IndexReader reader = DirectoryReader.open(dir)) {
+                    searchMetrics.record(SearchMetrics.INDEX_METHOD, SearchMetrics.READER_OPEN_PHASE, phaseStartTime);
+                    resultMap = searchIndex(filteredTerm, indexedFiles, reader, slop);
+                }
+            }
+        } catch (IOException ioe) {
+            ioe.printStackTrace();
+            System.err.println("Error opening index in: " + indexDirPath);
+            resultMap = withZeroMatches(new HashMap<String, Integer>(), indexedFiles);
+        }
+        searchMetrics.record(SearchMetrics.INDEX_METHOD, SearchMetrics.TOTAL_PHASE, startTime);
+        return resultMap;
+    }
+
+    /**
+     * Searches for {@code searchTerm} like {@link #indexSearch(String, List, String)}, but only returns the files of
+     * {@code page}. The ranking of every file is cached by the {@link ResultCache}, so the next page or a repeated
+     * search is answered from the cache.
+     * @param searchTerm used to search in file
+     * @param indexedFiles indexed file names
+     * @param indexDirPath directory containing the index
+     * @param page files ranked in the result
+     * @return the files of the page and their corresponding search count of {@code searchTerm}
+     */
+    public static SearchResult indexSearch(String searchTerm, List<String> indexedFiles, String indexDirPath, PageRequest page) {
+        if (searchTerm == null || searchTerm.isEmpty()) {
+            return new TopKSelector(page).toResult();
+        }
+        long startTime = searchMetrics.start();
+        searchMetrics.incrementQueries(SearchMetrics.INDEX_METHOD);
+        long phaseStartTime = searchMetrics.start();
+        String filteredTerm = stringFilter(searchTerm);
+        searchMetrics.record(SearchMetrics.INDEX_METHOD, SearchMetrics.NORMALIZE_PHASE, phaseStartTime);
+
+        SearchResult result;
+        try (FSDirectory dir = FSDirectory.open((new File(indexDirPath)).toPath())) {
+            //the latest commit identifies the index version a cached result was computed from
+            FileCounts cachedCounts = resultCache.getCounts(SearchMetrics.INDEX_METHOD, dir.getDirectory().toString(),
+                    filteredTerm, indexedFiles, SegmentInfos.readLatestCommit(dir).getVersion());
+            if (cachedCounts != null) {
+                result = selectPage(SearchMetrics.INDEX_METHOD, cachedCounts, page, true);
+            } else {
+                //reads and prepares index, closed once searched
+                phaseStartTime = searchMetrics.start();
+                try (IndexReader reader = DirectoryReader.open(dir)) {
+                    searchMetrics.record(SearchMetrics.INDEX_METHOD, SearchMetrics.READER_OPEN_PHASE, phaseStartTime);
+                    result = searchIndex(filteredTerm, indexedFiles, reader, page);
+                }
+            }
+        } catch (IOException ioe) {
+            ioe.printStackTrace();
+            System.err.println("Error opening index in: " + indexDirPath);
+            TopKSelector selector = new TopKSelector(page);
+            for (String indexedFile : indexedFiles) {
+                selector.offer(indexedFile, 0);
+            }
+            result = selector.toResult(false);
+        }
+        searchMetrics.record(SearchMetrics.INDEX_METHOD, SearchMetrics.TOTAL_PHASE, startTime);
+        return result;
+    }
+
+    /**
+     * Searches for {@code searchTerm} like {@link #simpleStringSearch(String, String, PageRequest)}, but without
+     * blocking: the count of each file is passed to {@code listener} as soon as the file is searched. The search
+     * stops once {@code token} is cancelled or {@code timeout} elapsed, whichever comes first, and the result then
+     * ranks only the files searched so far (see {@link SearchResult#isComplete()}). Files are checked for
+     * cancellation before being searched, a file being searched is not interrupted.
+     * @param searchTerm used to search in file
+     * @param resPath directory containing the text files
+     * @param page files ranked in the result
+     * @param timeout time the search may take, {@link Long#MAX_VALUE} for no deadline
+     * @param unit unit of {@code timeout}
+     * @param token cancels the search, null for none
+     * @param listener receives the count of each file searched, null for none
+     * @return the result of the search, available at the latest by the deadline
+     */
+    public static Future<SearchResult> simpleStringSearchAsync(String searchTerm, String resPath, PageRequest page,
+                                                               long timeout, TimeUnit unit, CancellationToken token,
+                                                               SearchListener listener) {
+        if (searchTerm == null || searchTerm.isEmpty()) {
+            return CompletableFuture.completedFuture(new TopKSelector(page).toResult());
+        }
+
+        StreamingSearch search = new StreamingSearch(SearchMetrics.STRING_METHOD, page, timeout, unit, token, listener);
+        searchMetrics.incrementQueries(SearchMetrics.STRING_METHOD);
+        long phaseStartTime = searchMetrics.start();
+        final String filteredTerm = stringFilter(searchTerm);
+        searchMetrics.record(SearchMetrics.STRING_METHOD, SearchMetrics.NORMALIZE_PHASE, phaseStartTime);
+        final MappedStringMatcher matcher = new MappedStringMatcher(filteredTerm);
+
+        return streamFiles(search, SearchMetrics.STRING_METHOD, filteredTerm, resPath,
+                new SearchExecutor.FileTask<Integer>() {
+                    @Override
+                    public Integer apply(File file) {
+                        return countStringMatches(file, matcher);
+                    }
+                });
+    }
+
+    /**
+     * Searches for {@code searchTerm} like {@link #regexSearch(String, String, PageRequest)}, but without blocking,
+     * see {@link #simpleStringSearchAsync(String, String, PageRequest, long, TimeUnit, CancellationToken, SearchListener)}.
+     * @param searchTerm used to search in file
+     * @param resPath directory containing the text files
+     * @param page files ranked in the result
+     * @param timeout time the search may take, {@link Long#MAX_VALUE} for no deadline
+     * @param unit unit of {@code timeout}
+     * @param token cancels the search, null for none
+     * @param listener receives the count of each file searched, null for none
+     * @return the result of the search, available at the latest by the deadline
+     */
+    public static Future<SearchResult> regexSearchAsync(String searchTerm, String resPath, PageRequest page,
+                                                        long timeout, TimeUnit unit, CancellationToken token,
+                                                        SearchListener listener) {
+        if (searchTerm == null || searchTerm.isEmpty()) {
+            return CompletableFuture.completedFuture(new TopKSelector(page).toResult());
+        }
+
+        StreamingSearch search = new StreamingSearch(SearchMetrics.REGEX_METHOD, page, timeout, unit, token, listener);
+        searchMetrics.incrementQueries(SearchMetrics.REGEX_METHOD);
+        long phaseStartTime = searchMetrics.start();
+        String filteredTerm = stringFilter(searchTerm);
+        searchMetrics.record(SearchMetrics.REGEX_METHOD, SearchMetrics.NORMALIZE_PHASE, phaseStartTime);
+
+        //compiled patterns are immutable and shared by every file and every search of the term
+        final RegexPattern regexPattern = RegexPattern.compile(filteredTerm);
+        return streamFiles(search, SearchMetrics.REGEX_METHOD, filteredTerm, resPath,
+                new SearchExecutor.FileTask<Integer>() {
+                    @Override
+                    public Integer apply(File file) {
+                        return countRegexMatches(file, regexPattern);
+                    }
+                });
+    }
+
+    /**
+     * Asynchronous search helper method
+     * Streams a result cached by the {@link ResultCache}, or else applies {@code countTask} to every text file in
+     * the {@code resPath} directory path.
+     * @param search search streaming the files
+     * @param method search method, see {@link SearchMetrics}
+     * @param filteredTerm search term filtered by {@link #stringFilter(String)}
+     * @param resPath directory containing the text files
+     * @param countTask counts the matches of {@code filteredTerm} in a file
+     * @return the result of the search, available at the latest by the deadline
+     */
+    private static Future<SearchResult> streamFiles(StreamingSearch search, String method, String filteredTerm,
+                                                    String resPath, SearchExecutor.FileTask<Integer> countTask) {
+        FileCounts cachedCounts = resultCache.getCounts(method, new File(resPath).getAbsolutePath(), filteredTerm,
+                null, corpusCache.version(resPath));
+        if (cachedCounts != null) {
+            return search.replay(cachedCounts);
+        }
+
+        //text files of the directory, cached until the directory changes
+        List<File> files = corpusCache.listTextFiles(resPath);
+        if (files.isEmpty()) {
+            System.err.println("Empty resource directory. Please add appropriate text files to: " + resPath);
+        }
+        return search.scanFiles(files, countTask);
+    }
+
+    /**
+     * Searches for {@code searchTerm} in all text files indexed by {@code searcher}.
+     * @param searchTerm used to search in file
+     * @param indexedFiles indexed file names
+     * @param searcher searcher over the index created from {@link #indexFilesInDir(String, String)}
+     * @return the map containing the file name (key) and its corresponding search count (value)
+     * of {@code searchTerm}
+     */
+    static Map<String, Integer> indexSearch(String searchTerm, List<String> indexedFiles, IndexSearcher searcher) {
+        if (searchTerm == null || searchTerm.isEmpty()) {
+            return new HashMap<>();
+        }
+        long startTime = searchMetrics.start();
+        searchMetrics.incrementQueries(SearchMetrics.INDEX_METHOD);
+        long phaseStartTime = searchMetrics.start();
+        String filteredTerm = stringFilter(searchTerm);
+        searchMetrics.record(SearchMetrics.INDEX_METHOD, SearchMetrics.NORMALIZE_PHASE, phaseStartTime);
+
+        Map<String, Integer> resultMap = searchIndex(filteredTerm, indexedFiles, searcher.getIndexReader());
+        searchMetrics.record(SearchMetrics.INDEX_METHOD, SearchMetrics.TOTAL_PHASE, startTime);
+        return resultMap;
+    }
+
+    /**
+     * Index search helper method
+     * Searches for {@code searchTerm} in all text files indexed by {@code reader}, answering from the
+     * {@link ResultCache} when the same search was made on the same version of the index.
+     * @param searchTerm search term filtered by {@link #stringFilter(String)}
+     * @param indexedFiles indexed file names
+     * @param reader reader of the index created from {@link #indexFilesInDir(String, String)}
+     * @return the map containing the file name (key) and its corresponding search count (value)
+     * of {@code searchTerm}
+     */
+    static Map<String, Integer> searchIndex(String searchTerm, List<String> indexedFiles, IndexReader reader) {
+        return searchIndex(searchTerm, indexedFiles, reader, 0);
+    }
+
+    /**
+     * Index search helper method
+     * Searches for {@code searchTerm} like {@link #searchIndex(String, List, IndexReader)}, matching the words of
+     * a phrase in order within {@code slop} other words.
+     * @param searchTerm search term filtered by {@link #stringFilter(String)}
+     * @param indexedFiles indexed file names
+     * @param reader reader of the index created from {@link #indexFilesInDir(String, String)}
+     * @param slop number of other words allowed between the first and the last word of a match
+     * @return the map containing the file name (key) and its corresponding search count (value)
+     * of {@code searchTerm}
+     */
+    static Map<String, Integer> searchIndex(String searchTerm, List<String> indexedFiles, IndexReader reader, int slop) {
+        //readers of file system indexes are identified by directory and version in the cache
+        String source = indexSource(reader);
+        long version = source != null ? ((DirectoryReader) reader).getVersion() : 0;
+        String cachedTerm = cachedTerm(searchTerm, slop);
+        if (source != null) {
+            Map<String, Integer> cachedResultMap = resultCache.get(SearchMetrics.INDEX_METHOD, source, cachedTerm, indexedFiles, version);
+            if (cachedResultMap != null) {
+                return cachedResultMap;
+            }
+        }
+
         //Stores number of matches per file
         Map<String, Integer> unsortedResultMap = new HashMap<>();
-        if (searchTerm == null || searchTerm.isEmpty()) {
-            return unsortedResultMap;
+        if (!matchIndex(searchTerm, slop, reader, unsortedResultMap)) {
+            //partial results are not cached
+            source = null;
         }
 
-        searchTerm = stringFilter(searchTerm);
+        Map<String, Integer> sortedResultMap = withZeroMatches(unsortedResultMap, indexedFiles);
+        if (source != null) {
+            //copied so later changes to the caller's list do not alter the cached key
+            sortedResultMap = resultCache.put(SearchMetrics.INDEX_METHOD, source, cachedTerm, new ArrayList<>(indexedFiles), version,
+                    sortedResultMap);
+        }
+        return sortedResultMap;
+    }
+
+    /**
+     * Index search helper method
+     * Searches for {@code searchTerm} in all text files indexed by {@code reader} like
+     * {@link #searchIndex(String, List, IndexReader)}, but only returns the files of {@code page}, selected with a
+     * bounded heap instead of sorting every file. The counts of every file are cached unsorted by the
+     * {@link ResultCache}, so the next page or a repeated search is selected from the cache.
+     * @param searchTerm search term filtered by {@link #stringFilter(String)}
+     * @param indexedFiles indexed file names
+     * @param reader reader of the index created from {@link #indexFilesInDir(String, String)}
+     * @param page files ranked in the result
+     * @return the files of the page and their corresponding search count of {@code searchTerm}
+     */
+    static SearchResult searchIndex(String searchTerm, List<String> indexedFiles, IndexReader reader, PageRequest page) {
+        String source = indexSource(reader);
+        long version = source != null ? ((DirectoryReader) reader).getVersion() : 0;
+        if (source != null) {
+            FileCounts cachedCounts = resultCache.getCounts(SearchMetrics.INDEX_METHOD, source, searchTerm,
+                    indexedFiles, version);
+            if (cachedCounts != null) {
+                return selectPage(SearchMetrics.INDEX_METHOD, cachedCounts, page, true);
+            }
+        }
+
+        //Stores number of matches per file containing every token
+        Map<String, Integer> matchedFiles = new HashMap<>();
+        boolean complete = matchIndex(searchTerm, 0, reader, matchedFiles);
+        FileCounts fileCounts = FileCounts.of(matchedFiles, indexedFiles);
+        if (source != null && complete) {
+            //copied so later changes to the caller's list do not alter the cached key
+            resultCache.putCounts(SearchMetrics.INDEX_METHOD, source, searchTerm, new ArrayList<>(indexedFiles),
+                    version, fileCounts);
+        }
+        //partial results are neither cached nor reported complete
+        return selectPage(SearchMetrics.INDEX_METHOD, fileCounts, page, complete);
+    }
+
+    /**
+     * Index search helper method
+     * Searches for {@code searchTerm} in all text files indexed by {@code reader} like
+     * {@link #searchIndex(String, List, IndexReader)}, reporting the count of each file to {@code listener} as soon
+     * as it is counted: a result cached by the {@link ResultCache} is replayed, otherwise the files matched are
+     * reported while the index is read and the indexed files without any match once every document was matched.
+     * Documents are checked for cancellation before being matched, complete results are cached.
+     * @param searchTerm search term filtered by {@link #stringFilter(String)}
+     * @param indexedFiles indexed file names
+     * @param reader reader of the index created from {@link #indexFilesInDir(String, String)}
+     * @param token cancels the search
+     * @param listener receives the count of each file searched
+     * @return false if the index could not be read entirely or the search was cancelled
+     */
+    static boolean streamIndex(String searchTerm, List<String> indexedFiles, IndexReader reader,
+                               CancellationToken token, SearchListener listener) {
+        String source = indexSource(reader);
+        long version = source != null ? ((DirectoryReader) reader).getVersion() : 0;
+        if (source != null) {
+            FileCounts cachedCounts = resultCache.getCounts(SearchMetrics.INDEX_METHOD, source, searchTerm,
+                    indexedFiles, version);
+            if (cachedCounts != null) {
+                for (int idx = 0; idx < cachedCounts.size(); idx++) {
+                    if (token.isCancelled()) {
+                        return false;
+                    }
+                    listener.onFile(cachedCounts.getFilename(idx), cachedCounts.getCount(idx));
+                }
+                return true;
+            }
+        }
+
+        //Stores number of matches per file, reported as matched
+        Map<String, Integer> unsortedResultMap = new HashMap<>();
+        if (!matchIndex(searchTerm, 0, reader, unsortedResultMap, token, listener)) {
+            //partial results are not cached
+            return false;
+        }
+        for (String indexedFile : indexedFiles) {
+            if (!unsortedResultMap.containsKey(indexedFile)) {
+                listener.onFile(indexedFile, 0);
+            }
+        }
+        if (source != null) {
+            //copied so later changes to the caller's list do not alter the cached key
+            resultCache.putCounts(SearchMetrics.INDEX_METHOD, source, searchTerm, new ArrayList<>(indexedFiles), version,
+                    FileCounts.of(unsortedResultMap, indexedFiles));
+        }
+        return true;
+    }
+
+    /**
+     * Index search helper method
+     * @param filteredTerm search term filtered by {@link #stringFilter(String)}
+     * @param slop number of other words allowed within a match
+     * @return the term identifying the search in the {@link ResultCache}, ex. "military history~2"
+     */
+    private static String cachedTerm(String filteredTerm, int slop) {
+        //filtered terms never contain '~'
+        return slop == 0 ? filteredTerm : filteredTerm + "~" + slop;
+    }
+
+    /**
+     * Index search helper method
+     * @param reader reader of an index
+     * @return the directory identifying the index in the {@link ResultCache}, or null if the index is not
+     * read from the file system
+     */
+    private static String indexSource(IndexReader reader) {
+        if (reader instanceof DirectoryReader && ((DirectoryReader) reader).directory() instanceof FSDirectory) {
+            return ((FSDirectory) ((DirectoryReader) reader).directory()).getDirectory().toString();
+        }
+        return null;
+    }
+
+    /**
+     * Index search helper method
+     * Counts the matches of {@code searchTerm} in every file indexed by {@code reader} containing each of its tokens.
+     * @param searchTerm search term filtered by {@link #stringFilter(String)}
+     * @param slop number of other words allowed between the first and the last word of a match
+     * @param reader reader of the index created from {@link #indexFilesInDir(String, String)}
+     * @param unsortedResultMap number of matches per file, populated with the files containing every token
+     * @return false if the index could not be read entirely
+     */
+    private static boolean matchIndex(String searchTerm, int slop, IndexReader reader, Map<String, Integer> unsortedResultMap) {
+        return matchIndex(searchTerm, slop, reader, unsortedResultMap, null, null);
+    }
+
+    /**
+     * Index search helper method
+     * Counts the matches of {@code searchTerm} like {@link #matchIndex(String, int, IndexReader, Map)}, reporting
+     * each file to {@code listener} once counted and stopping once {@code token} is cancelled.
+     * @param searchTerm search term filtered by {@link #stringFilter(String)}
+     * @param slop number of other words allowed between the first and the last word of a match
+     * @param reader reader of the index created from {@link #indexFilesInDir(String, String)}
+     * @param unsortedResultMap number of matches per file, populated with the files containing every token
+     * @param token checked before every document, null for none
+     * @param listener receives the count of each file containing every token, null for none
+     * @return false if the index could not be read entirely or the search was cancelled
+     */
+    private static boolean matchIndex(String searchTerm, int slop, IndexReader reader, Map<String, Integer> unsortedResultMap,
+                                      CancellationToken token, SearchListener listener) {
+        boolean complete = true;
+        List<String> searchTermTokens = Arrays.asList(searchTerm.split(" "));
+        //each distinct token is looked up once, repeated tokens share its positions
+        List<String> distinctTokens = new ArrayList<>(new LinkedHashSet<>(searchTermTokens));
+        int[] searchTokens = new int[searchTermTokens.size()];
+        for (int idx = 0; idx < searchTokens.length; idx++) {
+            searchTokens[idx] = distinctTokens.indexOf(searchTermTokens.get(idx));
+        }
+        //position buffers reused across documents, grown to the largest term frequency
+        int[][] positions = new int[distinctTokens.size()][16];
+        int[] freqs = new int[distinctTokens.size()];
+        long postingsStartTime = searchMetrics.start();
+        long getFreqNanos = 0;
+        int docsScanned = 0;
         try {
-            //reads and prepares index
-            IndexReader reader = DirectoryReader.open(FSDirectory.open((new File(indexDirPath)).toPath()));
-            //make index searchable
-            IndexSearcher searcher = new IndexSearcher(reader);
-            //queries index for matches
-            Query query = new QueryParser("contents", new WhitespaceAnalyzer()).parse(searchTerm);
-            //find top 10000 matching documents
-            TopDocs topDocs = searcher.search(query, 10000);
-            ScoreDoc[] scoreDocs = topDocs.scoreDocs;
-
-            //iterates through each matching document to get frequency of search term
-            for (ScoreDoc scoreDoc : scoreDocs) {
-                Document doc = searcher.doc(scoreDoc.doc);
-                Terms terms = reader.getTermVector(scoreDoc.doc, "contents");
-                TermsEnum itr = terms.iterator();
-                BytesRef term;
-                Map<String, List<Integer>> termsPosMap = new HashMap<>();
-                List<String> searchTermTokens = Arrays.asList(searchTerm.split(" "));
-                PostingsEnum postings = null;
-                int termFreq;
-                //iterates through each term and their frequency
-                while ((term = itr.next()) != null) {
-                    String termText = term.utf8ToString();
-                    //if search term contains term, then put term and its positions into map
-                    if (searchTermTokens.contains(termText.toLowerCase())) {
-                        postings = itr.postings(postings, PostingsEnum.POSITIONS);
-                        List<Integer> positions = new ArrayList<>();
-
-                        while (postings.nextDoc() != PostingsEnum.NO_MORE_DOCS) {
-                            termFreq = postings.freq();
-                            for (int idx = 0; idx < termFreq; idx++) {
-                                int pos = postings.nextPosition();
-                                positions.add(pos);
+            for (LeafReaderContext leaf : reader.leaves()) {
+                if (!complete) {
+                    //cancelled
+                    break;
+                }
+                LeafReader leafReader = leaf.reader();
+                //seeks straight to the postings of each token, skipping segments missing one of them
+                PostingsEnum[] postings = new PostingsEnum[distinctTokens.size()];
+                boolean allTokensFound = true;
+                for (int idx = 0; idx < postings.length && allTokensFound; idx++) {
+                    postings[idx] = leafReader.postings(new Term(CONTENTS_FIELD, distinctTokens.get(idx)), PostingsEnum.POSITIONS);
+                    allTokensFound = postings[idx] != null;
+                }
+                if (!allTokensFound) {
+                    continue;
+                }
+
+                Bits liveDocs = leafReader.getLiveDocs();
+                SortedDocValues filenames = filenameDocValues(leafReader);
+                //iterates through each document containing every token to get frequency of search term
+                int doc = nextCommonDoc(postings, postings[0].nextDoc());
+                while (doc != DocIdSetIterator.NO_MORE_DOCS) {
+                    if (token != null && token.isCancelled()) {
+                        complete = false;
+                        break;
+                    }
+                    if (liveDocs == null || liveDocs.get(doc)) {
+                        for (int idx = 0; idx < postings.length; idx++) {
+                            int termFreq = postings[idx].freq();
+                            if (positions[idx].length < termFreq) {
+                                positions[idx] = new int[Math.max(termFreq, positions[idx].length * 2)];
                             }
+                            for (int pos = 0; pos < termFreq; pos++) {
+                                positions[idx][pos] = postings[idx].nextPosition();
+                            }
+                            freqs[idx] = termFreq;
+                        }
+
+                        String filename = filenames != null ? filenames.get(doc).utf8ToString()
+                                : leafReader.document(doc).get(FILENAME_FIELD);
+                        long getFreqStartTime = searchMetrics.start();
+                        int freq = getFreq(positions, freqs, searchTokens, slop);
+                        if (getFreqStartTime != 0) {
+                            getFreqNanos += System.nanoTime() - getFreqStartTime;
+                        }
+                        unsortedResultMap.put(filename, freq);
+                        if (listener != null) {
+                            listener.onFile(filename, freq);
                         }
-                        termsPosMap.put(termText, positions);
+                        docsScanned++;
                     }
+                    doc = nextCommonDoc(postings, postings[0].nextDoc());
                 }//end while
-
-                int searchTermFreq;
-                searchTermFreq = getFreq(termsPosMap, searchTermTokens);
-                unsortedResultMap.put(doc.getField(FILENAME_FIELD).stringValue(), searchTermFreq);
             }//end for
         } catch (IOException ioe) {
             ioe.printStackTrace();
             System.err.println("Error during Index search.");
-        } catch (ParseException pe) {
-            pe.printStackTrace();
-            System.err.println("Error parsing search term to generate search query.");
+            complete = false;
+        }
+        if (postingsStartTime != 0) {
+            //postings iteration without the phrase matching done by getFreq
+            searchMetrics.recordNanos(SearchMetrics.INDEX_METHOD, SearchMetrics.POSTINGS_PHASE,
+                    System.nanoTime() - postingsStartTime - getFreqNanos);
+            searchMetrics.recordNanos(SearchMetrics.INDEX_METHOD, SearchMetrics.GET_FREQ_PHASE, getFreqNanos);
+        }
+        searchMetrics.addFilesScanned(docsScanned);
+        return complete;
+    }
+
+    /**
+     * Searches for {@code searchTerm} in all text files indexed by {@code positionalIndex}, counting
+     * whole word and phrase matches the same way {@link #regexSearch(String, String)} does.
+     * @param searchTerm used to search in file
+     * @param positionalIndex index built by {@link PositionalIndex#build(String)} or loaded by
+     *                        {@link PositionalIndex#load(File)}
+     * @return the map containing the file name (key) and its corresponding search count (value)
+     * of {@code searchTerm}
+     */
+    public static Map<String, Integer> positionalIndexSearch(String searchTerm, PositionalIndex positionalIndex) {
+        //Stores number of matches per file
+        Map<String, Integer> unsortedResultMap = new HashMap<>();
+        if (searchTerm == null || searchTerm.isEmpty()) {
+            return unsortedResultMap;
+        }
+
+        long startTime = searchMetrics.start();
+        searchMetrics.incrementQueries(SearchMetrics.POSITIONAL_METHOD);
+        long phaseStartTime = searchMetrics.start();
+        String filteredTerm = stringFilter(searchTerm);
+        searchMetrics.record(SearchMetrics.POSITIONAL_METHOD, SearchMetrics.NORMALIZE_PHASE, phaseStartTime);
+        phaseStartTime = searchMetrics.start();
+        int[] searchCounts = positionalIndex.count(filteredTerm);
+        searchMetrics.record(SearchMetrics.POSITIONAL_METHOD, SearchMetrics.MATCH_PHASE, phaseStartTime);
+
+        List<String> filenames = positionalIndex.getFilenames();
+        for (int fileId = 0; fileId < searchCounts.length; fileId++) {
+            unsortedResultMap.put(filenames.get(fileId), searchCounts[fileId]);
+        }
+        Map<String, Integer> sortedResultMap = sortDescByValue(SearchMetrics.POSITIONAL_METHOD, unsortedResultMap);
+        searchMetrics.record(SearchMetrics.POSITIONAL_METHOD, SearchMetrics.TOTAL_PHASE, startTime);
+        return sortedResultMap;
+    }
+
+    /**
+     * Searches for {@code searchTerm} like {@link #positionalIndexSearch(String, PositionalIndex)}, but only keeps
+     * the files of {@code page} instead of sorting every file.
+     * @param searchTerm used to search in file
+     * @param positionalIndex index built by {@link PositionalIndex#build(String)} or loaded by
+     *                        {@link PositionalIndex#load(File)}
+     * @param page files ranked in the result
+     * @return the files of the page and their corresponding search count of {@code searchTerm}
+     */
+    public static SearchResult positionalIndexSearch(String searchTerm, PositionalIndex positionalIndex, PageRequest page) {
+        TopKSelector selector = new TopKSelector(page);
+        if (searchTerm == null || searchTerm.isEmpty()) {
+            return selector.toResult();
+        }
+
+        long startTime = searchMetrics.start();
+        searchMetrics.incrementQueries(SearchMetrics.POSITIONAL_METHOD);
+        long phaseStartTime = searchMetrics.start();
+        String filteredTerm = stringFilter(searchTerm);
+        searchMetrics.record(SearchMetrics.POSITIONAL_METHOD, SearchMetrics.NORMALIZE_PHASE, phaseStartTime);
+        phaseStartTime = searchMetrics.start();
+        int[] searchCounts = positionalIndex.count(filteredTerm);
+        searchMetrics.record(SearchMetrics.POSITIONAL_METHOD, SearchMetrics.MATCH_PHASE, phaseStartTime);
+
+        phaseStartTime = searchMetrics.start();
+        List<String> filenames = positionalIndex.getFilenames();
+        for (int fileId = 0; fileId < searchCounts.length; fileId++) {
+            selector.offer(filenames.get(fileId), searchCounts[fileId]);
+        }
+        SearchResult result = selector.toResult();
+        searchMetrics.record(SearchMetrics.POSITIONAL_METHOD, SearchMetrics.SORT_PHASE, phaseStartTime);
+        searchMetrics.record(SearchMetrics.POSITIONAL_METHOD, SearchMetrics.TOTAL_PHASE, startTime);
+        return result;
+    }
+
+    /**
+     * Searches for {@code searchTerm} in all text files indexed by {@code suffixArrayIndex}, counting
+     * matches the same way {@link #simpleStringSearch(String, String)} does without reading the files.
+     * @param searchTerm used to search in file
+     * @param suffixArrayIndex index built by {@link SuffixArrayIndex#build(String)} or loaded by
+     *                         {@link SuffixArrayIndex#load(File)}
+     * @return the map containing the file name (key) and its corresponding search count (value)
+     * of {@code searchTerm}
+     */
+    public static Map<String, Integer> suffixArraySearch(String searchTerm, SuffixArrayIndex suffixArrayIndex) {
+        //Stores number of matches per file
+        Map<String, Integer> unsortedResultMap = new HashMap<>();
+        if (searchTerm == null || searchTerm.isEmpty()) {
+            return unsortedResultMap;
+        }
+
+        long startTime = searchMetrics.start();
+        searchMetrics.incrementQueries(SearchMetrics.SUFFIX_ARRAY_METHOD);
+        long phaseStartTime = searchMetrics.start();
+        String filteredTerm = stringFilter(searchTerm);
+        searchMetrics.record(SearchMetrics.SUFFIX_ARRAY_METHOD, SearchMetrics.NORMALIZE_PHASE, phaseStartTime);
+        phaseStartTime = searchMetrics.start();
+        int[] searchCounts = suffixArrayIndex.count(filteredTerm);
+        searchMetrics.record(SearchMetrics.SUFFIX_ARRAY_METHOD, SearchMetrics.MATCH_PHASE, phaseStartTime);
+
+        List<String> filenames = suffixArrayIndex.getFilenames();
+        for (int fileId = 0; fileId < searchCounts.length; fileId++) {
+            unsortedResultMap.put(filenames.get(fileId), searchCounts[fileId]);
+        }
+        Map<String, Integer> sortedResultMap = sortDescByValue(SearchMetrics.SUFFIX_ARRAY_METHOD, unsortedResultMap);
+        searchMetrics.record(SearchMetrics.SUFFIX_ARRAY_METHOD, SearchMetrics.TOTAL_PHASE, startTime);
+        return sortedResultMap;
+    }
+
+    /**
+     * Searches for {@code searchTerm} like {@link #suffixArraySearch(String, SuffixArrayIndex)}, but only keeps
+     * the files of {@code page} instead of sorting every file.
+     * @param searchTerm used to search in file
+     * @param suffixArrayIndex index built by {@link SuffixArrayIndex#build(String)} or loaded by
+     *                         {@link SuffixArrayIndex#load(File)}
+     * @param page files ranked in the result
+     * @return the files of the page and their corresponding search count of {@code searchTerm}
+     */
+    public static SearchResult suffixArraySearch(String searchTerm, SuffixArrayIndex suffixArrayIndex, PageRequest page) {
+        TopKSelector selector = new TopKSelector(page);
+        if (searchTerm == null || searchTerm.isEmpty()) {
+            return selector.toResult();
+        }
+
+        long startTime = searchMetrics.start();
+        searchMetrics.incrementQueries(SearchMetrics.SUFFIX_ARRAY_METHOD);
+        long phaseStartTime = searchMetrics.start();
+        String filteredTerm = stringFilter(searchTerm);
+        searchMetrics.record(SearchMetrics.SUFFIX_ARRAY_METHOD, SearchMetrics.NORMALIZE_PHASE, phaseStartTime);
+        phaseStartTime = searchMetrics.start();
+        int[] searchCounts = suffixArrayIndex.count(filteredTerm);
+        searchMetrics.record(SearchMetrics.SUFFIX_ARRAY_METHOD, SearchMetrics.MATCH_PHASE, phaseStartTime);
+
+        phaseStartTime = searchMetrics.start();
+        List<String> filenames = suffixArrayIndex.getFilenames();
+        for (int fileId = 0; fileId < searchCounts.length; fileId++) {
+            selector.offer(filenames.get(fileId), searchCounts[fileId]);
         }
+        SearchResult result = selector.toResult();
+        searchMetrics.record(SearchMetrics.SUFFIX_ARRAY_METHOD, SearchMetrics.SORT_PHASE, phaseStartTime);
+        searchMetrics.record(SearchMetrics.SUFFIX_ARRAY_METHOD, SearchMetrics.TOTAL_PHASE, startTime);
+        return result;
+    }
+
+    /**
+     * Index search helper method
+     * Advances every postings of {@code postings} to the first document at or after {@code target}
+     * that all of them contain.
+     * @param postings postings of each token, positioned before or at {@code target}
+     * @param target document the first postings is positioned at
+     * @return the document all postings are positioned at, or {@link DocIdSetIterator#NO_MORE_DOCS}
+     * @throws IOException when the postings cannot be read
+     */
+    private static int nextCommonDoc(PostingsEnum[] postings, int target) throws IOException {
+        int idx = 1;
+        while (target != DocIdSetIterator.NO_MORE_DOCS && idx < postings.length) {
+            int doc = postings[idx].docID() < target ? postings[idx].advance(target) : postings[idx].docID();
+            if (doc > target) {
+                //restart from the first postings at the furthest document
+                target = postings[0].advance(doc);
+                idx = 1;
+            } else {
+                idx++;
+            }
+        }
+        return target;
+    }
+
+    /**
+     * Index search helper method
+     * @param leafReader segment of the index
+     * @return the file name doc values of the segment, or null if the segment only stores file names
+     * @throws IOException when the doc values cannot be read
+     */
+    private static SortedDocValues filenameDocValues(LeafReader leafReader) throws IOException {
+        FieldInfo fieldInfo = leafReader.getFieldInfos().fieldInfo(FILENAME_FIELD);
+        if (fieldInfo == null || fieldInfo.getDocValuesType() != DocValuesType.SORTED) {
+            return null;
+        }
+        return leafReader.getSortedDocValues(FILENAME_FIELD);
+    }
 
-        //populate map for files there had zero matches
+    /**
+     * Index search helper method
+     * Populates {@code unsortedResultMap} for files that had zero matches and sorts it.
+     * @param unsortedResultMap number of matches per file
+     * @param indexedFiles indexed file names
+     * @return sorted map in descending order
+     */
+    private static Map<String, Integer> withZeroMatches(Map<String, Integer> unsortedResultMap, List<String> indexedFiles) {
         for (String indexedFile : indexedFiles) {
             if (!unsortedResultMap.containsKey(indexedFile)) {
                 unsortedResultMap.put(indexedFile, 0);
             }
         }
-        return sortDescByValue(unsortedResultMap);
+        return sortDescByValue(SearchMetrics.INDEX_METHOD, unsortedResultMap);
     }
 
     /**
      * Index search helper method
-     * This returns the frequency of the search term found in document
-     * @param terms the map of each elements of {@code searchTerms} and its corresponding list of positions
-     * @param searchTerms tokenized search term (ex. "the military history" >> ["the", "military", "history"]
+     * This returns the frequency of the search term found in document: the number of non-overlapping matches
+     * of its tokens in order, counted from left to right like {@link #regexSearch(String, String)} does.
+     * With a {@code slop} of 0 the tokens of a match are consecutive, else up to {@code slop} other words may
+     * be found between its first and last token.
+     * Each token of a match is taken at its first position after the previous token, so the positions of each
+     * token are traversed once, skipping ahead by galloping search, and repeated tokens never share a position.
+     * @param positions sorted positions in the document of each distinct token of the search term
+     * @param freqs number of positions of each distinct token, the first {@code freqs[idx]} of {@code positions[idx]}
+     * @param searchTokens index in {@code positions} of each token of the search term
+     *                     (ex. "the history of the" >> [0, 1, 2, 0])
+     * @param slop number of other words allowed between the first and the last token of a match
      * @return the frequency of search term match
      */
-    private static int getFreq(Map<String, List<Integer>> terms, List<String> searchTerms) {
-        int size = searchTerms.size();
-        if (terms.size() != size) {
-            return 0;
-        } else if (size == 1) {
-            return terms.get(searchTerms.get(0)).size();
+    static int getFreq(int[][] positions, int[] freqs, int[] searchTokens, int slop) {
+        int size = searchTokens.length;
+        if (size == 1) {
+            return freqs[searchTokens[0]];
         }
 
+        //largest distance between the first and the last token of a match
+        int maxSpan = size - 1 + slop;
+        int[] cursors = new int[size];
+        int[] firstPositions = positions[searchTokens[0]];
+        int firstFreq = freqs[searchTokens[0]];
         int freq = 0;
-        List<Integer> curPositions = terms.get(searchTerms.get(0));
-        for (int idx = 0; idx < size; idx++) {
-            List<Integer> nextPositions;
-            List<Integer> nextCurPositions = new ArrayList<>();
-            if (idx + 1 == size) {
-                break;
+        int minStart = 0;
+        while (true) {
+            cursors[0] = gallop(firstPositions, firstFreq, cursors[0], minStart);
+            if (cursors[0] == firstFreq) {
+                return freq;
             }
-            if (idx + 1 <= size) {
-                nextPositions = terms.get(searchTerms.get(idx + 1));
-                for (int curPos : curPositions) {
-                    for (int nextPos : nextPositions) {
-                        if (nextPos - curPos == 1) {
-                            //last comparing nested loop
-                            if (idx + 2 == size) {
-                                freq++;
-                            }
-                            nextCurPositions.add(nextPos);
-                        }
-                    }
-                }//end for
-                curPositions = nextCurPositions;
-            }//end if
-        }//end for
+            int start = firstPositions[cursors[0]];
+            int prev = start;
+            int idx = 1;
+            //cursors only move forward: the position found for each token grows with start
+            for (; idx < size && prev - start <= maxSpan; idx++) {
+                int token = searchTokens[idx];
+                cursors[idx] = gallop(positions[token], freqs[token], cursors[idx], prev + 1);
+                if (cursors[idx] == freqs[token]) {
+                    return freq;
+                }
+                prev = positions[token][cursors[idx]];
+            }//end for
 
-        return freq;
+            if (prev - start <= maxSpan) {
+                freq++;
+                minStart = prev + 1;
+            } else {
+                //token idx - 1 is at prev or after in any later match, which cannot start before prev - (idx - 1) - slop
+                minStart = Math.max(start + 1, prev - (idx - 1) - slop);
+            }
+        }//end while
+    }
+
+    /**
+     * Index search helper method
+     * Galloping search: probes the values at {@code from + 1}, {@code from + 3}, {@code from + 7}, ... then binary
+     * searches the last interval, so finding a value {@code d} places ahead takes O(log d) comparisons.
+     * @param values sorted values
+     * @param length number of values
+     * @param from first index searched
+     * @param target value searched
+     * @return the first index at or after {@code from} whose value is at least {@code target}, or {@code length}
+     */
+    private static int gallop(int[] values, int length, int from, int target) {
+        if (from >= length || values[from] >= target) {
+            return from;
+        }
+        //values[low] < target and values[high] >= target, or high == length
+        int low = from;
+        int step = 1;
+        int high = from + 1;
+        while (high < length && values[high] < target) {
+            low = high;
+            step <<= 1;
+            high = low + step;
+        }
+        high = Math.min(high, length);
+        while (low + 1 < high) {
+            int mid = (low + high) >>> 1;
+            if (values[mid] < target) {
+                low = mid;
+            } else {
+                high = mid;
+            }
+        }
+        return high;
     }
 
     /**
      * Index search helper method
-     * Creates index in {@code indexDirPath} path from the text files found in
+     * Creates or updates index in {@code indexDirPath} path from the text files found in
      * {@code resPath} path. This uses the Lucene search library.
+     * The index is updated incrementally: only files whose last modified time or size changed since they
+     * were indexed are indexed again, files added are indexed and files removed are deleted from the index.
      * @param indexDirPath directory containing the index
      * @param resPath directory containing the text files
      * @return list of file names indexed
      * @throws IOException when error indexing
      */
     public static List<String> indexFilesInDir(String indexDirPath, String resPath) throws IOException {
+        return indexFilesInDir(indexDirPath, resPath, 0, 1);
+    }
+
+    /**
+     * Index search helper method
+     * Creates or incrementally updates the index of shard {@code shard} of a {@link ShardedIndex}: the index
+     * in {@code indexDirPath} only holds the text files of {@code resPath} partitioned to that shard, see
+     * {@link ShardedIndex#shardOf(String, int)}. Files indexed that now belong to another shard are deleted.
+     * @param indexDirPath directory containing the index of the shard
+     * @param resPath directory containing the text files
+     * @param shard shard indexed
+     * @param shardCount number of shards the text files are partitioned in, 1 to index every file
+     * @return list of file names indexed
+     * @throws IOException when error indexing
+     */
+    static List<String> indexFilesInDir(String indexDirPath, String resPath, int shard, int shardCount) throws IOException {
+        File indexDir = new File(indexDirPath).getAbsoluteFile();
+        Object indexLock = indexLocks.get(indexDir.getPath());
+        if (indexLock == null) {
+            indexLocks.putIfAbsent(indexDir.getPath(), new Object());
+            indexLock = indexLocks.get(indexDir.getPath());
+        }
+        //only one writer may hold the index at a time
+        synchronized (indexLock) {
+            //FSDirectory determines the index is stored in the file system
+            long startTime = searchMetrics.start();
+            searchMetrics.incrementQueries(SearchMetrics.INDEXING_METHOD);
+            try (FSDirectory dir = FSDirectory.open(indexDir.toPath())) {
+                return indexFilesInDir(dir, resPath, shard, shardCount);
+            } finally {
+                searchMetrics.record(SearchMetrics.INDEXING_METHOD, SearchMetrics.TOTAL_PHASE, startTime);
+            }
+        }
+    }
+
+    /**
+     * Index search helper method
+     * Incrementally updates the index in {@code dir}, see {@link #indexFilesInDir(String, String, int, int)}.
+     * @param dir directory containing the index
+     * @param resPath directory containing the text files
+     * @param shard shard indexed
+     * @param shardCount number of shards the text files are partitioned in
+     * @return list of file names indexed
+     * @throws IOException when error indexing
+     */
+    private static List<String> indexFilesInDir(FSDirectory dir, String resPath, int shard, int shardCount) throws IOException {
         List<String> filenames = new ArrayList<>();
-        //this analyzer delimits text in a document based on white space
-        WhitespaceAnalyzer analyzer = new WhitespaceAnalyzer();
+        //last modified time and size of each file already indexed, by file name
+        Map<String, long[]> removedFiles = readIndexedFileStates(dir);
+
+        //finds the text files of the shard found in the directory path that changed since they were indexed
+        List<File> files = new ArrayList<>();
+        for (File file : corpusCache.listTextFiles(resPath)) {
+            if (shardCount == 1 || ShardedIndex.shardOf(file.getName(), shardCount) == shard) {
+                files.add(file);
+            }
+        }
+        Map<File, long[]> changedFiles = new LinkedHashMap<>();
+        for (File file : files) {
+            long[] indexedState = removedFiles.remove(file.getName());
+            //read before the content so a change made while indexing is caught by the next update
+            long[] state = new long[] {file.lastModified(), file.length()};
+            if (indexedState == null || !Arrays.equals(state, indexedState)) {
+                changedFiles.put(file, state);
+            }
+        }
 
-        //FSDirectory determines the index is stored in the file system
-        FSDirectory dir = FSDirectory.open((new File(indexDirPath).toPath()));
+        if (files.isEmpty() && shardCount == 1) {
+            System.err.println("Empty resource directory. Please add appropriate text files to: " + resPath);
+        }
+        if (changedFiles.isEmpty() && removedFiles.isEmpty() && DirectoryReader.indexExists(dir)) {
+            System.out.println("Index is up to date: " + files.size() + " file(s) indexed"
+                    + (shardCount > 1 ? " in shard " + shard + "." : "."));
+            for (File file : files) {
+                filenames.add(file.getName());
+            }
+            return filenames;
+        }
 
-        IndexWriterConfig indexWriterConfig = new IndexWriterConfig(analyzer);
+        //the bulk indexer's analyzer tokenizes file contents the way stringFilter filters them
+        IndexWriterConfig indexWriterConfig = bulkIndexer.newIndexWriterConfig();
         //creates new index or opens if exist
-        indexWriterConfig.setOpenMode(IndexWriterConfig.OpenMode.CREATE);
+        indexWriterConfig.setOpenMode(IndexWriterConfig.OpenMode.CREATE_OR_APPEND);
 
         IndexWriter indexWriter = new IndexWriter(dir, indexWriterConfig);
+        try {
+            for (String removedFile : removedFiles.keySet()) {
+                indexWriter.deleteDocuments(new Term(FILENAME_FIELD, removedFile));
+                System.out.println("Removed file from index: " + removedFile);
+            }
 
-        //creates index for all text files found in the directory path
-        File[] files = new File(resPath).listFiles();
-
-        if (files == null || files.length == 0) {
-            System.err.println("Empty resource directory. Please add appropriate text files to: " + resPath);
-        } else {
+            //files are read and indexed concurrently by the bulk indexer, IndexWriter is thread safe
+            Set<File> failedFiles = bulkIndexer.index(indexWriter, changedFiles);
             for (File file : files) {
-                if (file.isFile() && file.getName().toLowerCase().endsWith(".txt")) {
-                    try (BufferedReader br = new BufferedReader(new FileReader(file))) {
-                        String fileStr = "";
-                        String lineStr;
-                        while ((lineStr = br.readLine()) != null) {
-                            fileStr += " " + lineStr;
-                        }
-                        //filters file content of unwanted characters
-                        fileStr = stringFilter(fileStr);
-
-                        //index file name
-                        Document doc = new Document();
-                        doc.add(new StringField(FILENAME_FIELD, file.getName(), Field.Store.YES));
-
-                        //index file contents
-                        FieldType fieldType = new FieldType();
-                        fieldType.setIndexOptions(IndexOptions.DOCS_AND_FREQS_AND_POSITIONS_AND_OFFSETS);
-                        fieldType.setStored(true);
-                        fieldType.setStoreTermVectors(true);
-                        fieldType.setStoreTermVectorPositions(true);
-                        fieldType.setTokenized(true);
-                        doc.add(new Field(CONTENTS_FIELD, fileStr, fieldType));
-
-                        indexWriter.addDocument(doc);
-                        System.out.println("Added file to be indexed: " + file.getName());
-                        filenames.add(file.getName());
-                    } catch (Exception e) {
-                        e.printStackTrace();
-                        System.err.println("Cannot add file \"" + file.getName() + "\" due to unknown error.");
+                if (!failedFiles.contains(file)) {
+                    filenames.add(file.getName());
+                }
+            }
+        } finally {
+            //clean up: make sure to close to create index
+            long startTime = searchMetrics.start();
+            indexWriter.close();
+            searchMetrics.record(SearchMetrics.INDEXING_METHOD, SearchMetrics.COMMIT_PHASE, startTime);
+        }
+        return filenames;
+    }
+
+    /**
+     * Index search helper method
+     * Reads the last modified time and size of every file indexed in {@code dir}.
+     * Files indexed without them are mapped to an empty array, so they are indexed again.
+     * @param dir directory containing the index
+     * @return the map containing the file name (key) and its last modified time and size (value)
+     * @throws IOException when the index cannot be read
+     */
+    private static Map<String, long[]> readIndexedFileStates(FSDirectory dir) throws IOException {
+        Map<String, long[]> fileStates = new HashMap<>();
+        if (!DirectoryReader.indexExists(dir)) {
+            return fileStates;
+        }
+
+        try (IndexReader reader = DirectoryReader.open(dir)) {
+            for (LeafReaderContext leaf : reader.leaves()) {
+                LeafReader leafReader = leaf.reader();
+                Bits liveDocs = leafReader.getLiveDocs();
+                SortedDocValues filenames = filenameDocValues(leafReader);
+                NumericDocValues modified = leafReader.getNumericDocValues(MODIFIED_FIELD);
+                NumericDocValues sizes = leafReader.getNumericDocValues(SIZE_FIELD);
+                for (int doc = 0; doc < leafReader.maxDoc(); doc++) {
+                    if (liveDocs != null && !liveDocs.get(doc)) {
+                        continue;
                     }
-                }//end if
+                    String filename = filenames != null ? filenames.get(doc).utf8ToString()
+                            : leafReader.document(doc).get(FILENAME_FIELD);
+                    fileStates.put(filename, modified != null && sizes != null
+                            ? new long[] {modified.get(doc), sizes.get(doc)} : new long[0]);
+                }
             }//end for
-        }//end if
+        }
+        return fileStates;
+    }
 
-        //clean up: make sure to close to create index
-        indexWriter.close();
-        return filenames;
+    /**
+     * Helper method
+     * Sorts {@code unsortedMap} with {@link #sortDescByValue(Map)}, timed as the sort phase of {@code method}.
+     * @param method search method, see {@link SearchMetrics}
+     * @param unsortedMap the map to be sorted
+     * @return sorted map in descending order
+     */
+    static Map<String, Integer> sortDescByValue(String method, Map<String, Integer> unsortedMap) {
+        long startTime = searchMetrics.start();
+        Map<String, Integer> sortedMap = sortDescByValue(unsortedMap);
+        searchMetrics.record(method, SearchMetrics.SORT_PHASE, startTime);
+        return sortedMap;
     }
 
     /**
      * Helper method
-     * Sorts {@code unsortedMap} into descending order by comparing values
+     * Sorts {@code unsortedMap} into descending order by comparing values, then ascending order of keys
      * @param unsortedMap the map to be sorted
      * @return sorted map in descending order
      */
     private static Map<String, Integer> sortDescByValue(Map<String, Integer> unsortedMap) {
-        List<Map.Entry<String, Integer>> list = new LinkedList<>(unsortedMap.entrySet());
+        List<Map.Entry<String, Integer>> list = new ArrayList<>(unsortedMap.entrySet());
 
         Collections.sort(list, new Comparator<Map.Entry<String, Integer>>() {
             public int compare(Map.Entry<String, Integer> obj1, Map.Entry<String, Integer> obj2) {
-                return obj2.getValue() - obj1.getValue();
+                int diff = obj2.getValue() - obj1.getValue();
+                //ties are ordered by key so the order does not depend on the map implementation
+                return diff != 0 ? diff : obj1.getKey().compareTo(obj2.getKey());
             }
         });
 
@@ -358,22 +1539,64 @@ public final class SearchUtils {
         return searchTerm.replaceAll("[^a-zA-Z0-9 ]", " ").replaceAll("\\s+", " ").toLowerCase();
     }
 
+    /**
+     * Helper method
+     * Returns the filtered content of the file from {@link #corpusCache}, reading it directly
+     * when it does not fit in the cache's memory budget.
+     * @param searchFile file to be read for its contents
+     * @return the filtered content of the file as a string
+     */
+    static String getFileContent(File searchFile) {
+        String fileStr = tryGetFileContent(searchFile);
+        return fileStr != null ? fileStr : "";
+    }
+
+    /**
+     * Helper method
+     * Returns the filtered content of the file like {@link #getFileContent(File)}, but tells a file that could not
+     * be read apart from an empty file.
+     * @param searchFile file to be read for its contents
+     * @return the filtered content of the file as a string, or null if the file could not be read
+     */
+    static String tryGetFileContent(File searchFile) {
+        try {
+            String fileStr = corpusCache.read(searchFile);
+            return fileStr != null ? fileStr : tryReadFile(searchFile);
+        } catch (IOException ioe) {
+            return null;
+        }
+    }
+
     /**
      * Helper method
      * Reads the content of the file, filters out unwanted characters
      * using {@link #stringFilter(String)}, and returns the content as a string.
      * @param searchFile file to be read for its contents
-     * @return the filtered content of the file as a string
+     * @return the filtered content of the file as a string, empty if the file could not be read
+     */
+    static String readFile(File searchFile) {
+        String fileStr = tryReadFile(searchFile);
+        return fileStr != null ? fileStr : "";
+    }
+
+    /**
+     * Helper method
+     * Reads the content of the file like {@link #readFile(File)}, but tells a file that could not be read
+     * apart from an empty file.
+     * @param searchFile file to be read for its contents
+     * @return the filtered content of the file as a string, or null if the file could not be read
      */
-    private static String readFile(File searchFile) {
-        String fileStr = "";
+    static String tryReadFile(File searchFile) {
+        String fileStr = null;
         String errMsg = "";
         try (BufferedReader br = new BufferedReader(new FileReader(searchFile))) {
+            StringBuilder fileContent = new StringBuilder();
             String lineStr;
             while ((lineStr = br.readLine()) != null) {
-                fileStr += " " + lineStr;
+                fileContent.append(' ').append(lineStr);
             }
-            fileStr = stringFilter(fileStr);
+            fileStr = stringFilter(fileContent.toString());
+            searchMetrics.addBytesRead(searchFile.length());
         } catch (FileNotFoundException fnfe) {
             errMsg += "File not found or read was interrupted: " + searchFile.getPath();
             fnfe.printStackTrace();
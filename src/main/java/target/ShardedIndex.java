@@ -0,0 +1,434 @@
+package target;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Index of the text files of a directory split into shards: files are hash-partitioned by name into
+ * {@code shardCount} Lucene indexes, each created from {@link SearchUtils#indexFilesInDir(String, String)}'s
+ * incremental update and (re)built on its own. Indexing and searching fan out to every shard concurrently,
+ * and the search counts of each shard are merged into a single result sorted the same way
+ * {@link SearchUtils#indexSearch(String, List, String)} sorts it.
+ * A single shard is stored in the index directory itself, several shards in its "shard-N" subdirectories.
+ * The time taken by every shard is recorded in the {@link SearchMetrics} as a {@link SearchMetrics#shardPhase(int)}
+ * phase of indexing and of the Indexed search method, to show skew between shards.
+ */
+public final class ShardedIndex implements Closeable {
+    /**
+     * default number of shards, a single index
+     */
+    public static final int DEFAULT_SHARD_COUNT = 1;
+
+    private static final SearchMetrics searchMetrics = SearchUtils.getSearchMetrics();
+
+    private final String indexDirPath;
+    private final int shardCount;
+    /**
+     * runs the work of each shard, null for a single shard which is worked on by the calling thread
+     */
+    private final ExecutorService executor;
+    /**
+     * session searching each shard, opened on the first search of the shard
+     */
+    private final IndexSession[] sessions;
+
+    /**
+     * @param indexDirPath directory containing the index
+     * @param shardCount number of shards the text files are partitioned in
+     */
+    public ShardedIndex(String indexDirPath, int shardCount) {
+        if (shardCount < 1) {
+            throw new IllegalArgumentException("Shard count must be at least 1: " + shardCount);
+        }
+        this.indexDirPath = indexDirPath;
+        this.shardCount = shardCount;
+        this.sessions = new IndexSession[shardCount];
+        if (shardCount > 1) {
+            executor = Executors.newFixedThreadPool(shardCount, new ThreadFactory() {
+                private int threadId = 0;
+
+                @Override
+                public synchronized Thread newThread(Runnable runnable) {
+                    Thread thread = new Thread(runnable, "sharded-index-" + threadId++);
+                    thread.setDaemon(true);
+                    return thread;
+                }
+            });
+        } else {
+            executor = null;
+        }
+    }
+
+    /**
+     * @param filename name of a text file
+     * @param shardCount number of shards
+     * @return the shard the file is indexed in
+     */
+    public static int shardOf(String filename, int shardCount) {
+        return Math.floorMod(filename.hashCode(), shardCount);
+    }
+
+    public String getIndexDirPath() {
+        return indexDirPath;
+    }
+
+    public int getShardCount() {
+        return shardCount;
+    }
+
+    /**
+     * @param shard shard of the index
+     * @return the directory containing the index of the shard
+     */
+    public String getShardDirPath(int shard) {
+        if (shard < 0 || shard >= shardCount) {
+            throw new IllegalArgumentException("No shard " + shard + " in " + shardCount + " shard(s).");
+        }
+        return shardCount == 1 ? indexDirPath : indexDirPath + File.separator + "shard-" + shard;
+    }
+
+    /**
+     * Creates or incrementally updates every shard from the text files found in {@code resPath}, concurrently.
+     * @param resPath directory containing the text files
+     * @return list of file names indexed, by shard
+     * @throws IOException when error indexing
+     */
+    public List<String> index(final String resPath) throws IOException {
+        List<List<String>> shardFilenames = forEachShard(new ShardTask<List<String>>() {
+            @Override
+            public List<String> apply(int shard) throws IOException {
+                return indexShard(shard, resPath);
+            }
+        });
+
+        List<String> filenames = new ArrayList<>();
+        for (List<String> shardFilename : shardFilenames) {
+            filenames.addAll(shardFilename);
+        }
+        return filenames;
+    }
+
+    /**
+     * Creates or incrementally updates a single shard from the text files of {@code resPath} partitioned to it,
+     * leaving the other shards untouched. The shard's searcher sees the changes once this returns.
+     * @param shard shard of the index
+     * @param resPath directory containing the text files
+     * @return list of file names indexed in the shard
+     * @throws IOException when error indexing
+     */
+    public List<String> indexShard(int shard, String resPath) throws IOException {
+        String shardDirPath = getShardDirPath(shard);
+        long startTime = searchMetrics.start();
+        List<String> filenames = SearchUtils.indexFilesInDir(shardDirPath, resPath, shard, shardCount);
+        searchMetrics.record(SearchMetrics.INDEXING_METHOD, SearchMetrics.shardPhase(shard), startTime);
+
+        IndexSession session;
+        synchronized (sessions) {
+            session = sessions[shard];
+        }
+        if (session != null) {
+            session.refresh();
+        }
+        return filenames;
+    }
+
+    /**
+     * Searches for {@code searchTerm} in every shard concurrently, see
+     * {@link SearchUtils#indexSearch(String, List, String)}. Safe to call from concurrent threads.
+     * @param searchTerm used to search in file
+     * @param indexedFiles indexed file names
+     * @return the map containing the file name (key) and its corresponding search count (value)
+     * of {@code searchTerm}
+     * @throws IOException when a shard cannot be searched
+     */
+    public Map<String, Integer> search(String searchTerm, List<String> indexedFiles) throws IOException {
+        if (searchTerm == null || searchTerm.isEmpty()) {
+            return new HashMap<>();
+        }
+        long startTime = searchMetrics.start();
+        searchMetrics.incrementQueries(SearchMetrics.INDEX_METHOD);
+        long phaseStartTime = searchMetrics.start();
+        final String filteredTerm = SearchUtils.stringFilter(searchTerm);
+        final List<List<String>> shardIndexedFiles = partition(indexedFiles);
+        searchMetrics.record(SearchMetrics.INDEX_METHOD, SearchMetrics.NORMALIZE_PHASE, phaseStartTime);
+
+        //search starts here, shards are searched concurrently
+        List<Map<String, Integer>> shardResultMaps = forEachShard(new ShardTask<Map<String, Integer>>() {
+            @Override
+            public Map<String, Integer> apply(int shard) throws IOException {
+                long shardStartTime = searchMetrics.start();
+                Map<String, Integer> shardResultMap = session(shard).searchFiltered(filteredTerm,
+                        shardIndexedFiles.get(shard));
+                searchMetrics.record(SearchMetrics.INDEX_METHOD, SearchMetrics.shardPhase(shard), shardStartTime);
+                return shardResultMap;
+            }
+        });
+
+        Map<String, Integer> sortedResultMap;
+        if (shardCount == 1) {
+            sortedResultMap = shardResultMaps.get(0);
+        } else {
+            phaseStartTime = searchMetrics.start();
+            //a file is indexed in a single shard, so counts are never added up
+            Map<String, Integer> unsortedResultMap = new HashMap<>();
+            for (Map<String, Integer> shardResultMap : shardResultMaps) {
+                unsortedResultMap.putAll(shardResultMap);
+            }
+            searchMetrics.record(SearchMetrics.INDEX_METHOD, SearchMetrics.MERGE_PHASE, phaseStartTime);
+            sortedResultMap = SearchUtils.sortDescByValue(SearchMetrics.INDEX_METHOD, unsortedResultMap);
+        }
+        searchMetrics.record(SearchMetrics.INDEX_METHOD, SearchMetrics.TOTAL_PHASE, startTime);
+        return sortedResultMap;
+    }
+
+    /**
+     * Searches for {@code searchTerm} in every shard concurrently, only keeping the files of {@code page}: each
+     * shard selects the files it ranks up to the page's end, which are merged into the page.
+     * Safe to call from concurrent threads.
+     * @param searchTerm used to search in file
+     * @param indexedFiles indexed file names
+     * @param page files ranked in the result
+     * @return the files of the page and their corresponding search count of {@code searchTerm}
+     * @throws IOException when a shard cannot be searched
+     */
+    public SearchResult search(String searchTerm, List<String> indexedFiles, PageRequest page) throws IOException {
+        if (searchTerm == null || searchTerm.isEmpty()) {
+            return new TopKSelector(page).toResult();
+        }
+        long startTime = searchMetrics.start();
+        searchMetrics.incrementQueries(SearchMetrics.INDEX_METHOD);
+        long phaseStartTime = searchMetrics.start();
+        final String filteredTerm = SearchUtils.stringFilter(searchTerm);
+        final List<List<String>> shardIndexedFiles = partition(indexedFiles);
+        //a file ranked within the page is ranked within the same number of files by its shard
+        final PageRequest shardPage = shardCount == 1 ? page : new PageRequest(0,
+                (int) Math.min((long) page.getOffset() + page.getLimit(), Integer.MAX_VALUE), page.isIncludeZeroMatches());
+        searchMetrics.record(SearchMetrics.INDEX_METHOD, SearchMetrics.NORMALIZE_PHASE, phaseStartTime);
+
+        //search starts here, shards are searched concurrently
+        List<SearchResult> shardResults = forEachShard(new ShardTask<SearchResult>() {
+            @Override
+            public SearchResult apply(int shard) throws IOException {
+                long shardStartTime = searchMetrics.start();
+                SearchResult shardResult = session(shard).searchFiltered(filteredTerm, shardIndexedFiles.get(shard),
+                        shardPage);
+                searchMetrics.record(SearchMetrics.INDEX_METHOD, SearchMetrics.shardPhase(shard), shardStartTime);
+                return shardResult;
+            }
+        });
+
+        SearchResult result;
+        if (shardCount == 1) {
+            result = shardResults.get(0);
+        } else {
+            phaseStartTime = searchMetrics.start();
+            TopKSelector selector = new TopKSelector(page);
+            boolean complete = true;
+            for (SearchResult shardResult : shardResults) {
+                selector.offerAll(shardResult);
+                complete &= shardResult.isComplete();
+            }
+            result = selector.toResult(complete);
+            searchMetrics.record(SearchMetrics.INDEX_METHOD, SearchMetrics.MERGE_PHASE, phaseStartTime);
+        }
+        searchMetrics.record(SearchMetrics.INDEX_METHOD, SearchMetrics.TOTAL_PHASE, startTime);
+        return result;
+    }
+
+    /**
+     * Searches for {@code searchTerm} in every shard like {@link #search(String, List, PageRequest)}, but without
+     * blocking: each shard is searched by its own worker of a {@link StreamingSearch}, which passes the count of
+     * each file to {@code listener} as soon as it is counted. The search stops once {@code token} is cancelled or
+     * {@code timeout} elapsed, whichever comes first, and the result then ranks only the files searched so far
+     * (see {@link SearchResult#isComplete()}). Shards are searched through their {@link IndexSession}, and the
+     * complete result of each shard is cached by the {@link ResultCache} like a blocking search.
+     * @param searchTerm used to search in file
+     * @param indexedFiles indexed file names
+     * @param page files ranked in the result
+     * @param timeout time the search may take, {@link Long#MAX_VALUE} for no deadline
+     * @param unit unit of {@code timeout}
+     * @param token cancels the search, null for none
+     * @param listener receives the count of each file searched, null for none
+     * @return the result of the search, available at the latest by the deadline
+     */
+    public Future<SearchResult> searchAsync(String searchTerm, List<String> indexedFiles, PageRequest page,
+                                            long timeout, TimeUnit unit, CancellationToken token,
+                                            SearchListener listener) {
+        if (searchTerm == null || searchTerm.isEmpty()) {
+            return CompletableFuture.completedFuture(new TopKSelector(page).toResult());
+        }
+
+        final StreamingSearch search = new StreamingSearch(SearchMetrics.INDEX_METHOD, page, timeout, unit, token,
+                listener);
+        searchMetrics.incrementQueries(SearchMetrics.INDEX_METHOD);
+        long phaseStartTime = searchMetrics.start();
+        final String filteredTerm = SearchUtils.stringFilter(searchTerm);
+        final List<List<String>> shardIndexedFiles = partition(indexedFiles);
+        searchMetrics.record(SearchMetrics.INDEX_METHOD, SearchMetrics.NORMALIZE_PHASE, phaseStartTime);
+
+        //search starts here, shards are searched concurrently by the workers of the search
+        List<StreamingSearch.Worker> workers = new ArrayList<>(shardCount);
+        for (int shard = 0; shard < shardCount; shard++) {
+            final int workerShard = shard;
+            workers.add(new StreamingSearch.Worker() {
+                @Override
+                public boolean run(CancellationToken token) {
+                    long shardStartTime = searchMetrics.start();
+                    try {
+                        return session(workerShard).streamFiltered(filteredTerm, shardIndexedFiles.get(workerShard),
+                                token, search);
+                    } catch (IOException ioe) {
+                        ioe.printStackTrace();
+                        System.err.println("Error searching index in: " + getShardDirPath(workerShard));
+                        return false;
+                    } finally {
+                        searchMetrics.record(SearchMetrics.INDEX_METHOD, SearchMetrics.shardPhase(workerShard),
+                                shardStartTime);
+                    }
+                }
+            });
+        }
+        return search.start(workers);
+    }
+
+    /**
+     * Refreshes the searcher of every shard changed by another process or {@link IndexSession}, waiting for a
+     * refresh already in progress. Shards updated through {@link #index(String)} are refreshed already.
+     * @throws IOException when a shard cannot be reopened
+     */
+    public void refresh() throws IOException {
+        for (int shard = 0; shard < shardCount; shard++) {
+            IndexSession session;
+            synchronized (sessions) {
+                session = sessions[shard];
+            }
+            if (session != null) {
+                session.refresh();
+            }
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (executor != null) {
+            //not interrupted, interrupting index I/O closes the underlying file channels
+            executor.shutdown();
+            try {
+                executor.awaitTermination(1, TimeUnit.MINUTES);
+            } catch (InterruptedException ie) {
+                Thread.currentThread().interrupt();
+            }
+        }
+
+        IOException closeException = null;
+        synchronized (sessions) {
+            for (int shard = 0; shard < shardCount; shard++) {
+                try {
+                    if (sessions[shard] != null) {
+                        sessions[shard].close();
+                    }
+                } catch (IOException ioe) {
+                    closeException = ioe;
+                }
+                sessions[shard] = null;
+            }
+        }
+        if (closeException != null) {
+            throw closeException;
+        }
+    }
+
+    /**
+     * Work done for a single shard.
+     * @param <T> result type
+     */
+    private interface ShardTask<T> {
+        T apply(int shard) throws IOException;
+    }
+
+    /**
+     * Helper method
+     * Applies {@code task} to every shard, concurrently when there are several.
+     * @param task work done for each shard
+     * @param <T> result type
+     * @return the result of each shard, in the order of the shards
+     * @throws IOException when the task fails for a shard
+     */
+    private <T> List<T> forEachShard(final ShardTask<T> task) throws IOException {
+        List<T> results = new ArrayList<>(shardCount);
+        if (executor == null) {
+            results.add(task.apply(0));
+            return results;
+        }
+
+        List<Future<T>> futures = new ArrayList<>(shardCount);
+        for (int shard = 0; shard < shardCount; shard++) {
+            final int taskShard = shard;
+            futures.add(executor.submit(new Callable<T>() {
+                @Override
+                public T call() throws IOException {
+                    return task.apply(taskShard);
+                }
+            }));
+        }
+        try {
+            for (Future<T> future : futures) {
+                results.add(future.get());
+            }
+        } catch (InterruptedException ie) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while waiting for shard results.", ie);
+        } catch (ExecutionException ee) {
+            if (ee.getCause() instanceof IOException) {
+                throw (IOException) ee.getCause();
+            }
+            throw new IllegalStateException("Error processing shard.", ee.getCause());
+        }
+        return results;
+    }
+
+    /**
+     * Helper method
+     * @param indexedFiles indexed file names
+     * @return the file names indexed in each shard, files with zero matches are only added by the shard holding them
+     */
+    private List<List<String>> partition(List<String> indexedFiles) {
+        List<List<String>> shardIndexedFiles = new ArrayList<>(shardCount);
+        for (int shard = 0; shard < shardCount; shard++) {
+            shardIndexedFiles.add(new ArrayList<String>());
+        }
+        for (String indexedFile : indexedFiles) {
+            shardIndexedFiles.get(shardOf(indexedFile, shardCount)).add(indexedFile);
+        }
+        return shardIndexedFiles;
+    }
+
+    /**
+     * Helper method
+     * @param shard shard of the index
+     * @return the session searching the shard, opened on first use
+     * @throws IOException when the index of the shard cannot be opened
+     */
+    private IndexSession session(int shard) throws IOException {
+        synchronized (sessions) {
+            if (sessions[shard] == null) {
+                //refreshed by indexShard instead of polling the index
+                sessions[shard] = new IndexSession(getShardDirPath(shard), false, 0);
+            }
+            return sessions[shard];
+        }
+    }
+}
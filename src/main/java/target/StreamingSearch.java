@@ -0,0 +1,231 @@
+package target;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Runs a search asynchronously on a shared pool, streaming the count of each file to a {@link SearchListener}
+ * as soon as the file is searched. The search stops at its deadline or once its {@link CancellationToken} is
+ * cancelled: the result is then returned right away, without waiting for the files being searched, and ranks
+ * only the files searched so far, marked incomplete (see {@link SearchResult#isComplete()}).
+ * Workers check for cancellation before every file, a file being searched is searched to its end in the
+ * background but neither reported nor ranked.
+ */
+final class StreamingSearch implements SearchListener {
+    /**
+     * longest wait before the cancellation token is checked again
+     */
+    private static final long POLL_NANOS = TimeUnit.MILLISECONDS.toNanos(10);
+    private static final SearchMetrics searchMetrics = SearchUtils.getSearchMetrics();
+
+    /**
+     * pool running the searches and their workers, threads are created as needed and kept a minute
+     */
+    private static final ExecutorService pool = Executors.newCachedThreadPool(new ThreadFactory() {
+        private final AtomicInteger threadCount = new AtomicInteger();
+
+        @Override
+        public Thread newThread(Runnable runnable) {
+            Thread thread = new Thread(runnable, "streaming-search-" + threadCount.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        }
+    });
+
+    /**
+     * Part of the work of a search.
+     */
+    interface Worker {
+        /**
+         * @param token cancelled by the caller, at the deadline or once the result is returned
+         * @return false if the work was stopped before its end
+         */
+        boolean run(CancellationToken token);
+    }
+
+    private final String method;
+    private final PageRequest page;
+    private final CancellationToken token;
+    private final SearchListener listener;
+    private final long startTime;
+    /**
+     * search count of each file reported, guarded by this
+     */
+    private final Map<String, Integer> counts = new HashMap<>();
+    private boolean closed;
+
+    /**
+     * @param method search method, see {@link SearchMetrics}
+     * @param page files ranked in the result
+     * @param timeout time the search may take before returning an incomplete result
+     * @param unit unit of {@code timeout}
+     * @param token token of the caller, null for none
+     * @param listener receives the count of each file searched, null for none
+     */
+    StreamingSearch(String method, PageRequest page, long timeout, TimeUnit unit, CancellationToken token,
+                    SearchListener listener) {
+        this.method = method;
+        this.page = page;
+        //deadlines are compared by difference, which holds for timeouts up to Long.MAX_VALUE nanoseconds
+        this.token = new CancellationToken(token, System.nanoTime() + unit.toNanos(timeout));
+        this.listener = listener;
+        this.startTime = searchMetrics.start();
+    }
+
+    /**
+     * Searches {@code files} with {@link SearchExecutor#getParallelism()} workers taking the next file to search.
+     * @param files text files searched
+     * @param countTask counts the matches in a file
+     * @return the result of the search, available at the latest by the deadline
+     */
+    Future<SearchResult> scanFiles(final List<File> files, final SearchExecutor.FileTask<Integer> countTask) {
+        final AtomicInteger nextFile = new AtomicInteger();
+        List<Worker> workers = new ArrayList<>();
+        int workerCount = Math.min(SearchExecutor.getParallelism(), files.size());
+        for (int idx = 0; idx < workerCount; idx++) {
+            workers.add(new Worker() {
+                @Override
+                public boolean run(CancellationToken token) {
+                    int fileIdx;
+                    while ((fileIdx = nextFile.getAndIncrement()) < files.size()) {
+                        if (token.isCancelled()) {
+                            return false;
+                        }
+                        File file = files.get(fileIdx);
+                        onFile(file.getName(), countTask.apply(file));
+                    }
+                    return true;
+                }
+            });
+        }
+        return start(workers);
+    }
+
+    /**
+     * Streams the files of counts cached by the {@link ResultCache}.
+     * @param fileCounts cached file names and their corresponding search count
+     * @return the result of the search, available at the latest by the deadline
+     */
+    Future<SearchResult> replay(final FileCounts fileCounts) {
+        return start(Collections.<Worker>singletonList(new Worker() {
+            @Override
+            public boolean run(CancellationToken token) {
+                for (int idx = 0; idx < fileCounts.size(); idx++) {
+                    if (token.isCancelled()) {
+                        return false;
+                    }
+                    onFile(fileCounts.getFilename(idx), fileCounts.getCount(idx));
+                }
+                return true;
+            }
+        }));
+    }
+
+    /**
+     * Runs {@code workers} concurrently, each reporting the files it searched to {@link #onFile(String, int)}.
+     * @param workers work of the search
+     * @return the result of the search, available at the latest by the deadline
+     */
+    Future<SearchResult> start(final List<Worker> workers) {
+        return pool.submit(new Callable<SearchResult>() {
+            @Override
+            public SearchResult call() {
+                return await(workers);
+            }
+        });
+    }
+
+    /**
+     * Reports the count of a file searched, ignored once the result is returned.
+     * @param filename name of the file
+     * @param count search count of the file
+     */
+    @Override
+    public synchronized void onFile(String filename, int count) {
+        if (closed) {
+            return;
+        }
+        counts.put(filename, count);
+        if (listener != null) {
+            try {
+                listener.onFile(filename, count);
+            } catch (RuntimeException e) {
+                e.printStackTrace();
+                System.err.println("Error in search listener for file: " + filename);
+            }
+        }
+    }
+
+    /**
+     * Helper method
+     * Starts the workers and waits for them, the deadline or the cancellation of the token, whichever comes first.
+     * @param workers work of the search
+     * @return the files of the page searched so far
+     */
+    private SearchResult await(List<Worker> workers) {
+        final CountDownLatch done = new CountDownLatch(workers.size());
+        final AtomicBoolean complete = new AtomicBoolean(true);
+        for (final Worker worker : workers) {
+            pool.execute(new Runnable() {
+                @Override
+                public void run() {
+                    boolean finished = false;
+                    try {
+                        finished = worker.run(token);
+                    } catch (RuntimeException e) {
+                        e.printStackTrace();
+                        System.err.println("Error during " + method + " search.");
+                    } finally {
+                        if (!finished) {
+                            complete.set(false);
+                        }
+                        done.countDown();
+                    }
+                }
+            });
+        }
+
+        try {
+            while (!done.await(Math.min(POLL_NANOS, token.remainingNanos()), TimeUnit.NANOSECONDS)
+                    && !token.isCancelled()) {
+                //waits for the next check
+            }
+        } catch (InterruptedException ie) {
+            Thread.currentThread().interrupt();
+        }
+        return close(done.getCount() == 0 && complete.get());
+    }
+
+    /**
+     * Helper method
+     * Stops the workers still searching and ranks the files reported.
+     * @param complete true if every worker reached its end
+     * @return the files of the page searched so far
+     */
+    private synchronized SearchResult close(boolean complete) {
+        closed = true;
+        token.cancel();
+        long sortStartTime = searchMetrics.start();
+        TopKSelector selector = new TopKSelector(page);
+        for (Map.Entry<String, Integer> entry : counts.entrySet()) {
+            selector.offer(entry.getKey(), entry.getValue());
+        }
+        SearchResult result = selector.toResult(complete);
+        searchMetrics.record(method, SearchMetrics.SORT_PHASE, sortStartTime);
+        searchMetrics.record(method, SearchMetrics.TOTAL_PHASE, startTime);
+        return result;
+    }
+}
@@ -0,0 +1,515 @@
+package target;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Suffix array over the text files filtered by {@link SearchUtils#stringFilter(String)}, counting substring
+ * matches without reading the files. Counts follow {@link SearchUtils#simpleStringSearch(String, String)}:
+ * matches are any substring, do not overlap and are counted from left to right.
+ * <p>
+ * The filtered contents of the files are concatenated, each followed by a separator which no filtered term
+ * contains, so a match never spans two files. The suffixes of the concatenated text are sorted once by
+ * {@link #build(String)} (SA-IS, linear in the text length). The suffixes starting with a term then form a
+ * range of the suffix array found by binary search in O(m log n) character comparisons for a term of length m,
+ * whatever the number of files. The number of matches in each file is counted over that range; when the term
+ * can overlap itself (ex. "aa" in "aaaa") the match positions are sorted and only non-overlapping matches counted.
+ * <p>
+ * The index lives in a single buffer laid out as the file it is persisted to, so an index loaded with
+ * {@link #load(File)} is memory-mapped and read in place: the file table, the text (one byte per character)
+ * and the suffix array (one int per character). Texts are limited to about 400MB so the buffer can be mapped.
+ */
+public final class SuffixArrayIndex {
+    private static final int MAGIC = 0x53415831;
+    private static final int VERSION = 1;
+    /**
+     * ends the filtered content of each file, sorted before every filtered character
+     */
+    private static final byte SEPARATOR = '\n';
+    /**
+     * largest text whose index fits in a buffer
+     */
+    private static final int MAX_TEXT_LENGTH = (Integer.MAX_VALUE - 64 * 1024) / 5;
+    /**
+     * last modified time recorded for a file that could not be read, never current
+     */
+    private static final long UNREADABLE = Long.MIN_VALUE;
+
+    private final ByteBuffer buffer;
+    private final String[] filenames;
+    /**
+     * offset in the text of the filtered content of each file, followed by the length of the text
+     */
+    private final int[] fileStarts;
+    private final long[] modified;
+    private final long[] sizes;
+    private final int textLength;
+    /**
+     * offsets of the text and of the suffix array in {@code buffer}
+     */
+    private final int textStart;
+    private final int suffixesStart;
+
+    /**
+     * @param buffer index laid out as written by {@link #write(File)}
+     */
+    private SuffixArrayIndex(ByteBuffer buffer) {
+        this.buffer = buffer;
+        int pos = 0;
+        if (buffer.getInt(pos) != MAGIC || buffer.getInt(pos + 4) != VERSION) {
+            throw new IllegalArgumentException("Not a suffix array index of version " + VERSION);
+        }
+        pos += 8;
+
+        int fileCount = buffer.getInt(pos);
+        pos += 4;
+        filenames = new String[fileCount];
+        fileStarts = new int[fileCount + 1];
+        modified = new long[fileCount];
+        sizes = new long[fileCount];
+        for (int fileId = 0; fileId < fileCount; fileId++) {
+            byte[] name = new byte[buffer.getInt(pos)];
+            pos += 4;
+            for (int idx = 0; idx < name.length; idx++) {
+                name[idx] = buffer.get(pos++);
+            }
+            filenames[fileId] = new String(name, StandardCharsets.UTF_8);
+            fileStarts[fileId] = buffer.getInt(pos);
+            modified[fileId] = buffer.getLong(pos + 4);
+            sizes[fileId] = buffer.getLong(pos + 12);
+            pos += 20;
+        }
+
+        textLength = buffer.getInt(pos);
+        fileStarts[fileCount] = textLength;
+        pos += 4;
+        textStart = pos;
+        suffixesStart = align(textStart + textLength);
+        if (suffixesStart + (long) textLength * 4 > buffer.limit()) {
+            throw new IllegalArgumentException("Truncated suffix array index");
+        }
+    }
+
+    /**
+     * Builds the index over the text files found in {@code resPath}. A file that cannot be read is indexed as
+     * empty and the index is never current (see {@link #isCurrent(String)}), so it is rebuilt once the file is read.
+     * @param resPath directory containing the text files
+     * @return the index, held in heap
+     * @throws IllegalArgumentException when the filtered text files are too large to be indexed
+     */
+    public static SuffixArrayIndex build(String resPath) {
+        List<File> files = SearchUtils.getCorpusCache().listTextFiles(resPath);
+        ByteArrayOutputStream text = new ByteArrayOutputStream();
+        int[] fileStarts = new int[files.size()];
+        long[] modified = new long[files.size()];
+        long[] sizes = new long[files.size()];
+
+        for (int fileId = 0; fileId < files.size(); fileId++) {
+            File file = files.get(fileId);
+            //read before the content so a change made while building makes the index stale
+            modified[fileId] = file.lastModified();
+            sizes[fileId] = file.length();
+
+            fileStarts[fileId] = text.size();
+            String fileContent = SearchUtils.tryGetFileContent(file);
+            if (fileContent == null) {
+                //indexed as empty until the file can be read, the index stays stale meanwhile
+                modified[fileId] = UNREADABLE;
+                fileContent = "";
+            }
+            byte[] content = fileContent.getBytes(StandardCharsets.US_ASCII);
+            if ((long) text.size() + content.length + 1 > MAX_TEXT_LENGTH) {
+                throw new IllegalArgumentException("Text files are too large for a suffix array index: " + resPath);
+            }
+            text.write(content, 0, content.length);
+            text.write(SEPARATOR);
+        }//end for
+
+        try {
+            ByteArrayOutputStream header = new ByteArrayOutputStream();
+            DataOutputStream out = new DataOutputStream(header);
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeInt(files.size());
+            for (int fileId = 0; fileId < files.size(); fileId++) {
+                byte[] name = files.get(fileId).getName().getBytes(StandardCharsets.UTF_8);
+                out.writeInt(name.length);
+                out.write(name);
+                out.writeInt(fileStarts[fileId]);
+                out.writeLong(modified[fileId]);
+                out.writeLong(sizes[fileId]);
+            }
+            out.writeInt(text.size());
+            out.flush();
+
+            byte[] textBytes = text.toByteArray();
+            int suffixesStart = align(header.size() + textBytes.length);
+            ByteBuffer buffer = ByteBuffer.allocate(suffixesStart + textBytes.length * 4);
+            buffer.put(header.toByteArray());
+            buffer.put(textBytes);
+            buffer.position(suffixesStart);
+            for (int suffix : suffixArray(textBytes)) {
+                buffer.putInt(suffix);
+            }
+            buffer.clear();
+            return new SuffixArrayIndex(buffer);
+        } catch (IOException ioe) {
+            //not thrown by in-memory streams
+            throw new IllegalStateException(ioe);
+        }
+    }
+
+    /**
+     * Memory-maps an index written by {@link #write(File)}.
+     * @param indexFile file containing the index
+     * @return the index, read in place from the mapped file
+     * @throws IOException when the file cannot be mapped or is not an index
+     */
+    public static SuffixArrayIndex load(File indexFile) throws IOException {
+        try (FileChannel channel = FileChannel.open(indexFile.toPath(), StandardOpenOption.READ)) {
+            try {
+                return new SuffixArrayIndex(channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()));
+            } catch (IllegalArgumentException | IndexOutOfBoundsException e) {
+                throw new IOException("Invalid suffix array index file: " + indexFile, e);
+            }
+        }
+    }
+
+    /**
+     * Writes the index to {@code indexFile}, replacing it.
+     * @param indexFile file to contain the index
+     * @throws IOException when the file cannot be written
+     */
+    public void write(File indexFile) throws IOException {
+        File parent = indexFile.getAbsoluteFile().getParentFile();
+        if (parent != null && !parent.isDirectory() && !parent.mkdirs()) {
+            throw new IOException("Cannot create directory: " + parent);
+        }
+        ByteBuffer content = buffer.duplicate();
+        content.clear();
+        try (OutputStream out = new FileOutputStream(indexFile)) {
+            byte[] chunk = new byte[64 * 1024];
+            while (content.hasRemaining()) {
+                int len = Math.min(chunk.length, content.remaining());
+                content.get(chunk, 0, len);
+                out.write(chunk, 0, len);
+            }
+        }
+    }
+
+    /**
+     * @param resPath directory containing the text files
+     * @return true if the index was built from the text files currently found in {@code resPath}
+     */
+    public boolean isCurrent(String resPath) {
+        List<File> files = SearchUtils.getCorpusCache().listTextFiles(resPath);
+        if (files.size() != filenames.length) {
+            return false;
+        }
+        for (int fileId = 0; fileId < filenames.length; fileId++) {
+            File file = files.get(fileId);
+            if (!file.getName().equals(filenames[fileId]) || file.lastModified() != modified[fileId]
+                    || file.length() != sizes[fileId]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * @return names of the files indexed, the index of a name is its file id
+     */
+    public List<String> getFilenames() {
+        return Collections.unmodifiableList(Arrays.asList(filenames));
+    }
+
+    /**
+     * Counts the non-overlapping matches of {@code filteredTerm} in every file indexed, from left to right
+     * as {@link String#indexOf(String, int)} finds them.
+     * @param filteredTerm search term filtered by {@link SearchUtils#stringFilter(String)}
+     * @return the number of matches in each file, indexed by file id
+     */
+    public int[] count(String filteredTerm) {
+        int[] counts = new int[filenames.length];
+        if (filteredTerm.isEmpty()) {
+            return counts;
+        }
+        int from = firstSuffix(filteredTerm, false);
+        int to = firstSuffix(filteredTerm, true);
+        if (from == to) {
+            return counts;
+        }
+
+        if (!overlapsItself(filteredTerm)) {
+            //matches of a term without a border never overlap, every suffix of the range is counted
+            for (int idx = from; idx < to; idx++) {
+                counts[fileOf(suffix(idx))]++;
+            }
+            return counts;
+        }
+
+        int[] positions = new int[to - from];
+        for (int idx = from; idx < to; idx++) {
+            positions[idx - from] = suffix(idx);
+        }
+        Arrays.sort(positions);
+        //the separator ending each file keeps a match from reaching the next file
+        int lastEnd = -1;
+        for (int position : positions) {
+            if (position >= lastEnd) {
+                counts[fileOf(position)]++;
+                lastEnd = position + filteredTerm.length();
+            }
+        }
+        return counts;
+    }
+
+    /**
+     * Helper method
+     * Binary searches the suffix array for the first suffix greater than or equal to {@code term}, or the first
+     * suffix greater than every suffix starting with {@code term} when {@code after} is true.
+     * @param term filtered search term
+     * @param after true to skip the suffixes starting with {@code term}
+     * @return index in the suffix array
+     */
+    private int firstSuffix(String term, boolean after) {
+        int low = 0;
+        int high = textLength;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            int cmp = compare(suffix(mid), term);
+            if (cmp < 0 || (after && cmp == 0)) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return low;
+    }
+
+    /**
+     * Helper method
+     * @param position start of a suffix in the text
+     * @param term filtered search term
+     * @return negative, zero or positive if the suffix is less than, starts with or is greater than {@code term}
+     */
+    private int compare(int position, String term) {
+        for (int idx = 0; idx < term.length(); idx++) {
+            if (position + idx >= textLength) {
+                return -1;
+            }
+            int diff = (buffer.get(textStart + position + idx) & 0xFF) - term.charAt(idx);
+            if (diff != 0) {
+                return diff;
+            }
+        }
+        return 0;
+    }
+
+    /**
+     * Helper method
+     * @param position offset in the text
+     * @return the id of the file whose filtered content contains {@code position}
+     */
+    private int fileOf(int position) {
+        //every file takes at least its separator, so the starts are distinct
+        int fileId = Arrays.binarySearch(fileStarts, position);
+        return fileId >= 0 ? fileId : -fileId - 2;
+    }
+
+    private int suffix(int idx) {
+        return buffer.getInt(suffixesStart + idx * 4);
+    }
+
+    /**
+     * Helper method
+     * @param term filtered search term
+     * @return true if a proper prefix of {@code term} is also a suffix of it, so two matches can overlap
+     */
+    static boolean overlapsItself(String term) {
+        //Knuth-Morris-Pratt failure function, border[idx] is the longest border of the first idx + 1 characters
+        int[] border = new int[term.length()];
+        for (int idx = 1; idx < term.length(); idx++) {
+            int len = border[idx - 1];
+            while (len > 0 && term.charAt(idx) != term.charAt(len)) {
+                len = border[len - 1];
+            }
+            border[idx] = term.charAt(idx) == term.charAt(len) ? len + 1 : len;
+        }
+        return border[term.length() - 1] > 0;
+    }
+
+    /**
+     * Sorts the suffixes of a text.
+     * @param text characters of the text, every byte is non-zero
+     * @return the start of each suffix of {@code text}, in sorted order
+     */
+    static int[] suffixArray(byte[] text) {
+        if (text.length == 0) {
+            return new int[0];
+        }
+        //the empty suffix is ended by a unique sentinel sorted first
+        int[] chars = new int[text.length + 1];
+        for (int idx = 0; idx < text.length; idx++) {
+            chars[idx] = text[idx] & 0xFF;
+        }
+        int[] suffixes = new int[chars.length];
+        sais(chars, suffixes, chars.length, 256);
+        return Arrays.copyOfRange(suffixes, 1, suffixes.length);
+    }
+
+    /**
+     * Helper method
+     * Sorts the suffixes of {@code chars} by induced sorting (Nong, Zhang and Chan's SA-IS).
+     * @param chars text ended by a unique 0 sentinel, every other character is in [1, alphabetSize)
+     * @param suffixes filled with the start of each suffix, in sorted order
+     * @param length number of characters, including the sentinel
+     * @param alphabetSize number of distinct character values
+     */
+    private static void sais(int[] chars, int[] suffixes, int length, int alphabetSize) {
+        //S-type suffixes are smaller than the suffix following them, L-type ones are greater
+        boolean[] sType = new boolean[length];
+        sType[length - 1] = true;
+        for (int idx = length - 2; idx >= 0; idx--) {
+            sType[idx] = chars[idx] < chars[idx + 1] || (chars[idx] == chars[idx + 1] && sType[idx + 1]);
+        }
+        int[] buckets = new int[alphabetSize];
+
+        //sort the leftmost S-type (LMS) substrings
+        bucketEnds(chars, buckets, length);
+        Arrays.fill(suffixes, 0, length, -1);
+        for (int idx = 1; idx < length; idx++) {
+            if (isLms(sType, idx)) {
+                suffixes[--buckets[chars[idx]]] = idx;
+            }
+        }
+        induce(chars, suffixes, sType, buckets, length);
+
+        //name each LMS substring by its rank, equal substrings share a name
+        int lmsCount = 0;
+        for (int idx = 0; idx < length; idx++) {
+            if (isLms(sType, suffixes[idx])) {
+                suffixes[lmsCount++] = suffixes[idx];
+            }
+        }
+        Arrays.fill(suffixes, lmsCount, length, -1);
+        int name = 0;
+        int prev = -1;
+        for (int idx = 0; idx < lmsCount; idx++) {
+            int pos = suffixes[idx];
+            boolean differs = false;
+            for (int offset = 0; ; offset++) {
+                if (prev == -1 || chars[pos + offset] != chars[prev + offset]
+                        || sType[pos + offset] != sType[prev + offset]) {
+                    differs = true;
+                    break;
+                } else if (offset > 0 && (isLms(sType, pos + offset) || isLms(sType, prev + offset))) {
+                    break;
+                }
+            }
+            if (differs) {
+                name++;
+                prev = pos;
+            }
+            //LMS positions are at least two apart
+            suffixes[lmsCount + pos / 2] = name - 1;
+        }
+        int[] reduced = new int[lmsCount];
+        for (int idx = length - 1, reducedIdx = lmsCount - 1; idx >= lmsCount; idx--) {
+            if (suffixes[idx] >= 0) {
+                reduced[reducedIdx--] = suffixes[idx];
+            }
+        }
+
+        //sort the LMS suffixes, recursing when two LMS substrings are equal
+        int[] reducedSuffixes = new int[lmsCount];
+        if (name < lmsCount) {
+            sais(reduced, reducedSuffixes, lmsCount, name);
+        } else {
+            for (int idx = 0; idx < lmsCount; idx++) {
+                reducedSuffixes[reduced[idx]] = idx;
+            }
+        }
+
+        //induce every suffix from the sorted LMS suffixes
+        for (int idx = 1, lmsIdx = 0; idx < length; idx++) {
+            if (isLms(sType, idx)) {
+                reduced[lmsIdx++] = idx;
+            }
+        }
+        bucketEnds(chars, buckets, length);
+        Arrays.fill(suffixes, 0, length, -1);
+        for (int idx = lmsCount - 1; idx >= 0; idx--) {
+            int pos = reduced[reducedSuffixes[idx]];
+            suffixes[--buckets[chars[pos]]] = pos;
+        }
+        induce(chars, suffixes, sType, buckets, length);
+    }
+
+    /**
+     * Helper method
+     * Places the L-type suffixes from left to right then the S-type suffixes from right to left, each after the
+     * suffix following it is placed.
+     */
+    private static void induce(int[] chars, int[] suffixes, boolean[] sType, int[] buckets, int length) {
+        bucketStarts(chars, buckets, length);
+        for (int idx = 0; idx < length; idx++) {
+            int pos = suffixes[idx] - 1;
+            if (pos >= 0 && !sType[pos]) {
+                suffixes[buckets[chars[pos]]++] = pos;
+            }
+        }
+        bucketEnds(chars, buckets, length);
+        for (int idx = length - 1; idx >= 0; idx--) {
+            int pos = suffixes[idx] - 1;
+            if (pos >= 0 && sType[pos]) {
+                suffixes[--buckets[chars[pos]]] = pos;
+            }
+        }
+    }
+
+    private static void bucketStarts(int[] chars, int[] buckets, int length) {
+        countChars(chars, buckets, length);
+        int sum = 0;
+        for (int c = 0; c < buckets.length; c++) {
+            int count = buckets[c];
+            buckets[c] = sum;
+            sum += count;
+        }
+    }
+
+    private static void bucketEnds(int[] chars, int[] buckets, int length) {
+        countChars(chars, buckets, length);
+        int sum = 0;
+        for (int c = 0; c < buckets.length; c++) {
+            sum += buckets[c];
+            buckets[c] = sum;
+        }
+    }
+
+    private static void countChars(int[] chars, int[] buckets, int length) {
+        Arrays.fill(buckets, 0);
+        for (int idx = 0; idx < length; idx++) {
+            buckets[chars[idx]]++;
+        }
+    }
+
+    private static boolean isLms(boolean[] sType, int pos) {
+        return pos > 0 && sType[pos] && !sType[pos - 1];
+    }
+
+    private static int align(int offset) {
+        return (offset + 3) & ~3;
+    }
+}
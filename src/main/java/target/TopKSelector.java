@@ -0,0 +1,168 @@
+package target;
+
+import java.util.Arrays;
+
+/**
+ * Selects the page of a {@link PageRequest} out of every file offered, without sorting them all: a bounded binary
+ * heap of the {@code offset + limit} files ranked first, keyed by search count held in an {@code int} array, whose
+ * root is the file ranked last. Files are ranked by descending search count, then ascending file name, the
+ * same as the search methods returning a map.
+ */
+final class TopKSelector {
+    private static final int INITIAL_CAPACITY = 16;
+
+    private final PageRequest page;
+    /**
+     * maximum number of files kept
+     */
+    private final int capacity;
+    private String[] filenames;
+    private int[] counts;
+    private int size = 0;
+    private int totalFiles = 0;
+    private int matchingFiles = 0;
+
+    /**
+     * @param page page selected
+     */
+    TopKSelector(PageRequest page) {
+        this.page = page;
+        //arrays are grown up to the page's end as files are offered
+        this.capacity = (int) Math.min((long) page.getOffset() + page.getLimit(), Integer.MAX_VALUE - 8);
+        int initialCapacity = Math.min(capacity, INITIAL_CAPACITY);
+        this.filenames = new String[initialCapacity];
+        this.counts = new int[initialCapacity];
+    }
+
+    /**
+     * Offers a file searched, kept if ranked within the page's end.
+     * @param filename name of the file
+     * @param count search count of the file
+     */
+    void offer(String filename, int count) {
+        totalFiles++;
+        if (count > 0) {
+            matchingFiles++;
+        } else if (!page.isIncludeZeroMatches()) {
+            return;
+        }
+
+        if (size < capacity) {
+            if (size == filenames.length) {
+                int newLength = (int) Math.min(filenames.length * 2L, capacity);
+                filenames = Arrays.copyOf(filenames, newLength);
+                counts = Arrays.copyOf(counts, newLength);
+            }
+            filenames[size] = filename;
+            counts[size] = count;
+            siftUp(size++);
+        } else if (isRankedBefore(count, filename, counts[0], filenames[0])) {
+            //replaces the file ranked last
+            filenames[0] = filename;
+            counts[0] = count;
+            siftDown(0, size);
+        }
+    }
+
+    /**
+     * Offers every file of another selection, ex. the page of a shard.
+     * @param result result selected with a page starting at offset 0 and ending at or after this page's end,
+     *               whose files searched and matched are added to this selection's
+     */
+    void offerAll(SearchResult result) {
+        for (int idx = 0; idx < result.size(); idx++) {
+            offer(result.getFilename(idx), result.getCount(idx));
+        }
+        //files left out of the result were searched too
+        totalFiles += result.getTotalFiles() - result.size();
+        matchingFiles += result.getMatchingFiles() - countMatching(result);
+    }
+
+    /**
+     * @return the files of the page, in ranking order
+     */
+    SearchResult toResult() {
+        return toResult(true);
+    }
+
+    /**
+     * @param complete false if some files were not searched, see {@link SearchResult#isComplete()}
+     * @return the files of the page, in ranking order
+     */
+    SearchResult toResult(boolean complete) {
+        //heap sort: the file ranked last is moved to the end until the heap is empty
+        for (int last = size - 1; last > 0; last--) {
+            swap(0, last);
+            siftDown(0, last);
+        }
+        int from = Math.min(page.getOffset(), size);
+        int rankedFiles = page.isIncludeZeroMatches() ? totalFiles : matchingFiles;
+        return new SearchResult(page.getOffset(), Arrays.copyOfRange(filenames, from, size),
+                Arrays.copyOfRange(counts, from, size), totalFiles, matchingFiles, rankedFiles, complete);
+    }
+
+    /**
+     * Helper method
+     * @return true if the file with {@code count} and {@code filename} is ranked before the other file
+     */
+    private static boolean isRankedBefore(int count, String filename, int otherCount, String otherFilename) {
+        return count != otherCount ? count > otherCount : filename.compareTo(otherFilename) < 0;
+    }
+
+    private static int countMatching(SearchResult result) {
+        int matching = 0;
+        for (int idx = 0; idx < result.size(); idx++) {
+            if (result.getCount(idx) > 0) {
+                matching++;
+            }
+        }
+        return matching;
+    }
+
+    /**
+     * Helper method
+     * Moves the file at {@code idx} up the heap until its parent is ranked after it.
+     */
+    private void siftUp(int idx) {
+        while (idx > 0) {
+            int parent = (idx - 1) >>> 1;
+            if (!isRankedBefore(counts[parent], filenames[parent], counts[idx], filenames[idx])) {
+                break;
+            }
+            swap(parent, idx);
+            idx = parent;
+        }
+    }
+
+    /**
+     * Helper method
+     * Moves the file at {@code idx} down the first {@code end} files of the heap until its children are
+     * ranked before it.
+     */
+    private void siftDown(int idx, int end) {
+        while (true) {
+            int child = 2 * idx + 1;
+            if (child >= end) {
+                break;
+            }
+            //the child ranked last
+            if (child + 1 < end && isRankedBefore(counts[child], filenames[child], counts[child + 1], filenames[child + 1])) {
+                child++;
+            }
+            if (!isRankedBefore(counts[idx], filenames[idx], counts[child], filenames[child])) {
+                break;
+            }
+            swap(idx, child);
+            idx = child;
+        }
+    }
+
+    private void swap(int idx1, int idx2) {
+        String filename = filenames[idx1];
+        filenames[idx1] = filenames[idx2];
+        filenames[idx2] = filename;
+        int count = counts[idx1];
+        counts[idx1] = counts[idx2];
+        counts[idx2] = count;
+    }
+}
@@ -0,0 +1,96 @@
+package target
+
+import org.apache.lucene.analysis.TokenStream
+import org.apache.lucene.analysis.tokenattributes.CharTermAttribute
+import spock.lang.Specification
+import spock.lang.Unroll
+
+class BulkIndexerSpec extends Specification {
+    TempCorpus corpus = new TempCorpus([:])
+    File resDir = corpus.resDir
+    File indexDir = corpus.indexDir
+    BulkIndexer bulkIndexer = SearchUtils.getBulkIndexer()
+
+    def setup() {
+        Random random = new Random(13)
+        20.times { fileId ->
+            StringBuilder text = new StringBuilder()
+            (random.nextInt(2000) + 1).times {
+                text.append(['alpha', 'Beta', 'gamma.', 'delta,', 'ALPHA-beta', '\n', '42'][random.nextInt(7)]).append(' ')
+            }
+            new File(resDir, "file${fileId}.txt").text = text.toString()
+        }
+    }
+
+    def cleanup() {
+        bulkIndexer.setIndexingThreads(0)
+        bulkIndexer.setQueueCapacity(BulkIndexer.DEFAULT_QUEUE_CAPACITY)
+        bulkIndexer.setMaxBufferedFileSize(BulkIndexer.DEFAULT_MAX_BUFFERED_FILE_SIZE)
+        bulkIndexer.setStoreContents(false)
+        bulkIndexer.setStoreTermVectors(false)
+        corpus.delete()
+    }
+
+    def 'FilteredTextAnalyzer - tokens are the words of the filtered text'() {
+        given:
+        String text = "Hello, World! It's 2017...\tThe\r\nEND-of_line"
+        List<String> tokens = []
+
+        when:
+        TokenStream tokenStream = new FilteredTextAnalyzer().tokenStream('contents', new StringReader(text))
+        CharTermAttribute term = tokenStream.addAttribute(CharTermAttribute)
+        tokenStream.reset()
+        while (tokenStream.incrementToken()) {
+            tokens << term.toString()
+        }
+        tokenStream.end()
+        tokenStream.close()
+
+        then:
+        tokens == SearchUtils.stringFilter(text).trim().split(' ') as List
+    }
+
+    @Unroll
+    def "indexFilesInDir - #indexingThreads thread(s), queue of #queueCapacity, read ahead up to #maxBufferedFileSize bytes"() {
+        given:
+        bulkIndexer.setIndexingThreads(indexingThreads)
+        bulkIndexer.setQueueCapacity(queueCapacity)
+        bulkIndexer.setMaxBufferedFileSize(maxBufferedFileSize)
+
+        when:
+        List<String> indexedFiles = SearchUtils.indexFilesInDir(indexDir.path, resDir.path)
+
+        then:
+        indexedFiles.size() == 20
+        corpus.numDocs() == 20
+        ['alpha', 'beta', 'alpha beta', 'gamma delta', '42 alpha', 'delta 42', 'beta beta', 'beta beta beta'].each { searchTerm ->
+            assert SearchUtils.indexSearch(searchTerm, indexedFiles, indexDir.path) == SearchUtils.regexSearch(searchTerm, resDir.path)
+        }
+
+        where:
+        indexingThreads | queueCapacity | maxBufferedFileSize
+        1               | 1             | BulkIndexer.DEFAULT_MAX_BUFFERED_FILE_SIZE
+        4               | 2             | BulkIndexer.DEFAULT_MAX_BUFFERED_FILE_SIZE
+        4               | 32            | 0
+    }
+
+    def 'indexFilesInDir - contents are only stored when configured'() {
+        when:
+        SearchUtils.indexFilesInDir(indexDir.path, resDir.path)
+
+        then:
+        corpus.withReader { it.document(0).get(SearchUtils.CONTENTS_FIELD) } == null
+        corpus.withReader { it.getTermVectors(0) } == null
+
+        when:
+        indexDir.deleteDir()
+        bulkIndexer.setStoreContents(true)
+        bulkIndexer.setStoreTermVectors(true)
+        SearchUtils.indexFilesInDir(indexDir.path, resDir.path)
+
+        then:
+        corpus.withReader { it.document(0).get(SearchUtils.CONTENTS_FIELD) } ==
+                SearchUtils.readFile(new File(resDir, corpus.withReader { it.document(0).get(SearchUtils.FILENAME_FIELD) }))
+        corpus.withReader { it.getTermVectors(0) } != null
+    }
+}
@@ -0,0 +1,151 @@
+package target
+
+import spock.lang.Specification
+
+import java.nio.file.Files
+import java.nio.file.attribute.FileTime
+
+class CorpusCacheSpec extends Specification {
+    File dir
+
+    def setup() {
+        dir = Files.createTempDirectory("corpus").toFile()
+    }
+
+    def cleanup() {
+        dir.deleteDir()
+    }
+
+    def 'listTextFiles - only text files sorted by name'() {
+        given:
+        new File(dir, "b.txt").text = "b"
+        new File(dir, "a.TXT").text = "a"
+        new File(dir, "c.md").text = "c"
+        CorpusCache cache = new CorpusCache()
+
+        when:
+        List<File> files = cache.listTextFiles(dir.path)
+
+        then:
+        files*.name == ['a.TXT', 'b.txt']
+    }
+
+    def 'get - reads file again only when it changed'() {
+        given:
+        File file = new File(dir, "test.txt")
+        file.text = "Hello, World"
+        CorpusCache cache = new CorpusCache()
+
+        when:
+        String first = cache.get(file)
+        String second = cache.get(file)
+
+        then:
+        first == ' hello world'
+        second.is(first)
+
+        when:
+        file.text = "Goodbye"
+        Files.setLastModifiedTime(file.toPath(), FileTime.fromMillis(file.lastModified() + 1000))
+
+        then:
+        cache.get(file) == ' goodbye'
+        cache.size() == 1
+    }
+
+    def 'get - a file that cannot be read is not cached'() {
+        given:
+        //directories pass the attribute check but cannot be read as text
+        File unreadable = new File(dir, "unreadable.txt")
+        unreadable.mkdir()
+        CorpusCache cache = new CorpusCache()
+
+        when:
+        String text = cache.get(unreadable)
+
+        then:
+        text == ''
+        cache.size() == 0
+        cache.getUsedBytes() == 0
+
+        when:
+        cache.read(unreadable)
+
+        then:
+        thrown(IOException)
+        cache.size() == 0
+    }
+
+    def 'version - files changed in place change the version of unwatched directories only'() {
+        given:
+        File file = new File(dir, "a.txt")
+        file.text = "alpha"
+        CorpusCache cache = new CorpusCache()
+        long version = cache.version(dir.path)
+
+        expect:
+        cache.version(dir.path) == version
+
+        when: 'unwatched, the files are checked'
+        file.text = "alpha beta"
+        Files.setLastModifiedTime(file.toPath(), FileTime.fromMillis(file.lastModified() + 1000))
+
+        then:
+        cache.version(dir.path) != version
+
+        when: 'watched, only the directory is checked'
+        cache.watch(dir.path)
+        version = cache.version(dir.path)
+        file.text = "alpha beta gamma"
+        Files.setLastModifiedTime(file.toPath(), FileTime.fromMillis(file.lastModified() + 1000))
+
+        then:
+        cache.version(dir.path) == version
+
+        when:
+        cache.invalidate(dir.path)
+        long invalidated = cache.version(dir.path)
+        new File(dir, "b.txt").text = "beta"
+
+        then:
+        invalidated != version
+        cache.version(dir.path) != invalidated
+
+        when:
+        cache.unwatch(dir.path)
+        version = cache.version(dir.path)
+        file.text = "changed"
+        Files.setLastModifiedTime(file.toPath(), FileTime.fromMillis(file.lastModified() + 1000))
+
+        then:
+        cache.version(dir.path) != version
+    }
+
+    def 'get - evicts least recently used entries over budget'() {
+        given:
+        File a = new File(dir, "a.txt")
+        File b = new File(dir, "b.txt")
+        File big = new File(dir, "big.txt")
+        a.text = "aaaa"
+        b.text = "bbbb"
+        big.text = "x" * 100
+        //room for two entries of 5 characters
+        CorpusCache cache = new CorpusCache(20)
+
+        when:
+        String aText = cache.get(a)
+        cache.get(b)
+        cache.get(a)
+        new File(dir, "c.txt").text = "cccc"
+        cache.get(new File(dir, "c.txt"))
+
+        then:
+        cache.size() == 2
+        cache.getUsedBytes() == 20
+        cache.get(a).is(aText)
+
+        and: 'files larger than the budget are not cached'
+        cache.get(big) == null
+        cache.size() == 2
+    }
+}
@@ -0,0 +1,63 @@
+package target
+
+import spock.lang.Specification
+import spock.lang.Unroll
+
+import java.nio.file.Files
+
+class IndexSessionSpec extends Specification {
+    File resDir
+    File indexDir
+
+    def setup() {
+        resDir = Files.createTempDirectory("res").toFile()
+        indexDir = Files.createTempDirectory("index").toFile()
+        new File(resDir, "a.txt").text = "The military history of the military."
+        new File(resDir, "b.txt").text = "History, history!"
+    }
+
+    def cleanup() {
+        resDir.deleteDir()
+        indexDir.deleteDir()
+    }
+
+    @Unroll
+    def "search - memory mapped #memoryMapped gives the same results as indexSearch"() {
+        given:
+        List<String> indexedFiles = SearchUtils.indexFilesInDir(indexDir.path, resDir.path)
+        IndexSession session = new IndexSession(indexDir.path, memoryMapped, 0)
+
+        expect:
+        ['history', 'the military', 'military history of', 'none'].each { searchTerm ->
+            assert session.search(searchTerm, indexedFiles) == SearchUtils.indexSearch(searchTerm, indexedFiles, indexDir.path)
+        }
+
+        cleanup:
+        session.close()
+
+        where:
+        memoryMapped << [false, true]
+    }
+
+    def 'refresh - sees files indexed after the session was opened'() {
+        given:
+        List<String> indexedFiles = SearchUtils.indexFilesInDir(indexDir.path, resDir.path)
+        IndexSession session = new IndexSession(indexDir.path, false, 0)
+
+        when:
+        new File(resDir, "c.txt").text = "history"
+        indexedFiles = SearchUtils.indexFilesInDir(indexDir.path, resDir.path)
+
+        then:
+        session.search('history', indexedFiles) == ['b.txt': 2, 'a.txt': 1, 'c.txt': 0]
+
+        when:
+        session.refresh()
+
+        then:
+        session.search('history', indexedFiles) == ['b.txt': 2, 'a.txt': 1, 'c.txt': 1]
+
+        cleanup:
+        session.close()
+    }
+}
@@ -0,0 +1,134 @@
+package target
+
+import spock.lang.Specification
+
+class IndexWatcherSpec extends Specification {
+    TempCorpus corpus = new TempCorpus()
+    File resDir = corpus.resDir
+    File indexDir = corpus.indexDir
+
+    def cleanup() {
+        corpus.delete()
+    }
+
+    def 'indexFilesInDir - only changed, added and removed files update the index'() {
+        given:
+        SearchUtils.indexFilesInDir(indexDir.path, resDir.path)
+        long generation = commitGeneration()
+
+        when: 'nothing changed'
+        List<String> indexedFiles = SearchUtils.indexFilesInDir(indexDir.path, resDir.path)
+
+        then:
+        indexedFiles == ['a.txt', 'b.txt']
+        commitGeneration() == generation
+
+        when: 'a file changed, one added and one removed'
+        File a = new File(resDir, "a.txt")
+        a.text = "beta beta beta"
+        a.setLastModified(a.lastModified() + 2000)
+        new File(resDir, "b.txt").delete()
+        new File(resDir, "c.txt").text = "gamma"
+        indexedFiles = SearchUtils.indexFilesInDir(indexDir.path, resDir.path)
+
+        then:
+        indexedFiles == ['a.txt', 'c.txt']
+        commitGeneration() > generation
+        SearchUtils.indexSearch('beta', indexedFiles, indexDir.path) == ['a.txt': 3, 'c.txt': 0]
+        SearchUtils.indexSearch('gamma', indexedFiles, indexDir.path) == ['c.txt': 1, 'a.txt': 0]
+        corpus.numDocs() == 2
+    }
+
+    def 'watcher - keeps index and session current while running'() {
+        given:
+        IndexWatcher watcher = new IndexWatcher(indexDir.path, resDir.path)
+        IndexSession session = new IndexSession(indexDir.path, false, 0)
+        watcher.setIndexSession(session)
+
+        when:
+        new File(resDir, "c.txt").text = "delta delta"
+
+        then:
+        waitFor { watcher.getIndexedFiles().contains('c.txt') }
+        waitFor { session.search('delta', watcher.getIndexedFiles()).get('c.txt') == 2 }
+
+        cleanup:
+        watcher.close()
+        session.close()
+    }
+
+    def 'watcher - keeps every shard of a sharded index current while running'() {
+        given:
+        ShardedIndex shardedIndex = new ShardedIndex(indexDir.path, 2)
+        IndexWatcher watcher = new IndexWatcher(shardedIndex, resDir.path)
+
+        when:
+        shardedIndex.search('delta', watcher.getIndexedFiles())
+        new File(resDir, "c.txt").text = "delta delta"
+        new File(resDir, "d.txt").text = "delta"
+
+        then:
+        waitFor { watcher.getIndexedFiles().containsAll(['c.txt', 'd.txt']) }
+        waitFor { shardedIndex.search('delta', watcher.getIndexedFiles()) == ['c.txt': 2, 'd.txt': 1, 'a.txt': 0, 'b.txt': 0] }
+
+        cleanup:
+        watcher.close()
+        shardedIndex.close()
+    }
+
+    def 'watcher - cached search results are invalidated when a file changes in place'() {
+        given:
+        IndexWatcher watcher = new IndexWatcher(indexDir.path, resDir.path)
+        Map<String, Integer> first = SearchUtils.simpleStringSearch('beta', resDir.path)
+
+        expect:
+        SearchUtils.simpleStringSearch('beta', resDir.path).is(first)
+
+        when:
+        new File(resDir, "a.txt").text = "beta beta"
+
+        then:
+        waitFor { SearchUtils.simpleStringSearch('beta', resDir.path) == ['a.txt': 2, 'b.txt': 1] }
+
+        cleanup:
+        watcher.close()
+    }
+
+    def 'watcher - keeps watching after an update fails'() {
+        given:
+        IndexWatcher watcher = new IndexWatcher(indexDir.path, resDir.path)
+        IndexSession session = new IndexSession(indexDir.path, false, 0)
+        //refreshing a closed session fails with a runtime exception
+        session.close()
+        watcher.setIndexSession(session)
+
+        when:
+        new File(resDir, "c.txt").text = "delta"
+
+        then:
+        waitFor { watcher.getIndexedFiles().contains('c.txt') }
+
+        when:
+        watcher.setIndexSession(null)
+        new File(resDir, "d.txt").text = "delta"
+
+        then:
+        waitFor { watcher.getIndexedFiles().contains('d.txt') }
+
+        cleanup:
+        watcher.close()
+    }
+
+    private long commitGeneration() {
+        return corpus.withReader { it.getIndexCommit().getGeneration() }
+    }
+
+    private static boolean waitFor(Closure<Boolean> condition) {
+        //watch services may poll the file system, allow them some time
+        long deadline = System.currentTimeMillis() + 30000
+        while (!condition() && System.currentTimeMillis() < deadline) {
+            Thread.sleep(100)
+        }
+        return condition()
+    }
+}
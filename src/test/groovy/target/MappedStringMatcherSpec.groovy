@@ -0,0 +1,88 @@
+package target
+
+import spock.lang.Specification
+import spock.lang.Unroll
+
+import java.nio.file.Files
+
+class MappedStringMatcherSpec extends Specification {
+    File file
+
+    def setup() {
+        file = Files.createTempFile("mapped", ".txt").toFile()
+    }
+
+    def cleanup() {
+        file.delete()
+    }
+
+    @Unroll
+    def "MappedTextNormalizer - filters #content.inspect() like readFile"() {
+        given:
+        file.text = content
+
+        expect:
+        normalize(file, 3) == SearchUtils.readFile(file)
+
+        where:
+        content << ['', '\n', '\r\n', 'abc', 'abc\n', 'abc\r\n', 'abc\n\n', 'abc\n\r', 'a\rb\r',
+                    '  Hello,\tWorld!  \n\nsecond  LINE..\n', 'été café\n', '...']
+    }
+
+    @Unroll
+    def "count - #searchTerm in #content.inspect() with buffer #bufferSize"() {
+        given:
+        file.text = content
+        String filteredTerm = SearchUtils.stringFilter(searchTerm)
+        MappedTextNormalizer normalizer = new MappedTextNormalizer(file, 4)
+
+        when:
+        int result = new MappedStringMatcher(filteredTerm).count(normalizer, new byte[bufferSize])
+
+        then:
+        result == expected
+
+        cleanup:
+        normalizer.close()
+
+        where:
+        searchTerm    | content                        | bufferSize | expected
+        'aa'          | 'aaaaa'                        | 4          | 2
+        'aa'          | 'aaaaa'                        | 64         | 2
+        'test'        | 'test, TEST\ntest.'            | 8          | 3
+        'test test'   | 'test test test test test'     | 18         | 2
+        'xyz'         | 'test test'                    | 6          | 0
+        'test,'       | 'test test'                    | 10         | 1
+    }
+
+    def 'count - matches simpleStringSearch on sample text'() {
+        given:
+        File dir = new File(System.getProperty("user.dir"), "src/main/java/res/sample_text")
+        List<String> terms = ['the', 'a', 'of the', 'warp', 'e', 'testing the app like heck 1 23', 'p unct at ion']
+
+        expect:
+        terms.each { term ->
+            Map<String, Integer> expected = SearchUtils.simpleStringSearch(term, dir.path)
+            //one matcher per term is reused for every file
+            MappedStringMatcher matcher = new MappedStringMatcher(SearchUtils.stringFilter(term))
+            dir.listFiles().findAll { it.name.endsWith('.txt') }.each { sample ->
+                assert matcher.count(sample) == expected[sample.name]
+            }
+        }
+    }
+
+    private static String normalize(File file, int bufferSize) {
+        StringBuilder result = new StringBuilder()
+        byte[] buf = new byte[bufferSize]
+        MappedTextNormalizer normalizer = new MappedTextNormalizer(file, 5)
+        try {
+            int read
+            while ((read = normalizer.read(buf, 0, buf.length)) != -1) {
+                result.append(new String(buf, 0, read, 'US-ASCII'))
+            }
+        } finally {
+            normalizer.close()
+        }
+        return result.toString()
+    }
+}
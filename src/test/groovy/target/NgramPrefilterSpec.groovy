@@ -0,0 +1,135 @@
+package target
+
+import spock.lang.Specification
+import spock.lang.Unroll
+
+import java.nio.file.Files
+
+class NgramPrefilterSpec extends Specification {
+    File resDir
+    NgramPrefilter prefilter = SearchUtils.getNgramPrefilter()
+
+    def setup() {
+        resDir = Files.createTempDirectory("res").toFile()
+        new File(resDir, "a.txt").text = "The military history of the military.\nHistory, history!"
+        new File(resDir, "b.txt").text = "Alpha beta gamma 42"
+        SearchUtils.getResultCache().clear()
+        prefilter.clear()
+    }
+
+    def cleanup() {
+        prefilter.setEnabled(true)
+        prefilter.setBudget(NgramPrefilter.DEFAULT_BUDGET)
+        SearchUtils.getCorpusCache().setBudget(CorpusCache.DEFAULT_BUDGET)
+        resDir.deleteDir()
+    }
+
+    def 'mayContain - every substring of the filtered text may be contained'() {
+        given:
+        String text = SearchUtils.readFile(new File(resDir, "a.txt"))
+        long[] summary = NgramPrefilter.summarize(text)
+
+        expect:
+        (0..<text.length()).each { from ->
+            (from + 1..Math.min(text.length(), from + 8)).each { to ->
+                assert NgramPrefilter.mayContain(summary, text.substring(from, to))
+            }
+        }
+    }
+
+    @Unroll
+    def "mayContain - '#filteredTerm' is ruled out"() {
+        expect:
+        !NgramPrefilter.mayContain(NgramPrefilter.summarize(SearchUtils.readFile(new File(resDir, "a.txt"))), filteredTerm)
+
+        where:
+        filteredTerm << ['z', 'xy', 'hiss', 'military y', 'military history of history', '42']
+    }
+
+    def 'mayContain - summaries follow file changes'() {
+        given:
+        File b = new File(resDir, "b.txt")
+
+        expect:
+        !prefilter.mayContain(b, 'delta')
+        prefilter.size() == 1
+
+        when:
+        b.text = "Alpha beta delta"
+        b.setLastModified(b.lastModified() + 2000)
+
+        then:
+        prefilter.mayContain(b, 'delta')
+        !prefilter.mayContain(b, 'gamma')
+    }
+
+    def 'mayContain - a file that cannot be read is not summarized as an empty file'() {
+        given:
+        //directories pass the attribute check but cannot be read as text
+        File unreadable = new File(resDir, "unreadable.txt")
+        unreadable.mkdir()
+
+        expect:
+        prefilter.mayContain(unreadable, 'alpha')
+        prefilter.mayContain(unreadable, 'beta')
+        prefilter.size() == 0
+    }
+
+    @Unroll
+    def "search - counts are the same with and without the prefilter, file larger than the corpus cache #streamed"() {
+        given:
+        if (streamed) {
+            SearchUtils.getCorpusCache().setBudget(0)
+        }
+        Random random = new Random(16)
+        List<String> searchTerms = ['history', 'the military', 'beta gamma', 'story', 'y of t', '42', 'a']
+        //random terms over the letters of the files, some found and most not
+        String letters = 'aehilmorsty '
+        50.times {
+            searchTerms << (1..random.nextInt(6) + 1).collect { letters[random.nextInt(letters.length())] }.join()
+        }
+
+        when:
+        List results = searchTerms.collect { searchTerm ->
+            [SearchUtils.simpleStringSearch(searchTerm, resDir.path), SearchUtils.regexSearch(searchTerm, resDir.path)]
+        }
+        SearchUtils.getResultCache().clear()
+        prefilter.setEnabled(false)
+        List unfilteredResults = searchTerms.collect { searchTerm ->
+            [SearchUtils.simpleStringSearch(searchTerm, resDir.path), SearchUtils.regexSearch(searchTerm, resDir.path)]
+        }
+
+        then:
+        results == unfilteredResults
+
+        where:
+        streamed << [false, true]
+    }
+
+    def 'search - files ruled out are skipped without being read'() {
+        given:
+        SearchMetrics metrics = SearchUtils.getSearchMetrics()
+        SearchUtils.simpleStringSearch('warmup', resDir.path)
+        metrics.reset()
+
+        when:
+        Map<String, Integer> resultMap = SearchUtils.regexSearch('gamma', resDir.path)
+
+        then:
+        resultMap == ['b.txt': 1, 'a.txt': 0]
+        metrics.snapshot().getFilesSkipped() == 1
+        metrics.snapshot().getFilesScanned() == 1
+    }
+
+    def 'setBudget - least recently used summaries are evicted'() {
+        given:
+        prefilter.mayContain(new File(resDir, "a.txt"), 'x')
+        prefilter.mayContain(new File(resDir, "b.txt"), 'x')
+
+        when:
+        prefilter.setBudget(prefilter.getUsedBytes() / 2 as long)
+
+        then:
+        prefilter.size() == 1
+    }
+}
@@ -0,0 +1,114 @@
+package target
+
+import spock.lang.Shared
+import spock.lang.Specification
+import spock.lang.Unroll
+
+import java.nio.file.Files
+import java.nio.file.attribute.FileTime
+
+class PositionalIndexSpec extends Specification {
+    /**
+     * relative path containing the text files
+     */
+    private static final String resPath = System.getProperty("user.dir") + File.separator +
+            "src" + File.separator +
+            "main" + File.separator +
+            "java" + File.separator +
+            "res" + File.separator +
+            "sample_text";
+
+    @Shared
+    PositionalIndex positionalIndex
+
+    def setupSpec() {
+        positionalIndex = PositionalIndex.build(resPath)
+    }
+
+    @Unroll
+    def "positionalIndexSearch - #searchTerm.inspect() counts like regexSearch"() {
+        expect:
+        SearchUtils.positionalIndexSearch(searchTerm, positionalIndex) == SearchUtils.regexSearch(searchTerm, resPath)
+
+        where:
+        searchTerm << ['testing', 'testing the app like', 'testing the app like heck', 'testing the app like heck 1 23',
+                       'p unct at ion', 'the', 'of the', 'military history', ' the', 'the ', ' the ', '!', 'the the',
+                       'zzz', 'the zzz', 'Test', 'heck testing']
+    }
+
+    def 'positionalIndexSearch - repeated and self-overlapping phrases'() {
+        given:
+        File dir = Files.createTempDirectory("positional").toFile()
+        new File(dir, "a.txt").text = "a a a a a. b a b a b a b"
+        PositionalIndex index = PositionalIndex.build(dir.path)
+
+        expect:
+        ['a a', 'a a a', 'a b a', ' a b ', 'b a b', ' a', 'a ', ' '].each { searchTerm ->
+            assert SearchUtils.positionalIndexSearch(searchTerm, index) == SearchUtils.regexSearch(searchTerm, dir.path)
+        }
+
+        cleanup:
+        dir.deleteDir()
+    }
+
+    def 'write and load - memory-mapped index gives the same counts'() {
+        given:
+        File indexFile = Files.createTempFile("positional", ".idx").toFile()
+
+        when:
+        positionalIndex.write(indexFile)
+        PositionalIndex loaded = PositionalIndex.load(indexFile)
+
+        then:
+        loaded.getFilenames() == positionalIndex.getFilenames()
+        loaded.isCurrent(resPath)
+        ['testing the app like', 'the', 'warp drive', 'none'].each { searchTerm ->
+            assert SearchUtils.positionalIndexSearch(searchTerm, loaded) ==
+                    SearchUtils.positionalIndexSearch(searchTerm, positionalIndex)
+        }
+
+        cleanup:
+        indexFile.delete()
+    }
+
+    def 'build - a file that cannot be read is indexed as empty and keeps the index stale'() {
+        given:
+        File dir = Files.createTempDirectory("positional").toFile()
+        new File(dir, "a.txt").text = "alpha"
+        File b = new File(dir, "b.txt")
+        b.text = "alpha beta"
+        SearchUtils.getCorpusCache().listTextFiles(dir.path)
+        FileTime listed = Files.getLastModifiedTime(dir.toPath())
+        //still listed as a text file, but read as a directory
+        b.delete()
+        b.mkdir()
+        Files.setLastModifiedTime(dir.toPath(), listed)
+
+        when:
+        PositionalIndex index = PositionalIndex.build(dir.path)
+
+        then:
+        SearchUtils.positionalIndexSearch('alpha', index) == ['a.txt': 1, 'b.txt': 0]
+        !index.isCurrent(dir.path)
+
+        cleanup:
+        dir.deleteDir()
+    }
+
+    def 'isCurrent - false once a file changed'() {
+        given:
+        File dir = Files.createTempDirectory("positional").toFile()
+        File file = new File(dir, "a.txt")
+        file.text = "alpha"
+        PositionalIndex index = PositionalIndex.build(dir.path)
+
+        when:
+        file.text = "alpha beta"
+
+        then:
+        !index.isCurrent(dir.path)
+
+        cleanup:
+        dir.deleteDir()
+    }
+}
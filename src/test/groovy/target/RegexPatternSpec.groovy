@@ -0,0 +1,99 @@
+package target
+
+import spock.lang.Specification
+import spock.lang.Unroll
+
+import java.nio.file.Files
+import java.util.regex.Matcher
+import java.util.regex.Pattern
+
+class RegexPatternSpec extends Specification {
+    def cleanup() {
+        RegexPattern.setEngine(RegexPattern.Engine.BACKTRACKING)
+    }
+
+    def 'compile - patterns are shared by searches of the same term'() {
+        expect:
+        RegexPattern.compile('the military').is(RegexPattern.compile('the military'))
+        RegexPattern.compile('the military').getLiteral() == 'the military'
+    }
+
+    @Unroll
+    def "count - #engine engine counts like an unquoted whole word pattern"() {
+        given:
+        RegexPattern.setEngine(engine)
+        Random random = new Random(engine.ordinal())
+
+        expect:
+        1000.times {
+            String text = randomText(random, random.nextInt(40))
+            String term = randomText(random, random.nextInt(4) + 1)
+            assert RegexPattern.compile(term).count(text) == wholeWordCount(term, text)
+        }
+
+        where:
+        engine << RegexPattern.Engine.values()
+    }
+
+    def 'count - regex metacharacters are matched literally'() {
+        expect:
+        RegexPattern.compile('a.c').count(' a.c abc') == 1
+        RegexPattern.compile('a+b').count(' aab a+b') == 1
+    }
+
+    def 'count - streamed text counts like the whole text'() {
+        given:
+        File file = Files.createTempFile("regex", ".txt").toFile()
+        Random random = new Random(7)
+
+        expect:
+        300.times {
+            file.text = randomText(random, random.nextInt(200))
+            String term = randomText(random, random.nextInt(4) + 1)
+            RegexPattern regexPattern = RegexPattern.compile(term)
+            int expected = regexPattern.count(SearchUtils.readFile(file))
+            new MappedTextNormalizer(file).withCloseable { normalizer ->
+                //a small buffer carries occurrences across reads
+                assert regexPattern.count(normalizer, new byte[random.nextInt(8) + 1]) == expected
+            }
+        }
+
+        cleanup:
+        file.delete()
+    }
+
+    def 'regexSearch - files too large for the cache give the same counts'() {
+        given:
+        File dir = Files.createTempDirectory("regex").toFile()
+        new File(dir, "a.txt").text = "the cat. The Cat sat on the mat, the end"
+        new File(dir, "b.txt").text = "no match here"
+        CorpusCache corpusCache = SearchUtils.getCorpusCache()
+        long budget = corpusCache.getBudget()
+        corpusCache.setBudget(0)
+
+        expect:
+        SearchUtils.regexSearch('the cat', dir.path) == ['a.txt': 2, 'b.txt': 0]
+        SearchUtils.regexSearch('the', dir.path) == ['a.txt': 4, 'b.txt': 0]
+        SearchUtils.regexSearch('end', dir.path) == ['a.txt': 1, 'b.txt': 0]
+        SearchUtils.regexSearch('at', dir.path) == ['a.txt': 0, 'b.txt': 0]
+
+        cleanup:
+        corpusCache.setBudget(budget)
+        dir.deleteDir()
+    }
+
+    private static String randomText(Random random, int length) {
+        StringBuilder text = new StringBuilder()
+        length.times { text.append(' ab'.charAt(random.nextInt(3))) }
+        return text.toString()
+    }
+
+    private static int wholeWordCount(String term, String text) {
+        Matcher matcher = Pattern.compile("\\b" + term + "\\b").matcher(text)
+        int count = 0
+        while (matcher.find()) {
+            count++
+        }
+        return count
+    }
+}
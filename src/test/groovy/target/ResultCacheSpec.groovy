@@ -0,0 +1,159 @@
+package target
+
+import spock.lang.Specification
+import spock.lang.Unroll
+
+import java.nio.file.Files
+import java.nio.file.attribute.FileTime
+
+class ResultCacheSpec extends Specification {
+    TempCorpus corpus = new TempCorpus()
+    File resDir = corpus.resDir
+    File indexDir = corpus.indexDir
+
+    def cleanup() {
+        corpus.delete()
+    }
+
+    def 'get - only returns results of the current version'() {
+        given:
+        ResultCache cache = new ResultCache()
+        cache.put('string', 'res', 'beta', null, 1, ['a.txt': 1])
+
+        expect:
+        cache.get('string', 'res', 'beta', null, 1) == ['a.txt': 1]
+        cache.get('string', 'res', 'beta', null, 2) == null
+        cache.get('regex', 'res', 'beta', null, 1) == null
+        cache.get('string', 'res', 'beta', ['a.txt'], 1) == null
+        cache.getHits() == 1
+        cache.getMisses() == 3
+    }
+
+    def 'getCounts - paged searches cache unsorted counts, sorted results are converted once'() {
+        given:
+        ResultCache cache = new ResultCache()
+        cache.putCounts('string', 'res', 'beta', null, 1, new FileCounts(['b.txt', 'c.txt', 'a.txt'] as String[], [1, 0, 2] as int[]))
+        cache.put('regex', 'res', 'beta', null, 1, ['a.txt': 2, 'b.txt': 1])
+
+        expect:
+        cache.get('string', 'res', 'beta', null, 1) == null
+        cache.getCounts('string', 'res', 'beta', null, 1).select(PageRequest.ALL, true).toMap() == ['a.txt': 2, 'b.txt': 1, 'c.txt': 0]
+        cache.getCounts('string', 'res', 'beta', null, 2) == null
+        cache.getCounts('regex', 'res', 'beta', null, 1).select(PageRequest.top(1), true).toMap() == ['a.txt': 2]
+        cache.getCounts('regex', 'res', 'beta', null, 1).is(cache.getCounts('regex', 'res', 'beta', null, 1))
+    }
+
+    def 'put - evicts least recently used results over the maximum'() {
+        given:
+        ResultCache cache = new ResultCache(2)
+        cache.put('string', 'res', 'a', null, 0, [:])
+        cache.put('string', 'res', 'b', null, 0, [:])
+
+        when:
+        cache.get('string', 'res', 'a', null, 0)
+        cache.put('string', 'res', 'c', null, 0, [:])
+
+        then:
+        cache.size() == 2
+        cache.getEvictions() == 1
+        cache.get('string', 'res', 'a', null, 0) != null
+        cache.get('string', 'res', 'b', null, 0) == null
+    }
+
+    def 'simpleStringSearch and regexSearch - repeated searches hit the cache until a file changes'() {
+        given:
+        ResultCache cache = SearchUtils.getResultCache()
+
+        when:
+        Map<String, Integer> first = SearchUtils.simpleStringSearch('Beta', resDir.path)
+        long hits = cache.getHits()
+        Map<String, Integer> second = SearchUtils.simpleStringSearch('BETA', resDir.path)
+
+        then: 'search terms are cached by their filtered form'
+        second.is(first)
+        cache.getHits() == hits + 1
+        SearchUtils.regexSearch('beta', resDir.path) == ['a.txt': 1, 'b.txt': 1]
+
+        when:
+        File a = new File(resDir, "a.txt")
+        a.text = "beta beta"
+        Files.setLastModifiedTime(a.toPath(), FileTime.fromMillis(a.lastModified() + 2000))
+
+        then:
+        SearchUtils.simpleStringSearch('beta', resDir.path) == ['a.txt': 2, 'b.txt': 1]
+        SearchUtils.regexSearch('beta', resDir.path) == ['a.txt': 2, 'b.txt': 1]
+    }
+
+    def 'paged searches - repeated string and regex searches are answered from the cache'() {
+        given:
+        ResultCache cache = SearchUtils.getResultCache()
+        cache.clear()
+
+        when:
+        SearchResult first = SearchUtils.simpleStringSearch('beta', resDir.path, PageRequest.top(1))
+        long hits = cache.getHits()
+        SearchResult second = SearchUtils.simpleStringSearch('beta', resDir.path, PageRequest.top(1))
+
+        then:
+        cache.getHits() == hits + 1
+        second.toString() == first.toString()
+
+        when:
+        SearchUtils.regexSearch('beta', resDir.path, PageRequest.top(1))
+        hits = cache.getHits()
+        SearchUtils.regexSearch('beta', resDir.path, PageRequest.top(1).next())
+
+        then: 'the next page is selected from the cached counts'
+        cache.getHits() == hits + 1
+        SearchUtils.regexSearch('beta', resDir.path) == ['a.txt': 1, 'b.txt': 1]
+    }
+
+    @Unroll
+    def "paged searches - repeated searches of #shardCount shard(s) are answered from the cache"() {
+        given:
+        ResultCache cache = SearchUtils.getResultCache()
+        cache.clear()
+        ShardedIndex shardedIndex = new ShardedIndex(indexDir.path, shardCount)
+        List<String> indexedFiles = shardedIndex.index(resDir.path)
+
+        when:
+        SearchResult first = shardedIndex.search('beta', indexedFiles, PageRequest.ALL)
+        long hits = cache.getHits()
+        SearchResult second = shardedIndex.search('beta', indexedFiles, PageRequest.ALL)
+
+        then: 'every shard answers from the cache'
+        cache.getHits() == hits + shardCount
+        second.toMap() == first.toMap()
+        second.toMap() == ['a.txt': 1, 'b.txt': 1]
+
+        cleanup:
+        shardedIndex.close()
+
+        where:
+        shardCount << [1, 2]
+    }
+
+    def 'indexSearch - repeated searches hit the cache until the index changes'() {
+        given:
+        ResultCache cache = SearchUtils.getResultCache()
+        List<String> indexedFiles = SearchUtils.indexFilesInDir(indexDir.path, resDir.path)
+
+        when:
+        Map<String, Integer> first = SearchUtils.indexSearch('beta', indexedFiles, indexDir.path)
+        long hits = cache.getHits()
+        Map<String, Integer> second = SearchUtils.indexSearch('beta', indexedFiles, indexDir.path)
+
+        then:
+        second.is(first)
+        cache.getHits() == hits + 1
+
+        when:
+        File a = new File(resDir, "a.txt")
+        a.text = "beta beta"
+        a.setLastModified(a.lastModified() + 2000)
+        indexedFiles = SearchUtils.indexFilesInDir(indexDir.path, resDir.path)
+
+        then:
+        SearchUtils.indexSearch('beta', indexedFiles, indexDir.path) == ['a.txt': 2, 'b.txt': 1]
+    }
+}
@@ -0,0 +1,78 @@
+package target
+
+import spock.lang.Specification
+
+import java.util.concurrent.CountDownLatch
+import java.util.concurrent.atomic.AtomicInteger
+
+class SearchExecutorSpec extends Specification {
+    List<File> files = (0..<16).collect { new File("f${it}.txt") }
+
+    def cleanup() {
+        SearchExecutor.setParallelism(1)
+    }
+
+    def 'map - searches running when the parallelism changes finish on the previous pool'() {
+        given:
+        SearchExecutor.setParallelism(2)
+        CountDownLatch started = new CountDownLatch(1)
+        CountDownLatch release = new CountDownLatch(1)
+        List<String> results = null
+        Throwable error = null
+
+        when:
+        Thread search = Thread.start {
+            try {
+                results = SearchExecutor.map(files, new SearchExecutor.FileTask<String>() {
+                    @Override
+                    String apply(File file) {
+                        started.countDown()
+                        release.await()
+                        return file.name
+                    }
+                })
+            } catch (Throwable t) {
+                error = t
+            }
+        }
+        started.await()
+        SearchExecutor.setParallelism(4)
+        release.countDown()
+        search.join()
+
+        then:
+        error == null
+        results == files*.name
+        SearchExecutor.map(files, new SearchExecutor.FileTask<String>() {
+            @Override
+            String apply(File file) {
+                return file.name
+            }
+        }) == files*.name
+    }
+
+    def 'map - a failing file cancels the files not processed yet'() {
+        given:
+        SearchExecutor.setParallelism(2)
+        AtomicInteger processed = new AtomicInteger()
+        List<File> manyFiles = (0..<1000).collect { new File("f${it}.txt") }
+
+        when:
+        SearchExecutor.map(manyFiles, new SearchExecutor.FileTask<Integer>() {
+            @Override
+            Integer apply(File file) {
+                if (file.name == 'f0.txt') {
+                    throw new IllegalArgumentException('unreadable')
+                }
+                sleep(1)
+                return processed.incrementAndGet()
+            }
+        })
+
+        then:
+        IllegalStateException ise = thrown()
+        ise.cause instanceof IllegalArgumentException
+        sleep(100)
+        processed.get() < manyFiles.size() - 1
+    }
+}
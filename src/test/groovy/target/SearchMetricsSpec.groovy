@@ -0,0 +1,96 @@
+package target
+
+import spock.lang.Specification
+
+import javax.management.ObjectName
+import javax.management.openmbean.TabularData
+import java.lang.management.ManagementFactory
+
+class SearchMetricsSpec extends Specification {
+    TempCorpus corpus = new TempCorpus()
+    File resDir = corpus.resDir
+    File indexDir = corpus.indexDir
+
+    def cleanup() {
+        corpus.delete()
+    }
+
+    def 'LatencyHistogram - percentiles are within the bucket precision'() {
+        given:
+        LatencyHistogram histogram = new LatencyHistogram()
+        (1..10000).each { histogram.record(it * 1000L) }
+
+        when:
+        LatencyHistogram.Snapshot snapshot = histogram.snapshot()
+
+        then:
+        snapshot.getCount() == 10000
+        snapshot.getMax() == 10000000
+        Math.abs(snapshot.getMean() - 5000500) < 1
+        Math.abs(snapshot.getP50() - 5000000) <= 5000000 / 64
+        Math.abs(snapshot.getP99() - 9900000) <= 9900000 / 64
+        snapshot.getP999() <= snapshot.getMax()
+    }
+
+    def 'LatencyHistogram - every value falls in a bucket holding it'() {
+        expect:
+        [0L, 1L, 127L, 128L, 129L, 1000L, 123456789L, Long.MAX_VALUE].each { value ->
+            int bucket = LatencyHistogram.bucket(value)
+            assert LatencyHistogram.highestValue(bucket) >= value
+            assert bucket == 0 || LatencyHistogram.highestValue(bucket - 1) < value
+        }
+    }
+
+    def 'snapshot - phases, files scanned and queries of each search method'() {
+        given:
+        SearchMetrics metrics = SearchUtils.getSearchMetrics()
+        SearchUtils.getResultCache().clear()
+        List<String> indexedFiles = SearchUtils.indexFilesInDir(indexDir.path, resDir.path)
+        metrics.reset()
+
+        when:
+        SearchUtils.simpleStringSearch('beta', resDir.path)
+        SearchUtils.regexSearch('beta', resDir.path)
+        SearchUtils.indexSearch('alpha beta', indexedFiles, indexDir.path)
+        SearchMetrics.Snapshot snapshot = metrics.snapshot()
+
+        then:
+        snapshot.getQueryCounts()[SearchMetrics.STRING_METHOD] == 1
+        snapshot.getQueryCounts()[SearchMetrics.REGEX_METHOD] == 1
+        snapshot.getQueryCounts()[SearchMetrics.INDEX_METHOD] == 1
+        snapshot.getFilesScanned() == 5
+        snapshot.getLatency(SearchMetrics.STRING_METHOD, SearchMetrics.NORMALIZE_PHASE).getCount() == 1
+        snapshot.getLatency(SearchMetrics.STRING_METHOD, SearchMetrics.MATCH_PHASE).getCount() == 2
+        snapshot.getLatency(SearchMetrics.STRING_METHOD, SearchMetrics.SORT_PHASE).getCount() == 1
+        snapshot.getLatency(SearchMetrics.STRING_METHOD, SearchMetrics.TOTAL_PHASE).getCount() == 1
+        snapshot.getLatency(SearchMetrics.REGEX_METHOD, SearchMetrics.READ_PHASE).getCount() == 2
+        snapshot.getLatency(SearchMetrics.INDEX_METHOD, SearchMetrics.READER_OPEN_PHASE).getCount() == 1
+        snapshot.getLatency(SearchMetrics.INDEX_METHOD, SearchMetrics.GET_FREQ_PHASE).getCount() == 1
+
+        when: 'the same search is answered from the result cache'
+        SearchUtils.indexSearch('alpha beta', indexedFiles, indexDir.path)
+
+        then:
+        metrics.snapshot().getQueryCounts()[SearchMetrics.INDEX_METHOD] == 2
+        metrics.snapshot().getLatency(SearchMetrics.INDEX_METHOD, SearchMetrics.READER_OPEN_PHASE).getCount() == 1
+    }
+
+    def 'registerMBean - metrics are readable through JMX'() {
+        given:
+        SearchMetrics metrics = SearchUtils.getSearchMetrics()
+        metrics.registerMBean()
+        SearchUtils.simpleStringSearch('gamma', resDir.path)
+        ObjectName name = new ObjectName(SearchMetrics.OBJECT_NAME)
+
+        when:
+        TabularData queryCounts = ManagementFactory.getPlatformMBeanServer().getAttribute(name, 'QueryCounts') as TabularData
+        TabularData latencies = ManagementFactory.getPlatformMBeanServer().getAttribute(name, 'Latencies') as TabularData
+
+        then:
+        queryCounts.get([SearchMetrics.STRING_METHOD] as Object[]).get('value') >= 1
+        latencies.get(['string.total'] as Object[]) != null
+
+        cleanup:
+        ManagementFactory.getPlatformMBeanServer().unregisterMBean(name)
+    }
+}
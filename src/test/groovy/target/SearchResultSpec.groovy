@@ -0,0 +1,145 @@
+package target
+
+import spock.lang.Specification
+import spock.lang.Unroll
+
+class SearchResultSpec extends Specification {
+    TempCorpus corpus = new TempCorpus([:])
+    File resDir = corpus.resDir
+    File indexDir = corpus.indexDir
+
+    def setup() {
+        Random random = new Random(15)
+        30.times { fileId ->
+            StringBuilder text = new StringBuilder()
+            (random.nextInt(200) + 1).times {
+                text.append(['alpha', 'beta', 'gamma', 'delta', 'epsilon', 'zeta'][random.nextInt(6)]).append(' ')
+            }
+            new File(resDir, "file${fileId}.txt").text = text.toString()
+        }
+        new File(resDir, "none.txt").text = "nothing to see"
+        SearchUtils.getResultCache().clear()
+    }
+
+    def cleanup() {
+        corpus.delete()
+    }
+
+    @Unroll
+    def "TopKSelector - offset #offset, limit #limit, zero matches #includeZeroMatches select the page of the sorted files"() {
+        given:
+        Random random = new Random(offset * 31 + limit)
+        Map<String, Integer> counts = [:]
+        500.times { counts["file${it}".toString()] = random.nextInt(4) == 0 ? 0 : random.nextInt(20) }
+        List<Map.Entry<String, Integer>> sorted = counts.entrySet()
+                .findAll { includeZeroMatches || it.value > 0 }
+                .sort { a, b -> b.value <=> a.value ?: a.key <=> b.key }
+        TopKSelector selector = new TopKSelector(new PageRequest(offset, limit, includeZeroMatches))
+
+        when:
+        counts.each { filename, count -> selector.offer(filename, count) }
+        SearchResult result = selector.toResult()
+
+        then:
+        result.toMap() == sorted.drop(offset).take(Math.min(limit, sorted.size())).collectEntries { [(it.key): it.value] }
+        result.getTotalFiles() == 500
+        result.getMatchingFiles() == counts.values().count { it > 0 }
+        result.hasMore() == offset + limit < sorted.size()
+
+        where:
+        offset | limit             | includeZeroMatches
+        0      | 1                 | false
+        0      | 10                | true
+        25     | 10                | false
+        490    | 20                | true
+        1000   | 5                 | true
+        0      | Integer.MAX_VALUE | true
+    }
+
+    def 'FileCounts - partial counts stay incomplete once selected'() {
+        given:
+        FileCounts fileCounts = FileCounts.of(['c.txt': 0, 'b.txt': 1, 'a.txt': 3])
+
+        when:
+        SearchResult complete = fileCounts.select(PageRequest.top(1), true)
+        SearchResult partial = fileCounts.select(PageRequest.top(1), false)
+
+        then:
+        complete.isComplete()
+        !partial.isComplete()
+        partial.toMap() == complete.toMap()
+        partial.getMatchingFiles() == 2
+        partial.toString().contains('incomplete')
+    }
+
+    def 'PageRequest - next pages cover every ranked file once'() {
+        given:
+        Map<String, Integer> resultMap = SearchUtils.simpleStringSearch('alpha beta', resDir.path)
+        List<String> pagedFiles = []
+        PageRequest page = new PageRequest(0, 7, true)
+
+        when:
+        SearchResult result = SearchUtils.simpleStringSearch('alpha beta', resDir.path, page)
+        pagedFiles.addAll(result.toMap().keySet())
+        while (result.hasMore()) {
+            page = page.next()
+            result = SearchUtils.simpleStringSearch('alpha beta', resDir.path, page)
+            pagedFiles.addAll(result.toMap().keySet())
+        }
+
+        then:
+        pagedFiles == resultMap.keySet() as List
+    }
+
+    def 'PageRequest - offset and limit are validated'() {
+        when:
+        new PageRequest(offset, limit, true)
+
+        then:
+        thrown(IllegalArgumentException)
+
+        where:
+        offset | limit
+        -1     | 10
+        0      | 0
+    }
+
+    @Unroll
+    def "#method - top results are the first files of the full result with at least one match"() {
+        given:
+        List<String> indexedFiles = SearchUtils.indexFilesInDir(indexDir.path, resDir.path)
+        PositionalIndex positionalIndex = PositionalIndex.build(resDir.path)
+        ShardedIndex shardedIndex = new ShardedIndex(indexDir.path + '-shards', 3)
+        List<String> shardedFiles = shardedIndex.index(resDir.path)
+        Map<String, Closure> searches = [
+                string    : { term, page -> page ? SearchUtils.simpleStringSearch(term, resDir.path, page) : SearchUtils.simpleStringSearch(term, resDir.path) },
+                regex     : { term, page -> page ? SearchUtils.regexSearch(term, resDir.path, page) : SearchUtils.regexSearch(term, resDir.path) },
+                index     : { term, page -> page ? SearchUtils.indexSearch(term, indexedFiles, indexDir.path, page) : SearchUtils.indexSearch(term, indexedFiles, indexDir.path) },
+                positional: { term, page -> page ? SearchUtils.positionalIndexSearch(term, positionalIndex, page) : SearchUtils.positionalIndexSearch(term, positionalIndex) },
+                sharded   : { term, page -> page ? shardedIndex.search(term, shardedFiles, page) : shardedIndex.search(term, shardedFiles) }]
+
+        expect:
+        ['alpha', 'gamma delta', 'zeta zeta', 'nothing'].each { searchTerm ->
+            SearchUtils.getResultCache().clear()
+            Map<String, Integer> resultMap = searches[method](searchTerm, null)
+            Map<String, Integer> matches = resultMap.findAll { it.value > 0 }
+            //paged from the cached full result
+            SearchResult cachedTop = searches[method](searchTerm, new PageRequest(3, 5, false))
+            SearchUtils.getResultCache().clear()
+            SearchResult top = searches[method](searchTerm, PageRequest.top(5))
+
+            assert top.toMap() == matches.take(5)
+            assert top.getMatchingFiles() == matches.size()
+            assert top.getTotalFiles() == resultMap.size()
+            assert cachedTop.toMap() == matches.drop(3).take(5)
+            assert searches[method](searchTerm, PageRequest.ALL).toMap() == resultMap
+        }
+
+        cleanup:
+        shardedIndex.close()
+        new File(indexDir.path + '-shards').deleteDir()
+
+        where:
+        method << ['string', 'regex', 'index', 'positional', 'sharded']
+    }
+}
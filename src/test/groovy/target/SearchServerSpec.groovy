@@ -0,0 +1,224 @@
+package target
+
+import groovy.json.JsonSlurper
+import spock.lang.Specification
+import spock.lang.Unroll
+
+import java.nio.file.Files
+import java.util.concurrent.CountDownLatch
+
+class SearchServerSpec extends Specification {
+    File resDir
+    File indexDir
+    ShardedIndex shardedIndex
+    IndexWatcher indexWatcher
+    SearchServer server
+
+    def setup() {
+        resDir = Files.createTempDirectory("res").toFile()
+        indexDir = Files.createTempDirectory("index").toFile()
+        new File(resDir, "a.txt").text = "The military history of the military.\nHistory, history!"
+        new File(resDir, "b.txt").text = "Alpha beta gamma 42, \"quoted\" history"
+        new File(resDir, "c.txt").text = "nothing to see"
+        SearchUtils.getResultCache().clear()
+        shardedIndex = new ShardedIndex(indexDir.path, 2)
+        indexWatcher = new IndexWatcher(shardedIndex, resDir.path)
+    }
+
+    def cleanup() {
+        server?.close()
+        indexWatcher.close()
+        shardedIndex.close()
+        resDir.deleteDir()
+        indexDir.deleteDir()
+    }
+
+    @Unroll
+    def "search - #method results match the search method"() {
+        given:
+        server = new SearchServer(0, resDir.path, shardedIndex, indexWatcher, 2, 4)
+        Map<String, Integer> expected = SearchUtils.simpleStringSearch('history', resDir.path)
+
+        when:
+        Map response = get("/search?q=History&method=${method}")
+
+        then:
+        response.status == 200
+        response.json.term == 'History'
+        response.json.method == method
+        response.json.totalFiles == 3
+        response.json.matchingFiles == 2
+        response.json.results.collectEntries { [(it.file): it.count] } == expected
+        response.json.complete
+        response.json.queueMicros >= 0
+        response.json.searchMicros >= 0
+
+        where:
+        method << ['string', 'regex', 'index', 'positional', 'suffix']
+    }
+
+    @Unroll
+    def "search - a repeated #method search is answered from the cache"() {
+        given:
+        server = new SearchServer(0, resDir.path, shardedIndex, indexWatcher, 2, 4)
+        ResultCache cache = SearchUtils.getResultCache()
+        Map first = get("/search?q=history&method=${method}&limit=1")
+        long hits = cache.getHits()
+
+        when:
+        Map second = get("/search?q=history&method=${method}&limit=1")
+
+        then:
+        cache.getHits() > hits
+        second.json.results == first.json.results
+
+        where:
+        method << ['string', 'regex', 'index']
+    }
+
+    @Unroll
+    def "search - the #method index is rebuilt in the background once a file changed"() {
+        given:
+        server = new SearchServer(0, resDir.path, shardedIndex, indexWatcher, 2, 4)
+        assert get("/search?q=history&method=${method}").json.results.collectEntries { [(it.file): it.count] } ==
+                ['a.txt': 3, 'b.txt': 1, 'c.txt': 0]
+
+        when:
+        new File(resDir, "c.txt").text = "history repeats history"
+        Map response = null
+        for (int attempt = 0; attempt < 200; attempt++) {
+            response = get("/search?q=history&method=${method}")
+            if (response.json.results.find { it.file == 'c.txt' }.count == 2) {
+                break
+            }
+            sleep(20)
+        }
+
+        then:
+        response.status == 200
+        response.json.results.collectEntries { [(it.file): it.count] } == ['a.txt': 3, 'b.txt': 1, 'c.txt': 2]
+
+        where:
+        method << ['positional', 'suffix']
+    }
+
+    def 'search - phrases are decoded and results paged'() {
+        given:
+        server = new SearchServer(0, resDir.path, shardedIndex, indexWatcher)
+
+        when:
+        Map response = get("/search?q=the+military%21&limit=1")
+
+        then:
+        response.status == 200
+        response.json.term == 'the military!'
+        response.json.method == 'index'
+        response.json.results == [[file: 'a.txt', count: 2]]
+        !response.json.hasMore
+    }
+
+    @Unroll
+    def "search - invalid request #query is rejected with #status"() {
+        given:
+        server = new SearchServer(0, resDir.path, shardedIndex, indexWatcher)
+
+        when:
+        Map response = get("/search${query}")
+
+        then:
+        response.status == status
+        response.json.error
+
+        where:
+        query                     | status
+        ''                        | 400
+        '?q='                     | 400
+        '?q=a&method=fuzzy'       | 400
+        '?q=a&limit=0'            | 400
+        '?q=a&offset=x'           | 400
+        '?q=a&limit=9999999999'   | 400
+    }
+
+    def 'search - requests beyond the workers and the queue are rejected with 503'() {
+        given:
+        server = new SearchServer(0, resDir.path, shardedIndex, indexWatcher, 1, 1)
+        CountDownLatch release = new CountDownLatch(1)
+        //keeps the only worker busy and fills the queue
+        2.times {
+            server.getWorkers().execute(new Runnable() {
+                @Override
+                void run() {
+                    release.await()
+                }
+            })
+        }
+
+        when:
+        Map rejected = get("/search?q=history")
+        release.countDown()
+        while (server.getWorkers().getActiveCount() > 0 || !server.getWorkers().getQueue().isEmpty()) {
+            sleep(10)
+        }
+        Map accepted = get("/search?q=history")
+
+        then:
+        rejected.status == 503
+        server.getRejectedRequests() == 1
+        accepted.status == 200
+    }
+
+    def 'search - concurrent requests get the same results'() {
+        given:
+        server = new SearchServer(0, resDir.path, shardedIndex, indexWatcher, 4, 64)
+        List<String> terms = ['history', 'military history', 'alpha', 'zzz']
+        Map expected = terms.collectEntries { [(it): get("/search?q=${URLEncoder.encode(it, 'UTF-8')}&method=string").json.results] }
+
+        when:
+        List<Map> responses = Collections.synchronizedList([])
+        List<Thread> threads = (0..<8).collect { threadId ->
+            Thread.start {
+                20.times {
+                    String term = terms[(threadId + it) % terms.size()]
+                    String method = ['string', 'regex', 'index', 'suffix'][it % 4]
+                    Map response = get("/search?q=${URLEncoder.encode(term, 'UTF-8')}&method=${method}")
+                    responses << [term: term, method: method, response: response]
+                }
+            }
+        }
+        threads*.join()
+
+        then:
+        responses.size() == 160
+        responses.every { it.response.status == 200 }
+        responses.findAll { it.method in ['string', 'suffix'] }.every { it.response.json.results == expected[it.term] }
+    }
+
+    def 'metrics - request latencies are reported'() {
+        given:
+        server = new SearchServer(0, resDir.path, shardedIndex, indexWatcher)
+        get("/search?q=history")
+
+        when:
+        HttpURLConnection connection = (HttpURLConnection) new URL("http://localhost:${server.getPort()}/metrics").openConnection()
+
+        then:
+        connection.responseCode == 200
+        connection.inputStream.text.contains('rejected requests=0')
+    }
+
+    def 'toJson - strings are escaped'() {
+        given:
+        SearchResult result = SearchResult.of(['a"b\\c.txt': 1], PageRequest.ALL)
+
+        expect:
+        new JsonSlurper().parseText(SearchServer.toJson('say "hi"\n', 'string', result, 0, 0)).results ==
+                [[file: 'a"b\\c.txt', count: 1]]
+    }
+
+    private Map get(String path) {
+        HttpURLConnection connection = (HttpURLConnection) new URL("http://localhost:${server.getPort()}${path}").openConnection()
+        int status = connection.responseCode
+        String body = (status < 400 ? connection.inputStream : connection.errorStream).getText('UTF-8')
+        return [status: status, json: new JsonSlurper().parseText(body)]
+    }
+}
@@ -50,6 +50,45 @@ class SearchUtilsSpec extends Specification {
         ''                                  | null
     }
 
+    def "batchSearch - counts every term like simpleStringSearch"() {
+        given:
+        List<String> searchTerms = ['testing', 'testing the app like', 'testing the app like heck',
+                                    'testing the app like heck 1 23', 'p unct at ion', '', 'Testing!', 'the', 'e', 'a a']
+        Random random = new Random(42)
+        100.times {
+            searchTerms << (1..(random.nextInt(4) + 1)).collect { ('a'..'z')[random.nextInt(6)] }.join('')
+        }
+
+        when:
+        Map<String, Map<String, Integer>> resultMap = SearchUtils.batchSearch(searchTerms, resPath)
+
+        then:
+        resultMap.keySet() as List == searchTerms.unique(false)
+        searchTerms.each { searchTerm ->
+            assert resultMap.get(searchTerm) == SearchUtils.simpleStringSearch(searchTerm, resPath)
+        }
+        resultMap.get('testing the app like heck').get("testSearch.txt") == 3
+    }
+
+    def "batchSearch - streams files that do not fit in the corpus cache"() {
+        given:
+        List<String> searchTerms = ['testing', 'testing the app like heck', 'p unct at ion', 'the', 'e']
+        Map<String, Map<String, Integer>> expected = SearchUtils.batchSearch(searchTerms, resPath)
+        CorpusCache corpusCache = SearchUtils.getCorpusCache()
+        long budget = corpusCache.getBudget()
+        corpusCache.setBudget(0)
+
+        when:
+        Map<String, Map<String, Integer>> resultMap = SearchUtils.batchSearch(searchTerms, resPath)
+
+        then:
+        resultMap == expected
+        corpusCache.size() == 0
+
+        cleanup:
+        corpusCache.setBudget(budget)
+    }
+
     @Unroll
     def "regexSearch - Search #searchTerm"() {
         when:
@@ -86,6 +125,37 @@ class SearchUtilsSpec extends Specification {
         ''                                  | null
     }
 
+    @Unroll
+    def "parallel search - #searchTerm gives the same ordered results as sequential search"() {
+        given:
+        Map<String, Integer> simpleExpected = SearchUtils.simpleStringSearch(searchTerm, resPath)
+        Map<String, Integer> regexExpected = SearchUtils.regexSearch(searchTerm, resPath)
+        SearchExecutor.setParallelism(4)
+
+        when:
+        Map<String, Integer> simpleResult = SearchUtils.simpleStringSearch(searchTerm, resPath)
+        Map<String, Integer> regexResult = SearchUtils.regexSearch(searchTerm, resPath)
+        List<String> parallelIndexedFiles = SearchUtils.indexFilesInDir(indexDirPath, resPath)
+
+        then:
+        simpleResult.entrySet() as List == simpleExpected.entrySet() as List
+        regexResult.entrySet() as List == regexExpected.entrySet() as List
+        parallelIndexedFiles == indexedFiles
+
+        cleanup:
+        SearchExecutor.setParallelism(1)
+
+        where:
+        searchTerm << ['testing', 'the', 'zzz']
+    }
+
+    def "indexSearch - whole word and phrase counts agree with regexSearch"() {
+        expect:
+        ['the', 'of the', 'military history', 'warp drive', 'the military history of france', 'zzz'].each { searchTerm ->
+            assert SearchUtils.indexSearch(searchTerm, indexedFiles, indexDirPath) == SearchUtils.regexSearch(searchTerm, resPath)
+        }
+    }
+
     def 'readFile'() {
         given:
         File file = new File(resPath + File.separator + "simpleTest.txt")
@@ -137,13 +207,89 @@ class SearchUtilsSpec extends Specification {
 
     def 'getFreq'() {
         given:
-        Map<String, List<Integer>> terms = ['hello':[8, 1, 4, 5], 'world':[7, 2, 6]]
-        List<String> searchTerms = ['hello', 'world']
+        int[][] positions = [[1, 4, 5, 8], [2, 6, 7]] as int[][]
+        int[] freqs = [4, 3] as int[]
+        int[] searchTokens = [0, 1] as int[]
 
         when:
-        int result = SearchUtils.getFreq(terms, searchTerms)
+        int result = SearchUtils.getFreq(positions, freqs, searchTokens, 0)
 
         then:
         result == 2
     }
-}
\ No newline at end of file
+
+    @Unroll
+    def "getFreq - #searchTokens with slop #slop over #positions"() {
+        expect:
+        SearchUtils.getFreq(positions as int[][], positions.collect { it.size() } as int[], searchTokens as int[], slop) == freq
+
+        where:
+        positions                      | searchTokens | slop | freq
+        [[0, 1, 2, 3, 4]]              | [0, 0]       | 0    | 2
+        [[0, 1, 2, 3, 4]]              | [0, 0, 0]    | 0    | 1
+        [[0, 2, 3], [1, 4]]            | [0, 1, 0]    | 0    | 1
+        [[0, 2, 4, 6], [1, 3, 5, 7]]   | [0, 1, 0, 1] | 0    | 2
+        [[0, 10], [3, 12]]             | [0, 1]       | 0    | 0
+        [[0, 10], [3, 12]]             | [0, 1]       | 1    | 1
+        [[0, 10], [3, 12]]             | [0, 1]       | 2    | 2
+        [[5], [1, 2, 3]]               | [0, 1]       | 10   | 0
+        [[0, 1, 2], [3]]               | [0, 1]       | 1    | 1
+        [[0, 4, 9], [2, 7], [3, 8]]    | [0, 1, 2]    | 1    | 1
+        [[0, 5, 9], [2, 7], [3, 8]]    | [0, 1, 2]    | 1    | 2
+    }
+
+    def 'getFreq - phrases of random positions count like a scan of the word sequence'() {
+        given:
+        Random random = new Random(18)
+
+        expect:
+        300.times {
+            List<Integer> words = (1..random.nextInt(60) + 1).collect { random.nextInt(3) }
+            List<Integer> phrase = (1..random.nextInt(3) + 1).collect { random.nextInt(3) }
+            int slop = random.nextInt(3)
+            int[][] positions = (0..<3).collect { token -> words.findIndexValues { it == token } } as int[][]
+            assert SearchUtils.getFreq(positions, positions.collect { it.length } as int[], phrase as int[], slop) ==
+                    scanFreq(words, phrase, slop)
+        }
+    }
+
+    def "indexSearch - slop matches the words of a phrase in order within that many other words"() {
+        expect:
+        SearchUtils.indexSearch('testing heck', indexedFiles, indexDirPath, slop).get('testSearch.txt') == count
+        SearchUtils.indexSearch('testing the app', indexedFiles, indexDirPath, slop) ==
+                SearchUtils.indexSearch('testing the app', indexedFiles, indexDirPath)
+
+        where:
+        slop | count
+        0    | 0
+        2    | 0
+        3    | 3
+    }
+
+    /**
+     * Counts the non-overlapping matches of {@code phrase} in {@code words}, from left to right, taking
+     * each word of the phrase at its first position after the previous one.
+     */
+    private static int scanFreq(List<Integer> words, List<Integer> phrase, int slop) {
+        int freq = 0
+        int start = 0
+        while (start < words.size()) {
+            int pos = start
+            boolean matches = words[pos] == phrase[0]
+            for (int idx = 1; idx < phrase.size() && matches; idx++) {
+                pos++
+                while (pos < words.size() && words[pos] != phrase[idx]) {
+                    pos++
+                }
+                matches = pos < words.size() && pos - start <= phrase.size() - 1 + slop
+            }
+            if (matches) {
+                freq++
+                start = pos + 1
+            } else {
+                start++
+            }
+        }
+        return freq
+    }
+}
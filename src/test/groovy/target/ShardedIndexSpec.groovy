@@ -0,0 +1,140 @@
+package target
+
+import spock.lang.Specification
+import spock.lang.Unroll
+
+import java.nio.file.Files
+
+class ShardedIndexSpec extends Specification {
+    File resDir
+    File indexDir
+    File singleIndexDir
+
+    def setup() {
+        resDir = Files.createTempDirectory("res").toFile()
+        indexDir = Files.createTempDirectory("index").toFile()
+        singleIndexDir = Files.createTempDirectory("index").toFile()
+        Random random = new Random(14)
+        12.times { fileId ->
+            StringBuilder text = new StringBuilder()
+            (random.nextInt(500) + 1).times {
+                text.append(['The', 'military', 'history', 'of', 'the', 'war.'][random.nextInt(6)]).append(' ')
+            }
+            new File(resDir, "file${fileId}.txt").text = text.toString()
+        }
+    }
+
+    def cleanup() {
+        resDir.deleteDir()
+        indexDir.deleteDir()
+        singleIndexDir.deleteDir()
+    }
+
+    def 'shardOf - every file name belongs to a single shard in range'() {
+        expect:
+        (0..100).each { fileId ->
+            int shard = ShardedIndex.shardOf("file${fileId}.txt", 4)
+            assert shard >= 0 && shard < 4
+            assert ShardedIndex.shardOf("file${fileId}.txt", 4) == shard
+        }
+        ShardedIndex.shardOf('any.txt', 1) == 0
+    }
+
+    @Unroll
+    def "search - #shardCount shard(s) give the same results as a single index"() {
+        given:
+        ShardedIndex shardedIndex = new ShardedIndex(indexDir.path, shardCount)
+        List<String> indexedFiles = shardedIndex.index(resDir.path)
+        List<String> singleIndexedFiles = SearchUtils.indexFilesInDir(singleIndexDir.path, resDir.path)
+
+        expect:
+        indexedFiles.sort() == singleIndexedFiles.sort()
+        ['history', 'the military', 'military history of', 'none'].each { searchTerm ->
+            assert shardedIndex.search(searchTerm, indexedFiles) ==
+                    SearchUtils.indexSearch(searchTerm, singleIndexedFiles, singleIndexDir.path)
+        }
+
+        cleanup:
+        shardedIndex.close()
+
+        where:
+        shardCount << [1, 3]
+    }
+
+    def 'index - a single shard is stored in the index directory, several in subdirectories'() {
+        expect:
+        new ShardedIndex(indexDir.path, 1).getShardDirPath(0) == indexDir.path
+        new ShardedIndex(indexDir.path, 3).getShardDirPath(2) == indexDir.path + File.separator + 'shard-2'
+    }
+
+    def 'indexShard - only the rebuilt shard sees the changes'() {
+        given:
+        ShardedIndex shardedIndex = new ShardedIndex(indexDir.path, 3)
+        List<String> indexedFiles = shardedIndex.index(resDir.path)
+        SearchUtils.getResultCache().clear()
+        int shard = ShardedIndex.shardOf('file0.txt', 3)
+        String otherFile = indexedFiles.find { ShardedIndex.shardOf(it, 3) != shard }
+        new File(resDir, 'file0.txt').text = 'unique unique'
+        new File(resDir, otherFile).text = 'unique'
+
+        when:
+        List<String> shardFiles = shardedIndex.indexShard(shard, resDir.path)
+        Map<String, Integer> resultMap = shardedIndex.search('unique', indexedFiles)
+
+        then:
+        shardFiles.every { ShardedIndex.shardOf(it, 3) == shard }
+        shardFiles.contains('file0.txt')
+        resultMap['file0.txt'] == 2
+        resultMap[otherFile] == 0
+
+        when:
+        shardedIndex.index(resDir.path)
+
+        then:
+        shardedIndex.search('unique', indexedFiles)[otherFile] == 1
+
+        cleanup:
+        shardedIndex.close()
+    }
+
+    def 'index - files are moved between shards when the shard count changes'() {
+        given:
+        new ShardedIndex(indexDir.path, 3).withCloseable { it.index(resDir.path) }
+        List<String> singleIndexedFiles = SearchUtils.indexFilesInDir(singleIndexDir.path, resDir.path)
+
+        when:
+        ShardedIndex shardedIndex = new ShardedIndex(indexDir.path, 2)
+        List<String> indexedFiles = shardedIndex.index(resDir.path)
+
+        then:
+        indexedFiles.size() == 12
+        shardedIndex.search('the military', indexedFiles) ==
+                SearchUtils.indexSearch('the military', singleIndexedFiles, singleIndexDir.path)
+
+        cleanup:
+        shardedIndex.close()
+    }
+
+    def 'search - every shard is timed'() {
+        given:
+        SearchMetrics metrics = SearchUtils.getSearchMetrics()
+        ShardedIndex shardedIndex = new ShardedIndex(indexDir.path, 3)
+        metrics.reset()
+        List<String> indexedFiles = shardedIndex.index(resDir.path)
+
+        when:
+        shardedIndex.search('history', indexedFiles)
+        SearchMetrics.Snapshot snapshot = metrics.snapshot()
+
+        then:
+        snapshot.getQueryCounts()[SearchMetrics.INDEX_METHOD] == 1
+        (0..2).each { shard ->
+            assert snapshot.getLatency(SearchMetrics.INDEXING_METHOD, SearchMetrics.shardPhase(shard)).getCount() == 1
+            assert snapshot.getLatency(SearchMetrics.INDEX_METHOD, SearchMetrics.shardPhase(shard)).getCount() == 1
+        }
+        snapshot.getLatency(SearchMetrics.INDEX_METHOD, SearchMetrics.MERGE_PHASE).getCount() == 1
+
+        cleanup:
+        shardedIndex.close()
+    }
+}
@@ -0,0 +1,204 @@
+package target
+
+import spock.lang.Specification
+import spock.lang.Unroll
+
+import java.nio.file.Files
+import java.util.concurrent.TimeUnit
+
+class StreamingSearchSpec extends Specification {
+    File resDir
+    File indexDir
+    Map<String, Integer> streamed = Collections.synchronizedMap([:])
+    SearchListener listener = new SearchListener() {
+        @Override
+        void onFile(String filename, int count) {
+            assert !streamed.containsKey(filename)
+            streamed[filename] = count
+        }
+    }
+
+    def setup() {
+        resDir = Files.createTempDirectory("res").toFile()
+        indexDir = Files.createTempDirectory("index").toFile()
+        new File(resDir, "a.txt").text = "The military history of the military."
+        new File(resDir, "b.txt").text = "History, history!"
+        new File(resDir, "c.txt").text = "nothing to see"
+        (0..<20).each { new File(resDir, "d${it}.txt").text = "history " * it }
+        SearchUtils.getResultCache().clear()
+    }
+
+    def cleanup() {
+        SearchExecutor.setParallelism(1)
+        resDir.deleteDir()
+        indexDir.deleteDir()
+    }
+
+    @Unroll
+    def "simpleStringSearchAsync - cached #cached parallelism #parallelism streams every file and gives the sync result"() {
+        given:
+        SearchExecutor.setParallelism(parallelism)
+        Map<String, Integer> expected = SearchUtils.simpleStringSearch('history', resDir.path)
+        if (!cached) {
+            SearchUtils.getResultCache().clear()
+        }
+
+        when:
+        SearchResult result = SearchUtils.simpleStringSearchAsync('History', resDir.path, PageRequest.top(5),
+                Long.MAX_VALUE, TimeUnit.NANOSECONDS, null, listener).get()
+
+        then:
+        result.isComplete()
+        result.toString() == SearchUtils.simpleStringSearch('history', resDir.path, PageRequest.top(5)).toString()
+        streamed == expected
+
+        where:
+        cached | parallelism
+        false  | 1
+        false  | 4
+        true   | 1
+    }
+
+    def 'regexSearchAsync - streams every file and gives the sync result'() {
+        when:
+        SearchResult result = SearchUtils.regexSearchAsync('the military', resDir.path, PageRequest.ALL,
+                1, TimeUnit.MINUTES, new CancellationToken(), listener).get()
+
+        then:
+        result.isComplete()
+        result.toMap() == SearchUtils.regexSearch('the military', resDir.path)
+        streamed == SearchUtils.regexSearch('the military', resDir.path)
+    }
+
+    @Unroll
+    def "searchAsync - #shardCount shard(s) stream every indexed file, give the sync result and cache it"() {
+        given:
+        ShardedIndex shardedIndex = new ShardedIndex(indexDir.path, shardCount)
+        List<String> indexedFiles = shardedIndex.index(resDir.path)
+        ResultCache cache = SearchUtils.getResultCache()
+
+        when:
+        SearchResult result = shardedIndex.searchAsync('history', indexedFiles, PageRequest.top(3),
+                Long.MAX_VALUE, TimeUnit.NANOSECONDS, null, listener).get()
+        long hits = cache.getHits()
+        SearchResult syncResult = shardedIndex.search('history', indexedFiles, PageRequest.top(3))
+        long syncHits = cache.getHits() - hits
+
+        then:
+        result.isComplete()
+        result.toString() == syncResult.toString()
+        syncHits == shardCount
+        streamed == shardedIndex.search('history', indexedFiles)
+
+        cleanup:
+        shardedIndex.close()
+
+        where:
+        shardCount << [1, 2]
+    }
+
+    def 'searchAsync - a cached result is streamed again'() {
+        given:
+        ShardedIndex shardedIndex = new ShardedIndex(indexDir.path, 2)
+        List<String> indexedFiles = shardedIndex.index(resDir.path)
+        Map<String, Integer> expected = shardedIndex.search('history', indexedFiles)
+        long hits = SearchUtils.getResultCache().getHits()
+
+        when:
+        SearchResult result = shardedIndex.searchAsync('history', indexedFiles, PageRequest.ALL,
+                1, TimeUnit.MINUTES, new CancellationToken(), listener).get()
+
+        then:
+        result.isComplete()
+        result.toMap() == expected
+        streamed == expected
+        SearchUtils.getResultCache().getHits() == hits + 2
+
+        cleanup:
+        shardedIndex.close()
+    }
+
+    def 'search - a token cancelled beforehand returns an empty incomplete result'() {
+        given:
+        CancellationToken token = new CancellationToken()
+        token.cancel()
+        ShardedIndex shardedIndex = new ShardedIndex(indexDir.path, 2)
+        List<String> indexedFiles = shardedIndex.index(resDir.path)
+
+        when:
+        List<SearchResult> results = [
+                SearchUtils.simpleStringSearchAsync('history', resDir.path, PageRequest.ALL, 1, TimeUnit.MINUTES, token, listener).get(),
+                SearchUtils.regexSearchAsync('history', resDir.path, PageRequest.ALL, 1, TimeUnit.MINUTES, token, listener).get(),
+                shardedIndex.searchAsync('history', indexedFiles, PageRequest.ALL, 1, TimeUnit.MINUTES, token, listener).get()
+        ]
+
+        then:
+        results.every { !it.isComplete() && it.getTotalFiles() == 0 }
+        streamed.isEmpty()
+
+        cleanup:
+        shardedIndex.close()
+    }
+
+    def 'search - cancelling while files are streamed ranks only the files searched'() {
+        given:
+        CancellationToken token = new CancellationToken()
+        SearchListener cancelling = new SearchListener() {
+            @Override
+            void onFile(String filename, int count) {
+                streamed[filename] = count
+                if (streamed.size() == 3) {
+                    token.cancel()
+                }
+            }
+        }
+
+        when:
+        SearchResult result = SearchUtils.simpleStringSearchAsync('history', resDir.path, PageRequest.ALL,
+                Long.MAX_VALUE, TimeUnit.NANOSECONDS, token, cancelling).get()
+
+        then:
+        !result.isComplete()
+        result.getTotalFiles() == 3
+        result.toMap() == streamed
+        result.toString().contains('incomplete')
+    }
+
+    def 'search - the deadline returns the files searched so far and stops streaming'() {
+        given:
+        SearchListener slow = new SearchListener() {
+            @Override
+            void onFile(String filename, int count) {
+                streamed[filename] = count
+                sleep(20)
+            }
+        }
+
+        when:
+        long startTime = System.nanoTime()
+        SearchResult result = SearchUtils.simpleStringSearchAsync('history', resDir.path, PageRequest.ALL,
+                50, TimeUnit.MILLISECONDS, null, slow).get()
+        long elapsedMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startTime)
+        int streamedAtDeadline = streamed.size()
+        sleep(100)
+
+        then:
+        !result.isComplete()
+        result.getTotalFiles() > 0
+        result.getTotalFiles() < 23
+        result.toMap() == streamed
+        streamed.size() == streamedAtDeadline
+        elapsedMillis < 1000
+    }
+
+    def 'search - an empty search term gives an empty complete result'() {
+        when:
+        SearchResult result = SearchUtils.simpleStringSearchAsync('', resDir.path, PageRequest.ALL, 1, TimeUnit.SECONDS,
+                null, listener).get()
+
+        then:
+        result.isComplete()
+        result.getTotalFiles() == 0
+        streamed.isEmpty()
+    }
+}
@@ -0,0 +1,193 @@
+package target
+
+import spock.lang.Shared
+import spock.lang.Specification
+import spock.lang.Unroll
+
+import java.nio.file.Files
+import java.nio.file.attribute.FileTime
+
+class SuffixArrayIndexSpec extends Specification {
+    /**
+     * relative path containing the text files
+     */
+    private static final String resPath = System.getProperty("user.dir") + File.separator +
+            "src" + File.separator +
+            "main" + File.separator +
+            "java" + File.separator +
+            "res" + File.separator +
+            "sample_text";
+
+    @Shared
+    SuffixArrayIndex suffixArrayIndex
+
+    def setupSpec() {
+        suffixArrayIndex = SuffixArrayIndex.build(resPath)
+    }
+
+    @Unroll
+    def "suffixArray - suffixes of #text.inspect() are sorted"() {
+        given:
+        byte[] bytes = text.getBytes('US-ASCII')
+        List<Integer> expected = (0..<bytes.length).toList().sort { a, b -> text.substring(a) <=> text.substring(b) }
+
+        expect:
+        SuffixArrayIndex.suffixArray(bytes) as List == (bytes.length == 0 ? [] : expected)
+
+        where:
+        text << ['', 'a', 'banana', 'mississippi', 'aaaaaaaa', 'abababab', ' the the the\n', 'abcabcabcabx\nabc\n']
+    }
+
+    def 'suffixArray - suffixes of random texts are sorted'() {
+        given:
+        Random random = new Random(17)
+
+        expect:
+        50.times {
+            String text = (1..random.nextInt(300) + 1).collect { 'ab \n'[random.nextInt(4)] }.join()
+            List<Integer> expected = (0..<text.length()).toList().sort { a, b -> text.substring(a) <=> text.substring(b) }
+            assert SuffixArrayIndex.suffixArray(text.getBytes('US-ASCII')) as List == expected
+        }
+    }
+
+    @Unroll
+    def "overlapsItself - #term.inspect() is #overlaps"() {
+        expect:
+        SuffixArrayIndex.overlapsItself(term) == overlaps
+
+        where:
+        term    | overlaps
+        'a'     | false
+        'ab'    | false
+        'aa'    | true
+        'aba'   | true
+        'abab'  | true
+        'abcab' | true
+        'abcd'  | false
+        ' the ' | true
+    }
+
+    @Unroll
+    def "suffixArraySearch - #searchTerm.inspect() counts like simpleStringSearch"() {
+        expect:
+        SearchUtils.suffixArraySearch(searchTerm, suffixArrayIndex) == SearchUtils.simpleStringSearch(searchTerm, resPath)
+
+        where:
+        searchTerm << ['testing', 'testing the app like', 'testing the app like heck 1 23', 'p unct at ion', 'the',
+                       'of the', 'military history', ' the', 'the ', ' the ', '!', 'e', 'Test', 'zzz', 'in', 'ss']
+    }
+
+    def 'suffixArraySearch - self-overlapping terms count non-overlapping matches'() {
+        given:
+        File dir = Files.createTempDirectory("suffix").toFile()
+        new File(dir, "a.txt").text = "aaaa aaaaa. abababa"
+        new File(dir, "b.txt").text = "aaa\nbab"
+        new File(dir, "empty.txt").text = ""
+        SuffixArrayIndex index = SuffixArrayIndex.build(dir.path)
+
+        expect:
+        ['aa', 'aaa', 'a', 'aba', 'abab', 'bab', ' a', 'a a', 'a aaa', 'aaab', ' '].each { searchTerm ->
+            assert SearchUtils.suffixArraySearch(searchTerm, index) == SearchUtils.simpleStringSearch(searchTerm, dir.path)
+        }
+        SearchUtils.suffixArraySearch('aa', index) == ['a.txt': 4, 'b.txt': 1, 'empty.txt': 0]
+
+        cleanup:
+        dir.deleteDir()
+    }
+
+    def 'suffixArraySearch - random terms count like simpleStringSearch'() {
+        given:
+        File dir = Files.createTempDirectory("suffix").toFile()
+        Random random = new Random(170)
+        20.times { fileId ->
+            new File(dir, "file${fileId}.txt").text = (1..random.nextInt(400)).collect { 'ab \n'[random.nextInt(4)] }.join()
+        }
+        SuffixArrayIndex index = SuffixArrayIndex.build(dir.path)
+
+        expect:
+        200.times {
+            String searchTerm = (1..random.nextInt(5) + 1).collect { 'ab '[random.nextInt(3)] }.join()
+            assert SearchUtils.suffixArraySearch(searchTerm, index) == SearchUtils.simpleStringSearch(searchTerm, dir.path)
+        }
+
+        cleanup:
+        SearchUtils.getResultCache().clear()
+        dir.deleteDir()
+    }
+
+    def 'write and load - memory-mapped index gives the same counts'() {
+        given:
+        File indexFile = Files.createTempFile("suffix", ".idx").toFile()
+
+        when:
+        suffixArrayIndex.write(indexFile)
+        SuffixArrayIndex loaded = SuffixArrayIndex.load(indexFile)
+
+        then:
+        loaded.getFilenames() == suffixArrayIndex.getFilenames()
+        loaded.isCurrent(resPath)
+        ['testing the app like', 'the', 'warp drive', 'none'].each { searchTerm ->
+            assert SearchUtils.suffixArraySearch(searchTerm, loaded) ==
+                    SearchUtils.suffixArraySearch(searchTerm, suffixArrayIndex)
+        }
+
+        cleanup:
+        indexFile.delete()
+    }
+
+    def 'load - a file which is not an index is rejected'() {
+        given:
+        File indexFile = Files.createTempFile("suffix", ".idx").toFile()
+        indexFile.text = "not an index"
+
+        when:
+        SuffixArrayIndex.load(indexFile)
+
+        then:
+        thrown(IOException)
+
+        cleanup:
+        indexFile.delete()
+    }
+
+    def 'build - a file that cannot be read is indexed as empty and keeps the index stale'() {
+        given:
+        File dir = Files.createTempDirectory("suffix").toFile()
+        new File(dir, "a.txt").text = "alpha"
+        File b = new File(dir, "b.txt")
+        b.text = "alpha beta"
+        SearchUtils.getCorpusCache().listTextFiles(dir.path)
+        FileTime listed = Files.getLastModifiedTime(dir.toPath())
+        //still listed as a text file, but read as a directory
+        b.delete()
+        b.mkdir()
+        Files.setLastModifiedTime(dir.toPath(), listed)
+
+        when:
+        SuffixArrayIndex index = SuffixArrayIndex.build(dir.path)
+
+        then:
+        SearchUtils.suffixArraySearch('alpha', index) == ['a.txt': 1, 'b.txt': 0]
+        !index.isCurrent(dir.path)
+
+        cleanup:
+        dir.deleteDir()
+    }
+
+    def 'isCurrent - false once a file changed'() {
+        given:
+        File dir = Files.createTempDirectory("suffix").toFile()
+        File file = new File(dir, "a.txt")
+        file.text = "alpha"
+        SuffixArrayIndex index = SuffixArrayIndex.build(dir.path)
+
+        when:
+        file.text = "alpha beta"
+
+        then:
+        !index.isCurrent(dir.path)
+
+        cleanup:
+        dir.deleteDir()
+    }
+}
@@ -0,0 +1,51 @@
+package target
+
+import org.apache.lucene.index.DirectoryReader
+import org.apache.lucene.store.FSDirectory
+
+import java.nio.file.Files
+
+/**
+ * Temporary directory of text files and index directory shared by the specs, created for each feature and
+ * deleted by its cleanup. Holds "a.txt" ("alpha beta") and "b.txt" ("beta gamma") unless given other files.
+ */
+class TempCorpus {
+    final File resDir = Files.createTempDirectory("res").toFile()
+    final File indexDir = Files.createTempDirectory("index").toFile()
+
+    TempCorpus() {
+        this(['a.txt': 'alpha beta', 'b.txt': 'beta gamma'])
+    }
+
+    /**
+     * @param files name and text of each text file
+     */
+    TempCorpus(Map<String, String> files) {
+        files.each { filename, text -> new File(resDir, filename).text = text }
+    }
+
+    /**
+     * @return the number of documents in the index
+     */
+    int numDocs() {
+        return withReader { it.numDocs() }
+    }
+
+    /**
+     * @param closure called with a reader of the index, closed once called
+     * @return the result of {@code closure}
+     */
+    public <T> T withReader(Closure<T> closure) {
+        FSDirectory dir = FSDirectory.open(indexDir.toPath())
+        try {
+            return DirectoryReader.open(dir).withCloseable(closure)
+        } finally {
+            dir.close()
+        }
+    }
+
+    void delete() {
+        resDir.deleteDir()
+        indexDir.deleteDir()
+    }
+}